@@ -0,0 +1,190 @@
+package com.r307.arbitrader;
+
+import com.r307.arbitrader.config.RecorderConfiguration;
+import com.r307.arbitrader.config.TradingConfiguration;
+import com.r307.arbitrader.service.BalanceLedger;
+import com.r307.arbitrader.service.CapitalAllocator;
+import com.r307.arbitrader.service.ConditionService;
+import com.r307.arbitrader.service.ErrorCollectorService;
+import com.r307.arbitrader.service.ExchangeService;
+import com.r307.arbitrader.service.NotificationService;
+import com.r307.arbitrader.service.OrderFillService;
+import com.r307.arbitrader.service.SpreadService;
+import com.r307.arbitrader.service.TickerService;
+import com.r307.arbitrader.service.TradingService;
+import com.r307.arbitrader.service.cache.ExchangeFeeCache;
+import com.r307.arbitrader.service.cache.OrderBookCache;
+import com.r307.arbitrader.service.history.TradeHistoryWriter;
+import com.r307.arbitrader.service.journal.TradeJournal;
+import com.r307.arbitrader.service.metrics.MetricsService;
+import com.r307.arbitrader.service.recorder.MarketDataRecorder;
+import com.r307.arbitrader.service.ticker.TickerStrategyProvider;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.knowm.xchange.Exchange;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.marketdata.Ticker;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * A set of fake exchanges that all trade the same currency pairs, wired up to the real services the same way Spring
+ * would do it. The entry spread is set so high that nothing ever trades, so the benchmarks measure deciding whether
+ * to trade and not the trading itself.
+ *
+ * Every exchange and currency pair has two tickers with slightly different prices, so the benchmarks can alternate
+ * between them and look like a live feed without allocating new tickers while they're being measured.
+ */
+public class SyntheticMarket {
+    public static final int VARIANTS = 2;
+
+    private final List<Exchange> exchanges = new ArrayList<>();
+    private final List<CurrencyPair> currencyPairs = new ArrayList<>();
+    private final Ticker[][][] tickers; // by exchange, currency pair and variant
+    private final TradingConfiguration tradingConfiguration = new TradingConfiguration();
+    private final ExchangeService exchangeService;
+    private final TickerService tickerService;
+    private final SpreadService spreadService;
+    private final OrderBookCache orderBookCache = new OrderBookCache();
+    private final TradingService tradingService;
+
+    /**
+     * Build a market.
+     *
+     * @param exchangeCount The number of exchanges.
+     * @param pairCount The number of currency pairs traded on every exchange. The first one is always BTC/USD.
+     * @param depth The number of bids and asks in the BTC/USD order book on each exchange.
+     * @throws IOException if ExchangeBuilder can't build an exchange.
+     */
+    public SyntheticMarket(int exchangeCount, int pairCount, int depth) throws IOException {
+        currencyPairs.add(CurrencyPair.BTC_USD);
+
+        for (int i = 1; i < pairCount; i++) {
+            currencyPairs.add(new CurrencyPair("C" + i, "USD"));
+        }
+
+        for (int i = 0; i < exchangeCount; i++) {
+            exchanges.add(new ExchangeBuilder("Exchange" + i, CurrencyPair.BTC_USD)
+                .withStubOnly()
+                .withTickers(true, currencyPairs)
+                .withExchangeMetaData()
+                .withMarginSupported(true)
+                .withOrderBook(depth, depth)
+                .build());
+        }
+
+        tradingConfiguration.setEntrySpread(BigDecimal.ONE);
+        tradingConfiguration.setExitTarget(new BigDecimal("0.5"));
+
+        exchangeService = new ExchangeService(new ExchangeFeeCache(), mock(TickerStrategyProvider.class));
+        final MetricsService metricsService = new MetricsService(new SimpleMeterRegistry());
+
+        tickerService = new TickerService(tradingConfiguration, exchangeService, new ErrorCollectorService(metricsService), metricsService,
+            new MarketDataRecorder(new RecorderConfiguration()));
+        spreadService = new SpreadService(tradingConfiguration, tickerService);
+
+        final BalanceLedger balanceLedger = new BalanceLedger();
+
+        tradingService = new TradingService(
+            tradingConfiguration,
+            new ConditionService(),
+            exchangeService,
+            spreadService,
+            mock(NotificationService.class, withSettings().stubOnly()),
+            orderBookCache,
+            Runnable::run,
+            new OrderFillService(),
+            new CapitalAllocator(tradingConfiguration, exchangeService, balanceLedger),
+            balanceLedger,
+            metricsService,
+            mock(TradeJournal.class, withSettings().stubOnly()),
+            mock(TradeHistoryWriter.class, withSettings().stubOnly()),
+            new MarketDataRecorder(new RecorderConfiguration()),
+            Clock.systemDefaultZone());
+
+        tickers = buildTickers();
+
+        tickerService.initializeTickers(exchanges);
+
+        // start with a price for everything so every spread can be computed
+        for (int e = 0; e < exchangeCount; e++) {
+            for (int p = 0; p < pairCount; p++) {
+                tickerService.putTicker(exchanges.get(e), tickers[e][p][0]);
+            }
+        }
+    }
+
+    public List<Exchange> getExchanges() {
+        return Collections.unmodifiableList(exchanges);
+    }
+
+    public List<CurrencyPair> getCurrencyPairs() {
+        return Collections.unmodifiableList(currencyPairs);
+    }
+
+    /**
+     * Get one of the prepared tickers.
+     *
+     * @param exchange The index of the exchange.
+     * @param currencyPair The index of the currency pair.
+     * @param variant Which of the VARIANTS to use.
+     * @return A Ticker.
+     */
+    public Ticker getTicker(int exchange, int currencyPair, int variant) {
+        return tickers[exchange][currencyPair][variant];
+    }
+
+    public TradingConfiguration getTradingConfiguration() {
+        return tradingConfiguration;
+    }
+
+    public ExchangeService getExchangeService() {
+        return exchangeService;
+    }
+
+    public TickerService getTickerService() {
+        return tickerService;
+    }
+
+    public SpreadService getSpreadService() {
+        return spreadService;
+    }
+
+    public OrderBookCache getOrderBookCache() {
+        return orderBookCache;
+    }
+
+    public TradingService getTradingService() {
+        return tradingService;
+    }
+
+    // every exchange is a little more expensive than the one before it, so every combination has a spread
+    private Ticker[][][] buildTickers() {
+        final Ticker[][][] built = new Ticker[exchanges.size()][currencyPairs.size()][VARIANTS];
+
+        for (int e = 0; e < exchanges.size(); e++) {
+            for (int p = 0; p < currencyPairs.size(); p++) {
+                for (int v = 0; v < VARIANTS; v++) {
+                    final BigDecimal bid = new BigDecimal("1000.00")
+                        .add(BigDecimal.valueOf(e))
+                        .add(new BigDecimal("0.25").multiply(BigDecimal.valueOf(v)));
+
+                    built[e][p][v] = new Ticker.Builder()
+                        .currencyPair(currencyPairs.get(p))
+                        .bid(bid)
+                        .ask(bid.add(BigDecimal.ONE))
+                        .build();
+                }
+            }
+        }
+
+        return built;
+    }
+}
@@ -0,0 +1,58 @@
+package com.r307.arbitrader.service;
+
+import com.r307.arbitrader.SyntheticMarket;
+import com.r307.arbitrader.service.model.FixedSpread;
+import com.r307.arbitrader.service.model.Spread;
+import com.r307.arbitrader.service.model.TradeCombination;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * How long it takes to compute the spread for a trade combination, both the BigDecimal way that builds a Spread and
+ * the fixed point way we use to screen combinations on every ticker.
+ */
+@State(Scope.Thread)
+public class SpreadServiceBenchmark {
+    @Param({"2", "4", "8"})
+    private int exchangeCount;
+
+    @Param({"1", "8", "32"})
+    private int pairCount;
+
+    private SpreadService spreadService;
+    private List<TradeCombination> tradeCombinations;
+    private final FixedSpread fixedSpread = new FixedSpread();
+    private int next = 0;
+
+    @Setup
+    public void setUp() throws IOException {
+        SyntheticMarket market = new SyntheticMarket(exchangeCount, pairCount, 10);
+
+        spreadService = market.getSpreadService();
+        tradeCombinations = market.getTickerService().getExchangeTradeCombinations();
+    }
+
+    @Benchmark
+    public Spread computeSpread() {
+        return spreadService.computeSpread(nextTradeCombination());
+    }
+
+    @Benchmark
+    public boolean computeFixedSpread() {
+        return spreadService.computeSpread(nextTradeCombination(), fixedSpread);
+    }
+
+    private TradeCombination nextTradeCombination() {
+        final TradeCombination tradeCombination = tradeCombinations.get(next);
+
+        next = (next + 1) % tradeCombinations.size();
+
+        return tradeCombination;
+    }
+}
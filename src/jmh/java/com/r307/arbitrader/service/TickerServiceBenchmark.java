@@ -0,0 +1,43 @@
+package com.r307.arbitrader.service;
+
+import com.r307.arbitrader.SyntheticMarket;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+
+/**
+ * How long it takes to store a ticker as it arrives from an exchange.
+ */
+@State(Scope.Thread)
+public class TickerServiceBenchmark {
+    @Param({"2", "4", "8"})
+    private int exchangeCount;
+
+    @Param({"1", "8", "32"})
+    private int pairCount;
+
+    private SyntheticMarket market;
+    private TickerService tickerService;
+    private int next = 0;
+
+    @Setup
+    public void setUp() throws IOException {
+        market = new SyntheticMarket(exchangeCount, pairCount, 10);
+        tickerService = market.getTickerService();
+    }
+
+    @Benchmark
+    public void putTicker() {
+        final int exchange = next % exchangeCount;
+        final int pair = (next / exchangeCount) % pairCount;
+        final int variant = (next / (exchangeCount * pairCount)) % SyntheticMarket.VARIANTS;
+
+        tickerService.putTicker(market.getExchanges().get(exchange), market.getTicker(exchange, pair, variant));
+
+        next = (next + 1) % (exchangeCount * pairCount * SyntheticMarket.VARIANTS);
+    }
+}
@@ -0,0 +1,64 @@
+package com.r307.arbitrader.service;
+
+import com.r307.arbitrader.ExchangeBuilder;
+import com.r307.arbitrader.SyntheticMarket;
+import org.knowm.xchange.Exchange;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.Order;
+import org.knowm.xchange.dto.marketdata.OrderBook;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Date;
+
+/**
+ * How long it takes to find a limit price by walking the order book. The volume is half of the book, so a deeper book
+ * means more orders to walk through.
+ */
+@State(Scope.Thread)
+public class TradingServiceBenchmark {
+    @Param({"10", "100", "1000"})
+    private int depth;
+
+    private SyntheticMarket market;
+    private TradingService tradingService;
+    private Exchange exchange;
+    private OrderBook orderBook;
+    private BigDecimal volume;
+
+    @Setup
+    public void setUp() throws IOException {
+        market = new SyntheticMarket(2, 1, depth);
+        tradingService = market.getTradingService();
+        exchange = market.getExchanges().get(0);
+        orderBook = new OrderBook(
+            new Date(),
+            ExchangeBuilder.generateOrders(CurrencyPair.BTC_USD, Order.OrderType.ASK, depth),
+            ExchangeBuilder.generateOrders(CurrencyPair.BTC_USD, Order.OrderType.BID, depth));
+
+        // every order is for 10, so this is half way through the book
+        volume = BigDecimal.valueOf(depth * 5L);
+    }
+
+    // act like a streaming exchange, so we're measuring the search and not the REST call when the snapshot expires
+    @Setup(Level.Iteration)
+    public void refreshOrderBook() {
+        market.getOrderBookCache().setStreamingOrderBook(exchange, CurrencyPair.BTC_USD, orderBook);
+    }
+
+    @Benchmark
+    public BigDecimal getLimitPriceBid() {
+        return tradingService.getLimitPrice(exchange, CurrencyPair.BTC_USD, volume, Order.OrderType.BID);
+    }
+
+    @Benchmark
+    public BigDecimal getLimitPriceAsk() {
+        return tradingService.getLimitPrice(exchange, CurrencyPair.BTC_USD, volume, Order.OrderType.ASK);
+    }
+}
@@ -0,0 +1,61 @@
+package com.r307.arbitrader.service.event;
+
+import com.r307.arbitrader.SyntheticMarket;
+import com.r307.arbitrader.service.latency.LatencyRecorder;
+import com.r307.arbitrader.service.model.TickerEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * How long it takes to decide whether to trade when a ticker arrives. This is everything from the ticker being
+ * stored to the decision not to trade, for every combination that uses the ticker.
+ */
+@State(Scope.Thread)
+public class TickerEventListenerBenchmark {
+    @Param({"2", "4", "8"})
+    private int exchangeCount;
+
+    @Param({"1", "8", "32"})
+    private int pairCount;
+
+    private SyntheticMarket market;
+    private TickerEventListener tickerEventListener;
+    private final List<TickerEvent> tickerEvents = new ArrayList<>();
+    private int next = 0;
+
+    @Setup
+    public void setUp() throws IOException {
+        market = new SyntheticMarket(exchangeCount, pairCount, 10);
+        tickerEventListener = new TickerEventListener(
+            market.getTradingService(),
+            market.getTickerService(),
+            market.getSpreadService(),
+            new LatencyRecorder());
+
+        for (int v = 0; v < SyntheticMarket.VARIANTS; v++) {
+            for (int p = 0; p < pairCount; p++) {
+                for (int e = 0; e < exchangeCount; e++) {
+                    tickerEvents.add(new TickerEvent(market.getTicker(e, p, v), market.getExchanges().get(e)));
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public void onTradeEvent() {
+        final TickerEvent tickerEvent = tickerEvents.get(next);
+
+        next = (next + 1) % tickerEvents.size();
+
+        // this is what the ticker strategies do before they publish the event
+        market.getTickerService().putTicker(tickerEvent.getExchange(), tickerEvent.getTicker());
+        tickerEventListener.onTradeEvent(tickerEvent);
+    }
+}
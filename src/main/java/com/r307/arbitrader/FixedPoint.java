@@ -0,0 +1,153 @@
+package com.r307.arbitrader;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+
+import static com.r307.arbitrader.DecimalConstants.BTC_SCALE;
+
+/**
+ * Conversions between BigDecimal and scaled long values. A scaled long holds a price in units of 1e-8
+ * (the same scale as BTC_SCALE) so it can be stored in primitive arrays and compared without allocating.
+ */
+public final class FixedPoint {
+    public static final int SCALE = BTC_SCALE;
+    public static final long ONE = 100_000_000L;
+
+    /**
+     * Sentinel for "no value", such as a missing bid or ask or a price too large to represent.
+     */
+    public static final long NO_VALUE = Long.MIN_VALUE;
+
+    private static final long DIGITS = 10_000L; // ONE is DIGITS * DIGITS
+    private static final long MAX_DIVISOR = Long.MAX_VALUE / DIGITS;
+    private static final long[] POWERS_OF_TEN = new long[SCALE + 1];
+
+    static {
+        POWERS_OF_TEN[0] = 1L;
+
+        for (int i = 1; i <= SCALE; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10L;
+        }
+    }
+
+    private FixedPoint() {
+        // this method intentionally left blank
+    }
+
+    /**
+     * Convert a BigDecimal into a scaled long, rounding to SCALE decimal places.
+     *
+     * @param value The value to convert.
+     * @return The scaled value, or NO_VALUE if the value is null or too large to fit in a long.
+     */
+    public static long toFixed(BigDecimal value) {
+        return toFixed(value, RoundingMode.HALF_EVEN);
+    }
+
+    /**
+     * Convert a BigDecimal into a scaled long, rounding to SCALE decimal places in a particular direction. Rounding
+     * a threshold with FLOOR or CEILING lets a comparison against it be done exactly in fixed point even when the
+     * threshold has more decimal places than SCALE.
+     *
+     * @param value The value to convert.
+     * @param roundingMode How to round the value.
+     * @return The scaled value, or NO_VALUE if the value is null or too large to fit in a long.
+     */
+    public static long toFixed(BigDecimal value, RoundingMode roundingMode) {
+        if (value == null) {
+            return NO_VALUE;
+        }
+
+        final int scale = value.scale();
+
+        // Most prices already have SCALE decimal places or fewer, so they can be scaled up exactly without rounding.
+        // That skips building a new BigDecimal in setScale(), which matters because every ticker comes through here.
+        if (scale >= 0 && scale <= SCALE) {
+            final BigInteger unscaled = value.unscaledValue();
+
+            if (unscaled.bitLength() < Long.SIZE) {
+                try {
+                    return Math.multiplyExact(unscaled.longValue(), POWERS_OF_TEN[SCALE - scale]);
+                } catch (ArithmeticException e) {
+                    return NO_VALUE;
+                }
+            }
+        }
+
+        try {
+            return value.setScale(SCALE, roundingMode).unscaledValue().longValueExact();
+        } catch (ArithmeticException e) {
+            return NO_VALUE;
+        }
+    }
+
+    /**
+     * Convert a scaled long back into a BigDecimal with SCALE decimal places.
+     *
+     * @param fixed The scaled value.
+     * @return The equivalent BigDecimal, or null if the value is NO_VALUE.
+     */
+    public static BigDecimal toBigDecimal(long fixed) {
+        if (fixed == NO_VALUE) {
+            return null;
+        }
+
+        return BigDecimal.valueOf(fixed, SCALE);
+    }
+
+    /**
+     * Compute (short - long) / long on scaled longs. The result is exactly what SpreadService.computeSpread()
+     * gets from the same prices with BigDecimal: SCALE decimal places, rounded HALF_EVEN.
+     *
+     * @param longPrice The price on the long exchange as a scaled long.
+     * @param shortPrice The price on the short exchange as a scaled long.
+     * @return The spread as a scaled long, or NO_VALUE if either price is missing, the long price isn't positive,
+     * or the prices are too large to compute the spread without overflowing.
+     */
+    public static long spread(long longPrice, long shortPrice) {
+        if (longPrice == NO_VALUE || shortPrice == NO_VALUE || longPrice <= 0 || longPrice > MAX_DIVISOR) {
+            return NO_VALUE;
+        }
+
+        final long difference;
+
+        try {
+            difference = Math.subtractExact(shortPrice, longPrice);
+        } catch (ArithmeticException e) {
+            return NO_VALUE;
+        }
+
+        if (difference == Long.MIN_VALUE) {
+            return NO_VALUE; // can't be negated
+        }
+
+        // HALF_EVEN is symmetric, so divide the magnitude and put the sign back at the end
+        final long magnitude = Math.abs(difference);
+
+        // Multiplying the difference by ONE before dividing can overflow for ordinary prices, so do the long
+        // division four digits at a time instead. The remainder is always less than longPrice, so multiplying
+        // it by DIGITS can't overflow as long as longPrice is no more than MAX_DIVISOR.
+        long quotient = magnitude / longPrice;
+        long remainder = magnitude % longPrice;
+
+        if (quotient >= Long.MAX_VALUE / ONE) {
+            return NO_VALUE;
+        }
+
+        quotient *= DIGITS;
+        quotient += (remainder * DIGITS) / longPrice;
+        remainder = (remainder * DIGITS) % longPrice;
+
+        quotient *= DIGITS;
+        quotient += (remainder * DIGITS) / longPrice;
+        remainder = (remainder * DIGITS) % longPrice;
+
+        // round half to even, comparing the remainder against what's left of the divisor so we can't overflow
+        if (remainder > longPrice - remainder || (remainder == longPrice - remainder && (quotient & 1) != 0)) {
+            quotient++;
+        }
+
+        return difference < 0 ? -quotient : quotient;
+    }
+}
@@ -0,0 +1,17 @@
+package com.r307.arbitrader.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Clock;
+
+/**
+ * The clock that trading decisions are timed by. A replay uses its own clock that follows the recorded market data.
+ */
+@Configuration
+public class ClockConfiguration {
+    @Bean
+    public Clock clock() {
+        return Clock.systemDefaultZone();
+    }
+}
@@ -30,11 +30,14 @@ public class ExchangeConfiguration {
     private List<CurrencyPair> marginExclude = new ArrayList<>();
     private BigDecimal fee;
     private BigDecimal feeOverride;
+    private Long feeRefreshInterval = 60L; // minutes
+    private Double requestsPerSecond = null; // null means poll tickers every 3 seconds
     private Currency homeCurrency = Currency.USD;
     private Map<String, Integer> ticker = new HashMap<>();
     private List<Object> tickerArguments = new ArrayList<>();
     private FeeComputation feeComputation = SERVER;
     private Boolean active;
+    private Boolean streamingOrderBook = false;
 
     public String getExchangeClass() {
         return exchangeClass;
@@ -140,6 +143,22 @@ public class ExchangeConfiguration {
         this.feeOverride = feeOverride;
     }
 
+    public Long getFeeRefreshInterval() {
+        return feeRefreshInterval;
+    }
+
+    public void setFeeRefreshInterval(Long feeRefreshInterval) {
+        this.feeRefreshInterval = feeRefreshInterval;
+    }
+
+    public Double getRequestsPerSecond() {
+        return requestsPerSecond;
+    }
+
+    public void setRequestsPerSecond(Double requestsPerSecond) {
+        this.requestsPerSecond = requestsPerSecond;
+    }
+
     public Currency getHomeCurrency() {
         return homeCurrency;
     }
@@ -179,4 +198,12 @@ public class ExchangeConfiguration {
     public void setActive(Boolean active) {
         this.active = active;
     }
+
+    public Boolean getStreamingOrderBook() {
+        return streamingOrderBook;
+    }
+
+    public void setStreamingOrderBook(Boolean streamingOrderBook) {
+        this.streamingOrderBook = streamingOrderBook;
+    }
 }
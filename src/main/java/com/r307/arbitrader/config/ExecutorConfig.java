@@ -7,7 +7,7 @@ import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import java.util.concurrent.Executor;
 
 /**
- * Configuration for the task executor.
+ * Configuration for the task executors.
  */
 @Configuration
 public class ExecutorConfig {
@@ -24,4 +24,26 @@ public class ExecutorConfig {
 
         return executor;
     }
+
+    /**
+     * The executor that places the two legs of a trade at the same time. It has one thread per leg for as many
+     * positions as we can have open, so neither order ever waits behind the other, even when several trades are
+     * placing orders at once.
+     *
+     * @param tradingConfiguration The TradingConfiguration, for the maximum number of positions.
+     * @return An Executor for placing orders.
+     */
+    @Bean
+    public Executor orderExecutor(TradingConfiguration tradingConfiguration) {
+        final Integer maxPositions = tradingConfiguration.getMaxPositions();
+        final int threads = 2 * (maxPositions == null ? 1 : Math.max(1, maxPositions));
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setThreadNamePrefix("order-placement-");
+        executor.initialize();
+
+        return executor;
+    }
 }
@@ -0,0 +1,57 @@
+package com.r307.arbitrader.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Configuration for the trade history file. These settings can be set in application.yaml in the "history" section.
+ */
+@ConfigurationProperties("history")
+@Configuration
+public class HistoryConfiguration {
+    private Integer queueSize = 1024;
+    private HistoryFlush flush = HistoryFlush.EVERY_TRADE;
+    private Long flushInterval = 1000L; // milliseconds
+    private Long maxFileSize = 10L * 1024 * 1024; // bytes
+    private Integer maxFiles = 10;
+
+    public Integer getQueueSize() {
+        return queueSize;
+    }
+
+    public void setQueueSize(Integer queueSize) {
+        this.queueSize = queueSize;
+    }
+
+    public HistoryFlush getFlush() {
+        return flush;
+    }
+
+    public void setFlush(HistoryFlush flush) {
+        this.flush = flush;
+    }
+
+    public Long getFlushInterval() {
+        return flushInterval;
+    }
+
+    public void setFlushInterval(Long flushInterval) {
+        this.flushInterval = flushInterval;
+    }
+
+    public Long getMaxFileSize() {
+        return maxFileSize;
+    }
+
+    public void setMaxFileSize(Long maxFileSize) {
+        this.maxFileSize = maxFileSize;
+    }
+
+    public Integer getMaxFiles() {
+        return maxFiles;
+    }
+
+    public void setMaxFiles(Integer maxFiles) {
+        this.maxFiles = maxFiles;
+    }
+}
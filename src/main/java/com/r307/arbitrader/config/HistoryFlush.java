@@ -0,0 +1,9 @@
+package com.r307.arbitrader.config;
+
+/**
+ * When does the trade history get written out to the file?
+ */
+public enum HistoryFlush {
+    EVERY_TRADE, // as soon as each trade is logged
+    INTERVAL     // every history.flushInterval milliseconds, and whenever the buffer fills up
+}
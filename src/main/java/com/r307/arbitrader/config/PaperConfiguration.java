@@ -1,11 +1,14 @@
 package com.r307.arbitrader.config;
 
+import java.math.BigDecimal;
+
 /**
  * Configuration that governs the application's paper trading
  */
 public class PaperConfiguration {
     private Boolean active = true;
     private Boolean autoFill = false;
+    private BigDecimal initialBalance = new BigDecimal(100);
 
     public Boolean isActive() {
         return active;
@@ -22,4 +25,12 @@ public class PaperConfiguration {
     public void setAutoFill(Boolean autoFill) {
         this.autoFill = autoFill;
     }
+
+    public BigDecimal getInitialBalance() {
+        return initialBalance;
+    }
+
+    public void setInitialBalance(BigDecimal initialBalance) {
+        this.initialBalance = initialBalance;
+    }
 }
@@ -0,0 +1,66 @@
+package com.r307.arbitrader.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Configuration for the market data recorder. These settings can be set in application.yaml in the "recorder" section.
+ */
+@ConfigurationProperties("recorder")
+@Configuration
+public class RecorderConfiguration {
+    private Boolean enabled = false;
+    private Boolean orderBooks = false;
+    private Integer orderBookDepth = 20; // price levels per side
+    private Integer queueSize = 65536;
+    private Integer chunkSize = 4096; // records
+    private Long chunkInterval = 10000L; // milliseconds
+
+    public Boolean getEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(Boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public Boolean getOrderBooks() {
+        return orderBooks;
+    }
+
+    public void setOrderBooks(Boolean orderBooks) {
+        this.orderBooks = orderBooks;
+    }
+
+    public Integer getOrderBookDepth() {
+        return orderBookDepth;
+    }
+
+    public void setOrderBookDepth(Integer orderBookDepth) {
+        this.orderBookDepth = orderBookDepth;
+    }
+
+    public Integer getQueueSize() {
+        return queueSize;
+    }
+
+    public void setQueueSize(Integer queueSize) {
+        this.queueSize = queueSize;
+    }
+
+    public Integer getChunkSize() {
+        return chunkSize;
+    }
+
+    public void setChunkSize(Integer chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    public Long getChunkInterval() {
+        return chunkInterval;
+    }
+
+    public void setChunkInterval(Long chunkInterval) {
+        this.chunkInterval = chunkInterval;
+    }
+}
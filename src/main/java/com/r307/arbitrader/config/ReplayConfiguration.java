@@ -0,0 +1,69 @@
+package com.r307.arbitrader.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Instant;
+
+/**
+ * Configuration for replaying recorded market data. These settings can be set in application.yaml in the "replay"
+ * section.
+ */
+@ConfigurationProperties("replay")
+@Configuration
+public class ReplayConfiguration {
+    private Boolean active = false;
+    private String directory = ".arbitrader/market-data";
+    private String output = ".arbitrader/replay";
+    private Instant from = null;
+    private Instant to = null;
+    private Long orderBookLead = 0L; // milliseconds
+
+    public Boolean isActive() {
+        return active;
+    }
+
+    public void setActive(Boolean active) {
+        this.active = active;
+    }
+
+    public String getDirectory() {
+        return directory;
+    }
+
+    public void setDirectory(String directory) {
+        this.directory = directory;
+    }
+
+    public String getOutput() {
+        return output;
+    }
+
+    public void setOutput(String output) {
+        this.output = output;
+    }
+
+    public Instant getFrom() {
+        return from;
+    }
+
+    public void setFrom(Instant from) {
+        this.from = from;
+    }
+
+    public Instant getTo() {
+        return to;
+    }
+
+    public void setTo(Instant to) {
+        this.to = to;
+    }
+
+    public Long getOrderBookLead() {
+        return orderBookLead;
+    }
+
+    public void setOrderBookLead(Long orderBookLead) {
+        this.orderBookLead = orderBookLead;
+    }
+}
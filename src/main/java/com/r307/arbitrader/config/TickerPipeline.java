@@ -0,0 +1,9 @@
+package com.r307.arbitrader.config;
+
+/**
+ * How do TickerEvents get from the TickerStrategies to trade analysis?
+ */
+public enum TickerPipeline {
+    EVENT,      // Spring application events, coalesced by the TickerEventDispatcher
+    RING_BUFFER // a pre-allocated ring buffer with one thread per stage, see TickerRingBuffer
+}
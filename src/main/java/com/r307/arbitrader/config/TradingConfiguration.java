@@ -24,7 +24,10 @@ public class TradingConfiguration {
     private List<ExchangeConfiguration> exchanges = new ArrayList<>();
     private List<String> tradeBlacklist = new ArrayList<>();
     private Long tradeTimeout;
+    private Integer maxPositions = 1;
+    private Integer maxPositionsPerExchange;
     private PaperConfiguration paper;
+    private TickerPipeline tickerPipeline = TickerPipeline.EVENT;
 
     public BigDecimal getEntrySpread() {
         return entrySpread;
@@ -82,6 +85,22 @@ public class TradingConfiguration {
         this.tradeTimeout = tradeTimeout;
     }
 
+    public Integer getMaxPositions() {
+        return maxPositions;
+    }
+
+    public void setMaxPositions(Integer maxPositions) {
+        this.maxPositions = maxPositions;
+    }
+
+    public Integer getMaxPositionsPerExchange() {
+        return maxPositionsPerExchange;
+    }
+
+    public void setMaxPositionsPerExchange(Integer maxPositionsPerExchange) {
+        this.maxPositionsPerExchange = maxPositionsPerExchange;
+    }
+
     public PaperConfiguration getPaper() {
         return paper;
     }
@@ -89,4 +108,12 @@ public class TradingConfiguration {
     public void setPaper(PaperConfiguration paper) {
         this.paper = paper;
     }
+
+    public TickerPipeline getTickerPipeline() {
+        return tickerPipeline;
+    }
+
+    public void setTickerPipeline(TickerPipeline tickerPipeline) {
+        this.tickerPipeline = tickerPipeline;
+    }
 }
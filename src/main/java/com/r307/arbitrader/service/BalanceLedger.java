@@ -0,0 +1,251 @@
+package com.r307.arbitrader.service;
+
+import org.knowm.xchange.Exchange;
+import org.knowm.xchange.currency.Currency;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.Order;
+import org.knowm.xchange.dto.account.Wallet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Our own record of the balances on each exchange, so we don't have to ask the exchange every time we want to know.
+ *
+ * The first time we need an exchange's balances we fetch all of them. After that we update them ourselves whenever
+ * one of our orders fills, and every so often we fetch them again in the background to catch anything we got wrong.
+ * If the exchange disagrees with us by more than a little, we log a warning so it's easy to see when the ledger is
+ * drifting. The exchange always wins.
+ *
+ * If we don't know how much of an order filled we don't guess. The exchange is marked dirty instead, and we ask it
+ * for its balances before we let anyone trade with them again.
+ */
+@Component
+public class BalanceLedger {
+    private static final Logger LOGGER = LoggerFactory.getLogger(BalanceLedger.class);
+
+    static final BigDecimal DRIFT_TOLERANCE = new BigDecimal("0.001"); // 0.1%
+
+    private final Map<String, Exchange> exchanges = new ConcurrentHashMap<>();
+    private final Map<String, Map<Currency, BigDecimal>> balances = new ConcurrentHashMap<>();
+    private final Map<String, Integer> pendingOrders = new HashMap<>(); // guarded by this
+    private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Get the available balance of one currency on an exchange. This only calls the exchange the first time we see it,
+     * or when it's dirty.
+     *
+     * @param exchange The exchange.
+     * @param currency The currency.
+     * @return The available balance, or zero if we don't know it.
+     */
+    public BigDecimal getBalance(Exchange exchange, Currency currency) {
+        final String name = getName(exchange);
+
+        if (dirty.contains(name)) {
+            reconcile(exchange);
+
+            // if we still couldn't find out, act like there's nothing there so we don't trade on a guess
+            if (dirty.contains(name)) {
+                return BigDecimal.ZERO;
+            }
+        }
+
+        return getBalances(exchange).getOrDefault(currency, BigDecimal.ZERO);
+    }
+
+    /**
+     * Tell the ledger that an order finished but we don't know how much of it filled, so our balances for the exchange
+     * can't be trusted until we've asked the exchange for them again.
+     *
+     * @param exchange The exchange the order was placed on.
+     */
+    public void markDirty(Exchange exchange) {
+        final String name = getName(exchange);
+
+        exchanges.putIfAbsent(name, exchange);
+        dirty.add(name);
+
+        LOGGER.warn("{} balances are unknown until we reconcile with the exchange", name);
+    }
+
+    /**
+     * Tell the ledger we're about to place orders, so it won't replace our balances with the exchange's while the
+     * orders are in flight and it can't tell what the exchange has done with them yet.
+     *
+     * @param exchanges The exchanges we're placing orders on.
+     */
+    public synchronized void hold(Exchange ... exchanges) {
+        for (Exchange exchange : exchanges) {
+            pendingOrders.merge(getName(exchange), 1, Integer::sum);
+        }
+    }
+
+    /**
+     * Tell the ledger our orders are done, one way or another.
+     *
+     * @param exchanges The exchanges we placed orders on.
+     */
+    public synchronized void release(Exchange ... exchanges) {
+        for (Exchange exchange : exchanges) {
+            pendingOrders.computeIfPresent(getName(exchange), (name, count) -> count > 1 ? count - 1 : null);
+        }
+    }
+
+    /**
+     * Update the balances for an order that filled. Buying takes the cost plus fees from the counter currency and adds
+     * the volume to the base currency, and selling does the opposite.
+     *
+     * @param exchange The exchange the order filled on.
+     * @param currencyPair The currency pair, as it is named on the exchange.
+     * @param type BID for a buy, ASK for a sell.
+     * @param volume The volume that filled.
+     * @param price The price it filled at.
+     * @param feePercent The exchange's fee, ie. 0.0016 for 0.16%.
+     */
+    public void applyFill(Exchange exchange, CurrencyPair currencyPair, Order.OrderType type,
+                          BigDecimal volume, BigDecimal price, BigDecimal feePercent) {
+
+        final Map<Currency, BigDecimal> exchangeBalances = getBalances(exchange);
+        final BigDecimal cost = volume.multiply(price);
+        final BigDecimal fee = cost.multiply(feePercent);
+
+        if (Order.OrderType.BID.equals(type)) {
+            exchangeBalances.merge(currencyPair.counter, cost.add(fee).negate(), BigDecimal::add);
+            exchangeBalances.merge(currencyPair.base, volume, BigDecimal::add);
+        } else {
+            exchangeBalances.merge(currencyPair.counter, cost.subtract(fee), BigDecimal::add);
+            exchangeBalances.merge(currencyPair.base, volume.negate(), BigDecimal::add);
+        }
+
+        LOGGER.debug("{} ledger after {} {} {} @ {}: {} {}, {} {}",
+            getName(exchange),
+            type,
+            volume,
+            currencyPair,
+            price,
+            exchangeBalances.get(currencyPair.base),
+            currencyPair.base,
+            exchangeBalances.get(currencyPair.counter),
+            currencyPair.counter);
+    }
+
+    /**
+     * Check our balances against what every exchange reports, and replace ours with theirs.
+     */
+    @Scheduled(initialDelay = 60000, fixedDelay = 60000)
+    public void reconcile() {
+        exchanges.values().forEach(this::reconcile);
+    }
+
+    /**
+     * Check our balances against what an exchange reports, and replace ours with theirs. Exchanges with orders in
+     * flight are skipped and will be picked up next time.
+     *
+     * @param exchange The exchange to reconcile.
+     */
+    public void reconcile(Exchange exchange) {
+        final String name = getName(exchange);
+
+        if (isHeld(name)) {
+            LOGGER.debug("{} has orders in flight, not reconciling balances", name);
+            return;
+        }
+
+        final Map<Currency, BigDecimal> actual;
+
+        try {
+            actual = fetchBalances(exchange);
+        } catch (IOException e) {
+            LOGGER.warn("{} threw an Exception while fetching balances: {}", name, e.getMessage());
+            return;
+        }
+
+        synchronized (this) {
+            // if an order went out while we were fetching, the balances we got might be out of date already
+            if (pendingOrders.containsKey(name)) {
+                return;
+            }
+
+            final Map<Currency, BigDecimal> expected = balances.getOrDefault(name, new HashMap<>());
+
+            actual.forEach((currency, amount) -> {
+                BigDecimal ledgerAmount = expected.getOrDefault(currency, BigDecimal.ZERO);
+
+                if (isDrift(ledgerAmount, amount)) {
+                    LOGGER.warn("{} {} balance has drifted: ledger has {} but the exchange reports {}",
+                        name,
+                        currency,
+                        ledgerAmount.stripTrailingZeros().toPlainString(),
+                        amount.stripTrailingZeros().toPlainString());
+                }
+            });
+
+            balances.put(name, new ConcurrentHashMap<>(actual));
+            dirty.remove(name);
+        }
+    }
+
+    // Get the balances for an exchange, fetching them if this is the first time we've seen it. The fetch happens
+    // outside the map so a slow exchange doesn't hold up anyone else. If two threads both fetch, the first one wins.
+    private Map<Currency, BigDecimal> getBalances(Exchange exchange) {
+        final String name = getName(exchange);
+        final Map<Currency, BigDecimal> existing = balances.get(name);
+
+        if (existing != null) {
+            return existing;
+        }
+
+        exchanges.putIfAbsent(name, exchange);
+
+        Map<Currency, BigDecimal> fetched;
+
+        try {
+            fetched = new ConcurrentHashMap<>(fetchBalances(exchange));
+        } catch (IOException e) {
+            // we'll try again the next time we reconcile, and until then the balance is zero so we won't trade
+            LOGGER.info("IOException fetching {} account balances", name);
+            fetched = new ConcurrentHashMap<>();
+        }
+
+        final Map<Currency, BigDecimal> previous = balances.putIfAbsent(name, fetched);
+
+        return previous == null ? fetched : previous;
+    }
+
+    private synchronized boolean isHeld(String name) {
+        return pendingOrders.containsKey(name);
+    }
+
+    // fetch the available balance of every currency from an exchange
+    private static Map<Currency, BigDecimal> fetchBalances(Exchange exchange) throws IOException {
+        final Map<Currency, BigDecimal> fetched = new HashMap<>();
+
+        // if a currency is in more than one wallet we use the first one, the same as ExchangeService does
+        for (Wallet wallet : exchange.getAccountService().getAccountInfo().getWallets().values()) {
+            wallet.getBalances().forEach((currency, balance) -> fetched.putIfAbsent(currency, balance.getAvailable()));
+        }
+
+        return fetched;
+    }
+
+    // is the difference between two balances more than we can explain with rounding?
+    private static boolean isDrift(BigDecimal expected, BigDecimal actual) {
+        final BigDecimal difference = expected.subtract(actual).abs();
+        final BigDecimal largest = expected.abs().max(actual.abs());
+
+        return difference.compareTo(largest.multiply(DRIFT_TOLERANCE)) > 0;
+    }
+
+    private static String getName(Exchange exchange) {
+        return exchange.getExchangeSpecification().getExchangeName();
+    }
+}
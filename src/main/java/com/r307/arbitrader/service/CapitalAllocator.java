@@ -0,0 +1,307 @@
+package com.r307.arbitrader.service;
+
+import com.r307.arbitrader.DecimalConstants;
+import com.r307.arbitrader.config.TradingConfiguration;
+import com.r307.arbitrader.service.model.ActivePosition;
+import org.knowm.xchange.Exchange;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Decide how much money each trade gets, so that several positions can be open at once without promising the same
+ * money to more than one of them.
+ *
+ * For every exchange we remember the balance in its home currency, which is the capital we have to work with, and
+ * how much of it is reserved by open positions. A position reserves the cost of each of its legs on the exchange the
+ * leg was placed on when it opens, and releases it when it closes. While an exchange has money reserved we keep using
+ * the balance we saw before the first reservation, because the balance the exchange reports will already have the
+ * open positions taken out of it. The balances themselves come from the BalanceLedger, so sizing a trade never
+ * has to wait for the exchange.
+ */
+@Component
+public class CapitalAllocator {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CapitalAllocator.class);
+
+    /**
+     * The portion of the free balance we'll put into a trade. The rest is left over for fees and slip.
+     */
+    public static final BigDecimal TRADE_PORTION = new BigDecimal("0.9");
+
+    private final TradingConfiguration tradingConfiguration;
+    private final ExchangeService exchangeService;
+    private final BalanceLedger balanceLedger;
+    private final Map<String, BigDecimal> capital = new HashMap<>(); // by exchange name
+    private final Map<String, Reservation> reservations = new HashMap<>(); // by position key
+
+    public CapitalAllocator(TradingConfiguration tradingConfiguration, ExchangeService exchangeService, BalanceLedger balanceLedger) {
+        this.tradingConfiguration = tradingConfiguration;
+        this.exchangeService = exchangeService;
+        this.balanceLedger = balanceLedger;
+    }
+
+    /**
+     * Figure out the largest trade we can make in our home currency. If fixedExposure is configured, just use that
+     * value, unless other positions have left less than that free on one of the exchanges. Otherwise, go through each
+     * of the exchanges passed in and find the smallest free balance, divide it between the positions that could still
+     * be opened on that exchange, then multiply by TRADE_PORTION to find the amount to trade.
+     *
+     * @param exchanges A list of exchanges to inspect balances for.
+     * @return The maximum amount that can be traded across the given exchanges.
+     */
+    public BigDecimal getMaximumExposure(Exchange ... exchanges) {
+        final BigDecimal fixedExposure = tradingConfiguration.getFixedExposure();
+
+        if (fixedExposure != null && !isReserved(exchanges)) {
+            return fixedExposure;
+        }
+
+        // the ledger might have to ask the exchange, so get the balances we need before we take the lock
+        final Map<String, BigDecimal> balances = new HashMap<>();
+
+        Arrays.stream(exchanges)
+            .filter(exchange -> !hasCapital(exchange))
+            .forEach(exchange -> balances.put(getName(exchange), getLedgerBalance(exchange)));
+
+        synchronized (this) {
+            // If a position closed in the meantime we need a balance we didn't get. Rather than ask the ledger while we
+            // hold the lock, that exchange has nothing free this time and we'll get its balance on the next try.
+            Arrays.stream(exchanges)
+                .filter(exchange -> !hasCapital(exchange))
+                .map(CapitalAllocator::getName)
+                .forEach(name -> {
+                    if (balances.containsKey(name)) {
+                        capital.put(name, balances.get(name));
+                    } else {
+                        capital.remove(name);
+                    }
+                });
+
+            if (fixedExposure != null) {
+                return Arrays.stream(exchanges)
+                    .map(this::getFreeBalance)
+                    .reduce(fixedExposure, BigDecimal::min);
+            }
+
+            BigDecimal smallestShare = Arrays.stream(exchanges)
+                .map(exchange -> getFreeBalance(exchange)
+                    .divide(BigDecimal.valueOf(getOpenSlots(exchange)), DecimalConstants.USD_SCALE, RoundingMode.HALF_EVEN))
+                .min(BigDecimal::compareTo)
+                .orElse(BigDecimal.ZERO);
+
+            BigDecimal exposure = smallestShare
+                .multiply(TRADE_PORTION)
+                .setScale(DecimalConstants.USD_SCALE, RoundingMode.HALF_EVEN);
+
+            LOGGER.debug("Maximum exposure for {}: {}", exchanges, exposure);
+
+            return exposure;
+        }
+    }
+
+    /**
+     * Reserve the cost of both legs of a new position. This checks and reserves in one step, so two positions can't
+     * both be promised the last of the money on an exchange.
+     *
+     * @param position The ActivePosition, with the volume and entry price of both trades filled in.
+     * @return true if the money was reserved, false if there isn't enough free.
+     */
+    public synchronized boolean reserve(ActivePosition position) {
+        final Reservation reservation = new Reservation(position);
+
+        if (!isAvailable(reservation.getLongExchange(), reservation.getLongAmount())
+            || !isAvailable(reservation.getShortExchange(), reservation.getShortAmount())) {
+            return false;
+        }
+
+        reservations.put(PositionBook.key(position), reservation);
+
+        LOGGER.debug("Reserved {} on {} and {} on {}",
+            reservation.getLongAmount(),
+            reservation.getLongExchange(),
+            reservation.getShortAmount(),
+            reservation.getShortExchange());
+
+        return true;
+    }
+
+    /**
+     * Release the money reserved by a position once it has closed.
+     *
+     * @param position The ActivePosition.
+     */
+    public synchronized void release(ActivePosition position) {
+        final Reservation reservation = reservations.remove(PositionBook.key(position));
+
+        if (reservation == null) {
+            return;
+        }
+
+        LOGGER.debug("Released {} on {} and {} on {}",
+            reservation.getLongAmount(),
+            reservation.getLongExchange(),
+            reservation.getShortAmount(),
+            reservation.getShortExchange());
+
+        // once nothing is reserved the balance will have changed, so look it up again next time
+        if (getReserved(reservation.getLongExchange()).signum() == 0) {
+            capital.remove(reservation.getLongExchange());
+        }
+
+        if (getReserved(reservation.getShortExchange()).signum() == 0) {
+            capital.remove(reservation.getShortExchange());
+        }
+    }
+
+    /**
+     * Replace all the reservations, such as when positions are loaded from the state file. These are reserved
+     * whether or not there appears to be enough money, because the positions are already open.
+     *
+     * @param positions The open positions.
+     */
+    public synchronized void setReservations(Collection<ActivePosition> positions) {
+        reservations.clear();
+        positions.forEach(position -> reservations.put(PositionBook.key(position), new Reservation(position)));
+    }
+
+    // is there any money reserved on any of these exchanges?
+    private synchronized boolean isReserved(Exchange ... exchanges) {
+        return Arrays.stream(exchanges)
+            .anyMatch(exchange -> getReserved(getName(exchange)).signum() > 0);
+    }
+
+    // do we already know the capital for an exchange and have a reason to keep using it?
+    private synchronized boolean hasCapital(Exchange exchange) {
+        final String name = getName(exchange);
+
+        return capital.containsKey(name) && getReserved(name).signum() > 0;
+    }
+
+    // the balance of an exchange's home currency according to the ledger
+    private BigDecimal getLedgerBalance(Exchange exchange) {
+        return balanceLedger.getBalance(exchange, exchangeService.getExchangeHomeCurrency(exchange));
+    }
+
+    // the capital on an exchange that isn't reserved by a position yet
+    private BigDecimal getFreeBalance(Exchange exchange) {
+        final String name = getName(exchange);
+        final BigDecimal free = capital.getOrDefault(name, BigDecimal.ZERO)
+            .subtract(getReserved(name))
+            .setScale(DecimalConstants.USD_SCALE, RoundingMode.HALF_EVEN);
+
+        return free.signum() < 0 ? BigDecimal.ZERO.setScale(DecimalConstants.USD_SCALE) : free;
+    }
+
+    // how many more positions could use an exchange, so we can save some money for the ones after this
+    private int getOpenSlots(Exchange exchange) {
+        final Integer maxPositions = tradingConfiguration.getMaxPositions();
+        final Integer maxPerExchange = tradingConfiguration.getMaxPositionsPerExchange();
+        final String name = getName(exchange);
+        int slots = (maxPositions == null ? 1 : maxPositions) - reservations.size();
+
+        if (maxPerExchange != null) {
+            long used = reservations.values()
+                .stream()
+                .filter(reservation -> reservation.uses(name))
+                .count();
+
+            slots = (int) Math.min(slots, maxPerExchange - used);
+        }
+
+        return Math.max(slots, 1);
+    }
+
+    // check whether an exchange has enough free to reserve an amount, if we know its balance
+    private boolean isAvailable(String name, BigDecimal amount) {
+        if (!capital.containsKey(name)) {
+            return true; // with fixedExposure and nothing reserved we never looked, same as before we kept track
+        }
+
+        final BigDecimal free = capital.get(name).subtract(getReserved(name));
+
+        if (amount.compareTo(free) > 0) {
+            LOGGER.warn("Cannot reserve {} on {}, only {} is free", amount, name, free);
+            return false;
+        }
+
+        return true;
+    }
+
+    // the total amount reserved on an exchange
+    private BigDecimal getReserved(String name) {
+        return reservations.values()
+            .stream()
+            .map(reservation -> reservation.getAmount(name))
+            .reduce(BigDecimal.ZERO, BigDecimal::add);
+    }
+
+    private static String getName(Exchange exchange) {
+        return exchange.getExchangeSpecification().getExchangeName();
+    }
+
+    // the money one position has reserved on each of its exchanges
+    private static class Reservation {
+        private final String longExchange;
+        private final String shortExchange;
+        private final BigDecimal longAmount;
+        private final BigDecimal shortAmount;
+
+        Reservation(ActivePosition position) {
+            this.longExchange = position.getLongTrade().getExchange();
+            this.shortExchange = position.getShortTrade().getExchange();
+            this.longAmount = getCost(position.getLongTrade());
+            this.shortAmount = getCost(position.getShortTrade());
+        }
+
+        String getLongExchange() {
+            return longExchange;
+        }
+
+        String getShortExchange() {
+            return shortExchange;
+        }
+
+        BigDecimal getLongAmount() {
+            return longAmount;
+        }
+
+        BigDecimal getShortAmount() {
+            return shortAmount;
+        }
+
+        boolean uses(String name) {
+            return longExchange.equals(name) || shortExchange.equals(name);
+        }
+
+        BigDecimal getAmount(String name) {
+            BigDecimal amount = BigDecimal.ZERO;
+
+            if (longExchange.equals(name)) {
+                amount = amount.add(longAmount);
+            }
+
+            if (shortExchange.equals(name)) {
+                amount = amount.add(shortAmount);
+            }
+
+            return amount;
+        }
+
+        private static BigDecimal getCost(ActivePosition.Trade trade) {
+            if (trade.getVolume() == null || trade.getEntry() == null) {
+                return BigDecimal.ZERO;
+            }
+
+            return trade.getVolume()
+                .multiply(trade.getEntry())
+                .setScale(DecimalConstants.USD_SCALE, RoundingMode.HALF_EVEN);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.r307.arbitrader.service;
 
+import com.r307.arbitrader.service.metrics.MetricsService;
 import org.knowm.xchange.Exchange;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -21,8 +22,13 @@ public class ErrorCollectorService {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ErrorCollectorService.class);
 
+    private final MetricsService metricsService;
     private final Map<String, Integer> errors = new HashMap<>();
 
+    public ErrorCollectorService(MetricsService metricsService) {
+        this.metricsService = metricsService;
+    }
+
     /**
      * Collect an error and store it.
      *
@@ -33,6 +39,9 @@ public class ErrorCollectorService {
         // store the error in the map and increment the count if there's already a similar error
         errors.compute(computeKey(exchange, t), (key, value) -> (value == null ? 0 : value) + 1);
 
+        // unlike the summary, the metrics are never cleared
+        metricsService.countError(exchange, t);
+
         // when DEBUG is enabled, show the exception to help with debugging problems
         LOGGER.debug("Surfacing noncritical stack trace for debugging: ", t);
     }
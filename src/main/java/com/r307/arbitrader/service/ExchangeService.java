@@ -20,8 +20,10 @@ import org.springframework.stereotype.Component;
 
 import javax.inject.Inject;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.time.Duration;
 import java.util.Map;
 import java.util.Optional;
 
@@ -147,6 +149,9 @@ public class ExchangeService {
             }
         }
 
+        // fetch the fees now so we never have to wait for them while we're trading
+        warmFeeCache(exchange);
+
         BigDecimal tradingFee = getExchangeFee(exchange, convertExchangePair(exchange, CurrencyPair.BTC_USD), false);
 
         LOGGER.info("{} ticker strategy: {}",
@@ -225,14 +230,39 @@ public class ExchangeService {
         Optional<BigDecimal> cachedFee = feeCache.getCachedFee(exchange, currencyPair);
 
         // we cache fees because they don't change frequently, but we use them frequently and making API calls is expensive
+        // the cache refreshes them in the background, so only the very first lookup has to wait for the exchange
         if (cachedFee.isPresent()) {
             return cachedFee.get();
         }
 
+        BigDecimal fee = fetchExchangeFee(exchange, currencyPair, isQuiet, false);
+
+        // a refresh that can't reach the exchange throws, so the cache keeps the fee we already have
+        feeCache.setCachedFee(exchange, currencyPair, fee,
+            Duration.ofMinutes(getExchangeMetadata(exchange).getFeeRefreshInterval()),
+            () -> fetchExchangeFee(exchange, currencyPair, true, true));
+
+        return fee;
+    }
+
+    /**
+     * Look up the fee for every currency pair we trade on an exchange, so the fees are already in the cache by the
+     * time we want to trade.
+     *
+     * @param exchange The Exchange to query.
+     */
+    public void warmFeeCache(Exchange exchange) {
+        getExchangeMetadata(exchange).getTradingPairs()
+            .forEach(currencyPair -> getExchangeFee(exchange, currencyPair, false));
+    }
+
+    // Ask the exchange for its current fee, falling back to the configured fee if we can't get it. When we're refreshing
+    // a fee we already have, a failure to reach the exchange is thrown instead, so a good dynamic fee isn't replaced
+    // by a fallback just because the API had a bad moment.
+    private BigDecimal fetchExchangeFee(Exchange exchange, CurrencyPair currencyPair, boolean isQuiet, boolean isRefresh) {
         // if feeOverride is configured, just use that
         if (getExchangeMetadata(exchange).getFeeOverride() != null) {
             BigDecimal fee = getExchangeMetadata(exchange).getFeeOverride();
-            feeCache.setCachedFee(exchange, currencyPair, fee);
 
             LOGGER.trace("Using explicitly configured fee override of {} for {}",
                 fee,
@@ -248,10 +278,6 @@ public class ExchangeService {
             if (fees.containsKey(currencyPair)) {
                 BigDecimal fee = fees.get(currencyPair).getMakerFee();
 
-                // We're going to cache this value. Fees don't change all that often and we don't want to use up
-                // our allowance of API calls just checking the fees.
-                feeCache.setCachedFee(exchange, currencyPair, fee);
-
                 LOGGER.trace("Using dynamic maker fee for {}",
                     exchange.getExchangeSpecification().getExchangeName());
 
@@ -261,9 +287,17 @@ public class ExchangeService {
             LOGGER.trace("Dynamic fees not yet implemented for {}, will try other methods",
                 exchange.getExchangeSpecification().getExchangeName());
         } catch (IOException e) {
+            if (isRefresh) {
+                throw new UncheckedIOException(e);
+            }
+
             LOGGER.trace("IOE fetching dynamic trading fees for {}",
                 exchange.getExchangeSpecification().getExchangeName());
         } catch (Exception e) {
+            if (isRefresh) {
+                throw new IllegalStateException(e);
+            }
+
             LOGGER.warn("Programming error in XChange! {} when calling getDynamicTradingFees() for exchange: {}",
                 e.getClass().getName(),
                 exchange.getExchangeSpecification().getExchangeName());
@@ -295,7 +329,6 @@ public class ExchangeService {
         }
 
         // Last fall back - use CurrencyPairMetaData trading fee
-        feeCache.setCachedFee(exchange, currencyPair, currencyPairMetaData.getTradingFee());
         return currencyPairMetaData.getTradingFee();
     }
 }
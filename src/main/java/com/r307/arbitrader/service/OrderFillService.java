@@ -0,0 +1,227 @@
+package com.r307.arbitrader.service;
+
+import com.r307.arbitrader.config.TradingConfiguration;
+import info.bitrich.xchangestream.core.StreamingExchange;
+import info.bitrich.xchangestream.core.StreamingTradeService;
+import io.reactivex.disposables.Disposable;
+import org.knowm.xchange.Exchange;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.Order;
+import org.knowm.xchange.dto.trade.LimitOrder;
+import org.knowm.xchange.dto.trade.OpenOrders;
+import org.knowm.xchange.exceptions.ExchangeException;
+import org.knowm.xchange.exceptions.NotAvailableFromExchangeException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Find out when orders we placed are finished, so we know when a trade is complete.
+ *
+ * If the exchange streams order changes we listen for our order to reach a final state, which tells us within
+ * milliseconds. We also poll the open orders, starting quickly and backing off the longer the order stays open, both
+ * for exchanges that don't stream order changes and in case the stream misses something. Either way we hand back the
+ * order as the exchange last reported it, so the caller can see how much of it actually filled.
+ */
+@Component
+public class OrderFillService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(OrderFillService.class);
+
+    static final long MINIMUM_POLL_INTERVAL = 250; // milliseconds
+    static final long MAXIMUM_POLL_INTERVAL = 3000; // milliseconds
+    private static final int WARNING_INTERVAL = 10; // polls
+
+    private final ScheduledExecutorService scheduler;
+
+    @Autowired
+    public OrderFillService(TradingConfiguration tradingConfiguration) {
+        this(getMaxPositions(tradingConfiguration));
+    }
+
+    public OrderFillService() {
+        this(1);
+    }
+
+    // one thread for each leg of every position
+    private OrderFillService(int maxPositions) {
+        this(Executors.newScheduledThreadPool(2 * maxPositions, runnable -> {
+            Thread thread = new Thread(runnable, "order-fill");
+
+            thread.setDaemon(true);
+
+            return thread;
+        }));
+    }
+
+    // visible for testing so we can control the scheduler
+    OrderFillService(ScheduledExecutorService scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Wait for an order to be finished, which usually means filled but could also mean cancelled by somebody else.
+     *
+     * @param exchange The exchange the order was placed on.
+     * @param currencyPair The currency pair, as it is named on the exchange.
+     * @param orderId The order ID returned by the exchange. If it's null we wait for all open orders to be finished.
+     * @return A CompletableFuture that completes with the finished order once it is no longer open, or with null if the
+     * exchange won't tell us what happened to it.
+     */
+    public CompletableFuture<Order> awaitFill(Exchange exchange, CurrencyPair currencyPair, String orderId) {
+        final CompletableFuture<Order> future = new CompletableFuture<>();
+        final Disposable subscription = subscribeOrderChanges(exchange, currencyPair, orderId, future);
+
+        if (subscription != null) {
+            future.whenComplete((result, throwable) -> subscription.dispose());
+        }
+
+        // when the stream is working it will almost always beat the polling, so there's no need to poll as quickly
+        final long interval = subscription == null ? MINIMUM_POLL_INTERVAL : MAXIMUM_POLL_INTERVAL;
+
+        scheduler.schedule(() -> poll(exchange, orderId, future, interval, 0), interval, TimeUnit.MILLISECONDS);
+
+        return future;
+    }
+
+    // listen for the order to reach a final state, if the exchange will tell us
+    private Disposable subscribeOrderChanges(Exchange exchange, CurrencyPair currencyPair, String orderId, CompletableFuture<Order> future) {
+        if (!(exchange instanceof StreamingExchange) || orderId == null) {
+            return null;
+        }
+
+        final StreamingTradeService streamingTradeService = ((StreamingExchange) exchange).getStreamingTradeService();
+
+        if (streamingTradeService == null) {
+            return null;
+        }
+
+        try {
+            return streamingTradeService.getOrderChanges(currencyPair)
+                .filter(order -> orderId.equals(order.getId()) && order.getStatus() != null && order.getStatus().isFinal())
+                .subscribe(
+                    order -> {
+                        LOGGER.debug("{} order {} is {}", exchange.getExchangeSpecification().getExchangeName(), orderId, order.getStatus());
+                        future.complete(order);
+                    },
+                    throwable -> LOGGER.debug("{} order change stream failed, still polling: {}",
+                        exchange.getExchangeSpecification().getExchangeName(),
+                        throwable.getMessage()));
+        } catch (RuntimeException e) {
+            LOGGER.debug("{} does not stream order changes, polling instead: {}",
+                exchange.getExchangeSpecification().getExchangeName(),
+                e.getMessage());
+        }
+
+        return null;
+    }
+
+    // check the open orders, and if ours is still there check again a little later than last time
+    private void poll(Exchange exchange, String orderId, CompletableFuture<Order> future, long interval, int count) {
+        if (future.isDone()) {
+            return;
+        }
+
+        // An Exception escaping from here would end the polling without a word, and whoever is waiting for the order
+        // would wait forever. So whatever goes wrong, we log it and try again next time.
+        try {
+            final Optional<OpenOrders> openOrders = fetchOpenOrders(exchange);
+
+            if (openOrders.isPresent() && isFinished(openOrders.get(), orderId)) {
+                future.complete(fetchOrder(exchange, orderId));
+                return;
+            }
+
+            // only print the warning every few polls
+            // but do print warnings because otherwise I worry that the computer has died
+            if (openOrders.isPresent() && count % WARNING_INTERVAL == 0) {
+                LOGGER.warn(collectOpenOrders(exchange, openOrders.get()));
+            }
+        } catch (RuntimeException e) {
+            LOGGER.error("{} threw an Exception while checking order {}: ",
+                exchange.getExchangeSpecification().getExchangeName(), orderId, e);
+        }
+
+        final long nextInterval = Math.min(interval * 2, MAXIMUM_POLL_INTERVAL);
+
+        try {
+            scheduler.schedule(() -> poll(exchange, orderId, future, nextInterval, count + 1), nextInterval, TimeUnit.MILLISECONDS);
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e); // the scheduler is shutting down
+        }
+    }
+
+    // our order is finished once it's gone from the open orders
+    private static boolean isFinished(OpenOrders openOrders, String orderId) {
+        if (orderId == null) {
+            return openOrders.getOpenOrders().isEmpty();
+        }
+
+        return openOrders.getOpenOrders()
+            .stream()
+            .noneMatch(order -> orderId.equals(order.getId()));
+    }
+
+    // the most positions we can have open, since each of them can be waiting for two orders at once
+    private static int getMaxPositions(TradingConfiguration tradingConfiguration) {
+        final Integer maxPositions = tradingConfiguration.getMaxPositions();
+
+        return maxPositions == null ? 1 : Math.max(1, maxPositions);
+    }
+
+    // summarize all the open orders on an exchange, used while we're waiting for orders to fill
+    private static String collectOpenOrders(Exchange exchange, OpenOrders openOrders) {
+        String header = String.format("%s has the following open orders:\n", exchange.getExchangeSpecification().getExchangeName());
+
+        return header + openOrders.getOpenOrders()
+            .stream()
+            .map(LimitOrder::toString)
+            .collect(Collectors.joining("\n"));
+    }
+
+    // fetch the final state of an order, which is the only way to know how much filled once it's left the open orders
+    private static Order fetchOrder(Exchange exchange, String orderId) {
+        if (orderId == null) {
+            return null;
+        }
+
+        try {
+            return Optional.ofNullable(exchange.getTradeService().getOrder(orderId))
+                .flatMap(orders -> orders.stream().findFirst())
+                .orElse(null);
+        } catch (NotAvailableFromExchangeException e) {
+            LOGGER.debug("{} can't look up order {}", exchange.getExchangeSpecification().getExchangeName(), orderId);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("{} threw an Exception while fetching order {}: ",
+                exchange.getExchangeSpecification().getExchangeName(), orderId, e);
+        }
+
+        return null;
+    }
+
+    // fetch open orders from the exchange
+    private static Optional<OpenOrders> fetchOpenOrders(Exchange exchange) {
+        try {
+            return Optional.of(exchange.getTradeService().getOpenOrders());
+        } catch (IOException | ExchangeException e) {
+            LOGGER.error("{} threw an Exception while fetching open orders: ",
+                exchange.getExchangeSpecification().getExchangeName(), e);
+        }
+
+        return Optional.empty();
+    }
+}
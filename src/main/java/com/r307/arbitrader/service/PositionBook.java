@@ -0,0 +1,322 @@
+package com.r307.arbitrader.service;
+
+import com.r307.arbitrader.config.TradingConfiguration;
+import com.r307.arbitrader.service.model.ActivePosition;
+import com.r307.arbitrader.service.model.TradeCombination;
+import org.knowm.xchange.currency.CurrencyPair;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * All the positions we currently have open, keyed by long exchange, short exchange and currency pair, along with
+ * the limits on how many we can have open at once.
+ *
+ * Positions on different exchanges have nothing to do with each other and can be entered and exited at the same
+ * time, but two positions sharing an exchange would be fighting over the same balance. So instead of one lock for
+ * the whole bot there is one lock for each exchange, and a trade has to hold the locks for both of its exchanges.
+ *
+ * The position limits are checked across all exchanges, so the exchange locks aren't enough to enforce them. A trade
+ * reserves its slot with reserve() before it does anything else, and the slot becomes the position when it's put()
+ * in the book.
+ */
+public class PositionBook {
+    private static final ActivePosition[] EMPTY = new ActivePosition[0];
+
+    private final TradingConfiguration tradingConfiguration;
+    private final Map<String, ActivePosition> positions = new LinkedHashMap<>();
+    private final Map<String, String[]> reservations = new HashMap<>();
+    private final Map<String, ReentrantLock> exchangeLocks = new ConcurrentHashMap<>();
+    private final Set<String> awaitingFills = ConcurrentHashMap.newKeySet();
+    private volatile ActivePosition[] snapshot = EMPTY;
+    private volatile int reservationCount = 0;
+
+    public PositionBook(TradingConfiguration tradingConfiguration) {
+        this.tradingConfiguration = tradingConfiguration;
+    }
+
+    /**
+     * Find the open position for a TradeCombination.
+     *
+     * @param tradeCombination The TradeCombination.
+     * @return The ActivePosition, or null if there isn't one.
+     */
+    public ActivePosition get(TradeCombination tradeCombination) {
+        return get(
+            tradeCombination.getLongExchange().getExchangeSpecification().getExchangeName(),
+            tradeCombination.getShortExchange().getExchangeSpecification().getExchangeName(),
+            tradeCombination.getCurrencyPair());
+    }
+
+    /**
+     * Find the open position for a pair of exchanges and a currency pair.
+     *
+     * @param longExchangeName The name of the long exchange.
+     * @param shortExchangeName The name of the short exchange.
+     * @param currencyPair The currency pair.
+     * @return The ActivePosition, or null if there isn't one.
+     */
+    public ActivePosition get(String longExchangeName, String shortExchangeName, CurrencyPair currencyPair) {
+        // this is called for every ticker, so search the array instead of building a key
+        for (ActivePosition position : snapshot) {
+            if (currencyPair.equals(position.getCurrencyPair())
+                && longExchangeName.equals(position.getLongTrade().getExchange())
+                && shortExchangeName.equals(position.getShortTrade().getExchange())) {
+                return position;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Get all the open positions.
+     *
+     * @return An unmodifiable list of every ActivePosition.
+     */
+    public List<ActivePosition> getAll() {
+        return Collections.unmodifiableList(Arrays.asList(snapshot));
+    }
+
+    /**
+     * Replace all the open positions, such as when they are recovered from the trade journal.
+     *
+     * @param activePositions The positions.
+     */
+    public synchronized void setAll(Collection<ActivePosition> activePositions) {
+        positions.clear();
+        activePositions.forEach(position -> positions.put(key(position), position));
+        snapshot = positions.values().toArray(EMPTY);
+    }
+
+    /**
+     * Add an open position, replacing any other position with the same exchanges and currency pair.
+     *
+     * @param position The ActivePosition.
+     */
+    public synchronized void put(ActivePosition position) {
+        final String key = key(position);
+
+        positions.put(key, position);
+        snapshot = positions.values().toArray(EMPTY);
+
+        // the position takes over the slot it reserved
+        reservations.remove(key);
+        reservationCount = reservations.size();
+    }
+
+    /**
+     * Remove a position once it has been closed.
+     *
+     * @param position The ActivePosition.
+     */
+    public synchronized void remove(ActivePosition position) {
+        positions.remove(key(position), position);
+        snapshot = positions.values().toArray(EMPTY);
+    }
+
+    public int size() {
+        return snapshot.length;
+    }
+
+    public boolean isEmpty() {
+        return snapshot.length == 0;
+    }
+
+    /**
+     * Are we at the maximum number of open positions? Slots reserved by trades that are still entering count as open.
+     *
+     * @return true if no more positions can be opened.
+     */
+    public boolean isFull() {
+        return snapshot.length + reservationCount >= getMaxPositions();
+    }
+
+    /**
+     * Reserve a slot for a new position if the limits allow one on a pair of exchanges. The check and the reservation
+     * happen together, so two trades on different exchanges can't both take the last slot. The slot is held until
+     * the position is put() in the book or the reservation is released.
+     *
+     * @param longExchangeName The name of the long exchange.
+     * @param shortExchangeName The name of the short exchange.
+     * @param currencyPair The currency pair.
+     * @return true if the slot was reserved and must be released with release() if the position isn't opened.
+     */
+    public synchronized boolean reserve(String longExchangeName, String shortExchangeName, CurrencyPair currencyPair) {
+        final String key = key(longExchangeName, shortExchangeName, currencyPair);
+        final Integer maxPerExchange = tradingConfiguration.getMaxPositionsPerExchange();
+
+        if (positions.containsKey(key) || reservations.containsKey(key)) {
+            return false;
+        }
+
+        if (positions.size() + reservations.size() >= getMaxPositions()) {
+            return false;
+        }
+
+        if (maxPerExchange != null
+            && (count(longExchangeName) >= maxPerExchange || count(shortExchangeName) >= maxPerExchange)) {
+            return false;
+        }
+
+        reservations.put(key, new String[] { longExchangeName, shortExchangeName });
+        reservationCount = reservations.size();
+
+        return true;
+    }
+
+    /**
+     * Give back a slot taken by reserve(). This does nothing if the position has already been put() in the book.
+     *
+     * @param longExchangeName The name of the long exchange.
+     * @param shortExchangeName The name of the short exchange.
+     * @param currencyPair The currency pair.
+     */
+    public synchronized void release(String longExchangeName, String shortExchangeName, CurrencyPair currencyPair) {
+        reservations.remove(key(longExchangeName, shortExchangeName, currencyPair));
+        reservationCount = reservations.size();
+    }
+
+    /**
+     * Check whether a position is waiting for its orders to fill. Nobody else should touch it until they have.
+     *
+     * @param longExchangeName The name of the long exchange.
+     * @param shortExchangeName The name of the short exchange.
+     * @param currencyPair The currency pair.
+     * @return true if the position's orders are still filling.
+     */
+    public boolean isAwaitingFills(String longExchangeName, String shortExchangeName, CurrencyPair currencyPair) {
+        return !awaitingFills.isEmpty() && awaitingFills.contains(key(longExchangeName, shortExchangeName, currencyPair));
+    }
+
+    /**
+     * Let go of the exchange locks while a position's orders fill, so other positions on the same exchanges don't have
+     * to wait for them. The position itself is marked so that other trades leave it alone. The caller must hold the
+     * locks from tryLock(), and must call endFillWait() afterwards.
+     *
+     * @param position The ActivePosition whose orders are filling.
+     */
+    public void beginFillWait(ActivePosition position) {
+        awaitingFills.add(key(position));
+        unlock(position.getLongTrade().getExchange(), position.getShortTrade().getExchange());
+    }
+
+    /**
+     * Take the exchange locks back once a position's orders have filled. This waits for any trade that holds them.
+     *
+     * @param position The ActivePosition whose orders were filling.
+     */
+    public void endFillWait(ActivePosition position) {
+        getLocks(position.getLongTrade().getExchange(), position.getShortTrade().getExchange()).forEach(ReentrantLock::lock);
+        awaitingFills.remove(key(position));
+    }
+
+    /**
+     * Try to lock both exchanges for a trade. This doesn't wait: if another trade holds either lock we give up
+     * right away, because a fresh price will come along shortly and we can try again then.
+     *
+     * @param longExchangeName The name of the long exchange.
+     * @param shortExchangeName The name of the short exchange.
+     * @return true if we now hold both locks and must call unlock() later.
+     */
+    public boolean tryLock(String longExchangeName, String shortExchangeName) {
+        // always lock in the same order so two trades can't each hold one lock and wait for the other
+        final List<ReentrantLock> locks = getLocks(longExchangeName, shortExchangeName);
+        final List<ReentrantLock> acquired = new ArrayList<>(locks.size());
+
+        for (ReentrantLock lock : locks) {
+            if (!lock.tryLock()) {
+                acquired.forEach(ReentrantLock::unlock);
+                return false;
+            }
+
+            acquired.add(lock);
+        }
+
+        return true;
+    }
+
+    /**
+     * Release the locks taken by tryLock().
+     *
+     * @param longExchangeName The name of the long exchange.
+     * @param shortExchangeName The name of the short exchange.
+     */
+    public void unlock(String longExchangeName, String shortExchangeName) {
+        getLocks(longExchangeName, shortExchangeName).forEach(ReentrantLock::unlock);
+    }
+
+    /**
+     * Build the key for a position.
+     *
+     * @param longExchangeName The name of the long exchange.
+     * @param shortExchangeName The name of the short exchange.
+     * @param currencyPair The currency pair.
+     * @return A key like "Kraken/Quoine BTC/USD".
+     */
+    public static String key(String longExchangeName, String shortExchangeName, CurrencyPair currencyPair) {
+        return String.format("%s/%s %s", longExchangeName, shortExchangeName, currencyPair);
+    }
+
+    /**
+     * Build the key for a position.
+     *
+     * @param position The ActivePosition.
+     * @return A key like "Kraken/Quoine BTC/USD".
+     */
+    public static String key(ActivePosition position) {
+        return key(position.getLongTrade().getExchange(), position.getShortTrade().getExchange(), position.getCurrencyPair());
+    }
+
+    /**
+     * Get the most positions we can have open at once.
+     *
+     * @return The configured maximum, or 1 if it isn't configured.
+     */
+    public int getMaxPositions() {
+        final Integer maxPositions = tradingConfiguration.getMaxPositions();
+
+        return maxPositions == null ? 1 : maxPositions;
+    }
+
+    private List<ReentrantLock> getLocks(String longExchangeName, String shortExchangeName) {
+        final ReentrantLock longLock = exchangeLocks.computeIfAbsent(longExchangeName, name -> new ReentrantLock());
+        final ReentrantLock shortLock = exchangeLocks.computeIfAbsent(shortExchangeName, name -> new ReentrantLock());
+
+        if (longLock == shortLock) {
+            return Collections.singletonList(longLock);
+        }
+
+        return longExchangeName.compareTo(shortExchangeName) < 0
+            ? Arrays.asList(longLock, shortLock)
+            : Arrays.asList(shortLock, longLock);
+    }
+
+    // count the open positions and reserved slots that use an exchange, while holding the lock on this PositionBook
+    private int count(String exchangeName) {
+        int count = 0;
+
+        for (ActivePosition position : positions.values()) {
+            if (exchangeName.equals(position.getLongTrade().getExchange()) || exchangeName.equals(position.getShortTrade().getExchange())) {
+                count++;
+            }
+        }
+
+        for (String[] exchangeNames : reservations.values()) {
+            if (exchangeName.equals(exchangeNames[0]) || exchangeName.equals(exchangeNames[1])) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+}
@@ -1,21 +1,30 @@
 package com.r307.arbitrader.service;
 
+import com.r307.arbitrader.FixedPoint;
 import com.r307.arbitrader.config.TradingConfiguration;
+import com.r307.arbitrader.service.model.FixedSpread;
 import com.r307.arbitrader.service.model.Spread;
 import com.r307.arbitrader.service.model.TradeCombination;
+import com.r307.arbitrader.service.ticker.SpreadStatistics;
+import com.r307.arbitrader.service.ticker.TickerStore;
+import com.r307.arbitrader.service.ticker.TradeCombinationIndex;
+import com.r307.arbitrader.service.ticker.WaterMarks;
 import org.knowm.xchange.Exchange;
 import org.knowm.xchange.currency.CurrencyPair;
 import org.knowm.xchange.dto.marketdata.Ticker;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntToLongFunction;
+import java.util.function.LongSupplier;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static com.r307.arbitrader.DecimalConstants.BTC_SCALE;
 
@@ -26,49 +35,84 @@ import static com.r307.arbitrader.DecimalConstants.BTC_SCALE;
 public class SpreadService {
     private static final Logger LOGGER = LoggerFactory.getLogger(SpreadService.class);
 
-    private final Map<String, BigDecimal> minSpreadIn = new HashMap<>();
-    private final Map<String, BigDecimal> maxSpreadIn = new HashMap<>();
-    private final Map<String, BigDecimal> minSpreadOut = new HashMap<>();
-    private final Map<String, BigDecimal> maxSpreadOut = new HashMap<>();
     private final TradingConfiguration tradingConfiguration;
     private final TickerService tickerService;
+    private final LongSupplier clock;
+    private final LongAdder spreadCount = new LongAdder();
+    private volatile WaterMarks waterMarks = new WaterMarks(TradeCombinationIndex.EMPTY);
+    private volatile SpreadStatistics spreadStatistics;
 
+    @Autowired
     public SpreadService(TradingConfiguration tradingConfiguration, TickerService tickerService) {
+        this(tradingConfiguration, tickerService, System::currentTimeMillis);
+    }
+
+    /**
+     * Create a SpreadService that reads the time for its SpreadStatistics from a clock other than the system's, such
+     * as a replay's.
+     *
+     * @param tradingConfiguration The TradingConfiguration.
+     * @param tickerService The TickerService.
+     * @param clock Supplies the current time in milliseconds.
+     */
+    public SpreadService(TradingConfiguration tradingConfiguration, TickerService tickerService, LongSupplier clock) {
         this.tradingConfiguration = tradingConfiguration;
         this.tickerService = tickerService;
+        this.clock = clock;
+        this.spreadStatistics = new SpreadStatistics(TradeCombinationIndex.EMPTY, clock);
     }
 
     /**
      * Update the high and low water marks given a new Spread. Keeping track of the highest and lowest values over time
      * can be useful for figuring out how to configure your entrySpread and exitTarget.
      *
+     * Only use this for a Spread that computeSpread(TradeCombination, FixedSpread) couldn't compute, or it will be
+     * counted twice.
+     *
      * @param spread A new Spread.
      */
-    void publish(Spread spread) {
-        String spreadKey = spreadKey(spread.getLongExchange(), spread.getShortExchange(), spread.getCurrencyPair());
+    public void publish(Spread spread) {
+        publish(
+            new TradeCombination(spread.getLongExchange(), spread.getShortExchange(), spread.getCurrencyPair()),
+            FixedPoint.toFixed(spread.getIn()),
+            FixedPoint.toFixed(spread.getOut()));
+    }
+
+    // update the high and low water marks for a TradeCombination
+    private void publish(TradeCombination tradeCombination, long in, long out) {
+        final WaterMarks marks = getWaterMarks();
+        final SpreadStatistics statistics = spreadStatistics;
+        final int combinationId = marks.getTradeCombinationIndex().getCombinationId(tradeCombination);
+
+        if (combinationId == TickerStore.UNKNOWN_ID || in == FixedPoint.NO_VALUE || out == FixedPoint.NO_VALUE) {
+            return; // not one of the combinations we're watching
+        }
+
+        spreadCount.increment();
+
+        final int records = marks.update(combinationId, in, out);
+
+        if (statistics.getTradeCombinationIndex() == marks.getTradeCombinationIndex()) {
+            statistics.update(combinationId, in, out);
+        }
 
-        if (LOGGER.isInfoEnabled() && tradingConfiguration.isSpreadNotifications()) {
-            if (spread.getIn().compareTo(maxSpreadIn.getOrDefault(spreadKey, BigDecimal.valueOf(-1))) > 0) {
+        if (records != 0 && LOGGER.isInfoEnabled() && tradingConfiguration.isSpreadNotifications()) {
+            if ((records & WaterMarks.RECORD_HIGH_IN) != 0) {
                 LOGGER.info("Record high spreadIn: {}/{} {} {}",
-                    spread.getLongExchange().getExchangeSpecification().getExchangeName(),
-                    spread.getShortExchange().getExchangeSpecification().getExchangeName(),
-                    spread.getCurrencyPair(),
-                    spread.getIn());
+                    tradeCombination.getLongExchange().getExchangeSpecification().getExchangeName(),
+                    tradeCombination.getShortExchange().getExchangeSpecification().getExchangeName(),
+                    tradeCombination.getCurrencyPair(),
+                    FixedPoint.toBigDecimal(in));
             }
 
-            if (spread.getOut().compareTo(minSpreadOut.getOrDefault(spreadKey, BigDecimal.valueOf(1))) < 0) {
+            if ((records & WaterMarks.RECORD_LOW_OUT) != 0) {
                 LOGGER.info("Record low spreadOut: {}/{} {} {}",
-                    spread.getLongExchange().getExchangeSpecification().getExchangeName(),
-                    spread.getShortExchange().getExchangeSpecification().getExchangeName(),
-                    spread.getCurrencyPair(),
-                    spread.getIn());
+                    tradeCombination.getLongExchange().getExchangeSpecification().getExchangeName(),
+                    tradeCombination.getShortExchange().getExchangeSpecification().getExchangeName(),
+                    tradeCombination.getCurrencyPair(),
+                    FixedPoint.toBigDecimal(out));
             }
         }
-
-        minSpreadIn.put(spreadKey, spread.getIn().min(minSpreadIn.getOrDefault(spreadKey, BigDecimal.valueOf(1))));
-        maxSpreadIn.put(spreadKey, spread.getIn().max(maxSpreadIn.getOrDefault(spreadKey, BigDecimal.valueOf(-1))));
-        minSpreadOut.put(spreadKey, spread.getOut().min(minSpreadOut.getOrDefault(spreadKey, BigDecimal.valueOf(1))));
-        maxSpreadOut.put(spreadKey, spread.getOut().max(maxSpreadOut.getOrDefault(spreadKey, BigDecimal.valueOf(-1))));
     }
 
     /**
@@ -76,16 +120,46 @@ public class SpreadService {
      */
     @Scheduled(cron = "0 0 0 * * *") // midnight every day
     public void summary() {
-        LOGGER.info("Minimum spreadIns:\n{}", buildSummary(minSpreadIn));
-        LOGGER.info("Maximum spreadIns:\n{}", buildSummary(maxSpreadIn));
-        LOGGER.info("Minimum spreadOuts:\n{}", buildSummary(minSpreadOut));
-        LOGGER.info("Maximum spreadOuts:\n{}", buildSummary(maxSpreadOut));
+        final WaterMarks marks = getWaterMarks();
+        final WaterMarks.Snapshot snapshot = marks.snapshot();
+        final TradeCombinationIndex tradeCombinationIndex = marks.getTradeCombinationIndex();
+
+        LOGGER.info("Minimum spreadIns:\n{}", buildSummary(tradeCombinationIndex, snapshot, snapshot::getMinIn));
+        LOGGER.info("Maximum spreadIns:\n{}", buildSummary(tradeCombinationIndex, snapshot, snapshot::getMaxIn));
+        LOGGER.info("Minimum spreadOuts:\n{}", buildSummary(tradeCombinationIndex, snapshot, snapshot::getMinOut));
+        LOGGER.info("Maximum spreadOuts:\n{}", buildSummary(tradeCombinationIndex, snapshot, snapshot::getMaxOut));
+    }
+
+    /**
+     * Get the rolling statistics for the spreads of every TradeCombination. Look up combination IDs with
+     * getTradeCombinationIndex() on the result.
+     *
+     * @return The SpreadStatistics.
+     */
+    public SpreadStatistics getSpreadStatistics() {
+        getWaterMarks(); // make sure the statistics match the current TradeCombinationIndex
+
+        return spreadStatistics;
+    }
+
+    /**
+     * The number of spreads we have published for the combinations we're watching. Each combination is counted once
+     * for each new ticker it uses, however many times its spread is looked at afterwards.
+     *
+     * @return The number of spreads published.
+     */
+    public long getSpreadCount() {
+        return spreadCount.sum();
     }
 
     /**
      * Compute a Spread based on a TradeCombination. We get the exchanges and currency pair from the TradeCombination
      * and then look up the current prices to create a Spread.
      *
+     * This doesn't update the high and low water marks. Every new ticker is screened with
+     * computeSpread(TradeCombination, FixedSpread) first, which does, so building the full Spread afterwards or
+     * looking at it for a summary doesn't count the same spread twice.
+     *
      * @param tradeCombination The TradeCombination representing the exchanges and currency pair we're interested in.
      * @return A Spread representing the difference in price between the elements of the TradeCombination.
      */
@@ -116,10 +190,62 @@ public class SpreadService {
             spreadIn,
             spreadOut);
 
+        return spread;
+    }
+
+    /**
+     * Compute the spread in and spread out for a TradeCombination as scaled longs, reading the prices straight out
+     * of the TickerStore. This is the cheap version of computeSpread() used to screen combinations on every ticker,
+     * and the results are exactly the same as the BigDecimal version would produce. This is where the high and low
+     * water marks are updated, so call it once per combination for each new ticker.
+     *
+     * If this returns false, either a ticker is missing or the prices are too large for the fixed point math and
+     * the caller should fall back to computeSpread() and publish() the result.
+     *
+     * @param tradeCombination The TradeCombination representing the exchanges and currency pair we're interested in.
+     * @param fixedSpread A FixedSpread to hold the results. It can be reused between calls.
+     * @return true if the spread was computed.
+     */
+    public boolean computeSpread(TradeCombination tradeCombination, FixedSpread fixedSpread) {
+        if (!readSpread(tradeCombination, fixedSpread)) {
+            return false;
+        }
+
         // track high and low water marks
-        publish(spread);
+        publish(tradeCombination, fixedSpread.getIn(), fixedSpread.getOut());
 
-        return spread;
+        return true;
+    }
+
+    /**
+     * Compute a spread like computeSpread(TradeCombination, FixedSpread) does, but without updating the high and low
+     * water marks. Use this to look at the current spread without counting it as a new one.
+     *
+     * @param tradeCombination The TradeCombination representing the exchanges and currency pair we're interested in.
+     * @param fixedSpread A FixedSpread to hold the results. It can be reused between calls.
+     * @return true if the spread was computed.
+     */
+    public boolean readSpread(TradeCombination tradeCombination, FixedSpread fixedSpread) {
+        final TickerStore tickerStore = tickerService.getTickerStore();
+        final int longTickerId = tickerStore.getId(tradeCombination.getLongExchange(), tradeCombination.getCurrencyPair());
+        final int shortTickerId = tickerStore.getId(tradeCombination.getShortExchange(), tradeCombination.getCurrencyPair());
+        final TickerStore.Snapshot longSnapshot = fixedSpread.getLongSnapshot();
+        final TickerStore.Snapshot shortSnapshot = fixedSpread.getShortSnapshot();
+
+        if (longTickerId == TickerStore.UNKNOWN_ID
+            || shortTickerId == TickerStore.UNKNOWN_ID
+            || !tickerStore.read(longTickerId, longSnapshot)
+            || !tickerStore.read(shortTickerId, shortSnapshot)) {
+
+            fixedSpread.set(FixedPoint.NO_VALUE, FixedPoint.NO_VALUE);
+            return false;
+        }
+
+        fixedSpread.set(
+            FixedPoint.spread(longSnapshot.getAsk(), shortSnapshot.getBid()),
+            FixedPoint.spread(longSnapshot.getBid(), shortSnapshot.getAsk()));
+
+        return fixedSpread.isValid();
     }
 
     /**
@@ -132,6 +258,7 @@ public class SpreadService {
      * @param longPrice The price on the long exchange.
      * @param shortPrice The price on the short exchange.
      * @return The spread, or percentage difference between the two prices.
+     * @see FixedPoint#spread(long, long)
      */
     public BigDecimal computeSpread(BigDecimal longPrice, BigDecimal shortPrice) {
         BigDecimal scaledLongPrice = longPrice.setScale(BTC_SCALE, RoundingMode.HALF_EVEN);
@@ -140,34 +267,41 @@ public class SpreadService {
         return (scaledShortPrice.subtract(scaledLongPrice)).divide(scaledLongPrice, RoundingMode.HALF_EVEN);
     }
 
-    // build a summary of the contents of a spread map (high/low water marks)
-    private String buildSummary(Map<String, BigDecimal> spreadMap) {
-        return spreadMap.entrySet()
-            .stream()
-            .map(entry -> {
-                String[] keyElements = entry.getKey().split(":");
-                Map<String, String> result = new HashMap<>();
-
-                result.put("long", keyElements[0]);
-                result.put("short", keyElements[1]);
-                result.put("currency", keyElements[2]);
-                result.put("value", entry.getValue().toString());
+    // build a summary of one kind of water mark for every combination that has one
+    private String buildSummary(TradeCombinationIndex tradeCombinationIndex, WaterMarks.Snapshot snapshot, IntToLongFunction mark) {
+        return IntStream.range(0, snapshot.size())
+            .filter(snapshot::isPresent)
+            .mapToObj(combinationId -> {
+                TradeCombination tradeCombination = tradeCombinationIndex.getCombination(combinationId);
 
-                return result;
+                return String.format("%s/%s %s: %s",
+                    tradeCombination.getLongExchange().getExchangeSpecification().getExchangeName(),
+                    tradeCombination.getShortExchange().getExchangeSpecification().getExchangeName(),
+                    tradeCombination.getCurrencyPair(),
+                    FixedPoint.toBigDecimal(mark.applyAsLong(combinationId)));
             })
-            .map(map -> String.format("%s/%s %s: %s",
-                map.get("long"),
-                map.get("short"),
-                map.get("currency"),
-                map.get("value")))
             .collect(Collectors.joining("\n"));
     }
 
-    // build a string from a pair of exchanges and currency pair suitable for using as the key in a map
-    private static String spreadKey(Exchange longExchange, Exchange shortExchange, CurrencyPair currencyPair) {
-        return String.format("%s:%s:%s",
-            longExchange.getExchangeSpecification().getExchangeName(),
-            shortExchange.getExchangeSpecification().getExchangeName(),
-            currencyPair);
+    // the water marks and statistics are sized for the TradeCombinationIndex, so replace them if the index has been replaced
+    private WaterMarks getWaterMarks() {
+        final TradeCombinationIndex tradeCombinationIndex = tickerService.getTradeCombinationIndex() == null
+            ? TradeCombinationIndex.EMPTY
+            : tickerService.getTradeCombinationIndex();
+        WaterMarks current = waterMarks;
+
+        if (current.getTradeCombinationIndex() != tradeCombinationIndex) {
+            synchronized (this) {
+                current = waterMarks;
+
+                if (current.getTradeCombinationIndex() != tradeCombinationIndex) {
+                    spreadStatistics = new SpreadStatistics(tradeCombinationIndex, clock);
+                    current = new WaterMarks(tradeCombinationIndex);
+                    waterMarks = current;
+                }
+            }
+        }
+
+        return current;
     }
 }
@@ -0,0 +1,313 @@
+package com.r307.arbitrader.service;
+
+import com.r307.arbitrader.FixedPoint;
+import com.r307.arbitrader.config.TradingConfiguration;
+import com.r307.arbitrader.service.model.FixedSpread;
+import com.r307.arbitrader.service.model.TradeCombination;
+import com.r307.arbitrader.service.ticker.TickerRateLimiter;
+import com.r307.arbitrader.service.ticker.TickerStrategy;
+import com.r307.arbitrader.service.ticker.TradeCombinationIndex;
+import org.knowm.xchange.Exchange;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.r307.arbitrader.service.TradingScheduler.TICKER_STRATEGY_KEY;
+
+/**
+ * Polls each exchange for tickers as often as its rate limit allows, instead of polling every exchange on the same
+ * fixed schedule. Fast exchanges give us fresher prices and slow ones don't get us banned.
+ *
+ * Every exchange has its own budget in the TickerRateLimiter, which starts at the exchange's requestsPerSecond and
+ * learns from any rate limit errors. When the budget won't stretch to every currency pair at once, the pairs closest
+ * to their entry spread (or with a position open) go first, because those are the prices a trade depends on. Pairs
+ * that haven't been polled for a while go ahead of everything else so no price ever gets too old.
+ *
+ * Exchanges that stream their prices cost nothing to poll, so they're checked every few seconds just to make sure
+ * they're still connected.
+ *
+ * The poller has its own scheduler thread rather than using Spring's, which is shared with jobs that call the
+ * exchanges and can take seconds. Prices shouldn't have to wait behind a balance check.
+ */
+@Component
+public class TickerPoller {
+    static final long IDLE_INTERVAL = 3000L; // milliseconds
+    static final long INITIAL_DELAY = 5000L; // milliseconds
+    static final long POLL_INTERVAL = 100L; // milliseconds
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TickerPoller.class);
+
+    private final TradingConfiguration tradingConfiguration;
+    private final ExchangeService exchangeService;
+    private final TickerService tickerService;
+    private final SpreadService spreadService;
+    private final TradingService tradingService;
+    private final TickerRateLimiter tickerRateLimiter;
+    private final FixedSpread fixedSpread = new FixedSpread(); // only used by the scheduler thread
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService executor;
+    private TradeCombinationIndex tradeCombinationIndex = TradeCombinationIndex.EMPTY;
+    private List<Target> targets = Collections.emptyList();
+
+    public TickerPoller(
+        TradingConfiguration tradingConfiguration,
+        ExchangeService exchangeService,
+        TickerService tickerService,
+        SpreadService spreadService,
+        TradingService tradingService,
+        TickerRateLimiter tickerRateLimiter) {
+
+        this.tradingConfiguration = tradingConfiguration;
+        this.exchangeService = exchangeService;
+        this.tickerService = tickerService;
+        this.spreadService = spreadService;
+        this.tradingService = tradingService;
+        this.tickerRateLimiter = tickerRateLimiter;
+
+        final AtomicInteger threadCount = new AtomicInteger();
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ticker-poller-scheduler");
+
+            thread.setDaemon(true);
+
+            return thread;
+        });
+
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "ticker-poller-" + threadCount.incrementAndGet());
+
+            thread.setDaemon(true);
+
+            return thread;
+        });
+    }
+
+    /**
+     * Start the scheduler thread.
+     */
+    @PostConstruct
+    public void start() {
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                poll();
+            } catch (RuntimeException e) {
+                // an exception would cancel the schedule, and then we'd never see another price
+                LOGGER.error("Unexpected exception while polling tickers: ", e);
+            }
+        }, INITIAL_DELAY, POLL_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Start polling any exchange that isn't already being polled and has enough of its budget left. The polling
+     * itself happens on other threads, one per exchange, so a slow exchange doesn't hold up the others.
+     */
+    public void poll() {
+        final long now = System.currentTimeMillis();
+        final long entrySpread = FixedPoint.toFixed(tradingConfiguration.getEntrySpread(), RoundingMode.CEILING);
+
+        for (Target target : getTargets()) {
+            if (target.inFlight.get()) {
+                continue;
+            }
+
+            final List<CurrencyPair> currencyPairs = choose(target, now, entrySpread);
+
+            if (currencyPairs.isEmpty()) {
+                continue;
+            }
+
+            target.inFlight.set(true);
+            target.lastPoll = now;
+            currencyPairs.forEach(currencyPair -> target.lastRequested.put(currencyPair, now));
+
+            executor.execute(() -> fetch(target, currencyPairs));
+        }
+    }
+
+    /**
+     * Stop polling.
+     */
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    // decide which currency pairs to poll now, and take them out of the exchange's budget
+    List<CurrencyPair> choose(Target target, long now, long entrySpread) {
+        final int fullCost = target.strategy.getRequestCost(target.currencyPairs);
+
+        if (fullCost == 0) {
+            return now - target.lastPoll >= IDLE_INTERVAL ? target.currencyPairs : Collections.emptyList();
+        }
+
+        final double available = tickerRateLimiter.getAvailable(target.exchange);
+
+        if (available < 1.0) {
+            return Collections.emptyList();
+        }
+
+        List<CurrencyPair> chosen = target.currencyPairs;
+
+        if (fullCost > available) {
+            final List<CurrencyPair> prioritized = prioritize(target, now, entrySpread);
+            int count = 0;
+
+            while (count < prioritized.size()
+                && target.strategy.getRequestCost(prioritized.subList(0, count + 1)) <= available) {
+                count++;
+            }
+
+            chosen = new ArrayList<>(prioritized.subList(0, count));
+        }
+
+        if (chosen.isEmpty() || !tickerRateLimiter.tryAcquire(target.exchange, target.strategy.getRequestCost(chosen))) {
+            return Collections.emptyList();
+        }
+
+        return chosen;
+    }
+
+    // sort the currency pairs so the most important ones come first
+    List<CurrencyPair> prioritize(Target target, long now, long entrySpread) {
+        final long overdue = Math.max(IDLE_INTERVAL,
+            (long) (2000 * target.strategy.getRequestCost(target.currencyPairs) / tickerRateLimiter.getRate(target.exchange)));
+        final Map<CurrencyPair, Long> priorities = new HashMap<>();
+
+        target.currencyPairs.forEach(currencyPair -> {
+            final long lastRequested = target.lastRequested.getOrDefault(currencyPair, 0L);
+
+            if (now - lastRequested > overdue) {
+                priorities.put(currencyPair, Long.MIN_VALUE + lastRequested); // oldest first
+            } else {
+                priorities.put(currencyPair, getDistance(target.tradeCombinations.get(currencyPair), entrySpread));
+            }
+        });
+
+        final List<CurrencyPair> prioritized = new ArrayList<>(target.currencyPairs);
+
+        prioritized.sort(Comparator.comparingLong(priorities::get));
+
+        return prioritized;
+    }
+
+    // how far the closest trade combination is from doing anything
+    private long getDistance(List<TradeCombination> tradeCombinations, long entrySpread) {
+        long distance = Long.MAX_VALUE;
+
+        for (TradeCombination tradeCombination : tradeCombinations) {
+            if (tradingService.getActivePosition(tradeCombination) != null
+                || entrySpread == FixedPoint.NO_VALUE
+                || !spreadService.readSpread(tradeCombination, fixedSpread)) {
+                return 0; // a position we might exit, or a price we don't have yet
+            }
+
+            distance = Math.min(distance, Math.max(0, entrySpread - fixedSpread.getIn()));
+        }
+
+        return distance;
+    }
+
+    // fetch the tickers on one of the poller threads
+    private void fetch(Target target, List<CurrencyPair> currencyPairs) {
+        final long start = System.nanoTime();
+
+        try {
+            tickerService.fetchTickers(target.exchange, currencyPairs);
+        } catch (RuntimeException e) {
+            LOGGER.warn("Failed to fetch tickers for {}: {}",
+                target.exchange.getExchangeSpecification().getExchangeName(),
+                e.getMessage());
+        } finally {
+            tickerRateLimiter.onComplete(target.exchange, start);
+            target.inFlight.set(false);
+        }
+    }
+
+    // build the list of exchanges to poll, once the trade combinations are known
+    List<Target> getTargets() {
+        final TradeCombinationIndex current = tickerService.getTradeCombinationIndex();
+
+        if (current == tradeCombinationIndex) {
+            return targets;
+        }
+
+        final Map<Exchange, Target> built = new LinkedHashMap<>();
+
+        tickerService.getExchangeTradeCombinations().forEach(tradeCombination -> {
+            built.computeIfAbsent(tradeCombination.getLongExchange(), Target::new).add(tradeCombination);
+            built.computeIfAbsent(tradeCombination.getShortExchange(), Target::new).add(tradeCombination);
+        });
+
+        built.values().forEach(target -> {
+            final Double configured = exchangeService.getExchangeMetadata(target.exchange).getRequestsPerSecond();
+            final int fullCost = target.strategy.getRequestCost(target.currencyPairs);
+
+            // without a configured rate, poll everything as often as we always used to
+            final double rate = configured != null ? configured : Math.max(1, fullCost) * 1000.0 / IDLE_INTERVAL;
+
+            tickerRateLimiter.register(target.exchange, rate);
+
+            LOGGER.info("Polling {} for {} tickers at up to {} requests/second",
+                target.exchange.getExchangeSpecification().getExchangeName(),
+                target.currencyPairs.size(),
+                String.format("%.2f", rate));
+        });
+
+        tradeCombinationIndex = current;
+        targets = new ArrayList<>(built.values());
+
+        return targets;
+    }
+
+    // one exchange and the currency pairs we need from it
+    static class Target {
+        private final Exchange exchange;
+        private final TickerStrategy strategy;
+        private final List<CurrencyPair> currencyPairs = new ArrayList<>();
+        private final Map<CurrencyPair, List<TradeCombination>> tradeCombinations = new HashMap<>();
+        private final Map<CurrencyPair, Long> lastRequested = new HashMap<>(); // only used by the scheduler thread
+        private final AtomicBoolean inFlight = new AtomicBoolean(false);
+        private long lastPoll = 0L; // only used by the scheduler thread
+
+        Target(Exchange exchange) {
+            this.exchange = exchange;
+            this.strategy = (TickerStrategy) exchange.getExchangeSpecification().getExchangeSpecificParametersItem(TICKER_STRATEGY_KEY);
+        }
+
+        Exchange getExchange() {
+            return exchange;
+        }
+
+        List<CurrencyPair> getCurrencyPairs() {
+            return currencyPairs;
+        }
+
+        private void add(TradeCombination tradeCombination) {
+            tradeCombinations.computeIfAbsent(tradeCombination.getCurrencyPair(), currencyPair -> {
+                currencyPairs.add(currencyPair);
+
+                return new ArrayList<>();
+            }).add(tradeCombination);
+        }
+    }
+}
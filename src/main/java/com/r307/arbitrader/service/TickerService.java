@@ -1,8 +1,12 @@
 package com.r307.arbitrader.service;
 
 import com.r307.arbitrader.config.TradingConfiguration;
+import com.r307.arbitrader.service.metrics.MetricsService;
 import com.r307.arbitrader.service.model.TradeCombination;
+import com.r307.arbitrader.service.recorder.MarketDataRecorder;
+import com.r307.arbitrader.service.ticker.TickerStore;
 import com.r307.arbitrader.service.ticker.TickerStrategy;
+import com.r307.arbitrader.service.ticker.TradeCombinationIndex;
 import org.apache.commons.collections4.CollectionUtils;
 import org.knowm.xchange.Exchange;
 import org.knowm.xchange.currency.CurrencyPair;
@@ -21,6 +25,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static com.r307.arbitrader.service.TradingScheduler.TICKER_STRATEGY_KEY;
 
@@ -34,19 +39,28 @@ public class TickerService {
     private final TradingConfiguration tradingConfiguration;
     private final ExchangeService exchangeService;
     private final ErrorCollectorService errorCollectorService;
+    private final MetricsService metricsService;
+    private final MarketDataRecorder marketDataRecorder;
 
-    Map<String, Ticker> allTickers = new HashMap<>();
+    // tickers for exchanges and currency pairs that aren't in the TickerStore
+    Map<String, Ticker> allTickers = new ConcurrentHashMap<>();
     List<TradeCombination> tradeCombinations = new ArrayList<>();
+    volatile TickerStore tickerStore = TickerStore.EMPTY;
+    volatile TradeCombinationIndex tradeCombinationIndex = TradeCombinationIndex.EMPTY;
 
     @Inject
     public TickerService(
         TradingConfiguration tradingConfiguration,
         ExchangeService exchangeService,
-        ErrorCollectorService errorCollectorService) {
+        ErrorCollectorService errorCollectorService,
+        MetricsService metricsService,
+        MarketDataRecorder marketDataRecorder) {
 
         this.tradingConfiguration = tradingConfiguration;
         this.exchangeService = exchangeService;
         this.errorCollectorService = errorCollectorService;
+        this.metricsService = metricsService;
+        this.marketDataRecorder = marketDataRecorder;
     }
 
     /**
@@ -80,6 +94,11 @@ public class TickerService {
                 LOGGER.info("{}", combination);
             });
         }));
+
+        tickerStore = buildTickerStore(tradeCombinations);
+        tradeCombinationIndex = new TradeCombinationIndex(tickerStore, tradeCombinations);
+
+        LOGGER.debug("Assigned {} ticker IDs", tickerStore.size());
     }
 
     /**
@@ -129,10 +148,23 @@ public class TickerService {
      * two events would be a little cleaner but more complicated. This way is simpler
      * to understand and to write, and it provides the same guarantees.
      *
+     * Since every TickerStrategy comes through here, this is also where the MarketDataRecorder gets to see every
+     * ticker.
+     *
      * @param exchange The Exchange the Ticker was received from.
      * @param ticker The Ticker to update.
      */
     public void putTicker(Exchange exchange, Ticker ticker) {
+        marketDataRecorder.recordTicker(exchange, ticker);
+
+        final TickerStore store = tickerStore;
+        final int id = store.getId(exchange, (CurrencyPair) ticker.getInstrument());
+
+        if (id != TickerStore.UNKNOWN_ID) {
+            store.put(id, ticker);
+            return;
+        }
+
         allTickers.compute(tickerKey(exchange, (CurrencyPair) ticker.getInstrument()),
             (key, oldTicker) -> {
                 if (oldTicker == null
@@ -154,9 +186,35 @@ public class TickerService {
      * @return The ticker for the given currency pair on the given exchange.
      */
     public Ticker getTicker(Exchange exchange, CurrencyPair currencyPair) {
+        final TickerStore store = tickerStore;
+        final int id = store.getId(exchange, currencyPair);
+
+        if (id != TickerStore.UNKNOWN_ID) {
+            return store.getTicker(id);
+        }
+
         return allTickers.get(tickerKey(exchange, currencyPair));
     }
 
+    /**
+     * Get the TickerStore that holds the tickers for every exchange and currency pair we trade. IDs from the store
+     * can be used to read prices without allocating anything.
+     *
+     * @return The TickerStore.
+     */
+    public TickerStore getTickerStore() {
+        return tickerStore;
+    }
+
+    /**
+     * Get the index of which TradeCombinations are affected by each ticker ID in the TickerStore.
+     *
+     * @return The TradeCombinationIndex.
+     */
+    public TradeCombinationIndex getTradeCombinationIndex() {
+        return tradeCombinationIndex;
+    }
+
     /**
      * Does this Ticker have all the required fields?
      *
@@ -198,12 +256,16 @@ public class TickerService {
         // get the appropriate TickerStrategy to use for this exchange
         TickerStrategy tickerStrategy = (TickerStrategy)exchange.getExchangeSpecification().getExchangeSpecificParametersItem(TICKER_STRATEGY_KEY);
 
+        final long start = System.nanoTime();
+
         try {
             // try to get the tickers using the strategy
             tickerStrategy.getTickers(exchange, currencyPairs, this);
         } catch (RuntimeException re) {
             LOGGER.debug("Unexpected runtime exception: " + re.getMessage(), re);
             errorCollectorService.collect(exchange, re);
+        } finally {
+            metricsService.recordTickerFetch(exchange, tickerStrategy.getClass().getSimpleName(), System.nanoTime() - start);
         }
     }
 
@@ -220,6 +282,22 @@ public class TickerService {
             exchangeService.convertExchangePair(exchange, currencyPair));
     }
 
+    // assign an ID in the TickerStore to every exchange and currency pair used by a TradeCombination
+    private TickerStore buildTickerStore(List<TradeCombination> combinations) {
+        final TickerStore.Builder builder = new TickerStore.Builder();
+
+        combinations.forEach(tradeCombination -> {
+            final CurrencyPair currencyPair = tradeCombination.getCurrencyPair();
+
+            builder.add(tradeCombination.getLongExchange(), currencyPair,
+                exchangeService.convertExchangePair(tradeCombination.getLongExchange(), currencyPair));
+            builder.add(tradeCombination.getShortExchange(), currencyPair,
+                exchangeService.convertExchangePair(tradeCombination.getShortExchange(), currencyPair));
+        });
+
+        return builder.build();
+    }
+
     // determine whether a pair of exchanges is valid for trading
     private boolean isInvalidExchangePair(Exchange longExchange, Exchange shortExchange, CurrencyPair currencyPair) {
         // both exchanges are the same
@@ -1,41 +1,52 @@
 package com.r307.arbitrader.service;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.r307.arbitrader.Utils;
 import com.r307.arbitrader.config.TradingConfiguration;
+import com.r307.arbitrader.service.cache.ExchangeFeeCache;
+import com.r307.arbitrader.service.cache.OrderBookCache;
+import com.r307.arbitrader.service.event.TickerEventDispatcher;
+import com.r307.arbitrader.service.history.HistoryColumn;
+import com.r307.arbitrader.service.history.HistoryQuery;
+import com.r307.arbitrader.service.history.TradeHistoryStore;
+import com.r307.arbitrader.service.journal.TradeJournal;
+import com.r307.arbitrader.service.latency.LatencyRecorder;
 import com.r307.arbitrader.service.model.ActivePosition;
 import com.r307.arbitrader.service.paper.PaperExchange;
 import com.r307.arbitrader.service.model.Spread;
 import com.r307.arbitrader.service.model.TradeCombination;
+import com.r307.arbitrader.service.ticker.SpreadStatistics;
+import com.r307.arbitrader.service.ticker.TickerStore;
 import info.bitrich.xchangestream.core.StreamingExchangeFactory;
 import org.knowm.xchange.Exchange;
 import org.knowm.xchange.ExchangeFactory;
 import org.knowm.xchange.ExchangeSpecification;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.PostConstruct;
-import java.io.File;
 import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Comparator;
 import java.util.List;
 
 /**
- * Initiates trading action on a timer.
+ * Initiates trading action on a timer. When a replay is running instead, we don't connect to the exchanges at all.
  */
 @Component
+@ConditionalOnProperty(prefix = "replay", name = "active", havingValue = "false", matchIfMissing = true)
 public class TradingScheduler {
     public static final String METADATA_KEY = "arbitrader-metadata";
     public static final String TICKER_STRATEGY_KEY = "tickerStrategy";
 
     private static final Logger LOGGER = LoggerFactory.getLogger(TradingScheduler.class);
-    private static final String STATE_FILE = ".arbitrader/arbitrader-state.json";
-    protected static final String TRADE_HISTORY_FILE = ".arbitrader/arbitrader-arbitrage-history.csv";
 
-    private final ObjectMapper objectMapper;
     private final TradingConfiguration tradingConfiguration;
     private final ConditionService conditionService;
     private final ExchangeService exchangeService;
@@ -44,18 +55,30 @@ public class TradingScheduler {
     private final TickerService tickerService;
     private final List<Exchange> exchanges = new ArrayList<>();
     private final TradingService tradingService;
+    private final TickerEventDispatcher tickerEventDispatcher;
+    private final ExchangeFeeCache exchangeFeeCache;
+    private final OrderBookCache orderBookCache;
+    private final LatencyRecorder latencyRecorder;
+    private final TradeJournal tradeJournal;
+    private final TradeHistoryStore tradeHistoryStore;
+    private final Clock clock;
 
     public TradingScheduler(
-        ObjectMapper objectMapper,
         TradingConfiguration tradingConfiguration,
         ConditionService conditionService,
         ExchangeService exchangeService,
         TradingService tradingService,
         ErrorCollectorService errorCollectorService,
         SpreadService spreadService,
-        TickerService tickerService) {
+        TickerService tickerService,
+        TickerEventDispatcher tickerEventDispatcher,
+        ExchangeFeeCache exchangeFeeCache,
+        OrderBookCache orderBookCache,
+        LatencyRecorder latencyRecorder,
+        TradeJournal tradeJournal,
+        TradeHistoryStore tradeHistoryStore,
+        Clock clock) {
 
-        this.objectMapper = objectMapper;
         this.tradingConfiguration = tradingConfiguration;
         this.conditionService = conditionService;
         this.exchangeService = exchangeService;
@@ -63,6 +86,13 @@ public class TradingScheduler {
         this.spreadService = spreadService;
         this.tickerService = tickerService;
         this.tradingService = tradingService;
+        this.tickerEventDispatcher = tickerEventDispatcher;
+        this.exchangeFeeCache = exchangeFeeCache;
+        this.orderBookCache = orderBookCache;
+        this.latencyRecorder = latencyRecorder;
+        this.tradeJournal = tradeJournal;
+        this.tradeHistoryStore = tradeHistoryStore;
+        this.clock = clock;
     }
 
     /**
@@ -136,7 +166,7 @@ public class TradingScheduler {
                 exchange = ExchangeFactory.INSTANCE.createExchange(specification);
             }
             if(tradingConfiguration.getPaper() != null && tradingConfiguration.getPaper().isActive()) {
-                exchange=new PaperExchange(exchange, exchangeMetadata.getHomeCurrency(), tickerService, exchangeService, tradingConfiguration.getPaper());
+                exchange=new PaperExchange(exchange, exchangeMetadata.getHomeCurrency(), tickerService, exchangeService, orderBookCache, tradingConfiguration.getPaper(), clock);
             }
             exchanges.add(exchange);
         });
@@ -161,25 +191,17 @@ public class TradingScheduler {
             LOGGER.info("Paper trading enabled, will NOT trade real money");
         }
 
-        // load active trades from file, if there is one
-        File stateFile = new File(STATE_FILE);
+        // replay the trade journal to pick up any positions that were open when we stopped
+        try {
+            Collection<ActivePosition> activePositions = tradeJournal.recover();
 
-        // if there is a state file, we need to try to load the in-progress trade from the file
-        if (stateFile.exists()) {
-            if (!stateFile.canRead()) {
-                LOGGER.error("Cannot read state file: {}", stateFile.getAbsolutePath());
-            } else {
-                try {
-                    ActivePosition activePosition = objectMapper.readValue(stateFile, ActivePosition.class);
-
-                    tradingService.setActivePosition(activePosition);
+            if (!activePositions.isEmpty()) {
+                tradingService.setActivePositions(activePositions);
 
-                    LOGGER.info("Loaded active trades from file: {}", stateFile.getAbsolutePath());
-                    LOGGER.info("Active trades: {}", activePosition);
-                } catch (IOException e) {
-                    LOGGER.error("Unable to parse state file {}: ", stateFile.getAbsolutePath(), e);
-                }
+                LOGGER.info("Active trades: {}", activePositions);
             }
+        } catch (IOException e) {
+            LOGGER.error("Unable to recover active trades from the trade journal: ", e);
         }
     }
 
@@ -200,7 +222,7 @@ public class TradingScheduler {
      */
     @Scheduled(cron = "0 0 0/6 * * *") // every 6 hours
     public void summary() {
-        LOGGER.info("Summary: [Long/Short Exchanges] [Pair] [Current Spread] -> [{} Spread Target]", (tradingService.getActivePosition() != null ? "Exit" : "Entry"));
+        LOGGER.info("Summary: [Long/Short Exchanges] [Pair] [Current Spread] -> [Entry/Exit Spread Target]");
 
         List<TradeCombination> tradeCombinations = tickerService.getExchangeTradeCombinations();
 
@@ -211,39 +233,37 @@ public class TradingScheduler {
                 return;
             }
 
-            if (tradingService.getActivePosition() == null) {
+            ActivePosition activePosition = tradingService.getActivePosition(tradeCombination);
+
+            if (activePosition == null) {
                 LOGGER.info("{}/{} {} {} -> {}",
                     spread.getLongExchange().getExchangeSpecification().getExchangeName(),
                     spread.getShortExchange().getExchangeSpecification().getExchangeName(),
                     spread.getCurrencyPair(),
                     spread.getIn(),
                     tradingConfiguration.getEntrySpread());
-            } else if (tradingService.getActivePosition() != null
-                && tradingService.getActivePosition().getCurrencyPair().equals(spread.getCurrencyPair())
-                && tradingService.getActivePosition().getLongTrade().getExchange().equals(spread.getLongExchange().getExchangeSpecification().getExchangeName())
-                && tradingService.getActivePosition().getShortTrade().getExchange().equals(spread.getShortExchange().getExchangeSpecification().getExchangeName())) {
-
-                LOGGER.info("{}/{} {} {} -> {}",
+            } else {
+                LOGGER.info("{}/{} {} {} -> {} (exit)",
                     spread.getLongExchange().getExchangeSpecification().getExchangeName(),
                     spread.getShortExchange().getExchangeSpecification().getExchangeName(),
                     spread.getCurrencyPair(),
                     spread.getOut(),
-                    tradingService.getActivePosition().getExitTarget());
+                    activePosition.getExitTarget());
             }
         });
     }
 
     /**
-     * Periodically update tickers and check for other special tasks such as exiting early or displaying
-     * a status report due to a request from the user.
+     * Periodically check for special tasks such as exiting early or displaying a status report due to a request from
+     * the user. Tickers are polled separately by the TickerPoller, as fast as each exchange allows.
      */
     @Scheduled(initialDelay = 5000, fixedRate = 3000)
-    public void pollForPriceData() {
+    public void checkConditions() {
         // log just to let the user know we're still working
         LOGGER.debug("Tick");
 
         // if the user wants the bot to exit, go ahead and exit
-        if (tradingService.getActivePosition() == null && conditionService.isExitWhenIdleCondition()) {
+        if (tradingService.getActivePositions().isEmpty() && conditionService.isExitWhenIdleCondition()) {
             LOGGER.info("Exiting at user request");
             conditionService.clearExitWhenIdleCondition();
             System.exit(0);
@@ -254,23 +274,34 @@ public class TradingScheduler {
             logStatus();
             conditionService.clearStatusCondition();
         }
-
-        long exchangePollStartTime = System.currentTimeMillis();
-
-        // fetch tickers for all exchanges and currencies
-        tickerService.refreshTickers();
-
-        long exchangePollDuration = System.currentTimeMillis() - exchangePollStartTime;
-
-        // measure the time we took to analyze prices
-        if (exchangePollDuration > 3000) {
-            LOGGER.warn("Refreshing tickers took {} ms", exchangePollDuration);
-        }
     }
 
     // print a summary of all trade combinations, prices, and spreads
     private void logStatus() {
         LOGGER.info("=== Current Status ===");
+        LOGGER.info("Ticker events: {} received, {} analyzed, {} dropped as stale, {} queued",
+            tickerEventDispatcher.getPublishedCount(),
+            tickerEventDispatcher.getDispatchedCount(),
+            tickerEventDispatcher.getCoalescedCount(),
+            tickerEventDispatcher.getQueueDepth());
+        LOGGER.info("Ticker event age: {} ms last, {} ms max",
+            tickerEventDispatcher.getLastEventAge(),
+            tickerEventDispatcher.getMaxEventAge());
+        LOGGER.info("Cache {}", exchangeFeeCache.getStatistics());
+        LOGGER.info("Cache {}", tradingService.getOrderVolumeCacheStatistics());
+        latencyRecorder.report().forEach(LOGGER::info);
+
+        tradeHistoryStore.query(HistoryQuery.HistoryQueryBuilder.builder()
+            .withColumn(HistoryColumn.PROFIT)
+            .withGrouping(HistoryQuery.Grouping.EXCHANGE_PAIR)
+            .withFrom(Instant.now().minus(Duration.ofDays(7)))
+            .build())
+            .forEach(profit -> LOGGER.info("Profit over the last 7 days for {}: {} in {} trades",
+                profit.getGroup(),
+                profit.getSum(),
+                profit.getCount()));
+
+        final SpreadStatistics spreadStatistics = spreadService.getSpreadStatistics();
 
         tickerService.getExchangeTradeCombinations()
             .stream()
@@ -294,7 +325,44 @@ public class TradingScheduler {
                     LOGGER.info("\tSpread In/Out:{}/{}",
                         spread.getIn(),
                         spread.getOut());
+
+                    logSpreadStatistics(spreadStatistics, tradeCombination);
                 }
             });
     }
+
+    // print the rolling spread statistics for a trade combination
+    private void logSpreadStatistics(SpreadStatistics spreadStatistics, TradeCombination tradeCombination) {
+        final int combinationId = spreadStatistics.getTradeCombinationIndex().getCombinationId(tradeCombination);
+
+        if (combinationId == TickerStore.UNKNOWN_ID) {
+            return;
+        }
+
+        for (SpreadStatistics.Window window : SpreadStatistics.Window.values()) {
+            SpreadStatistics.Summary in = spreadStatistics.getSpreadIn(combinationId, window);
+            SpreadStatistics.Summary out = spreadStatistics.getSpreadOut(combinationId, window);
+
+            if (in.getCount() == 0) {
+                continue;
+            }
+
+            LOGGER.info("\tSpread In {} (n={}): mean {} sd {} p50 {} p90 {} p99 {}",
+                window.getLabel(),
+                in.getCount(),
+                in.getMean(),
+                in.getStandardDeviation(),
+                in.getPercentile(50),
+                in.getPercentile(90),
+                in.getPercentile(99));
+            LOGGER.info("\tSpread Out {} (n={}): mean {} sd {} p1 {} p10 {} p50 {}",
+                window.getLabel(),
+                out.getCount(),
+                out.getMean(),
+                out.getStandardDeviation(),
+                out.getPercentile(1),
+                out.getPercentile(10),
+                out.getPercentile(50));
+        }
+    }
 }
@@ -1,16 +1,26 @@
 package com.r307.arbitrader.service;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.r307.arbitrader.DecimalConstants;
+import com.r307.arbitrader.FixedPoint;
 import com.r307.arbitrader.config.FeeComputation;
 import com.r307.arbitrader.config.TradingConfiguration;
 import com.r307.arbitrader.exception.OrderNotFoundException;
-import com.r307.arbitrader.service.cache.ExchangeBalanceCache;
+import com.r307.arbitrader.service.cache.CacheStatistics;
+import com.r307.arbitrader.service.cache.OrderBookCache;
 import com.r307.arbitrader.service.cache.OrderVolumeCache;
+import com.r307.arbitrader.service.history.TradeHistoryWriter;
+import com.r307.arbitrader.service.journal.JournalEvent;
+import com.r307.arbitrader.service.journal.TradeJournal;
+import com.r307.arbitrader.service.latency.LatencyStage;
+import com.r307.arbitrader.service.latency.LatencyTrace;
+import com.r307.arbitrader.service.metrics.MetricsService;
 import com.r307.arbitrader.service.model.ActivePosition;
 import com.r307.arbitrader.service.model.ArbitrageLog;
+import com.r307.arbitrader.service.model.FixedSpread;
 import com.r307.arbitrader.service.model.Spread;
-import org.apache.commons.io.FileUtils;
+import com.r307.arbitrader.service.model.TradeCombination;
+import com.r307.arbitrader.service.recorder.MarketDataRecorder;
+import com.r307.arbitrader.service.ticker.DepthBook;
 import org.jetbrains.annotations.NotNull;
 import org.knowm.xchange.Exchange;
 import org.knowm.xchange.currency.Currency;
@@ -21,24 +31,27 @@ import org.knowm.xchange.dto.meta.CurrencyMetaData;
 import org.knowm.xchange.dto.meta.CurrencyPairMetaData;
 import org.knowm.xchange.dto.meta.ExchangeMetaData;
 import org.knowm.xchange.dto.trade.LimitOrder;
-import org.knowm.xchange.dto.trade.OpenOrders;
 import org.knowm.xchange.exceptions.ExchangeException;
 import org.knowm.xchange.exceptions.NotAvailableFromExchangeException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
 
-import java.io.File;
 import java.io.IOException;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
-import java.nio.charset.Charset;
-import java.nio.charset.StandardCharsets;
+import java.time.Clock;
 import java.time.OffsetDateTime;
-import java.util.Arrays;
-import java.util.List;
+import java.util.Collection;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 import static com.r307.arbitrader.DecimalConstants.BTC_SCALE;
 
@@ -48,47 +61,79 @@ import static com.r307.arbitrader.DecimalConstants.BTC_SCALE;
 @Component
 public class TradingService {
     private static final Logger LOGGER = LoggerFactory.getLogger(TradingService.class);
-    private static final String STATE_FILE = ".arbitrader/arbitrader-state.json";
-    private static final String TRADE_HISTORY_FILE = ".arbitrader/arbitrader-arbitrage-history.csv";
-    private static final BigDecimal TRADE_PORTION = new BigDecimal("0.9");
-    private static final BigDecimal TRADE_REMAINDER = BigDecimal.ONE.subtract(TRADE_PORTION);
+    private static final BigDecimal TRADE_REMAINDER = BigDecimal.ONE.subtract(CapitalAllocator.TRADE_PORTION);
     private static final CurrencyPairMetaData NULL_CURRENCY_PAIR_METADATA = new CurrencyPairMetaData(
         null, null, null, null, null);
 
-    private final ObjectMapper objectMapper;
     private final TradingConfiguration tradingConfiguration;
     private final ConditionService conditionService;
     private final ExchangeService exchangeService;
     private final SpreadService spreadService;
     private final NotificationService notificationService;
-    private final ExchangeBalanceCache exchangeBalanceCache = new ExchangeBalanceCache();
-    private final OrderVolumeCache orderVolumeCache = new OrderVolumeCache();
-    private boolean timeoutExitWarning = false;
-    private ActivePosition activePosition = null;
-    private boolean bailOut = false;
+    private final OrderBookCache orderBookCache;
+    private final Executor orderExecutor;
+    private final OrderFillService orderFillService;
+    private final CapitalAllocator capitalAllocator;
+    private final BalanceLedger balanceLedger;
+    private final MetricsService metricsService;
+    private final TradeJournal tradeJournal;
+    private final TradeHistoryWriter tradeHistoryWriter;
+    private final MarketDataRecorder marketDataRecorder;
+    private final Clock clock;
+    private final OrderVolumeCache orderVolumeCache;
+    private final PositionBook positionBook;
+    private final Set<String> timeoutExitWarnings = ConcurrentHashMap.newKeySet();
+    private volatile boolean bailOut = false;
+    private volatile BigDecimal fixedEntrySpreadSource = null;
+    private volatile long fixedEntrySpread = FixedPoint.NO_VALUE;
 
     public TradingService(
-        ObjectMapper objectMapper,
         TradingConfiguration tradingConfiguration,
         ConditionService conditionService,
         ExchangeService exchangeService,
         SpreadService spreadService,
-        @SuppressWarnings("SpringJavaInjectionPointsAutowiringInspection") NotificationService notificationService) {
+        @SuppressWarnings("SpringJavaInjectionPointsAutowiringInspection") NotificationService notificationService,
+        OrderBookCache orderBookCache,
+        @Qualifier("orderExecutor") Executor orderExecutor,
+        OrderFillService orderFillService,
+        CapitalAllocator capitalAllocator,
+        BalanceLedger balanceLedger,
+        MetricsService metricsService,
+        TradeJournal tradeJournal,
+        TradeHistoryWriter tradeHistoryWriter,
+        MarketDataRecorder marketDataRecorder,
+        Clock clock) {
 
-        this.objectMapper = objectMapper;
         this.tradingConfiguration = tradingConfiguration;
         this.conditionService = conditionService;
         this.exchangeService = exchangeService;
         this.spreadService = spreadService;
         this.notificationService = notificationService;
+        this.orderBookCache = orderBookCache;
+        this.orderExecutor = orderExecutor;
+        this.orderFillService = orderFillService;
+        this.capitalAllocator = capitalAllocator;
+        this.balanceLedger = balanceLedger;
+        this.metricsService = metricsService;
+        this.tradeJournal = tradeJournal;
+        this.tradeHistoryWriter = tradeHistoryWriter;
+        this.marketDataRecorder = marketDataRecorder;
+        this.clock = clock;
+        this.positionBook = new PositionBook(tradingConfiguration);
+
+        // each position has two entry orders and two exit orders
+        this.orderVolumeCache = new OrderVolumeCache(OrderVolumeCache.CACHE_SIZE * positionBook.getMaxPositions());
     }
 
     /**
      * Evaluate whether or not to trade (both entry and exit). Execute a trade if appropriate.
      *
+     * Trades on different exchanges can run at the same time. If another thread is already trading on either of
+     * these exchanges we skip this spread rather than wait, because it will be stale by the time we get to it.
+     *
      * @param spread The Spread contains the exchanges and prices for the trade.
      */
-    public synchronized void trade(Spread spread) {
+    public void trade(Spread spread) {
         if (bailOut) {
             LOGGER.error("Exiting immediately to avoid erroneous trades.");
             System.exit(1);
@@ -97,6 +142,34 @@ public class TradingService {
         final String shortExchangeName = spread.getShortExchange().getExchangeSpecification().getExchangeName();
         final String longExchangeName = spread.getLongExchange().getExchangeSpecification().getExchangeName();
 
+        if (!positionBook.tryLock(longExchangeName, shortExchangeName)) {
+            LOGGER.debug("Skipping {}/{} {}: already trading on one of these exchanges",
+                longExchangeName,
+                shortExchangeName,
+                spread.getCurrencyPair());
+            return;
+        }
+
+        try {
+            trade(spread, longExchangeName, shortExchangeName);
+        } finally {
+            positionBook.unlock(longExchangeName, shortExchangeName);
+        }
+    }
+
+    // the rest of trade(), once we hold the locks for both exchanges
+    private void trade(Spread spread, String longExchangeName, String shortExchangeName) {
+        // another thread might have hit a problem while we were waiting for the locks
+        if (bailOut) {
+            return;
+        }
+
+        // another thread let go of the locks while it waits for this position's orders to fill
+        if (positionBook.isAwaitingFills(longExchangeName, shortExchangeName, spread.getCurrencyPair())) {
+            LOGGER.debug("Skipping {}/{} {}: waiting for orders to fill", longExchangeName, shortExchangeName, spread.getCurrencyPair());
+            return;
+        }
+
         LOGGER.debug("Attempting trade: {}/{} {} {}/{}",
             longExchangeName,
             shortExchangeName,
@@ -109,43 +182,124 @@ public class TradingService {
             return;
         }
 
+        final ActivePosition activePosition = positionBook.get(longExchangeName, shortExchangeName, spread.getCurrencyPair());
+
         // This is more verbose than it has to be. I'm trying to keep it easy to read as we continue
         // adding more different conditions that can affect whether we trade or not.
         if (activePosition == null) {
             if (conditionService.isForceOpenCondition(spread.getCurrencyPair(), longExchangeName, shortExchangeName)) {
                 LOGGER.debug("enterPosition() {}/{} {} - forced", longExchangeName, shortExchangeName, spread.getCurrencyPair());
-                enterPosition(spread);
+                reserveAndEnterPosition(spread, longExchangeName, shortExchangeName);
             } else if (spread.getIn().compareTo(tradingConfiguration.getEntrySpread()) > 0) {
                 LOGGER.debug("enterPosition() {}/{} {} - spread in {} > entry spread {}", longExchangeName, shortExchangeName, spread.getCurrencyPair(), spread.getIn(), tradingConfiguration.getEntrySpread());
-                enterPosition(spread);
+                reserveAndEnterPosition(spread, longExchangeName, shortExchangeName);
             }
-        } else if (spread.getCurrencyPair().equals(activePosition.getCurrencyPair())
-                && longExchangeName.equals(activePosition.getLongTrade().getExchange())
-                && shortExchangeName.equals(activePosition.getShortTrade().getExchange())) {
-
+        } else {
             if (conditionService.isForceCloseCondition()) {
                 LOGGER.debug("exitPosition() {}/{} {} - forced", longExchangeName, shortExchangeName, spread.getCurrencyPair());
-                exitPosition(spread);
-            } else if (isActivePositionExpired()) {
+                exitPosition(spread, activePosition);
+            } else if (isActivePositionExpired(activePosition)) {
                 LOGGER.debug("exitPosition() {}/{} {} - active position timed out", longExchangeName, shortExchangeName, spread.getCurrencyPair());
-                exitPosition(spread);
+                exitPosition(spread, activePosition);
             } else if (spread.getOut().compareTo(activePosition.getExitTarget()) < 0) {
                 LOGGER.debug("exitPosition() {}/{} {} - spread out {} < exit target {}", longExchangeName, shortExchangeName, spread.getCurrencyPair(), spread.getOut(), activePosition.getExitTarget());
-                exitPosition(spread);
+                exitPosition(spread, activePosition);
             }
         }
     }
 
-    public ActivePosition getActivePosition() {
-        return activePosition;
+    // Take a slot in the position book before we spend any time sizing the trade, so that trades on other exchanges
+    // can't fill up the position limits behind our back. The slot becomes the position once it's put in the book,
+    // and it's given back whichever way enterPosition() gives up.
+    private void reserveAndEnterPosition(Spread spread, String longExchangeName, String shortExchangeName) {
+        if (!positionBook.reserve(longExchangeName, shortExchangeName, spread.getCurrencyPair())) {
+            LOGGER.debug("Cannot enter {}/{} {}: position limits reached", longExchangeName, shortExchangeName, spread.getCurrencyPair());
+            return;
+        }
+
+        try {
+            enterPosition(spread);
+        } finally {
+            positionBook.release(longExchangeName, shortExchangeName, spread.getCurrencyPair());
+        }
+    }
+
+    /**
+     * A quick check of whether trade() could possibly do anything with a spread, so we can skip building a Spread
+     * for the vast majority of tickers where it wouldn't. This doesn't lock or allocate anything. It errs on the side
+     * of returning true, and trade() still makes the real decision.
+     *
+     * @param tradeCombination The TradeCombination the spread was computed for.
+     * @param fixedSpread The spread in and spread out from SpreadService.computeSpread().
+     * @return false if trade() would certainly do nothing with this spread.
+     */
+    public boolean isTradeCandidate(TradeCombination tradeCombination, FixedSpread fixedSpread) {
+        if (bailOut) {
+            return true; // let trade() deal with it
+        }
+
+        if (positionBook.get(tradeCombination) != null) {
+            return true; // trade() checks whether it's time to exit
+        }
+
+        if (positionBook.isFull()) {
+            return false;
+        }
+
+        final long entrySpread = getFixedEntrySpread();
+
+        if (entrySpread == FixedPoint.NO_VALUE || fixedSpread.getIn() > entrySpread) {
+            return true;
+        }
+
+        return conditionService.isForceOpenCondition(
+            tradeCombination.getCurrencyPair(),
+            tradeCombination.getLongExchange().getExchangeSpecification().getExchangeName(),
+            tradeCombination.getShortExchange().getExchangeSpecification().getExchangeName());
+    }
+
+    /**
+     * Get all the positions we currently have open.
+     *
+     * @return An unmodifiable collection of ActivePositions.
+     */
+    public Collection<ActivePosition> getActivePositions() {
+        return positionBook.getAll();
+    }
+
+    /**
+     * Get the hit, miss and eviction counts for the order volume cache.
+     *
+     * @return A snapshot of the statistics.
+     */
+    public CacheStatistics getOrderVolumeCacheStatistics() {
+        return orderVolumeCache.getStatistics();
     }
 
-    public void setActivePosition(ActivePosition activePosition) {
-        this.activePosition = activePosition;
+    /**
+     * Get the open position for a TradeCombination.
+     *
+     * @param tradeCombination The TradeCombination.
+     * @return The ActivePosition, or null if we don't have one.
+     */
+    public ActivePosition getActivePosition(TradeCombination tradeCombination) {
+        return positionBook.get(tradeCombination);
+    }
+
+    /**
+     * Replace all the open positions, such as when loading them from the state file at startup.
+     *
+     * @param activePositions The open positions.
+     */
+    public void setActivePositions(Collection<ActivePosition> activePositions) {
+        positionBook.setAll(activePositions);
+        capitalAllocator.setReservations(activePositions);
     }
 
     // enter a position
     private void enterPosition(Spread spread) {
+        markLatency(spread.getLatencyTrace(), LatencyStage.DECISION);
+
         final String longExchangeName = spread.getLongExchange().getExchangeSpecification().getExchangeName();
         final String shortExchangeName = spread.getShortExchange().getExchangeSpecification().getExchangeName();
         final BigDecimal longFeePercent = exchangeService.getExchangeFee(spread.getLongExchange(), spread.getCurrencyPair(), true);
@@ -153,7 +307,7 @@ public class TradingService {
         final CurrencyPair currencyPairLongExchange = exchangeService.convertExchangePair(spread.getLongExchange(), spread.getCurrencyPair());
         final CurrencyPair currencyPairShortExchange = exchangeService.convertExchangePair(spread.getShortExchange(), spread.getCurrencyPair());
         final BigDecimal exitTarget = spread.getIn().subtract(tradingConfiguration.getExitTarget());
-        final BigDecimal maxExposure = getMaximumExposure(spread.getLongExchange(), spread.getShortExchange());
+        final BigDecimal maxExposure = capitalAllocator.getMaximumExposure(spread.getLongExchange(), spread.getShortExchange());
 
         // check whether we have enough money to trade (forcing it can't work if we can't afford it)
         if (!validateMaxExposure(maxExposure, spread, currencyPairLongExchange, currencyPairShortExchange)) {
@@ -216,6 +370,7 @@ public class TradingService {
         if (!conditionService.isForceOpenCondition(spread.getCurrencyPair(), longExchangeName, shortExchangeName)
             && spreadVerification.compareTo(tradingConfiguration.getEntrySpread()) < 0) {
             LOGGER.debug("Spread verification is less than entry spread, will not trade"); // this is debug because it can get spammy
+            logMaximumEntryVolume(spread, currencyPairLongExchange, currencyPairShortExchange);
             return;
         }
 
@@ -228,41 +383,54 @@ public class TradingService {
         final BigDecimal longVolumeWithFeesAndAdjustedStep = adjustStepSize(longExchangeMetaData, currencyPairLongExchange, longVolumeWithFees);
         final BigDecimal shortVolumeWithFeesAndAdjustedStep = adjustStepSize(shortExchangeMetaData, currencyPairShortExchange, shortVolumeWithFees);
 
+        final ActivePosition activePosition = new ActivePosition();
+
+        activePosition.setEntryTime(OffsetDateTime.now(clock));
+        activePosition.setCurrencyPair(spread.getCurrencyPair());
+        activePosition.setExitTarget(exitTarget);
+        activePosition.getLongTrade().setExchange(spread.getLongExchange());
+        activePosition.getLongTrade().setVolume(longVolume);
+        activePosition.getLongTrade().setEntry(longLimitPrice);
+        activePosition.getShortTrade().setExchange(spread.getShortExchange());
+        activePosition.getShortTrade().setVolume(shortVolume);
+        activePosition.getShortTrade().setEntry(shortLimitPrice);
+
+        if (!capitalAllocator.reserve(activePosition)) {
+            LOGGER.warn("Not enough free balance to enter {}/{} {}", longExchangeName, shortExchangeName, spread.getCurrencyPair());
+            return;
+        }
+
         logEntryTrade(spread, shortExchangeName, longExchangeName, exitTarget, longVolume, shortVolume, longLimitPrice, shortLimitPrice);
 
-        BigDecimal totalBalance = logCurrentExchangeBalances(spread.getLongExchange(), spread.getShortExchange());
+        activePosition.setEntryBalance(logCurrentExchangeBalances(spread.getLongExchange(), spread.getShortExchange()));
 
-        try {
-            activePosition = new ActivePosition();
-            activePosition.setEntryTime(OffsetDateTime.now());
-            activePosition.setCurrencyPair(spread.getCurrencyPair());
-            activePosition.setExitTarget(exitTarget);
-            activePosition.setEntryBalance(totalBalance);
-            activePosition.getLongTrade().setExchange(spread.getLongExchange());
-            activePosition.getLongTrade().setVolume(longVolume);
-            activePosition.getLongTrade().setEntry(longLimitPrice);
-            activePosition.getShortTrade().setExchange(spread.getShortExchange());
-            activePosition.getShortTrade().setVolume(shortVolume);
-            activePosition.getShortTrade().setEntry(shortLimitPrice);
+        // in the book before the orders go out, so nobody else opens a position on top of it
+        positionBook.put(activePosition);
 
+        // if we can't record the position we wouldn't know about it after a restart, so don't open it
+        if (!tradeJournal.append(JournalEvent.Type.ENTRY_INTENT, activePosition)) {
+            positionBook.remove(activePosition);
+            capitalAllocator.release(activePosition);
+            return;
+        }
+
+        try {
             executeOrderPair(
+                activePosition,
                 spread.getLongExchange(), spread.getShortExchange(),
                 spread.getCurrencyPair(),
                 longLimitPrice, shortLimitPrice,
                 longVolumeWithFeesAndAdjustedStep, shortVolumeWithFeesAndAdjustedStep,
-                true);
+                true,
+                spread.getLatencyTrace());
 
             notificationService.sendEmailNotificationBodyForEntryTrade(spread, exitTarget, longVolume,
                 longLimitPrice, shortVolume, shortLimitPrice);
         } catch (IOException e) {
             LOGGER.error("IOE executing limit orders: ", e);
-            activePosition = null;
-        }
-
-        try {
-            FileUtils.write(new File(STATE_FILE), objectMapper.writeValueAsString(activePosition), Charset.defaultCharset());
-        } catch (IOException e) {
-            LOGGER.error("Unable to write state file!", e);
+            positionBook.remove(activePosition);
+            capitalAllocator.release(activePosition);
+            tradeJournal.append(JournalEvent.Type.CANCELLED, activePosition);
         }
 
         conditionService.clearForceOpenCondition();
@@ -298,7 +466,9 @@ public class TradingService {
     }
 
     // exit a position
-    private void exitPosition(Spread spread) {
+    private void exitPosition(Spread spread, ActivePosition activePosition) {
+        markLatency(spread.getLatencyTrace(), LatencyStage.DECISION);
+
         final String longExchangeName = spread.getLongExchange().getExchangeSpecification().getExchangeName();
         final String shortExchangeName = spread.getShortExchange().getExchangeSpecification().getExchangeName();
 
@@ -357,7 +527,7 @@ public class TradingService {
             return;
         }
 
-        if (!isActivePositionExpired() && !conditionService.isForceCloseCondition() && spreadVerification.compareTo(activePosition.getExitTarget()) > 0) {
+        if (!isActivePositionExpired(activePosition) && !conditionService.isForceCloseCondition() && spreadVerification.compareTo(activePosition.getExitTarget()) > 0) {
             LOGGER.debug("Not enough liquidity to execute both trades profitably!");
             return;
         }
@@ -367,11 +537,10 @@ public class TradingService {
         //
         // Also, don't spam the logs with this warning. It's possible that this condition could last for awhile
         // and this code could be executed frequently.
-        if (isActivePositionExpired() && spreadVerification.compareTo(tradingConfiguration.getEntrySpread()) < 0) {
-            if (!timeoutExitWarning) {
+        if (isActivePositionExpired(activePosition) && spreadVerification.compareTo(tradingConfiguration.getEntrySpread()) < 0) {
+            if (timeoutExitWarnings.add(PositionBook.key(activePosition))) {
                 LOGGER.warn("Timeout exit triggered");
                 LOGGER.warn("Cannot exit now because spread would cause immediate reentry");
-                timeoutExitWarning = true;
             }
             return;
         }
@@ -385,7 +554,9 @@ public class TradingService {
         final BigDecimal longVolumeWithFeesAndAdjustedStep = adjustStepSize(spread.getLongExchange().getExchangeMetaData(), spread.getCurrencyPair(), longVolumeWithFees);
         final BigDecimal shortVolumeWithFeesAndAdjustedStep = adjustStepSize(spread.getShortExchange().getExchangeMetaData(), spread.getCurrencyPair(), shortVolumeWithFees);
 
-        logExitTrade();
+        logExitTrade(activePosition);
+
+        tradeJournal.append(JournalEvent.Type.EXIT_INTENT, activePosition);
 
         try {
             LOGGER.info("Exit spread: {}", spread.getOut());
@@ -412,11 +583,13 @@ public class TradingService {
                 shortVolume.multiply(spread.getShortTicker().getAsk()).toPlainString());
 
             executeOrderPair(
+                activePosition,
                 spread.getLongExchange(), spread.getShortExchange(),
                 spread.getCurrencyPair(),
                 longLimitPrice, shortLimitPrice,
                 longVolumeWithFeesAndAdjustedStep, shortVolumeWithFeesAndAdjustedStep,
-                false);
+                false,
+                spread.getLatencyTrace());
         } catch (IOException e) {
             LOGGER.error("IOE executing limit orders: ", e);
 
@@ -429,6 +602,10 @@ public class TradingService {
 
         LOGGER.info("Combined account balances on entry: ${}", activePosition.getEntryBalance());
 
+        // the profit calculation should use what the exchanges say, not our own arithmetic
+        balanceLedger.reconcile(spread.getLongExchange());
+        balanceLedger.reconcile(spread.getShortExchange());
+
         final BigDecimal updatedBalance = logCurrentExchangeBalances(spread.getLongExchange(), spread.getShortExchange());
         final BigDecimal profit = updatedBalance.subtract(activePosition.getEntryBalance());
 
@@ -449,20 +626,22 @@ public class TradingService {
             .withLongSlip(longLimitPrice.subtract(spread.getLongTicker().getBid()))
             .withLongAmount(longVolume.multiply(spread.getLongTicker().getBid()))
             .withProfit(profit)
-            .withTimestamp(OffsetDateTime.now())
+            .withTimestamp(OffsetDateTime.now(clock))
             .build();
 
-        persistArbitrageToCsvFile(arbitrageLog);
+        tradeHistoryWriter.write(arbitrageLog);
 
-        // Email notification must be sent before we set activePosition = null
         notificationService.sendEmailNotificationBodyForExitTrade(spread, longVolume, longLimitPrice, shortVolume,
             shortLimitPrice, activePosition.getEntryBalance(), updatedBalance);
 
-        activePosition = null;
+        positionBook.remove(activePosition);
+        capitalAllocator.release(activePosition);
+        timeoutExitWarnings.remove(PositionBook.key(activePosition));
 
-        FileUtils.deleteQuietly(new File(STATE_FILE));
+        tradeJournal.append(JournalEvent.Type.CLOSED, activePosition);
 
-        if (conditionService.isForceCloseCondition()) {
+        // a forced exit closes every position, so keep the condition until they're all gone
+        if (conditionService.isForceCloseCondition() && positionBook.isEmpty()) {
             conditionService.clearForceCloseCondition();
         }
     }
@@ -522,10 +701,9 @@ public class TradingService {
     }
 
     // convenience method to encapsulate logging an exit
-    private void logExitTrade() {
-        if (isActivePositionExpired()) {
+    private void logExitTrade(ActivePosition activePosition) {
+        if (isActivePositionExpired(activePosition)) {
             LOGGER.warn("***** TIMEOUT EXIT *****");
-            timeoutExitWarning = false;
         } else if (conditionService.isForceCloseCondition()) {
             LOGGER.warn("***** FORCED EXIT *****");
         } else {
@@ -589,11 +767,13 @@ public class TradingService {
     }
 
     // execute a buy and a sell together
-    private void executeOrderPair(Exchange longExchange, Exchange shortExchange,
+    private void executeOrderPair(ActivePosition activePosition,
+                                  Exchange longExchange, Exchange shortExchange,
                                   CurrencyPair currencyPair,
                                   BigDecimal longLimitPrice, BigDecimal shortLimitPrice,
                                   BigDecimal longVolume, BigDecimal shortVolume,
-                                  boolean isPositionOpen) throws IOException, ExchangeException {
+                                  boolean isPositionOpen,
+                                  LatencyTrace latencyTrace) throws IOException, ExchangeException {
 
         // build two limit orders - orders that execute at a specific price
         // this helps us to get the "maker" price on exchanges where the fees are lower for makers
@@ -616,95 +796,183 @@ public class TradingService {
             shortExchange.getExchangeSpecification().getExchangeName(),
             shortLimitOrder);
 
-        try { // get the order IDs from each exchange
-            String longOrderId = longExchange.getTradeService().placeLimitOrder(longLimitOrder);
-            String shortOrderId = shortExchange.getTradeService().placeLimitOrder(shortLimitOrder);
+        // keep the ledger from reconciling these exchanges until it knows what happened to our orders
+        balanceLedger.hold(longExchange, shortExchange);
+
+        try {
+            // Place both orders at the same time so the second one doesn't have to wait for a round trip to the first
+            // exchange. By the time that finishes, the prices we're trying to catch may well be gone.
+            markLatency(latencyTrace, LatencyStage.SUBMITTED);
+
+            CompletableFuture<PlacedOrder> longFuture = placeLimitOrder(longExchange, longLimitOrder);
+            CompletableFuture<PlacedOrder> shortFuture = placeLimitOrder(shortExchange, shortLimitOrder);
+            PlacedOrder longOrder = longFuture.join();
+            PlacedOrder shortOrder = shortFuture.join();
+
+            markLatency(latencyTrace, LatencyStage.ACKNOWLEDGED);
+
+            LOGGER.info("{} limit order ID: {} ({} ms)",
+                longExchange.getExchangeSpecification().getExchangeName(),
+                longOrder.getOrderId(),
+                longOrder.getLatencyMillis());
+            LOGGER.info("{} limit order ID: {} ({} ms)",
+                shortExchange.getExchangeSpecification().getExchangeName(),
+                shortOrder.getOrderId(),
+                shortOrder.getLatencyMillis());
+
+            if (longOrder.isFailed() || shortOrder.isFailed()) {
+                handleFailedOrderPair(longOrder, shortOrder);
+                return;
+            }
 
-            // TODO not happy with this coupling, need to refactor this
             // activePosition tracks the orders we just opened
             if (isPositionOpen) {
-                activePosition.getLongTrade().setOrderId(longOrderId);
-                activePosition.getShortTrade().setOrderId(shortOrderId);
+                activePosition.getLongTrade().setOrderId(longOrder.getOrderId());
+                activePosition.getShortTrade().setOrderId(shortOrder.getOrderId());
             } else {
                 activePosition.getLongTrade().setOrderId(null);
                 activePosition.getShortTrade().setOrderId(null);
             }
 
-            LOGGER.info("{} limit order ID: {}",
-                longExchange.getExchangeSpecification().getExchangeName(),
-                longOrderId);
-            LOGGER.info("{} limit order ID: {}",
-                shortExchange.getExchangeSpecification().getExchangeName(),
-                shortOrderId);
-        } catch (ExchangeException e) {
-            // At this point we may or may not have executed one of the trades so we're in an unknown state.
-            // For now, we'll just bail out and let the human figure out what to do to fix it.
-            // TODO Look at both exchanges and attempt close any open positions.
-            LOGGER.error("Exchange returned an error executing trade!", e);
-            bailOut = true;
+            tradeJournal.append(isPositionOpen ? JournalEvent.Type.ENTRY_PLACED : JournalEvent.Type.EXIT_PLACED, activePosition);
+
+            LOGGER.info("Waiting for limit orders to complete...");
+
+            // Let go of the exchange locks while we wait, so other positions on these exchanges can trade. Their
+            // balances are already reserved, and nobody else touches this position until its orders are done.
+            positionBook.beginFillWait(activePosition);
+
+            CompletableFuture<Order> longFill = orderFillService.awaitFill(longExchange, longLimitOrder.getCurrencyPair(), longOrder.getOrderId());
+            CompletableFuture<Order> shortFill = orderFillService.awaitFill(shortExchange, shortLimitOrder.getCurrencyPair(), shortOrder.getOrderId());
+
+            try {
+                CompletableFuture.allOf(longFill, shortFill).join();
+            } catch (CompletionException e) {
+                LOGGER.error("Stopped waiting for limit orders to complete: ", e.getCause());
+            } finally {
+                positionBook.endFillWait(activePosition);
+            }
+
+            // update the ledger with what the exchanges say filled, before anyone else can reconcile them
+            applyFill(longExchange, currencyPair, longLimitOrder, getFinishedOrder(longFill));
+            applyFill(shortExchange, currencyPair, shortLimitOrder, getFinishedOrder(shortFill));
+        } finally {
+            balanceLedger.release(longExchange, shortExchange);
+        }
+
+        // the exit is finished off by the caller once the profit is logged
+        if (isPositionOpen) {
+            tradeJournal.append(JournalEvent.Type.ENTRY_FILLED, activePosition);
+        }
+
+        // yay!
+        LOGGER.info("Trades executed successfully!");
+    }
+
+    // Update the ledger with the amount that filled at the price it filled at. If the exchange didn't tell us, any guess
+    // could be wrong in either direction, so make the ledger ask the exchange before the next trade.
+    private void applyFill(Exchange exchange, CurrencyPair currencyPair, LimitOrder limitOrder, Order finishedOrder) {
+        if (finishedOrder == null
+            || finishedOrder.getCumulativeAmount() == null
+            || (finishedOrder.getCumulativeAmount().signum() > 0 && finishedOrder.getAveragePrice() == null)) {
+
+            LOGGER.warn("{} did not confirm how much of our {} order filled",
+                exchange.getExchangeSpecification().getExchangeName(),
+                limitOrder.getType());
+
+            balanceLedger.markDirty(exchange);
             return;
         }
 
-        LOGGER.info("Waiting for limit orders to complete...");
+        if (finishedOrder.getCumulativeAmount().signum() == 0) {
+            return;
+        }
 
-        OpenOrders longOpenOrders;
-        OpenOrders shortOpenOrders;
-        int count = 0;
+        balanceLedger.applyFill(exchange, limitOrder.getCurrencyPair(), limitOrder.getType(),
+            finishedOrder.getCumulativeAmount(), finishedOrder.getAveragePrice(),
+            exchangeService.getExchangeFee(exchange, currencyPair, true));
+    }
 
-        // every few seconds check the exchanges to see if our orders are filled yet
-        do {
-            longOpenOrders = fetchOpenOrders(longExchange).orElse(null);
-            shortOpenOrders = fetchOpenOrders(shortExchange).orElse(null);
+    // the order as the exchange last reported it, or null if we stopped waiting before we found out
+    private static Order getFinishedOrder(CompletableFuture<Order> fill) {
+        try {
+            return fill.getNow(null);
+        } catch (CompletionException | CancellationException e) {
+            return null;
+        }
+    }
 
-            // only print the warning every 10th iteration
-            // but do print warnings because otherwise I worry that the computer has died
-            if (longOpenOrders != null && !longOpenOrders.getOpenOrders().isEmpty() && count % 10 == 0) {
-                LOGGER.warn(collectOpenOrders(longExchange, longOpenOrders));
-            }
+    // spreads that didn't come from a ticker event, like the ones from the command line, aren't being timed
+    private static void markLatency(LatencyTrace latencyTrace, LatencyStage stage) {
+        if (latencyTrace != null) {
+            latencyTrace.mark(stage);
+        }
+    }
 
-            if (shortOpenOrders != null && !shortOpenOrders.getOpenOrders().isEmpty() && count % 10 == 0) {
-                LOGGER.warn(collectOpenOrders(shortExchange, shortOpenOrders));
-            }
+    // place a limit order on the order executor, keeping track of how long the exchange took to accept it
+    private CompletableFuture<PlacedOrder> placeLimitOrder(Exchange exchange, LimitOrder limitOrder) {
+        return CompletableFuture.supplyAsync(() -> {
+            final long start = System.nanoTime();
 
-            count++;
+            PlacedOrder placedOrder;
 
             try {
-                // yes this is a busy wait, the bot has nothing better to do right now except wait for the orders to fill
-                //noinspection BusyWait
-                Thread.sleep(3000);
-            } catch (InterruptedException e) {
-                LOGGER.trace("Sleep interrupted!", e);
+                String orderId = exchange.getTradeService().placeLimitOrder(limitOrder);
+
+                placedOrder = new PlacedOrder(exchange, orderId, null, System.nanoTime() - start);
+            } catch (IOException | RuntimeException e) {
+                placedOrder = new PlacedOrder(exchange, null, e, System.nanoTime() - start);
             }
-        } while (longOpenOrders == null || !longOpenOrders.getOpenOrders().isEmpty()
-            || shortOpenOrders == null || !shortOpenOrders.getOpenOrders().isEmpty());
 
-        // invalidate the balance cache because we *know* it's incorrect now
-        exchangeBalanceCache.invalidate(longExchange, shortExchange);
+            metricsService.recordOrder(exchange, placedOrder.getLatencyNanos(), placedOrder.isFailed());
 
-        // yay!
-        LOGGER.info("Trades executed successfully!");
+            return placedOrder;
+        }, orderExecutor);
     }
 
-    // summarize all the open orders on an exchange, used while we're waiting for orders to fill
-    private String collectOpenOrders(Exchange exchange, OpenOrders openOrders) {
-        String header = String.format("%s has the following open orders:\n", exchange.getExchangeSpecification().getExchangeName());
+    // one or both orders failed, so figure out what state that leaves us in
+    private void handleFailedOrderPair(PlacedOrder longOrder, PlacedOrder shortOrder) throws IOException {
+        if (longOrder.isFailed() && shortOrder.isFailed()) {
+            LOGGER.error("{} returned an error placing the long order!", longOrder.getExchangeName(), longOrder.getFailure());
+            LOGGER.error("{} returned an error placing the short order!", shortOrder.getExchangeName(), shortOrder.getFailure());
 
-        return header + openOrders.getOpenOrders()
-            .stream()
-            .map(LimitOrder::toString)
-            .collect(Collectors.joining("\n"));
-    }
+            // an IOException leaves things the way they were before, the same as if we had placed the orders one at a time
+            if (longOrder.getFailure() instanceof IOException && shortOrder.getFailure() instanceof IOException) {
+                IOException e = (IOException) longOrder.getFailure();
+
+                e.addSuppressed(shortOrder.getFailure());
+                throw e;
+            }
+
+            // At this point we may or may not have executed one of the trades so we're in an unknown state.
+            // For now, we'll just bail out and let the human figure out what to do to fix it.
+            bailOut = true;
+            return;
+        }
+
+        // One order was placed and the other wasn't, so we're holding one side of the trade without the other.
+        // Try to cancel the one that went through, but we can't know whether any of it filled in the meantime
+        // so the human still needs to take a look.
+        PlacedOrder failed = longOrder.isFailed() ? longOrder : shortOrder;
+        PlacedOrder placed = longOrder.isFailed() ? shortOrder : longOrder;
+
+        LOGGER.error("{} returned an error placing an order, but the order on {} was placed!",
+            failed.getExchangeName(),
+            placed.getExchangeName(),
+            failed.getFailure());
 
-    // fetch open orders from the exchange
-    private Optional<OpenOrders> fetchOpenOrders(Exchange exchange) {
         try {
-            return Optional.of(exchange.getTradeService().getOpenOrders());
-        } catch (IOException | ExchangeException e) {
-            LOGGER.error("{} threw an Exception while fetching open orders: ",
-                exchange.getExchangeSpecification().getExchangeName(), e);
+            boolean isCancelled = placed.getExchange().getTradeService().cancelOrder(placed.getOrderId());
+
+            LOGGER.error("{} order {} {} cancelled",
+                placed.getExchangeName(),
+                placed.getOrderId(),
+                isCancelled ? "was" : "could not be");
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("{} returned an error cancelling order {}!", placed.getExchangeName(), placed.getOrderId(), e);
         }
 
-        return Optional.empty();
+        bailOut = true;
     }
 
     /**
@@ -778,7 +1046,8 @@ public class TradingService {
     }
 
     /**
-     * Figure out the price for a limit order based on the order book. Computationally expensive, but accurate.
+     * Figure out the price for a limit order based on the order book. Uses the order book from the OrderBookCache
+     * when there is a current one, otherwise asks the exchange.
      *
      * @param exchange The exchange to use.
      * @param rawCurrencyPair The currency pair to use, not converted for home currency.
@@ -790,23 +1059,19 @@ public class TradingService {
         CurrencyPair currencyPair = exchangeService.convertExchangePair(exchange, rawCurrencyPair);
 
         try {
-            OrderBook orderBook = exchange.getMarketDataService().getOrderBook(currencyPair);
-            List<LimitOrder> orders = orderType.equals(Order.OrderType.ASK) ? orderBook.getAsks() : orderBook.getBids();
-            BigDecimal price;
-            BigDecimal volume = BigDecimal.ZERO;
-
-            // Walk through orders, ordered by price, until we satisfy all the volume we need.
-            // Return the price of the last order we see.
+            // Find the price of the first order where the cumulative volume is more than we need.
             //
             // If we set our limit order at this price (without waiting too long) it is very likely to fill
             // because we know the exchange has enough currency available to fill it at this or a better price.
-            for (LimitOrder order : orders) {
-                price = order.getLimitPrice();
-                volume = volume.add(order.getRemainingAmount());
+            DepthBook depthBook = getDepthBook(exchange, currencyPair);
 
-                if (volume.compareTo(allowedVolume) > 0) {
-                    return price;
-                }
+            marketDataRecorder.recordOrderBook(exchange, currencyPair, depthBook);
+
+            // the price as the exchange quoted it, since it may have more decimal places than a scaled long
+            BigDecimal price = depthBook.getExactLimitPrice(orderType, FixedPoint.toFixed(allowedVolume));
+
+            if (price != null) {
+                return price;
             }
         } catch (IOException e) {
             LOGGER.error("IOE fetching {} {} order volume", exchange.getExchangeSpecification().getExchangeName(), currencyPair, e);
@@ -815,73 +1080,55 @@ public class TradingService {
         throw new RuntimeException("Not enough liquidity on exchange to fulfill required volume!");
     }
 
-    /**
-     * Figure out the largest trade we can make in our home currency. If fixedExposure is configured, just
-     * use that value. Otherwise, go through each of the exchanges passed in and find the smallest balance,
-     * then multiply by TRADE_PORTION to find the amount to trade.
-     *
-     * @param exchanges A list of exchanges to inspect balances for.
-     * @return The maximum amount that can be traded across the given exchanges.
-     */
-    BigDecimal getMaximumExposure(Exchange ... exchanges) {
-        if (tradingConfiguration.getFixedExposure() != null) {
-            return tradingConfiguration.getFixedExposure();
-        } else {
-            BigDecimal smallestBalance = Arrays.stream(exchanges)
-                .parallel()
-                .map(exchange -> exchangeBalanceCache.getCachedBalance(exchange) // try the cache first
-                    .orElseGet(() -> {
-                        try {
-                            BigDecimal balance = exchangeService.getAccountBalance(exchange); // then make the API call
+    // log how much we could have traded at the entry spread, which helps when tuning fixedExposure
+    private void logMaximumEntryVolume(Spread spread, CurrencyPair currencyPairLongExchange, CurrencyPair currencyPairShortExchange) {
+        if (!LOGGER.isDebugEnabled()) {
+            return;
+        }
 
-                            exchangeBalanceCache.setCachedBalance(exchange, balance); // cache the returned value
+        try {
+            long volume = DepthBook.getMaximumVolume(
+                getDepthBook(spread.getLongExchange(), currencyPairLongExchange),
+                getDepthBook(spread.getShortExchange(), currencyPairShortExchange),
+                FixedPoint.toFixed(tradingConfiguration.getEntrySpread(), RoundingMode.CEILING));
 
-                            return balance;
-                        } catch (IOException e) {
-                            LOGGER.info("IOException fetching {} account balance", exchange.getExchangeSpecification().getExchangeName());
+            LOGGER.debug("Order books support {} {} at the entry spread", FixedPoint.toBigDecimal(volume), spread.getCurrencyPair().base);
+        } catch (IOException e) {
+            LOGGER.debug("IOE fetching order books: {}", e.getMessage());
+        }
+    }
 
-                            // set the cache to zero so we don't keep spamming the API when there's an IOException
-                            // we may have gotten the IOE because of rate limiting
-                            // this cache entry will only last a short time
-                            // but it will make us back off awhile before trying again
-                            exchangeBalanceCache.setCachedBalance(exchange, BigDecimal.ZERO);
-                        }
+    // get an order book from the cache if we can, or from the exchange if we have to
+    private DepthBook getDepthBook(Exchange exchange, CurrencyPair currencyPair) throws IOException {
+        Optional<DepthBook> cachedDepthBook = orderBookCache.getCachedDepthBook(exchange, currencyPair);
 
-                        return BigDecimal.ZERO; // just return a zero balance if we couldn't get anything
-                    }))
-                .min(BigDecimal::compareTo)
-                .orElse(BigDecimal.ZERO);
+        if (cachedDepthBook.isPresent()) {
+            return cachedDepthBook.get();
+        }
 
-            BigDecimal exposure = smallestBalance
-                .multiply(TRADE_PORTION)
-                .setScale(DecimalConstants.USD_SCALE, RoundingMode.HALF_EVEN);
+        OrderBook orderBook = exchange.getMarketDataService().getOrderBook(currencyPair);
 
-            LOGGER.debug("Maximum exposure for {}: {}", exchanges, exposure);
+        orderBookCache.setSnapshotOrderBook(exchange, currencyPair, orderBook);
 
-            return exposure;
-        }
+        return orderBookCache.getCachedDepthBook(exchange, currencyPair).orElseGet(() -> new DepthBook(orderBook));
     }
 
     // log the balances of two exchanges and the sum of both
     private BigDecimal logCurrentExchangeBalances(Exchange longExchange, Exchange shortExchange) {
-        try {
-            BigDecimal longBalance = exchangeService.getAccountBalance(longExchange);
-            BigDecimal shortBalance = exchangeService.getAccountBalance(shortExchange);
-            BigDecimal totalBalance = longBalance.add(shortBalance);
+        BigDecimal longBalance = balanceLedger.getBalance(longExchange, exchangeService.getExchangeHomeCurrency(longExchange))
+            .setScale(DecimalConstants.USD_SCALE, RoundingMode.HALF_EVEN);
+        BigDecimal shortBalance = balanceLedger.getBalance(shortExchange, exchangeService.getExchangeHomeCurrency(shortExchange))
+            .setScale(DecimalConstants.USD_SCALE, RoundingMode.HALF_EVEN);
+        BigDecimal totalBalance = longBalance.add(shortBalance);
 
-            LOGGER.info("Updated account balances: {} ${} + {} ${} = ${}",
-                longExchange.getExchangeSpecification().getExchangeName(),
-                longBalance,
-                shortExchange.getExchangeSpecification().getExchangeName(),
-                shortBalance,
-                totalBalance);
-
-            return totalBalance;
-        } catch (IOException e) {
-            LOGGER.error("IOE fetching account balances: ", e);
-        }
+        LOGGER.info("Updated account balances: {} ${} + {} ${} = ${}",
+            longExchange.getExchangeSpecification().getExchangeName(),
+            longBalance,
+            shortExchange.getExchangeSpecification().getExchangeName(),
+            shortBalance,
+            totalBalance);
 
-        return BigDecimal.ZERO;
+        return totalBalance;
     }
 
     /**
@@ -909,32 +1156,68 @@ public class TradingService {
         return result;
     }
 
+    // The entry spread as a scaled long, rounded down so that "spread in > entry spread" gives the same answer in fixed
+    // point as it does with BigDecimal. It is only converted again if the configuration changes.
+    private long getFixedEntrySpread() {
+        final BigDecimal entrySpread = tradingConfiguration.getEntrySpread();
+
+        if (entrySpread != fixedEntrySpreadSource) {
+            fixedEntrySpread = FixedPoint.toFixed(entrySpread, RoundingMode.FLOOR);
+            fixedEntrySpreadSource = entrySpread;
+        }
+
+        return fixedEntrySpread;
+    }
+
     // determine whether a trade has exceeded the configured trade timeout
-    private boolean isActivePositionExpired() {
+    private boolean isActivePositionExpired(ActivePosition activePosition) {
         if (tradingConfiguration.getTradeTimeout() == null || activePosition == null || activePosition.getEntryTime() == null) {
             return false;
         }
 
-        return activePosition.getEntryTime().plusHours(tradingConfiguration.getTradeTimeout()).isBefore(OffsetDateTime.now());
+        return activePosition.getEntryTime().plusHours(tradingConfiguration.getTradeTimeout()).isBefore(OffsetDateTime.now(clock));
     }
 
-    /**
-     * Write an entry in the trade history file.
-     *
-     * @param arbitrageLog A log message to write to the TRADE_HISTORY_FILE.
-     */
-    void persistArbitrageToCsvFile(ArbitrageLog arbitrageLog) {
-        final File csvFile = new File(TRADE_HISTORY_FILE);
+    // the outcome of placing one limit order
+    private static class PlacedOrder {
+        private final Exchange exchange;
+        private final String orderId;
+        private final Exception failure;
+        private final long latency;
+
+        PlacedOrder(Exchange exchange, String orderId, Exception failure, long latency) {
+            this.exchange = exchange;
+            this.orderId = orderId;
+            this.failure = failure;
+            this.latency = latency;
+        }
 
-        try {
-            if (!csvFile.exists()) {
-                // Add headers first
-                FileUtils.write(csvFile, arbitrageLog.csvHeaders(), StandardCharsets.UTF_8, csvFile.exists());
-            }
-            FileUtils.write(csvFile, arbitrageLog.toCsv(), StandardCharsets.UTF_8, csvFile.exists());
+        Exchange getExchange() {
+            return exchange;
         }
-        catch (IOException e) {
-            LOGGER.error("Unable to log the trade into the csv file. Reason: {}", e.getMessage());
+
+        String getExchangeName() {
+            return exchange.getExchangeSpecification().getExchangeName();
+        }
+
+        String getOrderId() {
+            return orderId;
+        }
+
+        Exception getFailure() {
+            return failure;
+        }
+
+        boolean isFailed() {
+            return failure != null;
+        }
+
+        long getLatencyNanos() {
+            return latency;
+        }
+
+        long getLatencyMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(latency);
         }
     }
 }
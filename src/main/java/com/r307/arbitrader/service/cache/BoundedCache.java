@@ -0,0 +1,205 @@
+package com.r307.arbitrader.service.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+
+/**
+ * A thread safe cache that holds a limited number of values. When it is full, adding a value evicts the one that
+ * was used least recently. Values can also be given a time to live, after which they are evicted the next time
+ * someone asks for them.
+ *
+ * Every cache counts its hits, misses and evictions so we can tell whether it is the right size.
+ *
+ * @param <K> The type of the keys.
+ * @param <V> The type of the values.
+ */
+public class BoundedCache<K, V> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(BoundedCache.class);
+
+    private final String name;
+    private final int maxSize;
+    private final Duration timeToLive;
+    private final Clock clock;
+    private final Map<K, Entry<V>> cache; // guarded by this
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Create a cache that evicts only when it is full.
+     *
+     * @param name A name for the cache, for logging.
+     * @param maxSize The most values the cache can hold.
+     */
+    public BoundedCache(String name, int maxSize) {
+        this(name, maxSize, null, Clock.systemUTC());
+    }
+
+    /**
+     * Create a cache that evicts when it is full and when values get too old.
+     *
+     * @param name A name for the cache, for logging.
+     * @param maxSize The most values the cache can hold.
+     * @param timeToLive How long a value is good for, or null if values never expire.
+     */
+    public BoundedCache(String name, int maxSize, Duration timeToLive) {
+        this(name, maxSize, timeToLive, Clock.systemUTC());
+    }
+
+    BoundedCache(String name, int maxSize, Duration timeToLive, Clock clock) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Cache size must be at least 1");
+        }
+
+        this.name = name;
+        this.maxSize = maxSize;
+        this.timeToLive = timeToLive;
+        this.clock = clock;
+
+        // access order makes the first entry the least recently used one
+        this.cache = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                if (size() > BoundedCache.this.maxSize) {
+                    evictions.incrementAndGet();
+                    LOGGER.debug("{} cache evicted {}", BoundedCache.this.name, eldest.getKey());
+
+                    return true;
+                }
+
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Get a value from the cache.
+     *
+     * @param key The key.
+     * @return The value, if there is one that hasn't expired.
+     */
+    public synchronized Optional<V> get(K key) {
+        final Entry<V> entry = getEntry(key);
+
+        if (entry == null) {
+            misses.incrementAndGet();
+
+            return Optional.empty();
+        }
+
+        hits.incrementAndGet();
+
+        return Optional.of(entry.getValue());
+    }
+
+    /**
+     * Check whether the cache has a value for a key without counting it as a hit or a miss.
+     *
+     * @param key The key.
+     * @return true if there is a value that hasn't expired.
+     */
+    public synchronized boolean containsKey(K key) {
+        return getEntry(key) != null;
+    }
+
+    /**
+     * Put a value into the cache, evicting the least recently used value if the cache is full.
+     *
+     * @param key The key.
+     * @param value The value.
+     */
+    public synchronized void put(K key, V value) {
+        cache.put(key, new Entry<>(value, clock.millis()));
+    }
+
+    /**
+     * Compute a new value from the current one in a single step, so nobody else can change it in between. The
+     * function is called while holding the lock on the cache, so it should be quick.
+     *
+     * @param key The key.
+     * @param function Given the key and the current value, or null if there isn't one, returns the new value. If it
+     *                 returns null the value is removed.
+     * @return The new value.
+     */
+    public synchronized V compute(K key, BiFunction<K, V, V> function) {
+        final Entry<V> entry = getEntry(key);
+        final V value = function.apply(key, entry == null ? null : entry.getValue());
+
+        if (value == null) {
+            cache.remove(key);
+        } else if (entry == null || entry.getValue() != value) {
+            cache.put(key, new Entry<>(value, clock.millis()));
+        }
+
+        return value;
+    }
+
+    /**
+     * Remove a value from the cache.
+     *
+     * @param key The key.
+     */
+    public synchronized void remove(K key) {
+        cache.remove(key);
+    }
+
+    /**
+     * Get the number of values in the cache, including any that have expired but haven't been evicted yet.
+     *
+     * @return The number of values in the cache.
+     */
+    public synchronized int size() {
+        return cache.size();
+    }
+
+    /**
+     * Get the hit, miss and eviction counts for this cache.
+     *
+     * @return A snapshot of the statistics.
+     */
+    public CacheStatistics getStatistics() {
+        return new CacheStatistics(name, size(), maxSize, hits.get(), misses.get(), evictions.get());
+    }
+
+    // get an entry, evicting it if it has expired
+    private Entry<V> getEntry(K key) {
+        final Entry<V> entry = cache.get(key);
+
+        if (entry != null && timeToLive != null && clock.millis() - entry.getCreated() > timeToLive.toMillis()) {
+            cache.remove(key);
+            evictions.incrementAndGet();
+            LOGGER.debug("{} cache expired {}", name, key);
+
+            return null;
+        }
+
+        return entry;
+    }
+
+    // a value and when it was put into the cache
+    private static class Entry<V> {
+        private final V value;
+        private final long created;
+
+        Entry(V value, long created) {
+            this.value = value;
+            this.created = created;
+        }
+
+        V getValue() {
+            return value;
+        }
+
+        long getCreated() {
+            return created;
+        }
+    }
+}
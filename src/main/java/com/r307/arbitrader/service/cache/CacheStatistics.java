@@ -0,0 +1,69 @@
+package com.r307.arbitrader.service.cache;
+
+/**
+ * A snapshot of how well a BoundedCache is working.
+ */
+public class CacheStatistics {
+    private final String name;
+    private final int size;
+    private final int maxSize;
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+
+    public CacheStatistics(String name, int size, int maxSize, long hits, long misses, long evictions) {
+        this.name = name;
+        this.size = size;
+        this.maxSize = maxSize;
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Get the portion of lookups that found a value.
+     *
+     * @return The hit ratio between 0 and 1, or 0 if there haven't been any lookups.
+     */
+    public double getHitRatio() {
+        final long lookups = hits + misses;
+
+        return lookups == 0 ? 0.0 : (double) hits / lookups;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d/%d entries, %d hits, %d misses (%.1f%% hit), %d evictions",
+            name,
+            size,
+            maxSize,
+            hits,
+            misses,
+            getHitRatio() * 100,
+            evictions);
+    }
+}
@@ -2,41 +2,187 @@ package com.r307.arbitrader.service.cache;
 
 import org.knowm.xchange.Exchange;
 import org.knowm.xchange.currency.CurrencyPair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PreDestroy;
 import java.math.BigDecimal;
-import java.util.HashMap;
-import java.util.Map;
+import java.time.Clock;
+import java.time.Duration;
 import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
 
 /**
  * Cache exchange fee amounts. They don't change that often and we request them frequently,
  * so this saves us from a lot of API rate limiting.
+ *
+ * Fees do change now and then, such as when our trading volume moves us into a different tier, so a fee can be
+ * given a loader and a refresh interval. The loader is called again in the background on that interval to keep the
+ * fee fresh. Until it succeeds we keep returning the old fee, so looking up a fee never has to wait for the exchange.
+ *
+ * We only cache fees for the pairs we trade, so the cache should never fill up. If it somehow does, the least recently
+ * used fee is evicted and stops being refreshed.
  */
 @Component
 public class ExchangeFeeCache {
-    private final Map<String, BigDecimal> cache = new HashMap<>();
+    private static final Logger LOGGER = LoggerFactory.getLogger(ExchangeFeeCache.class);
+
+    public static final int CACHE_SIZE = 1000;
+
+    private final BoundedCache<String, CachedFee> cache = new BoundedCache<>("Exchange fee", CACHE_SIZE);
+    private final ScheduledExecutorService scheduler;
+    private final Clock clock;
+
+    public ExchangeFeeCache() {
+        this(Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "fee-refresh");
+
+            thread.setDaemon(true);
+
+            return thread;
+        }), Clock.systemUTC());
+    }
+
+    ExchangeFeeCache(ScheduledExecutorService scheduler, Clock clock) {
+        this.scheduler = scheduler;
+        this.clock = clock;
+    }
 
     /**
-     * Return a fee from the cache.
+     * Return a fee from the cache. If the fee is older than its refresh interval, because the last background
+     * refresh failed or hasn't run yet, it is returned anyway and another refresh is started.
      *
      * @param exchange The Exchange to fetch a fee from.
      * @param currencyPair The CurrencyPair to fetch a fee from.
      * @return The fee as a decimal such as 0.0016, or 0.16%
      */
     public Optional<BigDecimal> getCachedFee(Exchange exchange, CurrencyPair currencyPair) {
-        return Optional.ofNullable(cache.get(computeCacheKey(exchange, currencyPair)));
+        final Optional<CachedFee> cachedFee = cache.get(computeCacheKey(exchange, currencyPair));
+
+        cachedFee
+            .filter(fee -> fee.isStale(clock.millis()))
+            .ifPresent(this::startRefresh);
+
+        return cachedFee.map(CachedFee::getFee);
     }
 
     /**
-     * Include a fee in the cache.
+     * Include a fee in the cache. A fee cached this way is kept until it is replaced.
      *
      * @param exchange The Exchange this fee comes from.
      * @param currencyPair The CurrencyPair this fee is for.
      * @param fee The fee as a decimal, such as 0.0016 for 0.16%
      */
     public void setCachedFee(Exchange exchange, CurrencyPair currencyPair, BigDecimal fee) {
-        cache.put(computeCacheKey(exchange, currencyPair), fee);
+        cache.compute(computeCacheKey(exchange, currencyPair), (key, cachedFee) -> {
+            if (cachedFee == null) {
+                return new CachedFee(key, fee, clock.millis(), null, null);
+            }
+
+            cachedFee.update(fee, clock.millis());
+
+            return cachedFee;
+        });
+    }
+
+    /**
+     * Include a fee in the cache and keep it fresh by calling the loader again in the background on an interval.
+     * If the fee is already being refreshed, it is replaced but the existing schedule is kept.
+     *
+     * @param exchange The Exchange this fee comes from.
+     * @param currencyPair The CurrencyPair this fee is for.
+     * @param fee The fee as a decimal, such as 0.0016 for 0.16%
+     * @param interval How often to refresh the fee.
+     * @param loader Fetches the current fee from the exchange.
+     */
+    public void setCachedFee(Exchange exchange, CurrencyPair currencyPair, BigDecimal fee,
+                             Duration interval, Supplier<BigDecimal> loader) {
+
+        final String key = computeCacheKey(exchange, currencyPair);
+        final AtomicBoolean isNew = new AtomicBoolean(false);
+
+        final CachedFee cachedFee = cache.compute(key, (k, existing) -> {
+            if (existing == null || existing.getLoader() == null) {
+                isNew.set(true);
+
+                return new CachedFee(key, fee, clock.millis(), interval, loader);
+            }
+
+            existing.update(fee, clock.millis());
+
+            return existing;
+        });
+
+        if (isNew.get()) {
+            cachedFee.setSchedule(scheduler.scheduleWithFixedDelay(
+                () -> scheduledRefresh(cachedFee),
+                interval.toMillis(),
+                interval.toMillis(),
+                TimeUnit.MILLISECONDS));
+        }
+    }
+
+    /**
+     * Get the hit, miss and eviction counts for this cache.
+     *
+     * @return A snapshot of the statistics.
+     */
+    public CacheStatistics getStatistics() {
+        return cache.getStatistics();
+    }
+
+    /**
+     * Stop refreshing fees.
+     */
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    // refresh in the background, unless a refresh is already running
+    private void startRefresh(CachedFee cachedFee) {
+        if (cachedFee.getRefreshing().compareAndSet(false, true)) {
+            scheduler.execute(() -> refresh(cachedFee));
+        }
+    }
+
+    // refresh on the schedule, unless a refresh started by a stale lookup is still running
+    private void scheduledRefresh(CachedFee cachedFee) {
+        if (cachedFee.getRefreshing().compareAndSet(false, true)) {
+            refresh(cachedFee);
+        }
+    }
+
+    // call the loader and cache what it returns, or keep the old fee if it fails
+    private void refresh(CachedFee cachedFee) {
+        if (!cache.containsKey(cachedFee.getKey())) {
+            LOGGER.debug("{} fee was evicted, no longer refreshing it", cachedFee.getKey());
+            cachedFee.cancel();
+            return;
+        }
+
+        try {
+            final BigDecimal fee = cachedFee.getLoader().get();
+
+            if (fee.compareTo(cachedFee.getFee()) != 0) {
+                LOGGER.info("{} fee changed from {} to {}", cachedFee.getKey(), cachedFee.getFee(), fee);
+            }
+
+            cachedFee.update(fee, clock.millis());
+        } catch (RuntimeException e) {
+            LOGGER.warn("Unable to refresh {} fee, will keep using {}: {}",
+                cachedFee.getKey(),
+                cachedFee.getFee(),
+                e.getMessage());
+        } finally {
+            cachedFee.getRefreshing().set(false);
+        }
     }
 
     // generate a string that represents an exchange and currency pair, suitable for use as a key in a Map
@@ -45,4 +191,59 @@ public class ExchangeFeeCache {
             exchange.getExchangeSpecification().getExchangeName(),
             currencyPair.toString());
     }
+
+    // a fee, when we got it, and how to get it again
+    private static class CachedFee {
+        private final String key;
+        private final Duration interval;
+        private final Supplier<BigDecimal> loader;
+        private final AtomicBoolean refreshing = new AtomicBoolean(false);
+        private volatile BigDecimal fee;
+        private volatile long updated;
+        private volatile ScheduledFuture<?> schedule;
+
+        CachedFee(String key, BigDecimal fee, long updated, Duration interval, Supplier<BigDecimal> loader) {
+            this.key = key;
+            this.fee = fee;
+            this.updated = updated;
+            this.interval = interval;
+            this.loader = loader;
+        }
+
+        String getKey() {
+            return key;
+        }
+
+        BigDecimal getFee() {
+            return fee;
+        }
+
+        Supplier<BigDecimal> getLoader() {
+            return loader;
+        }
+
+        AtomicBoolean getRefreshing() {
+            return refreshing;
+        }
+
+        void setSchedule(ScheduledFuture<?> schedule) {
+            this.schedule = schedule;
+        }
+
+        void cancel() {
+            if (schedule != null) {
+                schedule.cancel(false);
+            }
+        }
+
+        void update(BigDecimal fee, long updated) {
+            this.fee = fee;
+            this.updated = updated;
+        }
+
+        // fees without a loader never go stale because there's no way to refresh them
+        boolean isStale(long now) {
+            return loader != null && now - updated > interval.toMillis();
+        }
+    }
 }
@@ -0,0 +1,153 @@
+package com.r307.arbitrader.service.cache;
+
+import com.r307.arbitrader.service.ticker.DepthBook;
+import org.knowm.xchange.Exchange;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.marketdata.OrderBook;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cache order books so we don't have to make a REST call to the exchange every time we need to check how much
+ * volume is available at what price.
+ *
+ * Order books are kept as DepthBooks so they're quick to search. Exchanges that stream their order books keep this
+ * cache up to date on their own by refilling the same DepthBook with every update, and those books are good for as
+ * long as the stream keeps sending updates. For everyone else we keep the last REST snapshot for a very short time,
+ * which is enough to avoid hammering the API when the spread for a combination hovers around the entry or exit
+ * threshold.
+ */
+@Component
+public class OrderBookCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(OrderBookCache.class);
+
+    public static final long SNAPSHOT_TIMEOUT = 1000 * 2; // 2 seconds
+    public static final long STREAMING_TIMEOUT = 1000 * 30; // 30 seconds
+
+    private final Map<Exchange, Map<CurrencyPair, CachedDepthBook>> cache = new ConcurrentHashMap<>();
+    private final Clock clock;
+
+    public OrderBookCache() {
+        this(Clock.systemUTC());
+    }
+
+    /**
+     * Build a cache that tells the age of its order books by a different clock, such as the one a replay runs on.
+     *
+     * @param clock The Clock.
+     */
+    public OrderBookCache(Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Retrieve an order book from the cache.
+     *
+     * @param exchange The exchange to retrieve an order book for.
+     * @param currencyPair The currency pair, as it is named on the exchange.
+     * @return The order book, if there is one that hasn't expired.
+     */
+    public Optional<DepthBook> getCachedDepthBook(Exchange exchange, CurrencyPair currencyPair) {
+        Map<CurrencyPair, CachedDepthBook> exchangeCache = cache.get(exchange);
+        CachedDepthBook cached = exchangeCache == null ? null : exchangeCache.get(currencyPair);
+
+        if (cached == null) {
+            LOGGER.debug("Cache did not contain an order book for {} {}", exchange.getExchangeSpecification().getExchangeName(), currencyPair);
+            return Optional.empty();
+        }
+
+        if (cached.isExpired(clock.millis())) {
+            LOGGER.debug("Cache had an expired order book for {} {}", exchange.getExchangeSpecification().getExchangeName(), currencyPair);
+            return Optional.empty();
+        }
+
+        return Optional.of(cached.getDepthBook());
+    }
+
+    /**
+     * Put an order book received from a streaming subscription into the cache.
+     *
+     * @param exchange The exchange the order book came from.
+     * @param currencyPair The currency pair, as it is named on the exchange.
+     * @param orderBook The order book.
+     */
+    public void setStreamingOrderBook(Exchange exchange, CurrencyPair currencyPair, OrderBook orderBook) {
+        setStreamingOrderBook(exchange, currencyPair, orderBook, clock.millis());
+    }
+
+    /**
+     * Put an order book fetched from the exchange's REST API into the cache. A snapshot never replaces a streaming
+     * order book that is still receiving updates.
+     *
+     * @param exchange The exchange the order book came from.
+     * @param currencyPair The currency pair, as it is named on the exchange.
+     * @param orderBook The order book.
+     */
+    public void setSnapshotOrderBook(Exchange exchange, CurrencyPair currencyPair, OrderBook orderBook) {
+        setSnapshotOrderBook(exchange, currencyPair, orderBook, clock.millis());
+    }
+
+    // intended for testing so that you can set your own timestamp
+    void setStreamingOrderBook(Exchange exchange, CurrencyPair currencyPair, OrderBook orderBook, long timestamp) {
+        getExchangeCache(exchange).compute(currencyPair, (key, existing) -> {
+            if (existing != null && existing.isStreaming()) {
+                // refill the same arrays so a busy stream doesn't allocate a new book for every update
+                existing.getDepthBook().replace(orderBook);
+                existing.setTimestamp(timestamp);
+
+                return existing;
+            }
+
+            return new CachedDepthBook(new DepthBook(orderBook), timestamp, true);
+        });
+    }
+
+    // intended for testing so that you can set your own timestamp
+    void setSnapshotOrderBook(Exchange exchange, CurrencyPair currencyPair, OrderBook orderBook, long timestamp) {
+        getExchangeCache(exchange).compute(currencyPair, (key, existing) -> {
+            if (existing != null && existing.isStreaming() && !existing.isExpired(timestamp)) {
+                return existing;
+            }
+
+            return new CachedDepthBook(new DepthBook(orderBook), timestamp, false);
+        });
+    }
+
+    private Map<CurrencyPair, CachedDepthBook> getExchangeCache(Exchange exchange) {
+        return cache.computeIfAbsent(exchange, key -> new ConcurrentHashMap<>());
+    }
+
+    private static class CachedDepthBook {
+        private final DepthBook depthBook;
+        private final boolean isStreaming;
+        private volatile long timestamp;
+
+        public CachedDepthBook(DepthBook depthBook, long timestamp, boolean isStreaming) {
+            this.depthBook = depthBook;
+            this.timestamp = timestamp;
+            this.isStreaming = isStreaming;
+        }
+
+        public DepthBook getDepthBook() {
+            return depthBook;
+        }
+
+        public void setTimestamp(long timestamp) {
+            this.timestamp = timestamp;
+        }
+
+        public boolean isStreaming() {
+            return isStreaming;
+        }
+
+        public boolean isExpired(long now) {
+            return now - timestamp > (isStreaming ? STREAMING_TIMEOUT : SNAPSHOT_TIMEOUT);
+        }
+    }
+}
@@ -5,10 +5,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.math.BigDecimal;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
 import java.util.Optional;
 
 /**
@@ -20,8 +16,20 @@ public class OrderVolumeCache {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(OrderVolumeCache.class);
 
-    private final Map<String, BigDecimal> cache = new HashMap<>();
-    private final List<String> keys = new ArrayList<>();
+    private final BoundedCache<String, BigDecimal> cache;
+
+    public OrderVolumeCache() {
+        this(CACHE_SIZE);
+    }
+
+    /**
+     * Create a cache with room for a specific number of orders.
+     *
+     * @param size The number of order volumes to keep.
+     */
+    public OrderVolumeCache(int size) {
+        this.cache = new BoundedCache<>("Order volume", size);
+    }
 
     /**
      * Return a cached volume by exchange and order ID.
@@ -31,9 +39,9 @@ public class OrderVolumeCache {
      * @return The volume of the order, if it is in the cache.
      */
     public Optional<BigDecimal> getCachedVolume(Exchange exchange, String orderId) {
-        BigDecimal value = cache.get(computeCacheKey(exchange, orderId));
+        Optional<BigDecimal> value = cache.get(computeCacheKey(exchange, orderId));
 
-        if (value == null) {
+        if (!value.isPresent()) {
             LOGGER.debug("Cache returned null for order {}:{}",
                 exchange.getExchangeSpecification().getExchangeName(),
                 orderId);
@@ -45,16 +53,15 @@ public class OrderVolumeCache {
             exchange.getExchangeSpecification().getExchangeName(),
             orderId);
 
-        return Optional.of(value);
+        return value;
     }
 
     /**
-     * Put an order volume into the cache. If the cache is larger than CACHE_SIZE
-     * after adding the new value, orders will be removed in the order they were added
-     * (first in, first out) until the size of the cache equals CACHE_SIZE. This is
-     * a feature to avoid unbounded memory growth if Arbitrader is left running
-     * for a long period of time. There is no reason at the time of writing this that
-     * we would ever want to look up an order volume for a closed order.
+     * Put an order volume into the cache. If the cache is full, the order that was
+     * used least recently is removed to make room. This is a feature to avoid
+     * unbounded memory growth if Arbitrader is left running for a long period of
+     * time. There is no reason at the time of writing this that we would ever want
+     * to look up an order volume for a closed order.
      *
      * @param exchange The exchange the order is on.
      * @param orderId The order ID of the order.
@@ -66,17 +73,16 @@ public class OrderVolumeCache {
             orderId,
             volume);
 
-        // add the new key to the cache
         cache.put(computeCacheKey(exchange, orderId), volume);
-        keys.add(computeCacheKey(exchange, orderId));
-
-        // if the cache is too large, start removing items (FIFO) until it has CACHE_SIZE items
-        if (keys.size() > CACHE_SIZE) {
-            while (keys.size() > CACHE_SIZE) {
-                cache.remove(keys.get(0));
-                keys.remove(0);
-            }
-        }
+    }
+
+    /**
+     * Get the hit, miss and eviction counts for this cache.
+     *
+     * @return A snapshot of the statistics.
+     */
+    public CacheStatistics getStatistics() {
+        return cache.getStatistics();
     }
 
     // compute a String key suitable for use as the key in a Map
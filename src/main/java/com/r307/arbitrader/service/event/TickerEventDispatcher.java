@@ -0,0 +1,251 @@
+package com.r307.arbitrader.service.event;
+
+import com.r307.arbitrader.config.TradingConfiguration;
+import com.r307.arbitrader.service.TickerService;
+import com.r307.arbitrader.service.model.TickerEvent;
+import com.r307.arbitrader.service.ticker.TickerStore;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Hands TickerEvents to the TickerEventListener on a small pool of worker threads, keeping only the latest event
+ * for each exchange and currency pair.
+ *
+ * Prices can arrive much faster than we can analyze them, and trade analysis is synchronized. If we queued every
+ * event we'd spend our time analyzing prices that are already stale, and the queue could grow without limit.
+ * Instead each ticker ID in the TickerStore has one pending slot. A new event replaces whatever is waiting in the
+ * slot and the superseded event is dropped, so the queue can never hold more than one entry per ticker ID.
+ *
+ * A worker that decides to trade stays with the trade until its orders have filled, which can take minutes. So on top
+ * of the workers that keep up with the prices there is one for every position we can have open, and exit checks for
+ * the other positions carry on while they all wait.
+ */
+@Component
+public class TickerEventDispatcher {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TickerEventDispatcher.class);
+    private static final int ANALYSIS_WORKER_COUNT = Runtime.getRuntime().availableProcessors() + 1;
+
+    private final TradingConfiguration tradingConfiguration;
+    private final TickerService tickerService;
+    private final TickerEventListener tickerEventListener;
+    private final List<Thread> workers = new ArrayList<>();
+    private final AtomicLong publishedCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+    private final AtomicLong dispatchedCount = new AtomicLong();
+    private final AtomicLong lastEventAge = new AtomicLong();
+    private final AtomicLong maxEventAge = new AtomicLong();
+    private volatile Slots slots = new Slots(TickerStore.EMPTY);
+    private volatile boolean running = false;
+
+    public TickerEventDispatcher(TradingConfiguration tradingConfiguration, TickerService tickerService,
+                                 TickerEventListener tickerEventListener) {
+        this.tradingConfiguration = tradingConfiguration;
+        this.tickerService = tickerService;
+        this.tickerEventListener = tickerEventListener;
+    }
+
+    /**
+     * Start the worker threads.
+     */
+    @PostConstruct
+    public void start() {
+        running = true;
+
+        final int workerCount = getWorkerCount();
+
+        for (int i = 0; i < workerCount; i++) {
+            Thread worker = new Thread(this::work, "ticker-dispatch-" + i);
+
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+    }
+
+    /**
+     * Stop the worker threads.
+     */
+    @PreDestroy
+    public void stop() {
+        running = false;
+        workers.forEach(Thread::interrupt);
+        workers.clear();
+    }
+
+    /**
+     * Receive a TickerEvent. This runs on the thread that published the event, so it only parks the event in its
+     * slot and returns. If an older event for the same ticker was still waiting, it is dropped.
+     *
+     * @param tickerEvent The TickerEvent.
+     */
+    @EventListener
+    public void onTickerEvent(TickerEvent tickerEvent) {
+        final Slots current = getSlots();
+        final int tickerId = current.tickerStore.getId(tickerEvent.getExchange(), (CurrencyPair) tickerEvent.getTicker().getInstrument());
+
+        publishedCount.incrementAndGet();
+
+        if (tickerId == TickerStore.UNKNOWN_ID) {
+            // no TradeCombination uses this ticker, so there is nothing to analyze
+            LOGGER.trace("Ignoring ticker event for untraded pair: {} {}",
+                tickerEvent.getExchange().getExchangeSpecification().getExchangeName(),
+                tickerEvent.getTicker().getInstrument());
+            return;
+        }
+
+        if (current.pending.getAndSet(tickerId, tickerEvent) != null) {
+            coalescedCount.incrementAndGet(); // the worker will pick up this event instead of the old one
+        } else if (!current.queue.offer(current.keys[tickerId])) {
+            // can't happen as long as each ID is queued at most once, but don't strand the event if it does
+            LOGGER.warn("Ticker event queue is full, dropping event for ticker ID {}", tickerId);
+            current.pending.compareAndSet(tickerId, tickerEvent, null);
+        }
+    }
+
+    /**
+     * The number of tickers waiting to be analyzed.
+     *
+     * @return The number of tickers in the queue.
+     */
+    public int getQueueDepth() {
+        return slots.queue.size();
+    }
+
+    /**
+     * The number of events we have received.
+     *
+     * @return The number of events received.
+     */
+    public long getPublishedCount() {
+        return publishedCount.get();
+    }
+
+    /**
+     * The number of events that were dropped because a newer event for the same ticker arrived before they
+     * were analyzed.
+     *
+     * @return The number of events dropped.
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    /**
+     * The number of events that were handed to the TickerEventListener.
+     *
+     * @return The number of events analyzed.
+     */
+    public long getDispatchedCount() {
+        return dispatchedCount.get();
+    }
+
+    /**
+     * How old the most recently dispatched event was when a worker picked it up.
+     *
+     * @return The age of the last event in milliseconds.
+     */
+    public long getLastEventAge() {
+        return lastEventAge.get();
+    }
+
+    /**
+     * The oldest any event has been when a worker picked it up.
+     *
+     * @return The maximum event age in milliseconds.
+     */
+    public long getMaxEventAge() {
+        return maxEventAge.get();
+    }
+
+    // enough workers to analyze prices even when every position we can have open is tying one up waiting for fills
+    int getWorkerCount() {
+        final Integer maxPositions = tradingConfiguration.getMaxPositions();
+
+        return ANALYSIS_WORKER_COUNT + (maxPositions == null ? 1 : Math.max(1, maxPositions));
+    }
+
+    // take the next ticker off the queue and analyze its latest event
+    void dispatchNext() throws InterruptedException {
+        final Slots current = slots;
+        final int tickerId = current.queue.take();
+        final TickerEvent tickerEvent = current.pending.getAndSet(tickerId, null);
+
+        if (tickerEvent == null) {
+            return;
+        }
+
+        final long age = System.currentTimeMillis() - tickerEvent.getTimestamp();
+
+        lastEventAge.set(age);
+        maxEventAge.accumulateAndGet(age, Math::max);
+        dispatchedCount.incrementAndGet();
+
+        tickerEventListener.onTradeEvent(tickerEvent);
+    }
+
+    // worker thread loop
+    private void work() {
+        while (running) {
+            try {
+                dispatchNext();
+            } catch (InterruptedException e) {
+                LOGGER.trace("Ticker dispatch interrupted");
+            } catch (RuntimeException e) {
+                LOGGER.error("Unexpected exception analyzing ticker event: ", e);
+            }
+        }
+    }
+
+    // the slots are sized for the TickerStore, so rebuild them if the TickerStore has been replaced
+    private Slots getSlots() {
+        final TickerStore tickerStore = tickerService.getTickerStore();
+        Slots current = slots;
+
+        if (current.tickerStore != tickerStore) {
+            synchronized (this) {
+                current = slots;
+
+                if (current.tickerStore != tickerStore) {
+                    current = new Slots(tickerStore);
+                    slots = current;
+
+                    // wake the workers up so they start waiting on the new queue
+                    workers.forEach(Thread::interrupt);
+                }
+            }
+        }
+
+        return current;
+    }
+
+    // the pending event for each ticker ID and the queue of IDs waiting to be dispatched
+    private static class Slots {
+        private final TickerStore tickerStore;
+        private final AtomicReferenceArray<TickerEvent> pending;
+        private final BlockingQueue<Integer> queue;
+        private final Integer[] keys; // boxed once up front so queueing an ID doesn't allocate
+
+        Slots(TickerStore tickerStore) {
+            this.tickerStore = tickerStore;
+            this.pending = new AtomicReferenceArray<>(tickerStore.size());
+            this.queue = new ArrayBlockingQueue<>(Math.max(1, tickerStore.size()));
+            this.keys = new Integer[tickerStore.size()];
+
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = i;
+            }
+        }
+    }
+}
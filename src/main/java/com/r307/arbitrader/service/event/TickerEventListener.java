@@ -3,36 +3,70 @@ package com.r307.arbitrader.service.event;
 import com.r307.arbitrader.service.SpreadService;
 import com.r307.arbitrader.service.TickerService;
 import com.r307.arbitrader.service.TradingService;
+import com.r307.arbitrader.service.latency.LatencyRecorder;
+import com.r307.arbitrader.service.latency.LatencyStage;
+import com.r307.arbitrader.service.latency.LatencyTrace;
+import com.r307.arbitrader.service.model.FixedSpread;
 import com.r307.arbitrader.service.model.Spread;
 import com.r307.arbitrader.service.model.TickerEvent;
 import com.r307.arbitrader.service.model.TradeCombination;
+import com.r307.arbitrader.service.ticker.TickerStore;
+import com.r307.arbitrader.service.ticker.TradeCombinationIndex;
+import org.knowm.xchange.currency.CurrencyPair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.context.event.EventListener;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-import java.util.List;
+import java.util.Random;
 
 /**
- * Listens for TickerEvents and starts analysis for trading when an event is received.
+ * Starts analysis for trading when a TickerEvent is received. Events are delivered by the TickerEventDispatcher,
+ * which makes sure we only analyze the latest event for each ticker.
  */
 @Component
 public class TickerEventListener {
     private static final Logger LOGGER = LoggerFactory.getLogger(TickerEventListener.class);
+    private static final ThreadLocal<FixedSpread> FIXED_SPREAD = ThreadLocal.withInitial(FixedSpread::new);
 
     private final TradingService tradingService;
     private final TickerService tickerService;
     private final SpreadService spreadService;
+    private final LatencyRecorder latencyRecorder;
+    private final Random random; // null to use ThreadLocalRandom
 
+    @Autowired
     public TickerEventListener(
         TradingService tradingService,
         TickerService tickerService,
-        SpreadService spreadService) {
+        SpreadService spreadService,
+        LatencyRecorder latencyRecorder) {
+
+        this(tradingService, tickerService, spreadService, latencyRecorder, null);
+    }
+
+    /**
+     * Build a listener that picks where to start in the list of trade combinations with its own Random, such as a
+     * seeded one so a replay tries them in the same order every time. It must only be used from one thread.
+     *
+     * @param tradingService The TradingService.
+     * @param tickerService The TickerService.
+     * @param spreadService The SpreadService.
+     * @param latencyRecorder The LatencyRecorder.
+     * @param random The Random to pick the starting place with.
+     */
+    public TickerEventListener(
+        TradingService tradingService,
+        TickerService tickerService,
+        SpreadService spreadService,
+        LatencyRecorder latencyRecorder,
+        Random random) {
 
         this.tradingService = tradingService;
         this.tickerService = tickerService;
         this.spreadService = spreadService;
+        this.latencyRecorder = latencyRecorder;
+        this.random = random;
     }
 
     /**
@@ -42,35 +76,69 @@ public class TickerEventListener {
      *
      * @param tickerEvent The TickerEvent we received.
      */
-    @EventListener
-    @Async
     public void onTradeEvent(TickerEvent tickerEvent) {
-        LOGGER.trace("Received ticker event: {} {} {}/{}",
-            tickerEvent.getExchange().getExchangeSpecification().getExchangeName(),
-            tickerEvent.getTicker().getInstrument(),
-            tickerEvent.getTicker().getBid(),
-            tickerEvent.getTicker().getAsk());
-
-        List<TradeCombination> tradeCombinations = tickerService.getExchangeTradeCombinations();
-
-        tradeCombinations
-            .stream()
-            // only consider combinations where one of the exchanges is from the event
-            .filter(tradeCombination -> (
-                tradeCombination.getLongExchange().equals(tickerEvent.getExchange())
-                    || tradeCombination.getShortExchange().equals(tickerEvent.getExchange())
-            ))
-            // only consider combinations where the currency pair matches the event
-            .filter(tradeCombination -> tradeCombination.getCurrencyPair().equals(tickerEvent.getTicker().getInstrument()))
-            .forEach(tradeCombination -> {
-                Spread spread = spreadService.computeSpread(tradeCombination);
-
-                if (spread != null) { // spread will be null if any tickers were missing for this combination
-                    final long start = System.currentTimeMillis();
-                    tradingService.trade(spread);
-
-                    LOGGER.debug("Analyzed {} ({} ms)", spread, System.currentTimeMillis() - start);
-                }
-            });
+        final LatencyTrace latencyTrace = tickerEvent.getLatencyTrace();
+
+        latencyTrace.mark(LatencyStage.DEQUEUED);
+        latencyRecorder.recordTicker(tickerEvent.getExchange(), latencyTrace);
+
+        if (LOGGER.isTraceEnabled()) { // avoid building the varargs array if TRACE is turned off
+            LOGGER.trace("Received ticker event: {} {} {}/{}",
+                tickerEvent.getExchange().getExchangeSpecification().getExchangeName(),
+                tickerEvent.getTicker().getInstrument(),
+                tickerEvent.getTicker().getBid(),
+                tickerEvent.getTicker().getAsk());
+        }
+
+        final TickerStore tickerStore = tickerService.getTickerStore();
+        final TradeCombinationIndex tradeCombinationIndex = tickerService.getTradeCombinationIndex();
+        final int tickerId = tickerStore.getId(tickerEvent.getExchange(), (CurrencyPair) tickerEvent.getTicker().getInstrument());
+        final int count = tradeCombinationIndex.size(tickerId); // zero if this ticker isn't used by any combination
+        final int offset = random == null
+            ? tradeCombinationIndex.randomOffset(tickerId)
+            : tradeCombinationIndex.randomOffset(tickerId, random);
+        final FixedSpread fixedSpread = FIXED_SPREAD.get();
+
+        // only consider combinations where one of the exchanges and the currency pair are from the event
+        // start at a random place in the list so every combination gets a fair chance to trade
+        for (int i = 0; i < count; i++) {
+            final TradeCombination tradeCombination = tradeCombinationIndex.get(tickerId, (offset + i) % count);
+
+            // screen with fixed point math first so we only build a Spread when trade() might use it
+            final boolean screened = spreadService.computeSpread(tradeCombination, fixedSpread);
+
+            latencyTrace.mark(LatencyStage.SPREAD);
+
+            if (screened && !tradingService.isTradeCandidate(tradeCombination, fixedSpread)) {
+                latencyTrace.mark(LatencyStage.DECISION);
+                record(tradeCombination, latencyTrace);
+                continue;
+            }
+
+            final Spread spread = spreadService.computeSpread(tradeCombination);
+
+            if (!screened && spread != null) {
+                spreadService.publish(spread); // screening couldn't count it, so count it here
+            }
+
+            if (spread != null) { // spread will be null if any tickers were missing for this combination
+                final long start = System.currentTimeMillis();
+
+                spread.setLatencyTrace(latencyTrace);
+                tradingService.trade(spread);
+
+                LOGGER.debug("Analyzed {} ({} ms)", spread, System.currentTimeMillis() - start);
+            }
+
+            // trade() marks the decision itself if it enters or exits a position
+            latencyTrace.markIfAbsent(LatencyStage.DECISION);
+            record(tradeCombination, latencyTrace);
+        }
+    }
+
+    // record one combination and clear its stages so the trace is ready for the next one
+    private void record(TradeCombination tradeCombination, LatencyTrace latencyTrace) {
+        latencyRecorder.recordCombination(tradeCombination, latencyTrace);
+        latencyTrace.reset(LatencyStage.DEQUEUED);
     }
 }
@@ -1,5 +1,6 @@
 package com.r307.arbitrader.service.event;
 
+import com.r307.arbitrader.service.metrics.MetricsService;
 import com.r307.arbitrader.service.model.TickerEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -14,9 +15,21 @@ public class TickerEventPublisher {
     private static final Logger LOGGER = LoggerFactory.getLogger(TickerEventPublisher.class);
 
     private final ApplicationEventPublisher applicationEventPublisher;
+    private final MetricsService metricsService;
+    private volatile TickerRingBuffer tickerRingBuffer = null;
 
-    public TickerEventPublisher(ApplicationEventPublisher applicationEventPublisher) {
+    public TickerEventPublisher(ApplicationEventPublisher applicationEventPublisher, MetricsService metricsService) {
         this.applicationEventPublisher = applicationEventPublisher;
+        this.metricsService = metricsService;
+    }
+
+    /**
+     * Send future tickers to a TickerRingBuffer instead of publishing them as Spring events.
+     *
+     * @param tickerRingBuffer The TickerRingBuffer to publish to.
+     */
+    public void setTickerRingBuffer(TickerRingBuffer tickerRingBuffer) {
+        this.tickerRingBuffer = tickerRingBuffer;
     }
 
     /**
@@ -31,6 +44,15 @@ public class TickerEventPublisher {
             tickerEvent.getTicker().getBid(),
             tickerEvent.getTicker().getAsk());
 
+        metricsService.countTicker(tickerEvent.getExchange());
+
+        final TickerRingBuffer ringBuffer = tickerRingBuffer;
+
+        if (ringBuffer != null) {
+            ringBuffer.publish(tickerEvent.getExchange(), tickerEvent.getTicker(), tickerEvent.getLatencyTrace());
+            return;
+        }
+
         applicationEventPublisher.publishEvent(tickerEvent);
     }
 }
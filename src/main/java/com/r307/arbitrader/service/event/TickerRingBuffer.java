@@ -0,0 +1,521 @@
+package com.r307.arbitrader.service.event;
+
+import com.r307.arbitrader.config.TickerPipeline;
+import com.r307.arbitrader.config.TradingConfiguration;
+import com.r307.arbitrader.service.SpreadService;
+import com.r307.arbitrader.service.TickerService;
+import com.r307.arbitrader.service.TradingService;
+import com.r307.arbitrader.service.latency.LatencyRecorder;
+import com.r307.arbitrader.service.latency.LatencyStage;
+import com.r307.arbitrader.service.latency.LatencyTrace;
+import com.r307.arbitrader.service.model.FixedSpread;
+import com.r307.arbitrader.service.model.Spread;
+import com.r307.arbitrader.service.model.TradeCombination;
+import com.r307.arbitrader.service.ticker.TickerStore;
+import com.r307.arbitrader.service.ticker.TradeCombinationIndex;
+import org.knowm.xchange.Exchange;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.marketdata.Ticker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An alternative to the Spring event path that moves tickers through three stages on a pre-allocated ring buffer,
+ * in the style of the LMAX Disruptor:
+ *
+ * 1. Ingestion: find the ticker ID for the new ticker and drop it if a newer ticker has already been stored.
+ * 2. Spread: screen every TradeCombination that uses the ticker and compute a Spread for the ones that might trade.
+ * 3. Trade: hand each Spread to the trade workers.
+ *
+ * Each stage runs on its own thread and is the only writer of its own sequence number. A stage processes an entry
+ * once the stage before it has moved past that entry, and producers can't reuse an entry until the last stage is
+ * done with it. The entries themselves are allocated once and reused, so nothing is allocated per ticker apart
+ * from the Spreads themselves.
+ *
+ * TradingService.trade() can take seconds or minutes while it places orders and waits for them to fill, so the trade
+ * stage never calls it. Instead each TradeCombination has one pending slot, the same as the TickerEventDispatcher
+ * keeps for each ticker, and the trade stage puts the Spread in it for a pool of trade workers to pick up. A newer
+ * Spread replaces one that is still waiting, so the ring keeps moving, and the producers never wait on a fill. There
+ * is a worker for every position we can have open plus one, so a position waiting for its orders doesn't stop the
+ * others from being analyzed.
+ *
+ * Tickers are still put into the TickerService on the producer's thread before they are published, as described
+ * in TickerService.putTicker(), so by the time the ingestion stage sees an entry the TickerStore already has the
+ * price in it.
+ *
+ * This is only used when trading.tickerPipeline is set to RING_BUFFER.
+ */
+@Component
+public class TickerRingBuffer {
+    static final int SIZE = 1024; // must be a power of two
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TickerRingBuffer.class);
+    private static final int MASK = SIZE - 1;
+    private static final long INITIAL_SEQUENCE = -1L;
+    private static final int SPIN_TRIES = 100;
+    private static final int YIELD_TRIES = 100;
+    private static final long PARK_NANOS = 100_000L;
+    private static final long IDLE_POLL = 100L; // milliseconds
+
+    private final TradingConfiguration tradingConfiguration;
+    private final TickerService tickerService;
+    private final SpreadService spreadService;
+    private final TradingService tradingService;
+    private final TickerEventPublisher tickerEventPublisher;
+    private final LatencyRecorder latencyRecorder;
+    private final Entry[] entries = new Entry[SIZE];
+    private final AtomicLongArray published = new AtomicLongArray(SIZE);
+    private final AtomicLong claimSequence = new AtomicLong(INITIAL_SEQUENCE);
+    private final AtomicLong ingestSequence = new AtomicLong(INITIAL_SEQUENCE);
+    private final AtomicLong spreadSequence = new AtomicLong(INITIAL_SEQUENCE);
+    private final AtomicLong tradeSequence = new AtomicLong(INITIAL_SEQUENCE);
+    private final AtomicLong staleCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+    private final FixedSpread fixedSpread = new FixedSpread(); // only used by the spread stage
+    private final List<Thread> stages = new ArrayList<>();
+    private volatile TradeSlots tradeSlots = new TradeSlots(TradeCombinationIndex.EMPTY); // only replaced by the trade stage
+    private volatile boolean running = false;
+
+    public TickerRingBuffer(
+        TradingConfiguration tradingConfiguration,
+        TickerService tickerService,
+        SpreadService spreadService,
+        TradingService tradingService,
+        TickerEventPublisher tickerEventPublisher,
+        LatencyRecorder latencyRecorder) {
+
+        this.tradingConfiguration = tradingConfiguration;
+        this.tickerService = tickerService;
+        this.spreadService = spreadService;
+        this.tradingService = tradingService;
+        this.tickerEventPublisher = tickerEventPublisher;
+        this.latencyRecorder = latencyRecorder;
+
+        for (int i = 0; i < SIZE; i++) {
+            entries[i] = new Entry();
+            published.set(i, INITIAL_SEQUENCE);
+        }
+    }
+
+    /**
+     * If the ring buffer pipeline is configured, start the stage threads and tell the TickerEventPublisher to
+     * send events here instead of through Spring.
+     */
+    @PostConstruct
+    public void start() {
+        if (tradingConfiguration.getTickerPipeline() != TickerPipeline.RING_BUFFER) {
+            return;
+        }
+
+        running = true;
+
+        startStage("ticker-ingest", this::ingest);
+        startStage("ticker-spread", this::spread);
+        startStage("ticker-trade", this::trade);
+
+        for (int i = 0; i < getTradeWorkerCount(); i++) {
+            Thread worker = new Thread(this::work, "ticker-trade-worker-" + i);
+
+            worker.setDaemon(true);
+            worker.start();
+            stages.add(worker);
+        }
+
+        tickerEventPublisher.setTickerRingBuffer(this);
+
+        LOGGER.info("Using ring buffer ticker pipeline with {} entries", SIZE);
+    }
+
+    /**
+     * Stop the stage threads and the trade workers.
+     */
+    @PreDestroy
+    public void stop() {
+        running = false;
+        stages.forEach(Thread::interrupt);
+        stages.clear();
+    }
+
+    /**
+     * Publish a ticker into the ring buffer. This may be called from any number of threads. If the ring buffer is
+     * full, this waits for the trade stage to free up an entry, which never waits for a trade.
+     *
+     * @param exchange The Exchange the ticker came from.
+     * @param ticker The Ticker.
+     */
+    public void publish(Exchange exchange, Ticker ticker) {
+        publish(exchange, ticker, LatencyTrace.received(ticker));
+    }
+
+    /**
+     * Publish a ticker that is already being traced into the ring buffer. Tickers published after the ring buffer has
+     * been stopped are dropped.
+     *
+     * @param exchange The Exchange the ticker came from.
+     * @param ticker The Ticker.
+     * @param latencyTrace The LatencyTrace started when the ticker was received.
+     */
+    public void publish(Exchange exchange, Ticker ticker, LatencyTrace latencyTrace) {
+        long sequence;
+        long current;
+
+        // claim the next sequence, but don't lap the slowest stage
+        do {
+            current = claimSequence.get();
+            sequence = current + 1;
+
+            for (int attempt = 0; sequence - SIZE > tradeSequence.get() || !running; attempt++) {
+                if (!backOff(attempt)) {
+                    LOGGER.debug("Dropping {} ticker because the ring buffer has stopped", ticker.getInstrument());
+                    return;
+                }
+            }
+        } while (!claimSequence.compareAndSet(current, sequence));
+
+        final Entry entry = entries[(int) (sequence & MASK)];
+
+        entry.exchange = exchange;
+        entry.ticker = ticker;
+        entry.latencyTrace = latencyTrace;
+        entry.publishedTime = System.currentTimeMillis();
+        entry.tickerId = TickerStore.UNKNOWN_ID;
+        entry.spreadCount = 0;
+
+        // make the entry visible to the ingestion stage
+        published.set((int) (sequence & MASK), sequence);
+    }
+
+    /**
+     * The number of entries that have been published but not yet fully processed.
+     *
+     * @return The number of entries in use.
+     */
+    public long getBacklog() {
+        return claimSequence.get() - tradeSequence.get();
+    }
+
+    /**
+     * The number of tickers dropped by the ingestion stage because a newer ticker had already been stored.
+     *
+     * @return The number of stale tickers dropped.
+     */
+    public long getStaleCount() {
+        return staleCount.get();
+    }
+
+    /**
+     * The number of Spreads dropped because a newer Spread for the same TradeCombination arrived before a trade
+     * worker got to them.
+     *
+     * @return The number of Spreads dropped.
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    // stage 1: resolve the ticker ID and drop tickers that have already been superseded
+    private boolean ingest(long sequence) {
+        for (int attempt = 0; published.get((int) (sequence & MASK)) != sequence; attempt++) {
+            if (!backOff(attempt)) {
+                return false;
+            }
+        }
+
+        final Entry entry = entries[(int) (sequence & MASK)];
+
+        entry.latencyTrace.mark(LatencyStage.DEQUEUED);
+        latencyRecorder.recordTicker(entry.exchange, entry.latencyTrace);
+
+        try {
+            final TickerStore tickerStore = tickerService.getTickerStore();
+            final int tickerId = tickerStore.getId(entry.exchange, (CurrencyPair) entry.ticker.getInstrument());
+
+            if (tickerId != TickerStore.UNKNOWN_ID && tickerStore.getTicker(tickerId) != entry.ticker) {
+                staleCount.incrementAndGet();
+            } else {
+                entry.tickerId = tickerId;
+            }
+        } finally {
+            ingestSequence.set(sequence);
+        }
+
+        return true;
+    }
+
+    // stage 2: compute spreads for every combination that uses the ticker
+    private boolean spread(long sequence) {
+        for (int attempt = 0; ingestSequence.get() < sequence; attempt++) {
+            if (!backOff(attempt)) {
+                return false;
+            }
+        }
+
+        final Entry entry = entries[(int) (sequence & MASK)];
+        final TradeCombinationIndex tradeCombinationIndex = tickerService.getTradeCombinationIndex();
+        final int count = tradeCombinationIndex.size(entry.tickerId);
+        final int offset = tradeCombinationIndex.randomOffset(entry.tickerId);
+
+        entry.ensureCapacity(count);
+
+        try {
+            for (int i = 0; i < count; i++) {
+                final TradeCombination tradeCombination = tradeCombinationIndex.get(entry.tickerId, (offset + i) % count);
+
+                // screen with fixed point math first so we only build a Spread when trade() might use it
+                final boolean screened = spreadService.computeSpread(tradeCombination, fixedSpread);
+
+                entry.latencyTrace.mark(LatencyStage.SPREAD);
+
+                if (screened && !tradingService.isTradeCandidate(tradeCombination, fixedSpread)) {
+                    entry.latencyTrace.mark(LatencyStage.DECISION);
+                    latencyRecorder.recordCombination(tradeCombination, entry.latencyTrace);
+                    entry.latencyTrace.reset(LatencyStage.DEQUEUED);
+                    continue;
+                }
+
+                final Spread spread = spreadService.computeSpread(tradeCombination);
+
+                if (!screened && spread != null) {
+                    spreadService.publish(spread); // screening couldn't count it, so count it here
+                }
+
+                if (spread != null) { // spread will be null if any tickers were missing for this combination
+                    // the trade worker finishes the trace, so each spread needs its own copy
+                    spread.setLatencyTrace(entry.latencyTrace.copy());
+                    entry.tradeCombinations[entry.spreadCount] = tradeCombination;
+                    entry.spreads[entry.spreadCount++] = spread;
+                }
+
+                entry.latencyTrace.reset(LatencyStage.DEQUEUED);
+            }
+        } finally {
+            spreadSequence.set(sequence);
+        }
+
+        return true;
+    }
+
+    // stage 3: hand the spreads to the trade workers, then release the entry for reuse
+    private boolean trade(long sequence) {
+        for (int attempt = 0; spreadSequence.get() < sequence; attempt++) {
+            if (!backOff(attempt)) {
+                return false;
+            }
+        }
+
+        final Entry entry = entries[(int) (sequence & MASK)];
+
+        try {
+            final TradeSlots current = getTradeSlots();
+
+            for (int i = 0; i < entry.spreadCount; i++) {
+                final int combinationId = current.tradeCombinationIndex.getCombinationId(entry.tradeCombinations[i]);
+
+                if (combinationId == TickerStore.UNKNOWN_ID) {
+                    continue; // the combinations changed since the spread stage saw this one
+                }
+
+                if (current.pending.getAndSet(combinationId, entry.spreads[i]) != null) {
+                    coalescedCount.incrementAndGet(); // a worker will pick up this spread instead of the old one
+                } else if (!current.queue.offer(current.keys[combinationId])) {
+                    // can't happen as long as each ID is queued at most once, but don't strand the spread if it does
+                    LOGGER.warn("Trade queue is full, dropping spread for combination ID {}", combinationId);
+                    current.pending.compareAndSet(combinationId, entry.spreads[i], null);
+                }
+            }
+
+            LOGGER.trace("Queued {} spreads for ticker ID {} ({} ms)",
+                entry.spreadCount,
+                entry.tickerId,
+                System.currentTimeMillis() - entry.publishedTime);
+        } finally {
+            entry.clear();
+            tradeSequence.set(sequence);
+        }
+
+        return true;
+    }
+
+    // take the next combination off the queue and trade its latest spread
+    private void tradeNext() throws InterruptedException {
+        final TradeSlots current = tradeSlots;
+
+        // Don't wait forever, in case the slots are replaced. Interrupting a worker to tell it would be no good,
+        // because it might be in the middle of placing an order.
+        final Integer combinationId = current.queue.poll(IDLE_POLL, TimeUnit.MILLISECONDS);
+
+        if (combinationId == null) {
+            return;
+        }
+
+        final Spread spread = current.pending.getAndSet(combinationId, null);
+
+        if (spread == null) {
+            return;
+        }
+
+        tradingService.trade(spread);
+
+        // trade() marks the decision itself if it enters or exits a position
+        final LatencyTrace latencyTrace = spread.getLatencyTrace();
+
+        if (latencyTrace != null) {
+            latencyTrace.markIfAbsent(LatencyStage.DECISION);
+            latencyRecorder.recordCombination(current.tradeCombinationIndex.getCombination(combinationId), latencyTrace);
+        }
+    }
+
+    // trade worker thread loop
+    private void work() {
+        while (running) {
+            try {
+                tradeNext();
+            } catch (InterruptedException e) {
+                LOGGER.trace("Trade worker interrupted");
+            } catch (RuntimeException e) {
+                LOGGER.error("Unexpected exception trading a spread: ", e);
+            }
+        }
+
+        LOGGER.debug("Stopped {}", Thread.currentThread().getName());
+    }
+
+    // the slots are sized for the TradeCombinationIndex, so rebuild them if the index has been replaced
+    private TradeSlots getTradeSlots() {
+        final TradeCombinationIndex tradeCombinationIndex = tickerService.getTradeCombinationIndex();
+        TradeSlots current = tradeSlots;
+
+        if (current.tradeCombinationIndex != tradeCombinationIndex) {
+            current = new TradeSlots(tradeCombinationIndex);
+            tradeSlots = current; // the workers move over to it the next time they stop waiting on the old one
+        }
+
+        return current;
+    }
+
+    // one trade worker for every position we can have open, plus one to keep analyzing while they all wait for fills
+    private int getTradeWorkerCount() {
+        final Integer maxPositions = tradingConfiguration.getMaxPositions();
+
+        return (maxPositions == null ? 1 : Math.max(1, maxPositions)) + 1;
+    }
+
+    private void startStage(String name, Stage stage) {
+        Thread thread = new Thread(() -> {
+            long sequence = 0;
+
+            while (running) {
+                try {
+                    if (!stage.process(sequence)) {
+                        break; // we've been stopped
+                    }
+                } catch (RuntimeException e) {
+                    LOGGER.error("Unexpected exception in {} stage: ", name, e);
+                }
+
+                sequence++;
+            }
+
+            LOGGER.debug("Stopped {} stage", name);
+        }, name);
+
+        thread.setDaemon(true);
+        thread.start();
+        stages.add(thread);
+    }
+
+    // Wait a little while for another thread to make progress, returning false if we've been stopped. We spin at
+    // first because the next ticker usually isn't far behind, then yield, then park so an idle pipeline doesn't keep
+    // three cores busy.
+    private boolean backOff(int attempt) {
+        if (!running) {
+            return false;
+        }
+
+        if (attempt < SPIN_TRIES) {
+            return true;
+        }
+
+        if (attempt < SPIN_TRIES + YIELD_TRIES) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+
+        return true;
+    }
+
+    // one stage of the pipeline, processing one sequence at a time, returning false if we've been stopped
+    @FunctionalInterface
+    private interface Stage {
+        boolean process(long sequence);
+    }
+
+    // a reusable entry in the ring
+    private static class Entry {
+        private Exchange exchange;
+        private Ticker ticker;
+        private LatencyTrace latencyTrace;
+        private long publishedTime;
+        private int tickerId = TickerStore.UNKNOWN_ID;
+        private TradeCombination[] tradeCombinations = new TradeCombination[0];
+        private Spread[] spreads = new Spread[0];
+        private int spreadCount = 0;
+
+        // grow the spread array if this ticker has more combinations than we've seen before
+        private void ensureCapacity(int count) {
+            if (spreads.length < count) {
+                tradeCombinations = new TradeCombination[count];
+                spreads = new Spread[count];
+            }
+        }
+
+        // drop references so we don't hold on to old tickers and spreads
+        private void clear() {
+            exchange = null;
+            ticker = null;
+            latencyTrace = null;
+
+            for (int i = 0; i < spreadCount; i++) {
+                tradeCombinations[i] = null;
+                spreads[i] = null;
+            }
+
+            spreadCount = 0;
+        }
+    }
+
+    // the pending spread for each combination ID and the queue of IDs waiting to be traded
+    private static class TradeSlots {
+        private final TradeCombinationIndex tradeCombinationIndex;
+        private final AtomicReferenceArray<Spread> pending;
+        private final BlockingQueue<Integer> queue;
+        private final Integer[] keys; // boxed once up front so queueing an ID doesn't allocate
+
+        TradeSlots(TradeCombinationIndex tradeCombinationIndex) {
+            final int count = tradeCombinationIndex.getCombinationCount();
+
+            this.tradeCombinationIndex = tradeCombinationIndex;
+            this.pending = new AtomicReferenceArray<>(count);
+            this.queue = new ArrayBlockingQueue<>(Math.max(1, count));
+            this.keys = new Integer[count];
+
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = i;
+            }
+        }
+    }
+}
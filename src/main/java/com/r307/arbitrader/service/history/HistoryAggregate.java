@@ -0,0 +1,71 @@
+package com.r307.arbitrader.service.history;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Instant;
+
+import static com.r307.arbitrader.FixedPoint.SCALE;
+
+/**
+ * One row of the answer to a HistoryQuery: the count, total, smallest, largest and average of a column for all the
+ * trades in one time bucket and group.
+ */
+public class HistoryAggregate {
+    private final Instant bucket;
+    private final String group;
+    private final long count;
+    private final BigDecimal sum;
+    private final BigDecimal min;
+    private final BigDecimal max;
+
+    public HistoryAggregate(Instant bucket, String group, long count, BigDecimal sum, BigDecimal min, BigDecimal max) {
+        this.bucket = bucket;
+        this.group = group;
+        this.count = count;
+        this.sum = sum;
+        this.min = min;
+        this.max = max;
+    }
+
+    // the start of the time bucket
+    public Instant getBucket() {
+        return bucket;
+    }
+
+    // such as "Kraken/Bitstamp" for an exchange pair, or "all" when the query isn't grouped
+    public String getGroup() {
+        return group;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public BigDecimal getSum() {
+        return sum;
+    }
+
+    public BigDecimal getMin() {
+        return min;
+    }
+
+    public BigDecimal getMax() {
+        return max;
+    }
+
+    public BigDecimal getMean() {
+        return sum.divide(BigDecimal.valueOf(count), SCALE, RoundingMode.HALF_EVEN);
+    }
+
+    @Override
+    public String toString() {
+        return "HistoryAggregate{" +
+            "bucket=" + bucket +
+            ", group='" + group + '\'' +
+            ", count=" + count +
+            ", sum=" + sum +
+            ", min=" + min +
+            ", max=" + max +
+            '}';
+    }
+}
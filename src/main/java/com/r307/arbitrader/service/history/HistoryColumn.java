@@ -0,0 +1,35 @@
+package com.r307.arbitrader.service.history;
+
+import com.r307.arbitrader.service.model.ArbitrageLog;
+
+import java.math.BigDecimal;
+import java.util.function.Function;
+
+/**
+ * The numbers in the trade history that can be added up, averaged and so on.
+ */
+public enum HistoryColumn {
+    SHORT_SPREAD(ArbitrageLog::getShortSpread),
+    SHORT_SLIP(ArbitrageLog::getShortSlip),
+    SHORT_AMOUNT(ArbitrageLog::getShortAmount),
+    LONG_SPREAD(ArbitrageLog::getLongSpread),
+    LONG_SLIP(ArbitrageLog::getLongSlip),
+    LONG_AMOUNT(ArbitrageLog::getLongAmount),
+    PROFIT(ArbitrageLog::getProfit);
+
+    private final Function<ArbitrageLog, BigDecimal> getter;
+
+    HistoryColumn(Function<ArbitrageLog, BigDecimal> getter) {
+        this.getter = getter;
+    }
+
+    /**
+     * Get this column's value from a trade.
+     *
+     * @param arbitrageLog The trade.
+     * @return The value.
+     */
+    public BigDecimal getValue(ArbitrageLog arbitrageLog) {
+        return getter.apply(arbitrageLog);
+    }
+}
@@ -0,0 +1,134 @@
+package com.r307.arbitrader.service.history;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * A question to ask the TradeHistoryStore, such as "total profit per exchange pair per week since January".
+ *
+ * Trades from "from" (inclusive) to "to" (exclusive) are split into buckets of "bucket" length, starting at "from",
+ * and into groups by "grouping". Every bucket and group that has any trades gets one HistoryAggregate for "column".
+ * Leaving out "from" or "to" leaves that end of the range open, and leaving out "bucket" puts every trade in the
+ * same bucket.
+ */
+public class HistoryQuery {
+    /**
+     * How to split trades into groups.
+     */
+    public enum Grouping {
+        NONE,
+        EXCHANGE_PAIR, // long exchange and short exchange
+        LONG_EXCHANGE,
+        SHORT_EXCHANGE,
+        CURRENCY_PAIR
+    }
+
+    private final HistoryColumn column;
+    private final Grouping grouping;
+    private final Instant from;
+    private final Instant to;
+    private final Duration bucket;
+    private final String exchange;
+    private final String currencyPair;
+
+    private HistoryQuery(HistoryQueryBuilder builder) {
+        this.column = builder.column;
+        this.grouping = builder.grouping;
+        this.from = builder.from;
+        this.to = builder.to;
+        this.bucket = builder.bucket;
+        this.exchange = builder.exchange;
+        this.currencyPair = builder.currencyPair;
+    }
+
+    public HistoryColumn getColumn() {
+        return column;
+    }
+
+    public Grouping getGrouping() {
+        return grouping;
+    }
+
+    public Instant getFrom() {
+        return from;
+    }
+
+    public Instant getTo() {
+        return to;
+    }
+
+    public Duration getBucket() {
+        return bucket;
+    }
+
+    public String getExchange() {
+        return exchange;
+    }
+
+    public String getCurrencyPair() {
+        return currencyPair;
+    }
+
+    public static final class HistoryQueryBuilder {
+        private HistoryColumn column = HistoryColumn.PROFIT;
+        private Grouping grouping = Grouping.NONE;
+        private Instant from;
+        private Instant to;
+        private Duration bucket;
+        private String exchange;
+        private String currencyPair;
+
+        public static HistoryQueryBuilder builder() {
+            return new HistoryQueryBuilder();
+        }
+
+        public HistoryQueryBuilder withColumn(HistoryColumn column) {
+            this.column = column;
+            return this;
+        }
+
+        public HistoryQueryBuilder withGrouping(Grouping grouping) {
+            this.grouping = grouping;
+            return this;
+        }
+
+        public HistoryQueryBuilder withFrom(Instant from) {
+            this.from = from;
+            return this;
+        }
+
+        public HistoryQueryBuilder withTo(Instant to) {
+            this.to = to;
+            return this;
+        }
+
+        public HistoryQueryBuilder withBucket(Duration bucket) {
+            this.bucket = bucket;
+            return this;
+        }
+
+        // only trades where this exchange was on either side
+        public HistoryQueryBuilder withExchange(String exchange) {
+            this.exchange = exchange;
+            return this;
+        }
+
+        // only trades in this currency pair, such as "BTC/USD"
+        public HistoryQueryBuilder withCurrencyPair(String currencyPair) {
+            this.currencyPair = currencyPair;
+            return this;
+        }
+
+        public HistoryQuery build() {
+            if (column == null || grouping == null) {
+                throw new IllegalArgumentException("A history query needs a column and a grouping");
+            }
+
+            if (bucket != null && (bucket.isNegative() || bucket.isZero())) {
+                throw new IllegalArgumentException("History query buckets must be longer than zero: " + bucket);
+            }
+
+            return new HistoryQuery(this);
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.r307.arbitrader.service.history;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * One memory mapped file of trade history with room for a fixed number of trades.
+ *
+ * The file is laid out column by column rather than trade by trade, so adding up one column only reads the pages
+ * that hold that column. After a small header come the timestamps, then the symbol numbers from the SymbolTable,
+ * then the HistoryColumn values as longs scaled the same way as FixedPoint.
+ *
+ * A trade's values are all written before the count in the header is raised to include it, so a trade that was only
+ * half written when we stopped is simply not there the next time the segment is opened.
+ */
+class HistorySegment {
+    static final int SHORT_EXCHANGE = 0;
+    static final int SHORT_CURRENCY = 1;
+    static final int LONG_EXCHANGE = 2;
+    static final int LONG_CURRENCY = 3;
+
+    private static final int MAGIC = 0x41524248; // "ARBH"
+    private static final int VERSION = 1;
+    private static final int SYMBOL_COLUMNS = 4;
+    private static final int DECIMAL_COLUMNS = HistoryColumn.values().length;
+    private static final int CAPACITY_OFFSET = 8;
+    private static final int COUNT_OFFSET = 12;
+    private static final int MIN_TIME_OFFSET = 16;
+    private static final int MAX_TIME_OFFSET = 24;
+    private static final int HEADER_SIZE = 32;
+
+    private final File file;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final int symbolOffset;
+    private final int decimalOffset;
+    private int count;
+    private long minTime;
+    private long maxTime;
+
+    private HistorySegment(File file, MappedByteBuffer buffer, int capacity) {
+        this.file = file;
+        this.buffer = buffer;
+        this.capacity = capacity;
+        this.symbolOffset = HEADER_SIZE + capacity * Long.BYTES;
+        this.decimalOffset = symbolOffset + SYMBOL_COLUMNS * capacity * Integer.BYTES;
+        this.count = buffer.getInt(COUNT_OFFSET);
+        this.minTime = buffer.getLong(MIN_TIME_OFFSET);
+        this.maxTime = buffer.getLong(MAX_TIME_OFFSET);
+    }
+
+    /**
+     * Make a new, empty segment.
+     *
+     * @param file The file to create.
+     * @param capacity How many trades the segment can hold.
+     * @return The segment.
+     * @throws IOException if the file can't be created.
+     */
+    static HistorySegment create(File file, int capacity) throws IOException {
+        final MappedByteBuffer buffer;
+
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+            StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, sizeOf(capacity));
+        }
+
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(CAPACITY_OFFSET, capacity);
+        buffer.putInt(COUNT_OFFSET, 0);
+        buffer.putLong(MIN_TIME_OFFSET, Long.MAX_VALUE);
+        buffer.putLong(MAX_TIME_OFFSET, Long.MIN_VALUE);
+        buffer.force();
+
+        return new HistorySegment(file, buffer, capacity);
+    }
+
+    /**
+     * Open a segment that was written before.
+     *
+     * @param file The file to open.
+     * @return The segment.
+     * @throws IOException if the file can't be read or isn't a trade history segment.
+     */
+    static HistorySegment open(File file) throws IOException {
+        final MappedByteBuffer buffer;
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Not a trade history segment: " + file.getName());
+            }
+
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        }
+
+        final int capacity = buffer.getInt(CAPACITY_OFFSET);
+        final int count = buffer.getInt(COUNT_OFFSET);
+
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION
+            || capacity <= 0 || sizeOf(capacity) != buffer.capacity() || count < 0 || count > capacity) {
+
+            throw new IOException("Not a trade history segment: " + file.getName());
+        }
+
+        return new HistorySegment(file, buffer, capacity);
+    }
+
+    // header, then one long timestamp column, the int symbol columns and the long decimal columns
+    private static long sizeOf(int capacity) {
+        return HEADER_SIZE + (long) capacity * (Long.BYTES + SYMBOL_COLUMNS * Integer.BYTES + DECIMAL_COLUMNS * Long.BYTES);
+    }
+
+    /**
+     * Add a trade to the end of the segment.
+     *
+     * @param time The time of the trade in milliseconds since the epoch.
+     * @param symbols The symbol numbers, indexed by SHORT_EXCHANGE and so on.
+     * @param decimals The scaled values, indexed by HistoryColumn ordinal.
+     */
+    void append(long time, int[] symbols, long[] decimals) {
+        if (isFull()) {
+            throw new IllegalStateException("Trade history segment is full: " + file.getName());
+        }
+
+        final int index = count;
+
+        buffer.putLong(HEADER_SIZE + index * Long.BYTES, time);
+
+        for (int column = 0; column < SYMBOL_COLUMNS; column++) {
+            buffer.putInt(symbolPosition(column, index), symbols[column]);
+        }
+
+        for (int column = 0; column < DECIMAL_COLUMNS; column++) {
+            buffer.putLong(decimalPosition(column, index), decimals[column]);
+        }
+
+        minTime = Math.min(minTime, time);
+        maxTime = Math.max(maxTime, time);
+        count++;
+
+        // the count goes last so the trade only shows up once it's all there
+        buffer.putLong(MIN_TIME_OFFSET, minTime);
+        buffer.putLong(MAX_TIME_OFFSET, maxTime);
+        buffer.putInt(COUNT_OFFSET, count);
+    }
+
+    /**
+     * Write any changes out to the disk.
+     */
+    void force() {
+        buffer.force();
+    }
+
+    long getTime(int index) {
+        return buffer.getLong(HEADER_SIZE + index * Long.BYTES);
+    }
+
+    int getSymbol(int column, int index) {
+        return buffer.getInt(symbolPosition(column, index));
+    }
+
+    long getDecimal(HistoryColumn column, int index) {
+        return buffer.getLong(decimalPosition(column.ordinal(), index));
+    }
+
+    /**
+     * Could this segment have any trades between two times? Lets a query skip whole segments without reading them.
+     *
+     * @param from The earliest time in milliseconds, inclusive.
+     * @param to The latest time in milliseconds, exclusive.
+     * @return true if the segment has trades and its time range overlaps the one given.
+     */
+    boolean overlaps(long from, long to) {
+        return count > 0 && minTime < to && maxTime >= from;
+    }
+
+    boolean isFull() {
+        return count >= capacity;
+    }
+
+    int getCount() {
+        return count;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    private int symbolPosition(int column, int index) {
+        return symbolOffset + (column * capacity + index) * Integer.BYTES;
+    }
+
+    private int decimalPosition(int column, int index) {
+        return decimalOffset + (column * capacity + index) * Long.BYTES;
+    }
+}
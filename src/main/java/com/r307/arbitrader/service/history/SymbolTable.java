@@ -0,0 +1,109 @@
+package com.r307.arbitrader.service.history;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Gives each exchange name and currency pair in the trade history a number, so the history can store four bytes
+ * instead of a whole string. The strings are kept in a text file, one per line, and a string's number is its line.
+ *
+ * A new symbol is forced to the disk before its number is handed out, so a segment can't be saved with a number the
+ * file doesn't have yet. If the file is lost or damaged anyway, numbers it doesn't have read back as MISSING_SYMBOL.
+ */
+class SymbolTable {
+    static final int UNKNOWN_ID = -1;
+    static final String MISSING_SYMBOL = "unknown";
+
+    private final File file;
+    private final List<String> symbols = new ArrayList<>();
+    private final Map<String, Integer> ids = new HashMap<>();
+
+    SymbolTable(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Read the symbols that were saved before.
+     *
+     * @throws IOException if the file can't be read.
+     */
+    void load() throws IOException {
+        symbols.clear();
+        ids.clear();
+
+        if (!file.exists()) {
+            return;
+        }
+
+        for (String symbol : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+            ids.putIfAbsent(symbol, symbols.size());
+            symbols.add(symbol);
+        }
+    }
+
+    /**
+     * Get the number for a symbol, adding it to the file if it's new.
+     *
+     * @param symbol The symbol.
+     * @return The symbol's number.
+     * @throws IOException if a new symbol can't be saved.
+     */
+    int intern(String symbol) throws IOException {
+        final String value = symbol == null ? "" : symbol;
+        final Integer id = ids.get(value);
+
+        if (id != null) {
+            return id;
+        }
+
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+
+            final ByteBuffer line = ByteBuffer.wrap((value + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+
+            while (line.hasRemaining()) {
+                channel.write(line);
+            }
+
+            channel.force(true);
+        }
+
+        ids.put(value, symbols.size());
+        symbols.add(value);
+
+        return symbols.size() - 1;
+    }
+
+    /**
+     * Get the number for a symbol without adding it.
+     *
+     * @param symbol The symbol.
+     * @return The symbol's number, or UNKNOWN_ID if it isn't in the table.
+     */
+    int getId(String symbol) {
+        return ids.getOrDefault(symbol, UNKNOWN_ID);
+    }
+
+    /**
+     * Get the symbol for a number.
+     *
+     * @param id The symbol's number.
+     * @return The symbol, or MISSING_SYMBOL if the number isn't in the table.
+     */
+    String getSymbol(int id) {
+        if (id < 0 || id >= symbols.size()) {
+            return MISSING_SYMBOL;
+        }
+
+        return symbols.get(id);
+    }
+}
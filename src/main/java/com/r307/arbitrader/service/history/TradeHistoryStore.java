@@ -0,0 +1,371 @@
+package com.r307.arbitrader.service.history;
+
+import com.r307.arbitrader.FixedPoint;
+import com.r307.arbitrader.service.model.ArbitrageLog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Keeps the trade history in a binary form that can be queried without reading every trade as text.
+ *
+ * Trades are stored in HistorySegment files under .arbitrader/history, with exchange names and currency pairs
+ * replaced by numbers from a SymbolTable and amounts stored as FixedPoint longs. Each segment knows the earliest
+ * and latest trade in it, so a query over a time range only reads the segments that could have matching trades.
+ *
+ * The CSV file written by the TradeHistoryWriter is still there for spreadsheets, and exportCsv() can write the same
+ * rows from the store.
+ */
+@Component
+public class TradeHistoryStore {
+    public static final String HISTORY_DIRECTORY = ".arbitrader/history";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TradeHistoryStore.class);
+    private static final int SEGMENT_CAPACITY = 4096;
+    private static final String SEGMENT_PREFIX = "history-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String SYMBOL_FILE = "symbols.txt";
+    private static final String ALL = "all";
+
+    private final File directory;
+    private final int segmentCapacity;
+    private final SymbolTable symbolTable;
+    private final List<HistorySegment> segments = new ArrayList<>();
+    private int nextSegment = 0;
+    private boolean open = false;
+
+    public TradeHistoryStore() {
+        this(new File(HISTORY_DIRECTORY), SEGMENT_CAPACITY);
+    }
+
+    public TradeHistoryStore(File directory) {
+        this(directory, SEGMENT_CAPACITY);
+    }
+
+    TradeHistoryStore(File directory, int segmentCapacity) {
+        this.directory = directory;
+        this.segmentCapacity = segmentCapacity;
+        this.symbolTable = new SymbolTable(new File(directory, SYMBOL_FILE));
+    }
+
+    /**
+     * Open the segments that are already on the disk. If that fails the store stays closed, trades are only written
+     * to the CSV file, and queries come back empty.
+     */
+    @PostConstruct
+    public synchronized void open() {
+        if (open) {
+            return;
+        }
+
+        try {
+            Files.createDirectories(directory.toPath());
+            symbolTable.load();
+        } catch (IOException e) {
+            LOGGER.error("Unable to open the trade history store in {}: {}", directory.getAbsolutePath(), e.getMessage());
+            return;
+        }
+
+        final File[] files = directory.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+
+        if (files != null) {
+            Arrays.sort(files, Comparator.comparing(File::getName));
+
+            for (File file : files) {
+                // number new segments after every file on the disk, even ones we can't read, so a name is never reused
+                nextSegment = Math.max(nextSegment, getNumber(file) + 1);
+
+                try {
+                    segments.add(HistorySegment.open(file));
+                } catch (IOException e) {
+                    LOGGER.error("Skipping unreadable trade history segment {}: {}", file.getName(), e.getMessage());
+                }
+            }
+        }
+
+        open = true;
+
+        LOGGER.info("Trade history store has {} trades in {} segments", size(), segments.size());
+    }
+
+    /**
+     * Add a trade to the store.
+     *
+     * @param arbitrageLog The trade.
+     * @throws IOException if the trade can't be written.
+     */
+    public synchronized void append(ArbitrageLog arbitrageLog) throws IOException {
+        if (!open) {
+            return;
+        }
+
+        final int[] symbols = new int[4];
+        final long[] decimals = new long[HistoryColumn.values().length];
+
+        symbols[HistorySegment.SHORT_EXCHANGE] = symbolTable.intern(arbitrageLog.getShortExchange());
+        symbols[HistorySegment.SHORT_CURRENCY] = symbolTable.intern(arbitrageLog.getShortCurrency());
+        symbols[HistorySegment.LONG_EXCHANGE] = symbolTable.intern(arbitrageLog.getLongExchange());
+        symbols[HistorySegment.LONG_CURRENCY] = symbolTable.intern(arbitrageLog.getLongCurrency());
+
+        for (HistoryColumn column : HistoryColumn.values()) {
+            decimals[column.ordinal()] = FixedPoint.toFixed(column.getValue(arbitrageLog));
+        }
+
+        final HistorySegment segment = getWritableSegment();
+
+        segment.append(arbitrageLog.getTimestamp().toInstant().toEpochMilli(), symbols, decimals);
+        segment.force();
+    }
+
+    /**
+     * Answer a question about the trade history.
+     *
+     * @param query The question.
+     * @return One aggregate for every time bucket and group with any trades in it, in order of time and then group.
+     */
+    public synchronized List<HistoryAggregate> query(HistoryQuery query) {
+        final long from = query.getFrom() == null ? Long.MIN_VALUE : query.getFrom().toEpochMilli();
+        final long to = query.getTo() == null ? Long.MAX_VALUE : query.getTo().toEpochMilli();
+        final long origin = query.getFrom() == null ? 0L : from;
+        final long bucketSize = query.getBucket() == null ? 0L : query.getBucket().toMillis();
+        final int exchange = query.getExchange() == null ? SymbolTable.UNKNOWN_ID : symbolTable.getId(query.getExchange());
+        final int currencyPair = query.getCurrencyPair() == null ? SymbolTable.UNKNOWN_ID : symbolTable.getId(query.getCurrencyPair());
+
+        // if we've never seen the exchange or currency pair there can't be any trades with it
+        if ((query.getExchange() != null && exchange == SymbolTable.UNKNOWN_ID)
+            || (query.getCurrencyPair() != null && currencyPair == SymbolTable.UNKNOWN_ID)) {
+            return new ArrayList<>();
+        }
+
+        final Map<AggregateKey, Accumulator> accumulators = new HashMap<>();
+
+        for (HistorySegment segment : segments) {
+            if (!segment.overlaps(from, to)) {
+                continue;
+            }
+
+            for (int i = 0; i < segment.getCount(); i++) {
+                final long time = segment.getTime(i);
+                final long value = segment.getDecimal(query.getColumn(), i);
+
+                if (time < from || time >= to || value == FixedPoint.NO_VALUE) {
+                    continue;
+                }
+
+                if (exchange != SymbolTable.UNKNOWN_ID
+                    && segment.getSymbol(HistorySegment.LONG_EXCHANGE, i) != exchange
+                    && segment.getSymbol(HistorySegment.SHORT_EXCHANGE, i) != exchange) {
+                    continue;
+                }
+
+                if (currencyPair != SymbolTable.UNKNOWN_ID
+                    && segment.getSymbol(HistorySegment.LONG_CURRENCY, i) != currencyPair) {
+                    continue;
+                }
+
+                final long bucket = bucketSize == 0L ? origin : origin + Math.floorDiv(time - origin, bucketSize) * bucketSize;
+                final AggregateKey key = new AggregateKey(bucket, groupOf(query.getGrouping(), segment, i));
+
+                accumulators.computeIfAbsent(key, k -> new Accumulator()).add(value);
+            }
+        }
+
+        final List<HistoryAggregate> aggregates = new ArrayList<>();
+
+        accumulators.forEach((key, accumulator) -> aggregates.add(new HistoryAggregate(
+            Instant.ofEpochMilli(key.bucket),
+            labelOf(query.getGrouping(), key.group),
+            accumulator.count,
+            accumulator.getSum(),
+            FixedPoint.toBigDecimal(accumulator.min),
+            FixedPoint.toBigDecimal(accumulator.max))));
+
+        aggregates.sort(Comparator.comparing(HistoryAggregate::getBucket).thenComparing(HistoryAggregate::getGroup));
+
+        return aggregates;
+    }
+
+    /**
+     * Write trades from the store in the same CSV format as the trade history file.
+     *
+     * @param writer Where to write the CSV.
+     * @param from The earliest trade to include, or null for no limit.
+     * @param to The time to stop at (exclusive), or null for no limit.
+     * @return The number of trades written.
+     * @throws IOException if the CSV can't be written.
+     */
+    public synchronized long exportCsv(Writer writer, Instant from, Instant to) throws IOException {
+        final long start = from == null ? Long.MIN_VALUE : from.toEpochMilli();
+        final long end = to == null ? Long.MAX_VALUE : to.toEpochMilli();
+        long written = 0;
+
+        writer.write(ArbitrageLog.ArbitrageLogBuilder.builder().build().csvHeaders());
+
+        for (HistorySegment segment : segments) {
+            if (!segment.overlaps(start, end)) {
+                continue;
+            }
+
+            for (int i = 0; i < segment.getCount(); i++) {
+                final long time = segment.getTime(i);
+
+                if (time < start || time >= end) {
+                    continue;
+                }
+
+                writer.write(read(segment, i).toCsv());
+                written++;
+            }
+        }
+
+        writer.flush();
+
+        return written;
+    }
+
+    /**
+     * The number of trades in the store.
+     *
+     * @return The number of trades.
+     */
+    public synchronized long size() {
+        return segments.stream().mapToLong(HistorySegment::getCount).sum();
+    }
+
+    // the timestamp comes back in UTC, whatever offset it was written with
+    private ArbitrageLog read(HistorySegment segment, int index) {
+        return ArbitrageLog.ArbitrageLogBuilder.builder()
+            .withShortExchange(symbolTable.getSymbol(segment.getSymbol(HistorySegment.SHORT_EXCHANGE, index)))
+            .withShortSpread(FixedPoint.toBigDecimal(segment.getDecimal(HistoryColumn.SHORT_SPREAD, index)))
+            .withShortSlip(FixedPoint.toBigDecimal(segment.getDecimal(HistoryColumn.SHORT_SLIP, index)))
+            .withShortAmount(FixedPoint.toBigDecimal(segment.getDecimal(HistoryColumn.SHORT_AMOUNT, index)))
+            .withShortCurrency(symbolTable.getSymbol(segment.getSymbol(HistorySegment.SHORT_CURRENCY, index)))
+            .withLongExchange(symbolTable.getSymbol(segment.getSymbol(HistorySegment.LONG_EXCHANGE, index)))
+            .withLongSpread(FixedPoint.toBigDecimal(segment.getDecimal(HistoryColumn.LONG_SPREAD, index)))
+            .withLongSlip(FixedPoint.toBigDecimal(segment.getDecimal(HistoryColumn.LONG_SLIP, index)))
+            .withLongAmount(FixedPoint.toBigDecimal(segment.getDecimal(HistoryColumn.LONG_AMOUNT, index)))
+            .withLongCurrency(symbolTable.getSymbol(segment.getSymbol(HistorySegment.LONG_CURRENCY, index)))
+            .withProfit(FixedPoint.toBigDecimal(segment.getDecimal(HistoryColumn.PROFIT, index)))
+            .withTimestamp(OffsetDateTime.ofInstant(Instant.ofEpochMilli(segment.getTime(index)), ZoneOffset.UTC))
+            .build();
+    }
+
+    private HistorySegment getWritableSegment() throws IOException {
+        if (!segments.isEmpty() && !segments.get(segments.size() - 1).isFull()) {
+            return segments.get(segments.size() - 1);
+        }
+
+        final File file = new File(directory, String.format("%s%08d%s", SEGMENT_PREFIX, nextSegment++, SEGMENT_SUFFIX));
+        final HistorySegment segment = HistorySegment.create(file, segmentCapacity);
+
+        segments.add(segment);
+
+        return segment;
+    }
+
+    // history-00000012.seg is number 12, and a name that isn't a number doesn't count
+    private static int getNumber(File file) {
+        final String name = file.getName();
+
+        try {
+            return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static long groupOf(HistoryQuery.Grouping grouping, HistorySegment segment, int index) {
+        switch (grouping) {
+            case EXCHANGE_PAIR:
+                return ((long) segment.getSymbol(HistorySegment.LONG_EXCHANGE, index) << 32)
+                    | segment.getSymbol(HistorySegment.SHORT_EXCHANGE, index);
+            case LONG_EXCHANGE:
+                return segment.getSymbol(HistorySegment.LONG_EXCHANGE, index);
+            case SHORT_EXCHANGE:
+                return segment.getSymbol(HistorySegment.SHORT_EXCHANGE, index);
+            case CURRENCY_PAIR:
+                return segment.getSymbol(HistorySegment.LONG_CURRENCY, index);
+            default:
+                return 0L;
+        }
+    }
+
+    private String labelOf(HistoryQuery.Grouping grouping, long group) {
+        switch (grouping) {
+            case EXCHANGE_PAIR:
+                return symbolTable.getSymbol((int) (group >>> 32)) + "/" + symbolTable.getSymbol((int) group);
+            case LONG_EXCHANGE:
+            case SHORT_EXCHANGE:
+            case CURRENCY_PAIR:
+                return symbolTable.getSymbol((int) group);
+            default:
+                return ALL;
+        }
+    }
+
+    private static final class AggregateKey {
+        private final long bucket;
+        private final long group;
+
+        private AggregateKey(long bucket, long group) {
+            this.bucket = bucket;
+            this.group = group;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            AggregateKey that = (AggregateKey) o;
+            return bucket == that.bucket && group == that.group;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(bucket, group);
+        }
+    }
+
+    // adds up scaled longs, only falling back to BigDecimal if the total gets too big for a long
+    private static final class Accumulator {
+        private long count = 0;
+        private long sum = 0;
+        private BigDecimal overflow = BigDecimal.ZERO;
+        private long min = Long.MAX_VALUE;
+        private long max = Long.MIN_VALUE;
+
+        private void add(long value) {
+            count++;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+
+            try {
+                sum = Math.addExact(sum, value);
+            } catch (ArithmeticException e) {
+                overflow = overflow.add(BigDecimal.valueOf(sum, FixedPoint.SCALE));
+                sum = value;
+            }
+        }
+
+        private BigDecimal getSum() {
+            return overflow.add(BigDecimal.valueOf(sum, FixedPoint.SCALE));
+        }
+    }
+}
@@ -0,0 +1,356 @@
+package com.r307.arbitrader.service.history;
+
+import com.r307.arbitrader.config.HistoryConfiguration;
+import com.r307.arbitrader.config.HistoryFlush;
+import com.r307.arbitrader.service.model.ArbitrageLog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Writes the trade history CSV file on a background thread, so a slow disk never holds up a trade.
+ *
+ * Trades are queued and the writer thread appends them to a file it keeps open. How often they're written out
+ * depends on the configured HistoryFlush. The queue has a fixed size, and if it ever fills up new trades are dropped
+ * and logged rather than making the trading thread wait. Trades that can't be written because of a disk error are
+ * counted as dropped too, and a trade only counts as written once it's actually in the file.
+ *
+ * When the file grows past history.maxFileSize it is renamed to arbitrader-arbitrage-history.1.csv, the older files
+ * move up by one, and a new file is started. Only history.maxFiles files are kept in all.
+ *
+ * The writer thread also adds every trade to the TradeHistoryStore, so queries never run on the trading thread's time.
+ */
+@Component
+public class TradeHistoryWriter {
+    public static final String TRADE_HISTORY_FILE = ".arbitrader/arbitrader-arbitrage-history.csv";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TradeHistoryWriter.class);
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long IDLE_POLL = 100L; // milliseconds, also the shortest useful flush interval
+
+    private final HistoryConfiguration historyConfiguration;
+    private final TradeHistoryStore tradeHistoryStore;
+    private final File historyFile;
+    private final BlockingQueue<ArbitrageLog> queue;
+    private final LongAdder droppedCount = new LongAdder();
+    private final LongAdder writtenCount = new LongAdder();
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE); // only used by the writer thread
+    private long bufferedRows = 0L; // trades in the buffer, only used by the writer thread
+    private FileChannel channel; // only used by the writer thread
+    private long fileSize = 0L; // bytes written to the current file, not counting the buffer
+    private long lastFlush = 0L;
+    private Thread writer;
+    private volatile boolean running = false;
+
+    @Autowired
+    public TradeHistoryWriter(HistoryConfiguration historyConfiguration, TradeHistoryStore tradeHistoryStore) {
+        this(historyConfiguration, tradeHistoryStore, new File(TRADE_HISTORY_FILE));
+    }
+
+    public TradeHistoryWriter(HistoryConfiguration historyConfiguration, TradeHistoryStore tradeHistoryStore, File historyFile) {
+        this.historyConfiguration = historyConfiguration;
+        this.tradeHistoryStore = tradeHistoryStore;
+        this.historyFile = historyFile;
+        this.queue = new ArrayBlockingQueue<>(historyConfiguration.getQueueSize());
+    }
+
+    /**
+     * Start the writer thread.
+     */
+    @PostConstruct
+    public synchronized void start() {
+        if (writer != null) {
+            return;
+        }
+
+        running = true;
+        writer = new Thread(this::run, "trade-history");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Write out everything still in the queue and stop the writer thread.
+     */
+    @PreDestroy
+    public synchronized void stop() {
+        if (writer == null) {
+            return;
+        }
+
+        running = false;
+
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        writer = null;
+    }
+
+    /**
+     * Queue a trade to be written to the history file. This never waits.
+     *
+     * @param arbitrageLog The trade.
+     * @return true if the trade was queued, false if the queue was full and it was dropped.
+     */
+    public boolean write(ArbitrageLog arbitrageLog) {
+        if (!queue.offer(arbitrageLog)) {
+            droppedCount.increment();
+
+            LOGGER.warn("Trade history queue is full, unable to log the trade into the csv file: {}", arbitrageLog.toCsv());
+
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * The number of trades waiting to be written.
+     *
+     * @return The queue depth.
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * The number of trades that were dropped because the queue was full or they couldn't be written to the file.
+     *
+     * @return The number of dropped trades.
+     */
+    public long getDroppedCount() {
+        return droppedCount.sum();
+    }
+
+    /**
+     * The number of trades that have been written to the file.
+     *
+     * @return The number of trades.
+     */
+    public long getWrittenCount() {
+        return writtenCount.sum();
+    }
+
+    // the writer thread
+    private void run() {
+        lastFlush = System.currentTimeMillis();
+
+        while (running || !queue.isEmpty()) {
+            try {
+                ArbitrageLog arbitrageLog = queue.poll(IDLE_POLL, TimeUnit.MILLISECONDS);
+
+                while (arbitrageLog != null) {
+                    store(arbitrageLog);
+                    append(arbitrageLog);
+                    arbitrageLog = queue.poll();
+                }
+
+                if (isFlushDue()) {
+                    flush();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (IOException e) {
+                LOGGER.error("Unable to log the trade into the csv file. Reason: {}", e.getMessage());
+                close();
+            }
+        }
+
+        try {
+            flush();
+        } catch (IOException e) {
+            LOGGER.error("Unable to log the trade into the csv file. Reason: {}", e.getMessage());
+        }
+
+        close();
+    }
+
+    // a trade that can't be stored should still make it into the csv file
+    private void store(ArbitrageLog arbitrageLog) {
+        try {
+            tradeHistoryStore.append(arbitrageLog);
+        } catch (IOException e) {
+            LOGGER.error("Unable to add the trade to the trade history store. Reason: {}", e.getMessage());
+        }
+    }
+
+    // add one trade to the buffer, starting a new file first if this one is full
+    private void append(ArbitrageLog arbitrageLog) throws IOException {
+        final byte[] row = arbitrageLog.toCsv().getBytes(StandardCharsets.UTF_8);
+        final boolean isWritten;
+
+        try {
+            if (channel == null) {
+                open(arbitrageLog);
+            }
+
+            if (fileSize + buffer.position() + row.length > historyConfiguration.getMaxFileSize()
+                && fileSize + buffer.position() > 0) {
+                rotate(arbitrageLog);
+            }
+
+            isWritten = put(row);
+        } catch (IOException e) {
+            droppedCount.increment(); // this one never made it into the buffer
+            throw e;
+        }
+
+        if (isWritten) {
+            writtenCount.increment();
+        } else {
+            bufferedRows++;
+        }
+    }
+
+    private boolean isFlushDue() {
+        if (buffer.position() == 0) {
+            return false;
+        }
+
+        return historyConfiguration.getFlush() == HistoryFlush.EVERY_TRADE
+            || System.currentTimeMillis() - lastFlush >= historyConfiguration.getFlushInterval();
+    }
+
+    // add bytes to the buffer, returning true if they were too big for it and went straight to the file instead
+    private boolean put(byte[] bytes) throws IOException {
+        if (bytes.length > buffer.remaining()) {
+            flush();
+        }
+
+        if (bytes.length > buffer.capacity()) {
+            fileSize += writeFully(ByteBuffer.wrap(bytes));
+            return true;
+        }
+
+        buffer.put(bytes);
+
+        return false;
+    }
+
+    // write the buffer out to the file
+    private void flush() throws IOException {
+        lastFlush = System.currentTimeMillis();
+
+        if (buffer.position() == 0 || channel == null) {
+            return;
+        }
+
+        buffer.flip();
+
+        try {
+            fileSize += writeFully(buffer);
+            writtenCount.add(bufferedRows);
+            bufferedRows = 0L;
+        } finally {
+            buffer.clear();
+        }
+    }
+
+    private long writeFully(ByteBuffer bytes) throws IOException {
+        long written = 0;
+
+        while (bytes.hasRemaining()) {
+            written += channel.write(bytes);
+        }
+
+        return written;
+    }
+
+    // open the history file, adding the headers if it's a new file
+    private void open(ArbitrageLog arbitrageLog) throws IOException {
+        final File directory = historyFile.getAbsoluteFile().getParentFile();
+
+        Files.createDirectories(directory.toPath());
+
+        channel = FileChannel.open(historyFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        fileSize = channel.size();
+
+        if (fileSize == 0) {
+            put(arbitrageLog.csvHeaders().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    // move the full file out of the way and start a new one
+    private void rotate(ArbitrageLog arbitrageLog) throws IOException {
+        flush();
+        close();
+
+        final int archives = historyConfiguration.getMaxFiles() - 1;
+
+        if (archives < 1) {
+            Files.deleteIfExists(historyFile.toPath());
+        } else {
+            Files.deleteIfExists(getArchive(archives).toPath());
+
+            for (int i = archives - 1; i >= 1; i--) {
+                final File archive = getArchive(i);
+
+                if (archive.exists()) {
+                    Files.move(archive.toPath(), getArchive(i + 1).toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+
+            Files.move(historyFile.toPath(), getArchive(1).toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        LOGGER.info("Started a new trade history file: {}", historyFile.getAbsolutePath());
+
+        open(arbitrageLog);
+    }
+
+    // arbitrader-arbitrage-history.csv becomes arbitrader-arbitrage-history.1.csv and so on
+    File getArchive(int number) {
+        final String name = historyFile.getName();
+        final int extension = name.lastIndexOf('.');
+        final String archiveName = extension < 0
+            ? name + "." + number
+            : name.substring(0, extension) + "." + number + name.substring(extension);
+
+        return new File(historyFile.getAbsoluteFile().getParentFile(), archiveName);
+    }
+
+    // close the file, throwing away anything that couldn't be written and counting it as dropped
+    private void close() {
+        if (bufferedRows > 0) {
+            LOGGER.error("Unable to log {} trades into the csv file, they have been dropped", bufferedRows);
+
+            droppedCount.add(bufferedRows);
+            bufferedRows = 0L;
+        }
+
+        buffer.clear();
+
+        if (channel == null) {
+            return;
+        }
+
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOGGER.warn("Unable to close the trade history file: {}", e.getMessage());
+        }
+
+        channel = null;
+        fileSize = 0L;
+    }
+}
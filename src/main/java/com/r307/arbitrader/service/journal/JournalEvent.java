@@ -0,0 +1,120 @@
+package com.r307.arbitrader.service.journal;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.r307.arbitrader.service.model.ActivePosition;
+
+import java.time.OffsetDateTime;
+
+/**
+ * One line in the trade journal: something that happened to a position, along with the whole position as it was
+ * right after it happened. Replaying the last event for every position gives us back all the positions we had open.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class JournalEvent {
+    /**
+     * The steps a position goes through, in order.
+     */
+    public enum Type {
+        ENTRY_INTENT(true), // we decided to enter and are about to place orders
+        ENTRY_PLACED(true), // both entry orders were accepted by the exchanges
+        ENTRY_FILLED(true), // both entry orders filled, so the position is open
+        EXIT_INTENT(true), // we decided to exit and are about to place orders
+        EXIT_PLACED(true), // both exit orders were accepted by the exchanges
+        CLOSED(false), // the position is gone
+        CANCELLED(false), // the entry orders couldn't be placed, so there never was a position
+        SNAPSHOT(true); // a position carried over from an older journal or state file
+
+        private final boolean open;
+
+        Type(boolean open) {
+            this.open = open;
+        }
+
+        /**
+         * Does the position still exist after this event?
+         *
+         * @return true if the position is still open.
+         */
+        public boolean isOpen() {
+            return open;
+        }
+
+        /**
+         * Did we stop in the middle of placing or filling orders? If so we can't tell from the journal what the
+         * exchanges did, and a human should take a look.
+         *
+         * @return true if the orders for this event might not have finished.
+         */
+        public boolean isInDoubt() {
+            return this == ENTRY_INTENT || this == ENTRY_PLACED || this == EXIT_INTENT || this == EXIT_PLACED;
+        }
+    }
+
+    private long sequence;
+    private OffsetDateTime time;
+    private Type type;
+    private String key;
+    private ActivePosition position;
+
+    public JournalEvent() {
+        // for Jackson
+    }
+
+    public JournalEvent(long sequence, OffsetDateTime time, Type type, String key, ActivePosition position) {
+        this.sequence = sequence;
+        this.time = time;
+        this.type = type;
+        this.key = key;
+        this.position = position;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    public OffsetDateTime getTime() {
+        return time;
+    }
+
+    public void setTime(OffsetDateTime time) {
+        this.time = time;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public void setType(Type type) {
+        this.type = type;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public void setKey(String key) {
+        this.key = key;
+    }
+
+    public ActivePosition getPosition() {
+        return position;
+    }
+
+    public void setPosition(ActivePosition position) {
+        this.position = position;
+    }
+
+    @Override
+    public String toString() {
+        return "JournalEvent{" +
+            "sequence=" + sequence +
+            ", time=" + time +
+            ", type=" + type +
+            ", key='" + key + '\'' +
+            '}';
+    }
+}
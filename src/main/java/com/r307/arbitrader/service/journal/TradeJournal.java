@@ -0,0 +1,437 @@
+package com.r307.arbitrader.service.journal;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.r307.arbitrader.service.PositionBook;
+import com.r307.arbitrader.service.model.ActivePosition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An append-only journal of everything that happens to our positions, so we can pick up where we left off after a
+ * restart or a crash.
+ *
+ * Each event is one line of JSON. A background thread writes whatever events are waiting and then syncs the file
+ * once for all of them, so trades on different exchanges share the cost of the sync. append() doesn't return until
+ * its event is safely on disk.
+ *
+ * Only the last event for each position matters, so every so often the journal is compacted down to one line per
+ * open position. The compacted journal is written to a temporary file and moved into place, so a crash at any point
+ * leaves either the old journal or the new one. A crash in the middle of appending can leave half a line at the
+ * end, which is ignored when the journal is replayed.
+ */
+@Component
+public class TradeJournal {
+    static final String JOURNAL_FILE = ".arbitrader/arbitrader-journal.jsonl";
+    static final String LEGACY_STATE_FILE = ".arbitrader/arbitrader-state.json";
+    static final int COMPACT_THRESHOLD = 1000; // events since the last compaction
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TradeJournal.class);
+    private static final int BATCH_SIZE = 256;
+
+    private final ObjectMapper objectMapper;
+    private final File journalFile;
+    private final File legacyStateFile;
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final Map<String, byte[]> latest = new LinkedHashMap<>(); // last line for each open position
+    private FileChannel channel;
+    private int sinceCompaction = 0;
+    private Thread writer;
+    private volatile boolean running = false;
+
+    @Autowired
+    public TradeJournal(ObjectMapper objectMapper) {
+        this(objectMapper, new File(JOURNAL_FILE), new File(LEGACY_STATE_FILE));
+    }
+
+    public TradeJournal(ObjectMapper objectMapper, File journalFile, File legacyStateFile) {
+        this.objectMapper = objectMapper;
+        this.journalFile = journalFile;
+        this.legacyStateFile = legacyStateFile;
+    }
+
+    /**
+     * Replay the journal to find the positions that were open when we last stopped, then start accepting new events.
+     * If there is no journal yet but there is a state file from an older version, the positions are loaded from
+     * that instead and the state file is removed.
+     *
+     * A position we had only just decided to enter is left out, because we can't tell whether its orders were ever
+     * placed. It is logged so a human can check the exchanges.
+     *
+     * @return The open positions.
+     * @throws IOException if the journal can't be read or written.
+     */
+    public synchronized Collection<ActivePosition> recover() throws IOException {
+        if (writer != null) {
+            throw new IllegalStateException("The trade journal has already been recovered");
+        }
+
+        final long start = System.nanoTime();
+        final boolean migrating = !journalFile.exists() && legacyStateFile.exists();
+        final Map<String, JournalEvent> events = migrating ? readLegacyState() : replay();
+        final List<ActivePosition> positions = new ArrayList<>();
+
+        for (JournalEvent event : new ArrayList<>(events.values())) {
+            if (event.getType() == JournalEvent.Type.ENTRY_INTENT) {
+                LOGGER.error("Dropping {} because we stopped before placing its orders. Please check the exchanges: {}",
+                    event.getKey(),
+                    event.getPosition());
+                events.remove(event.getKey());
+                continue;
+            }
+
+            if (event.getType().isInDoubt()) {
+                LOGGER.warn("We stopped in the middle of {} for {}. Please check the exchanges for open orders.",
+                    event.getType(),
+                    event.getKey());
+            }
+
+            latest.put(event.getKey(), serialize(event));
+            positions.add(event.getPosition());
+        }
+
+        compact();
+
+        if (migrating) {
+            LOGGER.info("Moved open positions from {} to {}", legacyStateFile.getAbsolutePath(), journalFile.getAbsolutePath());
+            Files.deleteIfExists(legacyStateFile.toPath());
+        }
+
+        running = true;
+        writer = new Thread(this::write, "trade-journal");
+        writer.setDaemon(true);
+        writer.start();
+
+        LOGGER.info("Recovered {} open positions from {} in {} microseconds",
+            positions.size(),
+            journalFile.getAbsolutePath(),
+            TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+
+        return positions;
+    }
+
+    /**
+     * Record something that happened to a position, and wait until it is safely on disk.
+     *
+     * @param type What happened.
+     * @param position The position as it is now.
+     * @return true if the event was written, false if something went wrong. Errors are logged.
+     */
+    public boolean append(JournalEvent.Type type, ActivePosition position) {
+        if (!running) {
+            LOGGER.error("Unable to record {} for {} because the trade journal isn't running", type, position);
+            return false;
+        }
+
+        final Pending pending;
+
+        try {
+            // serialize right away, so changes made to the position after this don't sneak into the event
+            final JournalEvent event = new JournalEvent(
+                sequence.incrementAndGet(),
+                OffsetDateTime.now(),
+                type,
+                PositionBook.key(position),
+                position);
+
+            pending = new Pending(event.getKey(), type.isOpen(), serialize(event));
+        } catch (JsonProcessingException e) {
+            LOGGER.error("Unable to serialize {} for the trade journal: ", type, e);
+            return false;
+        }
+
+        queue.add(pending);
+
+        try {
+            pending.future.join();
+        } catch (CompletionException e) {
+            LOGGER.error("Unable to write to the trade journal: ", e.getCause());
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Write any events that are still waiting and close the journal.
+     */
+    @PreDestroy
+    public synchronized void close() {
+        if (writer == null) {
+            return;
+        }
+
+        running = false;
+
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOGGER.warn("Unable to close the trade journal: {}", e.getMessage());
+        }
+    }
+
+    // read the journal, keeping the last event for each position that is still open
+    private Map<String, JournalEvent> replay() throws IOException {
+        final Map<String, JournalEvent> events = new LinkedHashMap<>();
+
+        if (!journalFile.exists()) {
+            return events;
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(journalFile.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+
+                if (line.isEmpty()) {
+                    continue;
+                }
+
+                final JournalEvent event;
+
+                try {
+                    event = objectMapper.readValue(line, JournalEvent.class);
+                } catch (JsonProcessingException e) {
+                    // most likely half of a line that was being written when we crashed
+                    LOGGER.warn("Skipping unreadable line {} in {}: {}", lineNumber, journalFile.getAbsolutePath(), e.getOriginalMessage());
+                    continue;
+                }
+
+                sequence.set(Math.max(sequence.get(), event.getSequence()));
+
+                if (event.getType().isOpen()) {
+                    events.remove(event.getKey()); // keep them in the order they were last touched
+                    events.put(event.getKey(), event);
+                } else {
+                    events.remove(event.getKey());
+                }
+            }
+        }
+
+        return events;
+    }
+
+    // read the state file used by older versions, which is either a list of positions or a single position
+    private Map<String, JournalEvent> readLegacyState() throws IOException {
+        final Map<String, JournalEvent> events = new LinkedHashMap<>();
+        final JsonNode state = objectMapper.readTree(legacyStateFile);
+        final List<ActivePosition> positions = new ArrayList<>();
+
+        if (state.isArray()) {
+            for (JsonNode position : state) {
+                positions.add(objectMapper.treeToValue(position, ActivePosition.class));
+            }
+        } else {
+            positions.add(objectMapper.treeToValue(state, ActivePosition.class));
+        }
+
+        positions.forEach(position -> {
+            final String key = PositionBook.key(position);
+
+            events.put(key, new JournalEvent(sequence.incrementAndGet(), OffsetDateTime.now(), JournalEvent.Type.SNAPSHOT, key, position));
+        });
+
+        return events;
+    }
+
+    // the writer thread: write whatever is waiting, sync once, then let everyone know
+    private void write() {
+        final List<Pending> batch = new ArrayList<>(BATCH_SIZE);
+
+        while (running || !queue.isEmpty()) {
+            try {
+                final Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+
+                if (first == null) {
+                    continue;
+                }
+
+                batch.add(first);
+                queue.drainTo(batch, BATCH_SIZE - 1);
+
+                commit(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } finally {
+                batch.clear();
+            }
+        }
+
+        // anything still waiting now is never going to be written
+        final List<Pending> abandoned = new ArrayList<>();
+
+        queue.drainTo(abandoned);
+        abandoned.forEach(pending -> pending.future.completeExceptionally(new IOException("The trade journal was closed")));
+    }
+
+    // append a batch of events and sync them to disk
+    private void commit(List<Pending> batch) {
+        final ByteBuffer[] buffers = new ByteBuffer[batch.size()];
+
+        for (int i = 0; i < batch.size(); i++) {
+            buffers[i] = ByteBuffer.wrap(batch.get(i).line);
+        }
+
+        long size = -1;
+
+        try {
+            size = channel.size();
+
+            writeFully(channel, buffers);
+            channel.force(false);
+        } catch (IOException e) {
+            truncate(size);
+            batch.forEach(pending -> pending.future.completeExceptionally(e));
+            return;
+        }
+
+        batch.forEach(pending -> {
+            if (pending.open) {
+                latest.remove(pending.key);
+                latest.put(pending.key, pending.line);
+            } else {
+                latest.remove(pending.key);
+            }
+
+            pending.future.complete(null);
+        });
+
+        sinceCompaction += batch.size();
+
+        if (sinceCompaction >= COMPACT_THRESHOLD) {
+            try {
+                compact();
+            } catch (IOException e) {
+                LOGGER.warn("Unable to compact the trade journal: {}", e.getMessage());
+            }
+        }
+    }
+
+    // rewrite the journal with just the last line for each open position
+    private void compact() throws IOException {
+        final Path journalPath = journalFile.toPath();
+        final Path directory = journalFile.getAbsoluteFile().getParentFile().toPath();
+        final Path temporary = directory.resolve(journalFile.getName() + ".tmp");
+
+        Files.createDirectories(directory);
+
+        try (FileChannel out = FileChannel.open(temporary,
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+
+            final ByteBuffer[] buffers = latest.values()
+                .stream()
+                .map(ByteBuffer::wrap)
+                .toArray(ByteBuffer[]::new);
+
+            writeFully(out, buffers);
+            out.force(true);
+        }
+
+        if (channel != null) {
+            channel.close();
+        }
+
+        try {
+            Files.move(temporary, journalPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            syncDirectory(directory);
+            sinceCompaction = 0;
+        } finally {
+            channel = FileChannel.open(journalPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+    }
+
+    // throw away half-written lines so the next batch starts on a line of its own
+    private void truncate(long size) {
+        if (size < 0) {
+            return;
+        }
+
+        try {
+            channel.truncate(size);
+        } catch (IOException e) {
+            LOGGER.warn("Unable to truncate the trade journal: {}", e.getMessage());
+        }
+    }
+
+    private byte[] serialize(JournalEvent event) throws JsonProcessingException {
+        final byte[] json = objectMapper.writeValueAsBytes(event);
+        final byte[] line = new byte[json.length + 1];
+
+        System.arraycopy(json, 0, line, 0, json.length);
+        line[json.length] = '\n';
+
+        return line;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer[] buffers) throws IOException {
+        long remaining = 0;
+
+        for (ByteBuffer buffer : buffers) {
+            remaining += buffer.remaining();
+        }
+
+        while (remaining > 0) {
+            remaining -= channel.write(buffers);
+        }
+    }
+
+    // make the rename durable; not every platform lets us open a directory, and that's fine
+    private static void syncDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            LOGGER.debug("Unable to sync directory {}: {}", directory, e.getMessage());
+        }
+    }
+
+    // an event waiting for the writer thread
+    private static class Pending {
+        private final String key;
+        private final boolean open;
+        private final byte[] line;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        Pending(String key, boolean open, byte[] line) {
+            this.key = key;
+            this.open = open;
+            this.line = line;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.r307.arbitrader.service.latency;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts latencies in buckets that double in size: 0, 1, 2-3, 4-7 microseconds and so on up to about 36 minutes.
+ * Percentiles are only as accurate as the bucket they fall in, but recording is a couple of atomic increments with
+ * no locking or allocation, so it's cheap enough to do for every ticker.
+ */
+public class LatencyHistogram {
+    static final int BUCKETS = 32;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Record one latency.
+     *
+     * @param micros The latency in microseconds.
+     */
+    public void record(long micros) {
+        if (micros < 0) {
+            return;
+        }
+
+        counts.incrementAndGet(bucket(micros));
+        count.incrementAndGet();
+        max.accumulateAndGet(micros, Math::max);
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Estimate a percentile.
+     *
+     * @param percentile The percentile, between 0 and 100.
+     * @return The upper bound of the bucket the percentile falls in, in microseconds, but never more than the maximum.
+     */
+    public long getPercentile(double percentile) {
+        final long total = count.get();
+
+        if (total == 0) {
+            return 0;
+        }
+
+        final long rank = (long) Math.ceil(total * percentile / 100.0);
+        long seen = 0;
+
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+
+            if (seen >= rank) {
+                return Math.min(upperBound(i), max.get());
+            }
+        }
+
+        return max.get();
+    }
+
+    // 0 goes in bucket 0, 1 in bucket 1, 2-3 in bucket 2, 4-7 in bucket 3...
+    static int bucket(long micros) {
+        return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+    }
+
+    // the largest value that goes in a bucket
+    static long upperBound(int bucket) {
+        return bucket == BUCKETS - 1 ? Long.MAX_VALUE : (1L << bucket) - 1;
+    }
+}
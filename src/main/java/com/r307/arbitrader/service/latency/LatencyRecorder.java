@@ -0,0 +1,183 @@
+package com.r307.arbitrader.service.latency;
+
+import com.r307.arbitrader.service.model.TradeCombination;
+import org.knowm.xchange.Exchange;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps latency histograms for every stage a ticker goes through, so we can see where the time goes between a price
+ * changing on an exchange and our orders reaching it.
+ *
+ * The stages up to DEQUEUED belong to the exchange the ticker came from, and the rest belong to the trade combination
+ * that was analyzed. Each trade combination also has a histogram for the whole trip, from receiving the ticker to the
+ * last stage it reached.
+ */
+@Component
+public class LatencyRecorder {
+    private static final LatencyStage[] TICKER_STAGES = {
+        LatencyStage.RECEIVED,
+        LatencyStage.STORED,
+        LatencyStage.DEQUEUED
+    };
+    private static final LatencyStage[] COMBINATION_STAGES = {
+        LatencyStage.SPREAD,
+        LatencyStage.DECISION,
+        LatencyStage.SUBMITTED,
+        LatencyStage.ACKNOWLEDGED
+    };
+
+    private final Map<Exchange, StageHistograms> exchanges = new ConcurrentHashMap<>();
+    private final Map<TradeCombination, StageHistograms> combinations = new ConcurrentHashMap<>();
+
+    /**
+     * Record the stages a ticker went through before it was analyzed.
+     *
+     * @param exchange The exchange the ticker came from.
+     * @param trace The LatencyTrace for the ticker.
+     */
+    public void recordTicker(Exchange exchange, LatencyTrace trace) {
+        final StageHistograms histograms = getHistograms(exchanges, exchange);
+
+        for (LatencyStage stage : TICKER_STAGES) {
+            histograms.get(stage).record(trace.getLatency(stage));
+        }
+    }
+
+    /**
+     * Record the stages one trade combination went through while analyzing a ticker.
+     *
+     * @param tradeCombination The trade combination.
+     * @param trace The LatencyTrace for the ticker.
+     */
+    public void recordCombination(TradeCombination tradeCombination, LatencyTrace trace) {
+        final StageHistograms histograms = getHistograms(combinations, tradeCombination);
+
+        for (LatencyStage stage : COMBINATION_STAGES) {
+            histograms.get(stage).record(trace.getLatency(stage));
+        }
+
+        histograms.getTotal().record(trace.getTotalLatency());
+    }
+
+    /**
+     * Get the histogram for one stage on an exchange.
+     *
+     * @param exchange The exchange.
+     * @param stage One of the stages up to DEQUEUED.
+     * @return The LatencyHistogram.
+     */
+    public LatencyHistogram getHistogram(Exchange exchange, LatencyStage stage) {
+        return getHistograms(exchanges, exchange).get(stage);
+    }
+
+    /**
+     * Get the histogram for one stage of a trade combination.
+     *
+     * @param tradeCombination The trade combination.
+     * @param stage One of the stages from SPREAD on.
+     * @return The LatencyHistogram.
+     */
+    public LatencyHistogram getHistogram(TradeCombination tradeCombination, LatencyStage stage) {
+        return getHistograms(combinations, tradeCombination).get(stage);
+    }
+
+    /**
+     * Get the histogram for the whole trip through a trade combination.
+     *
+     * @param tradeCombination The trade combination.
+     * @return The LatencyHistogram.
+     */
+    public LatencyHistogram getTotalHistogram(TradeCombination tradeCombination) {
+        return getHistograms(combinations, tradeCombination).getTotal();
+    }
+
+    /**
+     * Summarize the histograms, one line per exchange and trade combination.
+     *
+     * @return Lines suitable for logging.
+     */
+    public List<String> report() {
+        final List<String> lines = new ArrayList<>();
+
+        exchanges.entrySet()
+            .stream()
+            .sorted(Comparator.comparing(entry -> entry.getKey().getExchangeSpecification().getExchangeName()))
+            .forEach(entry -> lines.add(String.format("Latency %s: %s",
+                entry.getKey().getExchangeSpecification().getExchangeName(),
+                entry.getValue().summarize(TICKER_STAGES))));
+
+        combinations.entrySet()
+            .stream()
+            .sorted(Comparator.comparing(entry -> entry.getKey().toString()))
+            .forEach(entry -> lines.add(String.format("Latency %s: %s, total %s",
+                entry.getKey(),
+                entry.getValue().summarize(COMBINATION_STAGES),
+                summarize(entry.getValue().getTotal()))));
+
+        if (!lines.isEmpty()) {
+            lines.add("Latency is shown as p50/p99/max in microseconds");
+        }
+
+        return lines;
+    }
+
+    // don't use computeIfAbsent() every time because it locks even when the key is already there
+    private static <K> StageHistograms getHistograms(Map<K, StageHistograms> map, K key) {
+        final StageHistograms histograms = map.get(key);
+
+        if (histograms != null) {
+            return histograms;
+        }
+
+        return map.computeIfAbsent(key, k -> new StageHistograms());
+    }
+
+    private static String summarize(LatencyHistogram histogram) {
+        return String.format("%d/%d/%d",
+            histogram.getPercentile(50),
+            histogram.getPercentile(99),
+            histogram.getMax());
+    }
+
+    // a histogram for each stage, plus one for the total
+    private static class StageHistograms {
+        private final Map<LatencyStage, LatencyHistogram> histograms = new EnumMap<>(LatencyStage.class);
+        private final LatencyHistogram total = new LatencyHistogram();
+
+        StageHistograms() {
+            for (LatencyStage stage : LatencyStage.values()) {
+                histograms.put(stage, new LatencyHistogram());
+            }
+        }
+
+        LatencyHistogram get(LatencyStage stage) {
+            return histograms.get(stage);
+        }
+
+        LatencyHistogram getTotal() {
+            return total;
+        }
+
+        // stages that were never reached are left out
+        String summarize(LatencyStage[] stages) {
+            final List<String> parts = new ArrayList<>();
+
+            for (LatencyStage stage : stages) {
+                LatencyHistogram histogram = histograms.get(stage);
+
+                if (histogram.getCount() > 0) {
+                    parts.add(stage.getLabel() + " " + LatencyRecorder.summarize(histogram));
+                }
+            }
+
+            return String.join(", ", parts);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.r307.arbitrader.service.latency;
+
+/**
+ * The stages a ticker goes through on its way from the exchange to an order, in the order they happen. The latency
+ * of a stage is the time since the stage before it.
+ */
+public enum LatencyStage {
+    /**
+     * We received the ticker from the websocket or the REST call. The latency is measured from the timestamp the
+     * exchange put on the ticker, so it includes any difference between their clock and ours.
+     */
+    RECEIVED("received"),
+
+    /**
+     * The ticker was stored by TickerService.putTicker().
+     */
+    STORED("stored"),
+
+    /**
+     * A worker picked up the ticker to analyze it.
+     */
+    DEQUEUED("dequeued"),
+
+    /**
+     * The spread was computed for one trade combination.
+     */
+    SPREAD("spread"),
+
+    /**
+     * We decided whether or not to trade the combination.
+     */
+    DECISION("decision"),
+
+    /**
+     * Both orders were ready to be sent to the exchanges.
+     */
+    SUBMITTED("submitted"),
+
+    /**
+     * Both exchanges accepted their orders.
+     */
+    ACKNOWLEDGED("acknowledged");
+
+    private final String label;
+
+    LatencyStage(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+}
@@ -0,0 +1,133 @@
+package com.r307.arbitrader.service.latency;
+
+import org.knowm.xchange.dto.marketdata.Ticker;
+
+/**
+ * The times one ticker reached each LatencyStage. A trace is created when the ticker is received and travels with it
+ * through the TickerEvent and the Spread. It is only touched by one thread at a time.
+ *
+ * The stages before SPREAD happen once per ticker, and the rest happen once for every trade combination that uses
+ * the ticker. After each combination is recorded, reset() clears its stages so the trace can be used for the next one.
+ */
+public class LatencyTrace {
+    public static final long NO_TIME = 0L;
+
+    private static final LatencyStage[] STAGES = LatencyStage.values();
+
+    private final long exchangeTimestamp; // milliseconds, from the exchange's clock
+    private final long receivedTimestamp; // milliseconds, from our clock
+    private final long[] times = new long[STAGES.length]; // nanoseconds
+
+    LatencyTrace(long exchangeTimestamp, long receivedTimestamp, long receivedTime) {
+        this.exchangeTimestamp = exchangeTimestamp;
+        this.receivedTimestamp = receivedTimestamp;
+        this.times[LatencyStage.RECEIVED.ordinal()] = receivedTime;
+    }
+
+    /**
+     * Start a trace for a ticker we just received.
+     *
+     * @param ticker The Ticker.
+     * @return A new LatencyTrace with the RECEIVED stage marked.
+     */
+    public static LatencyTrace received(Ticker ticker) {
+        return new LatencyTrace(
+            ticker.getTimestamp() == null ? NO_TIME : ticker.getTimestamp().getTime(),
+            System.currentTimeMillis(),
+            System.nanoTime());
+    }
+
+    /**
+     * Mark that the ticker has reached a stage.
+     *
+     * @param stage The stage.
+     */
+    public void mark(LatencyStage stage) {
+        times[stage.ordinal()] = System.nanoTime();
+    }
+
+    /**
+     * Mark a stage unless it has been marked already.
+     *
+     * @param stage The stage.
+     */
+    public void markIfAbsent(LatencyStage stage) {
+        if (times[stage.ordinal()] == NO_TIME) {
+            mark(stage);
+        }
+    }
+
+    /**
+     * Check whether a stage has been marked.
+     *
+     * @param stage The stage.
+     * @return true if the stage has been marked.
+     */
+    public boolean isMarked(LatencyStage stage) {
+        return times[stage.ordinal()] != NO_TIME;
+    }
+
+    /**
+     * Get the time from the last marked stage before this one to this one.
+     *
+     * @param stage The stage.
+     * @return The latency in microseconds, or -1 if the stage hasn't been marked.
+     */
+    public long getLatency(LatencyStage stage) {
+        if (!isMarked(stage)) {
+            return -1;
+        }
+
+        if (stage == LatencyStage.RECEIVED) {
+            // we can only compare the exchange's timestamp to our wall clock, and the clocks might not agree
+            return exchangeTimestamp == NO_TIME ? -1 : Math.max(0, receivedTimestamp - exchangeTimestamp) * 1000;
+        }
+
+        for (int i = stage.ordinal() - 1; i >= 0; i--) {
+            if (times[i] != NO_TIME) {
+                return (times[stage.ordinal()] - times[i]) / 1000;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Get the time from receiving the ticker to the last stage that has been marked.
+     *
+     * @return The latency in microseconds.
+     */
+    public long getTotalLatency() {
+        for (int i = STAGES.length - 1; i > 0; i--) {
+            if (times[i] != NO_TIME) {
+                return (times[i] - times[LatencyStage.RECEIVED.ordinal()]) / 1000;
+            }
+        }
+
+        return 0;
+    }
+
+    /**
+     * Clear every stage after the given one.
+     *
+     * @param stage The last stage to keep.
+     */
+    public void reset(LatencyStage stage) {
+        for (int i = stage.ordinal() + 1; i < STAGES.length; i++) {
+            times[i] = NO_TIME;
+        }
+    }
+
+    /**
+     * Make a copy, for when the rest of the stages will be marked on another thread.
+     *
+     * @return A new LatencyTrace with the same times.
+     */
+    public LatencyTrace copy() {
+        LatencyTrace copy = new LatencyTrace(exchangeTimestamp, receivedTimestamp, NO_TIME);
+
+        System.arraycopy(times, 0, copy.times, 0, times.length);
+
+        return copy;
+    }
+}
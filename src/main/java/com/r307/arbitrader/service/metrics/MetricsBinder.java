@@ -0,0 +1,136 @@
+package com.r307.arbitrader.service.metrics;
+
+import com.r307.arbitrader.service.SpreadService;
+import com.r307.arbitrader.service.TradingService;
+import com.r307.arbitrader.service.cache.CacheStatistics;
+import com.r307.arbitrader.service.cache.ExchangeFeeCache;
+import com.r307.arbitrader.service.event.TickerEventDispatcher;
+import com.r307.arbitrader.service.event.TickerRingBuffer;
+import com.r307.arbitrader.service.history.TradeHistoryWriter;
+import com.r307.arbitrader.service.recorder.MarketDataRecorder;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.function.Function;
+
+/**
+ * Registers metrics that are read straight from other components whenever the metrics are scraped, so none of
+ * them cost anything on the ticker path.
+ */
+@Component
+public class MetricsBinder {
+    private final MeterRegistry meterRegistry;
+    private final TickerEventDispatcher tickerEventDispatcher;
+    private final TickerRingBuffer tickerRingBuffer;
+    private final SpreadService spreadService;
+    private final TradingService tradingService;
+    private final ExchangeFeeCache exchangeFeeCache;
+    private final TradeHistoryWriter tradeHistoryWriter;
+    private final MarketDataRecorder marketDataRecorder;
+
+    public MetricsBinder(
+        MeterRegistry meterRegistry,
+        TickerEventDispatcher tickerEventDispatcher,
+        TickerRingBuffer tickerRingBuffer,
+        SpreadService spreadService,
+        TradingService tradingService,
+        ExchangeFeeCache exchangeFeeCache,
+        TradeHistoryWriter tradeHistoryWriter,
+        MarketDataRecorder marketDataRecorder) {
+
+        this.meterRegistry = meterRegistry;
+        this.tickerEventDispatcher = tickerEventDispatcher;
+        this.tickerRingBuffer = tickerRingBuffer;
+        this.spreadService = spreadService;
+        this.tradingService = tradingService;
+        this.exchangeFeeCache = exchangeFeeCache;
+        this.tradeHistoryWriter = tradeHistoryWriter;
+        this.marketDataRecorder = marketDataRecorder;
+    }
+
+    /**
+     * Register the metrics.
+     */
+    @PostConstruct
+    public void bind() {
+        Gauge.builder("arbitrader.ticker.queue", tickerEventDispatcher, TickerEventDispatcher::getQueueDepth)
+            .description("Tickers waiting to be analyzed")
+            .tag("pipeline", "event")
+            .register(meterRegistry);
+        Gauge.builder("arbitrader.ticker.queue", tickerRingBuffer, TickerRingBuffer::getBacklog)
+            .description("Tickers waiting to be analyzed")
+            .tag("pipeline", "ring_buffer")
+            .register(meterRegistry);
+
+        FunctionCounter.builder("arbitrader.ticker.dropped", tickerEventDispatcher, TickerEventDispatcher::getCoalescedCount)
+            .description("Tickers dropped because a newer one arrived first")
+            .tag("pipeline", "event")
+            .register(meterRegistry);
+        FunctionCounter.builder("arbitrader.ticker.dropped", tickerRingBuffer, TickerRingBuffer::getStaleCount)
+            .description("Tickers dropped because a newer one arrived first")
+            .tag("pipeline", "ring_buffer")
+            .register(meterRegistry);
+
+        FunctionCounter.builder("arbitrader.spreads.dropped", tickerRingBuffer, TickerRingBuffer::getCoalescedCount)
+            .description("Spreads dropped because a newer one for the same trade combination arrived before it was traded")
+            .tag("pipeline", "ring_buffer")
+            .register(meterRegistry);
+
+        FunctionCounter.builder("arbitrader.spreads", spreadService, SpreadService::getSpreadCount)
+            .description("Spreads screened, once per trade combination for each new ticker")
+            .register(meterRegistry);
+
+        Gauge.builder("arbitrader.positions", tradingService, service -> service.getActivePositions().size())
+            .description("Open positions")
+            .register(meterRegistry);
+
+        Gauge.builder("arbitrader.history.queue", tradeHistoryWriter, TradeHistoryWriter::getQueueDepth)
+            .description("Trades waiting to be written to the history file")
+            .register(meterRegistry);
+        FunctionCounter.builder("arbitrader.history.dropped", tradeHistoryWriter, TradeHistoryWriter::getDroppedCount)
+            .description("Trades left out of the history file because the queue was full or the file couldn't be written")
+            .register(meterRegistry);
+
+        if (marketDataRecorder.isEnabled()) {
+            Gauge.builder("arbitrader.recorder.queue", marketDataRecorder, MarketDataRecorder::getQueueDepth)
+                .description("Market data records waiting to be written")
+                .register(meterRegistry);
+            FunctionCounter.builder("arbitrader.recorder.dropped", marketDataRecorder, MarketDataRecorder::getDroppedCount)
+                .description("Market data records dropped because the queue was full or they couldn't be written")
+                .register(meterRegistry);
+            FunctionCounter.builder("arbitrader.recorder.written", marketDataRecorder, MarketDataRecorder::getRecordedCount)
+                .description("Market data records written to disk")
+                .register(meterRegistry);
+        }
+
+        bindCache("exchange_fee", exchangeFeeCache, ExchangeFeeCache::getStatistics);
+        bindCache("order_volume", tradingService, TradingService::getOrderVolumeCacheStatistics);
+    }
+
+    // meters only keep a weak reference to the object they read from, so it has to be a long lived component
+    private <T> void bindCache(String name, T source, Function<T, CacheStatistics> statistics) {
+        Gauge.builder("arbitrader.cache.size", source, s -> statistics.apply(s).getSize())
+            .description("Entries in the cache")
+            .tag("cache", name)
+            .register(meterRegistry);
+        Gauge.builder("arbitrader.cache.hit.ratio", source, s -> statistics.apply(s).getHitRatio())
+            .description("Fraction of lookups that found a value")
+            .tag("cache", name)
+            .register(meterRegistry);
+        FunctionCounter.builder("arbitrader.cache.hits", source, s -> statistics.apply(s).getHits())
+            .description("Lookups that found a value")
+            .tag("cache", name)
+            .register(meterRegistry);
+        FunctionCounter.builder("arbitrader.cache.misses", source, s -> statistics.apply(s).getMisses())
+            .description("Lookups that didn't find a value")
+            .tag("cache", name)
+            .register(meterRegistry);
+        FunctionCounter.builder("arbitrader.cache.evictions", source, s -> statistics.apply(s).getEvictions())
+            .description("Values evicted to make room or because they expired")
+            .tag("cache", name)
+            .register(meterRegistry);
+    }
+}
@@ -0,0 +1,125 @@
+package com.r307.arbitrader.service.metrics;
+
+import com.r307.arbitrader.config.MetricsConfiguration;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import io.prometheus.client.exporter.common.TextFormat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves the metrics in the Prometheus text format at /metrics. We don't run a servlet container, so this uses the
+ * HTTP server built into the JDK on a single background thread. It only listens on localhost unless configured
+ * otherwise, since there's nothing in the metrics that anyone else needs to see.
+ */
+@Component
+public class MetricsServer {
+    static final String PATH = "/metrics";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MetricsServer.class);
+
+    private final MetricsConfiguration metricsConfiguration;
+    private final PrometheusMeterRegistry meterRegistry;
+    private HttpServer server = null;
+    private ExecutorService executor = null;
+
+    public MetricsServer(MetricsConfiguration metricsConfiguration, PrometheusMeterRegistry meterRegistry) {
+        this.metricsConfiguration = metricsConfiguration;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Start serving metrics, if the endpoint is enabled. If the port is already in use we carry on without it
+     * rather than stop the bot from trading.
+     */
+    @PostConstruct
+    public void start() {
+        if (!metricsConfiguration.isActive()) {
+            return;
+        }
+
+        try {
+            server = HttpServer.create(new InetSocketAddress(metricsConfiguration.getHost(), metricsConfiguration.getPort()), 0);
+        } catch (IOException e) {
+            LOGGER.error("Unable to serve metrics on {}:{}: {}",
+                metricsConfiguration.getHost(),
+                metricsConfiguration.getPort(),
+                e.getMessage());
+            return;
+        }
+
+        executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-server");
+
+            thread.setDaemon(true);
+
+            return thread;
+        });
+
+        server.createContext(PATH, this::handle);
+        server.setExecutor(executor);
+        server.start();
+
+        LOGGER.info("Serving metrics at http://{}:{}{}",
+            metricsConfiguration.getHost(),
+            server.getAddress().getPort(),
+            PATH);
+    }
+
+    /**
+     * Stop serving metrics.
+     */
+    @PreDestroy
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * The port the server is listening on, which is only different from the configured one if that was 0.
+     *
+     * @return The port, or -1 if the server isn't running.
+     */
+    public int getPort() {
+        return server == null ? -1 : server.getAddress().getPort();
+    }
+
+    // write out the current value of every metric
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+
+            final byte[] body = meterRegistry.scrape().getBytes(StandardCharsets.UTF_8);
+
+            exchange.getResponseHeaders().set("Content-Type", TextFormat.CONTENT_TYPE_004);
+            exchange.sendResponseHeaders(200, body.length);
+
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+}
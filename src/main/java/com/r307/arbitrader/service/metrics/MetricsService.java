@@ -0,0 +1,110 @@
+package com.r307.arbitrader.service.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.knowm.xchange.Exchange;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the metrics that come from events, like receiving a ticker or placing an order. Metrics that can be read
+ * from a component whenever they're scraped are registered by the MetricsBinder instead.
+ *
+ * Looking a meter up in the registry builds its ID every time, so the meters for each exchange are kept here and
+ * counting a ticker is just a map lookup and an increment.
+ */
+@Component
+public class MetricsService {
+    static final String TICKERS = "arbitrader.tickers";
+    static final String TICKER_FETCH = "arbitrader.ticker.fetch";
+    static final String ORDERS = "arbitrader.orders";
+    static final String ERRORS = "arbitrader.errors";
+
+    private final MeterRegistry meterRegistry;
+    private final Map<Exchange, Counter> tickerCounters = new ConcurrentHashMap<>();
+    private final Map<String, Timer> fetchTimers = new ConcurrentHashMap<>();
+
+    public MetricsService(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    public MeterRegistry getMeterRegistry() {
+        return meterRegistry;
+    }
+
+    /**
+     * Count a ticker received from an exchange.
+     *
+     * @param exchange The Exchange the ticker came from.
+     */
+    public void countTicker(Exchange exchange) {
+        Counter counter = tickerCounters.get(exchange);
+
+        if (counter == null) {
+            counter = tickerCounters.computeIfAbsent(exchange, e -> Counter.builder(TICKERS)
+                .description("Tickers received")
+                .tag("exchange", getExchangeName(e))
+                .register(meterRegistry));
+        }
+
+        counter.increment();
+    }
+
+    /**
+     * Record how long a TickerStrategy took to fetch tickers from an exchange.
+     *
+     * @param exchange The Exchange.
+     * @param strategy The name of the TickerStrategy.
+     * @param nanos How long it took, in nanoseconds.
+     */
+    public void recordTickerFetch(Exchange exchange, String strategy, long nanos) {
+        final String exchangeName = getExchangeName(exchange);
+
+        fetchTimers
+            .computeIfAbsent(exchangeName + ":" + strategy, key -> Timer.builder(TICKER_FETCH)
+                .description("Time taken to fetch tickers")
+                .tag("exchange", exchangeName)
+                .tag("strategy", strategy)
+                .register(meterRegistry))
+            .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Record how long an exchange took to accept or reject an order.
+     *
+     * @param exchange The Exchange.
+     * @param nanos How long it took, in nanoseconds.
+     * @param failed true if the order was not placed.
+     */
+    public void recordOrder(Exchange exchange, long nanos, boolean failed) {
+        Timer.builder(ORDERS)
+            .description("Time taken to place an order")
+            .tag("exchange", getExchangeName(exchange))
+            .tag("outcome", failed ? "failed" : "placed")
+            .register(meterRegistry)
+            .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Count a noncritical error.
+     *
+     * @param exchange The Exchange the error is related to.
+     * @param t The error.
+     */
+    public void countError(Exchange exchange, Throwable t) {
+        Counter.builder(ERRORS)
+            .description("Noncritical errors")
+            .tag("exchange", getExchangeName(exchange))
+            .tag("type", t.getClass().getSimpleName())
+            .register(meterRegistry)
+            .increment();
+    }
+
+    private static String getExchangeName(Exchange exchange) {
+        return exchange.getExchangeSpecification().getExchangeName();
+    }
+}
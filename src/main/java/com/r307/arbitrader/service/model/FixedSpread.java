@@ -0,0 +1,44 @@
+package com.r307.arbitrader.service.model;
+
+import com.r307.arbitrader.service.ticker.TickerStore;
+
+import static com.r307.arbitrader.FixedPoint.NO_VALUE;
+
+/**
+ * A reusable version of the spread in and spread out from a Spread, held as scaled longs (see FixedPoint). It is
+ * used to screen TradeCombinations on every ticker without allocating anything. Only the combinations that pass
+ * the screen get a full Spread.
+ *
+ * Instances are mutable and not thread safe, so each thread should have its own.
+ */
+public class FixedSpread {
+    private final TickerStore.Snapshot longSnapshot = new TickerStore.Snapshot();
+    private final TickerStore.Snapshot shortSnapshot = new TickerStore.Snapshot();
+    private long in = NO_VALUE;
+    private long out = NO_VALUE;
+
+    public TickerStore.Snapshot getLongSnapshot() {
+        return longSnapshot;
+    }
+
+    public TickerStore.Snapshot getShortSnapshot() {
+        return shortSnapshot;
+    }
+
+    public long getIn() {
+        return in;
+    }
+
+    public long getOut() {
+        return out;
+    }
+
+    public void set(long in, long out) {
+        this.in = in;
+        this.out = out;
+    }
+
+    public boolean isValid() {
+        return in != NO_VALUE && out != NO_VALUE;
+    }
+}
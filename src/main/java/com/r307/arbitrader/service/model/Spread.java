@@ -1,5 +1,6 @@
 package com.r307.arbitrader.service.model;
 
+import com.r307.arbitrader.service.latency.LatencyTrace;
 import org.knowm.xchange.Exchange;
 import org.knowm.xchange.currency.CurrencyPair;
 import org.knowm.xchange.dto.marketdata.Ticker;
@@ -18,6 +19,7 @@ public class Spread {
     private final Ticker shortTicker;
     private final BigDecimal in;
     private final BigDecimal out;
+    private LatencyTrace latencyTrace = null; // only when we're timing the ticker that produced this spread
 
     public Spread(
         CurrencyPair currencyPair,
@@ -65,6 +67,14 @@ public class Spread {
         return out;
     }
 
+    public LatencyTrace getLatencyTrace() {
+        return latencyTrace;
+    }
+
+    public void setLatencyTrace(LatencyTrace latencyTrace) {
+        this.latencyTrace = latencyTrace;
+    }
+
     @Override
     public String toString() {
         return String.format("%s/%s %s %f/%f",
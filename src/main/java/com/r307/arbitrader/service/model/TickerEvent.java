@@ -1,5 +1,6 @@
 package com.r307.arbitrader.service.model;
 
+import com.r307.arbitrader.service.latency.LatencyTrace;
 import org.knowm.xchange.Exchange;
 import org.knowm.xchange.dto.marketdata.Ticker;
 import org.springframework.context.ApplicationEvent;
@@ -11,6 +12,7 @@ public class TickerEvent extends ApplicationEvent {
 
     private final Ticker ticker;
     private final Exchange exchange;
+    private final LatencyTrace latencyTrace;
 
     /**
      * Create a new {@code ApplicationEvent}.
@@ -19,9 +21,21 @@ public class TickerEvent extends ApplicationEvent {
      *               which the event is associated (never {@code null})
      */
     public TickerEvent(Ticker ticker, Exchange exchange) {
+        this(ticker, exchange, LatencyTrace.received(ticker));
+    }
+
+    /**
+     * Create a new TickerEvent for a ticker that is already being traced.
+     *
+     * @param ticker the Ticker we received
+     * @param exchange the Exchange we received it from
+     * @param latencyTrace the LatencyTrace started when we received it
+     */
+    public TickerEvent(Ticker ticker, Exchange exchange, LatencyTrace latencyTrace) {
         super(ticker);
         this.ticker = ticker;
         this.exchange = exchange;
+        this.latencyTrace = latencyTrace;
     }
 
     public Ticker getTicker() {
@@ -31,4 +45,8 @@ public class TickerEvent extends ApplicationEvent {
     public Exchange getExchange() {
         return exchange;
     }
+
+    public LatencyTrace getLatencyTrace() {
+        return latencyTrace;
+    }
 }
@@ -3,6 +3,7 @@ package com.r307.arbitrader.service.paper;
 import com.r307.arbitrader.config.PaperConfiguration;
 import com.r307.arbitrader.service.ExchangeService;
 import com.r307.arbitrader.service.TickerService;
+import com.r307.arbitrader.service.cache.OrderBookCache;
 import org.knowm.xchange.Exchange;
 import org.knowm.xchange.ExchangeSpecification;
 import org.knowm.xchange.currency.Currency;
@@ -15,7 +16,7 @@ import org.knowm.xchange.service.trade.TradeService;
 import si.mazi.rescu.SynchronizedValueFactory;
 
 import java.io.IOException;
-import java.math.BigDecimal;
+import java.time.Clock;
 import java.util.List;
 
 public class PaperExchange implements Exchange {
@@ -24,10 +25,11 @@ public class PaperExchange implements Exchange {
     private final PaperTradeService tradeService;
     private final PaperAccountService accountService;
 
-    public PaperExchange(Exchange exchange, Currency homeCurrency, TickerService tickerService, ExchangeService exchangeService, PaperConfiguration paper) {
+    public PaperExchange(Exchange exchange, Currency homeCurrency, TickerService tickerService, ExchangeService exchangeService,
+                         OrderBookCache orderBookCache, PaperConfiguration paper, Clock clock) {
         this.realExchange =exchange;
-        this.tradeService=new PaperTradeService(this, exchange.getTradeService(), tickerService, exchangeService, paper);
-        this.accountService=new PaperAccountService(exchange.getAccountService(),homeCurrency, new BigDecimal(100));
+        this.tradeService=new PaperTradeService(this, exchange.getTradeService(), tickerService, exchangeService, orderBookCache, paper, clock);
+        this.accountService=new PaperAccountService(exchange.getAccountService(),homeCurrency, paper.getInitialBalance());
     }
 
     PaperAccountService getPaperAccountService() {
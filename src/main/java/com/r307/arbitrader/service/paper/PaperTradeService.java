@@ -1,8 +1,11 @@
 package com.r307.arbitrader.service.paper;
 
+import com.r307.arbitrader.FixedPoint;
 import com.r307.arbitrader.config.PaperConfiguration;
 import com.r307.arbitrader.service.ExchangeService;
 import com.r307.arbitrader.service.TickerService;
+import com.r307.arbitrader.service.cache.OrderBookCache;
+import com.r307.arbitrader.service.ticker.DepthBook;
 import org.knowm.xchange.currency.Currency;
 import org.knowm.xchange.dto.Order;
 import org.knowm.xchange.dto.marketdata.Ticker;
@@ -16,30 +19,32 @@ import org.knowm.xchange.service.trade.params.orders.OrderQueryParams;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.math.RoundingMode;
+import java.time.Clock;
 import java.util.*;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 public class PaperTradeService extends BaseExchangeService<PaperExchange> implements TradeService {
     private static final Logger LOGGER = LoggerFactory.getLogger(PaperTradeService.class);
-    private static final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2);
 
     private final boolean autoFill;
     private final TickerService tickerService;
     private final ExchangeService exchangeService;
+    private final OrderBookCache orderBookCache;
+    private final Clock clock;
     private final TradeService tradeService;
     private final List<LimitOrder> orders= new ArrayList<>();
     private final UserTrades userTrades = new UserTrades (new ArrayList<>(), Trades.TradeSortType.SortByTimestamp);
 
-    public PaperTradeService(PaperExchange exchange, TradeService tradeService, TickerService tickerService, ExchangeService exchangeService, PaperConfiguration paper) {
+    public PaperTradeService(PaperExchange exchange, TradeService tradeService, TickerService tickerService, ExchangeService exchangeService,
+                             OrderBookCache orderBookCache, PaperConfiguration paper, Clock clock) {
         super(exchange);
         this.tradeService=tradeService;
         this.autoFill = paper.isAutoFill();
         this.tickerService=tickerService;
         this.exchangeService=exchangeService;
-        PaperTradeService.scheduler.schedule(this::updateOrders,10, TimeUnit.SECONDS);
+        this.orderBookCache=orderBookCache;
+        this.clock=clock;
     }
 
     public OpenOrders getOpenOrders() {
@@ -56,7 +61,7 @@ public class PaperTradeService extends BaseExchangeService<PaperExchange> implem
         LimitOrder limit = new LimitOrder.Builder(limitOrder.getType(), limitOrder.getInstrument())
             .id(UUID.randomUUID().toString())
             .originalAmount(limitOrder.getOriginalAmount())
-            .timestamp(new Date())
+            .timestamp(new Date(clock.millis()))
             .limitPrice(limitOrder.getLimitPrice())
             .orderStatus(Order.OrderStatus.NEW)
             .build();
@@ -129,24 +134,38 @@ public class PaperTradeService extends BaseExchangeService<PaperExchange> implem
     private void updateOrders() {
         for(LimitOrder order: orders) {
             if(order.getStatus().isOpen()) {
-                if(autoFill) {
+                if(autoFill || isMatched(order)) {
                     fillOrder(order);
-                } else {
-                    Order.OrderType type = order.getType();
-                    Ticker ticker = tickerService.getTicker(exchange, order.getCurrencyPair());
-
-                    LOGGER.debug("Ticker fetch for paper trading: {}/{}", ticker.getBid(), ticker.getAsk());
-
-                    //Check if limit price was reached
-                    boolean matchedOrder = type == Order.OrderType.BID && ticker.getAsk().compareTo(order.getLimitPrice()) <= 0 || type == Order.OrderType.ASK && ticker.getBid().compareTo(order.getLimitPrice()) >= 0;
-                    if (matchedOrder) {
-                        fillOrder(order);
-                    }
                 }
             }
         }
     }
 
+    // Check if limit price was reached. If we have a current order book the whole order has to fit inside the limit
+    // price, otherwise we go by the ticker.
+    private boolean isMatched(LimitOrder order) {
+        Order.OrderType type = order.getType();
+        Optional<DepthBook> depthBook = orderBookCache.getCachedDepthBook(exchange, order.getCurrencyPair());
+
+        if (depthBook.isPresent()) {
+            // a buy takes from the asks and a sell takes from the bids
+            long price = depthBook.get().getLimitPrice(
+                type == Order.OrderType.BID ? Order.OrderType.ASK : Order.OrderType.BID,
+                FixedPoint.toFixed(order.getOriginalAmount(), RoundingMode.CEILING));
+            long limit = FixedPoint.toFixed(order.getLimitPrice());
+
+            LOGGER.debug("Order book price for paper trading: {}", FixedPoint.toBigDecimal(price));
+
+            return price != FixedPoint.NO_VALUE && (type == Order.OrderType.BID ? price <= limit : price >= limit);
+        }
+
+        Ticker ticker = tickerService.getTicker(exchange, order.getCurrencyPair());
+
+        LOGGER.debug("Ticker fetch for paper trading: {}/{}", ticker.getBid(), ticker.getAsk());
+
+        return type == Order.OrderType.BID && ticker.getAsk().compareTo(order.getLimitPrice()) <= 0 || type == Order.OrderType.ASK && ticker.getBid().compareTo(order.getLimitPrice()) >= 0;
+    }
+
 
     private void fillOrder(LimitOrder order) {
         order.setOrderStatus(Order.OrderStatus.FILLED);
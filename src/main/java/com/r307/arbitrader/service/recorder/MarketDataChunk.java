@@ -0,0 +1,237 @@
+package com.r307.arbitrader.service.recorder;
+
+import org.knowm.xchange.currency.CurrencyPair;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * The format of market data files. A file is a run of chunks, and each chunk is a header followed by the records in
+ * it, compressed with Deflate:
+ *
+ * int magic, int version, int record count, long first time, long last time, int compressed length, payload
+ *
+ * The header says when the records in the chunk were received, so a reader looking for a particular time can hop
+ * from header to header without decompressing anything. Inside the payload each record's time is stored as the
+ * difference from the one before it, which compresses to almost nothing.
+ */
+final class MarketDataChunk {
+    static final int HEADER_SIZE = 32;
+
+    private static final int MAGIC = 0x4152424d; // "ARBM"
+    private static final int VERSION = 1;
+
+    private MarketDataChunk() {
+        // this method intentionally left blank
+    }
+
+    /**
+     * The header of one chunk.
+     */
+    static final class Header {
+        private final int count;
+        private final long firstTime;
+        private final long lastTime;
+        private final int length;
+
+        private Header(int count, long firstTime, long lastTime, int length) {
+            this.count = count;
+            this.firstTime = firstTime;
+            this.lastTime = lastTime;
+            this.length = length;
+        }
+
+        int getCount() {
+            return count;
+        }
+
+        long getFirstTime() {
+            return firstTime;
+        }
+
+        long getLastTime() {
+            return lastTime;
+        }
+
+        // the length of the compressed payload that follows the header
+        int getLength() {
+            return length;
+        }
+    }
+
+    /**
+     * Turn some records into a chunk, header and all.
+     *
+     * @param records The records, in the order they were received.
+     * @return The chunk, ready to write.
+     * @throws IOException if the records can't be compressed.
+     */
+    static ByteBuffer encode(List<MarketDataRecord> records) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new DeflaterOutputStream(bytes, deflater)))) {
+            long previous = records.get(0).getTime();
+
+            for (MarketDataRecord record : records) {
+                out.writeByte(record.getType().ordinal());
+                out.writeLong(record.getTime() - previous);
+                previous = record.getTime();
+
+                if (record.getType() == MarketDataRecord.Type.TICKER) {
+                    out.writeLong(record.getExchangeTime());
+                    out.writeLong(record.getBid());
+                    out.writeLong(record.getAsk());
+                    out.writeLong(record.getLast());
+                } else {
+                    writeLevels(out, record.getBidPrices(), record.getBidQuantities());
+                    writeLevels(out, record.getAskPrices(), record.getAskQuantities());
+                }
+            }
+        } finally {
+            deflater.end();
+        }
+
+        final byte[] payload = bytes.toByteArray();
+        final ByteBuffer chunk = ByteBuffer.allocate(HEADER_SIZE + payload.length);
+
+        chunk.putInt(MAGIC);
+        chunk.putInt(VERSION);
+        chunk.putInt(records.size());
+        chunk.putLong(records.get(0).getTime());
+        chunk.putLong(records.get(records.size() - 1).getTime());
+        chunk.putInt(payload.length);
+        chunk.put(payload);
+        chunk.flip();
+
+        return chunk;
+    }
+
+    /**
+     * Read a chunk header.
+     *
+     * @param header HEADER_SIZE bytes from the start of a chunk.
+     * @return The header, or null if the bytes aren't a chunk header.
+     */
+    static Header readHeader(ByteBuffer header) {
+        if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC || header.getInt() != VERSION) {
+            return null;
+        }
+
+        final int count = header.getInt();
+        final long firstTime = header.getLong();
+        final long lastTime = header.getLong();
+        final int length = header.getInt();
+
+        if (count <= 0 || length <= 0) {
+            return null;
+        }
+
+        return new Header(count, firstTime, lastTime, length);
+    }
+
+    /**
+     * Turn a chunk's payload back into records.
+     *
+     * @param header The chunk header.
+     * @param payload The compressed payload.
+     * @param exchange The exchange the file belongs to.
+     * @param currencyPair The currency pair the file belongs to.
+     * @return The records.
+     * @throws IOException if the payload is damaged.
+     */
+    static List<MarketDataRecord> decode(Header header, byte[] payload, String exchange, CurrencyPair currencyPair) throws IOException {
+        final List<MarketDataRecord> records = new ArrayList<>(header.getCount());
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new InflaterInputStream(new ByteArrayInputStream(payload))))) {
+            long time = header.getFirstTime();
+
+            for (int i = 0; i < header.getCount(); i++) {
+                final int type = in.readByte();
+
+                time += in.readLong();
+
+                if (type == MarketDataRecord.Type.TICKER.ordinal()) {
+                    records.add(MarketDataRecord.ticker(time, exchange, currencyPair,
+                        in.readLong(), in.readLong(), in.readLong(), in.readLong()));
+                } else if (type == MarketDataRecord.Type.ORDER_BOOK.ordinal()) {
+                    final long[][] bids = readLevels(in);
+                    final long[][] asks = readLevels(in);
+
+                    records.add(MarketDataRecord.orderBook(time, exchange, currencyPair, bids[0], bids[1], asks[0], asks[1]));
+                } else {
+                    throw new IOException("Unknown market data record type: " + type);
+                }
+            }
+        }
+
+        return records;
+    }
+
+    /**
+     * Find where the last whole chunk in a file ends, so anything after it that was cut off by a crash can be
+     * thrown away before we add more chunks.
+     *
+     * @param channel The file.
+     * @return The length of the file up to the end of the last whole chunk.
+     * @throws IOException if the file can't be read.
+     */
+    static long getValidLength(FileChannel channel) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE);
+        final long size = channel.size();
+        long position = 0L;
+
+        while (position + HEADER_SIZE <= size) {
+            buffer.clear();
+
+            while (buffer.hasRemaining() && channel.read(buffer, position + buffer.position()) > 0) {
+                // keep reading until the header is all here
+            }
+
+            buffer.flip();
+
+            final Header header = readHeader(buffer);
+
+            if (header == null || position + HEADER_SIZE + header.getLength() > size) {
+                break;
+            }
+
+            position += HEADER_SIZE + header.getLength();
+        }
+
+        return position;
+    }
+
+    private static void writeLevels(DataOutputStream out, long[] prices, long[] quantities) throws IOException {
+        out.writeInt(prices.length);
+
+        for (int i = 0; i < prices.length; i++) {
+            out.writeLong(prices[i]);
+            out.writeLong(quantities[i]);
+        }
+    }
+
+    private static long[][] readLevels(DataInputStream in) throws IOException {
+        final int size = in.readInt();
+        final long[][] levels = new long[2][size];
+
+        for (int i = 0; i < size; i++) {
+            levels[0][i] = in.readLong();
+            levels[1][i] = in.readLong();
+        }
+
+        return levels;
+    }
+}
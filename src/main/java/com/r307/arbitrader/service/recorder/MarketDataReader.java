@@ -0,0 +1,160 @@
+package com.r307.arbitrader.service.recorder;
+
+import org.knowm.xchange.currency.CurrencyPair;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Reads back the market data recorded for one exchange and currency pair, oldest first, across all of its daily
+ * files. A chunk that was cut off by a crash ends the file it is in.
+ */
+public class MarketDataReader implements Closeable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final String exchange;
+    private final CurrencyPair currencyPair;
+    private final Iterator<File> files;
+    private final long from;
+    private DataInputStream in;
+    private Iterator<MarketDataRecord> records = Collections.emptyIterator();
+
+    /**
+     * Read every record for an exchange and currency pair.
+     *
+     * @param directory The directory the recorder wrote them to (see MarketDataRecorder.getStreamDirectory()).
+     * @param exchange The exchange name.
+     * @param currencyPair The currency pair.
+     */
+    public MarketDataReader(File directory, String exchange, CurrencyPair currencyPair) {
+        this(directory, exchange, currencyPair, Long.MIN_VALUE);
+    }
+
+    /**
+     * Read the records for an exchange and currency pair that were received at or after a certain time. Chunks that
+     * end before that time are skipped without being decompressed.
+     *
+     * @param directory The directory the recorder wrote them to.
+     * @param exchange The exchange name.
+     * @param currencyPair The currency pair.
+     * @param from The earliest time to read, in milliseconds since the epoch.
+     */
+    public MarketDataReader(File directory, String exchange, CurrencyPair currencyPair, long from) {
+        final File[] found = directory.listFiles((dir, name) -> name.endsWith(MarketDataStream.FILE_SUFFIX));
+        final List<File> sorted = new ArrayList<>(found == null ? Collections.emptyList() : Arrays.asList(found));
+
+        sorted.sort(Comparator.comparing(File::getName));
+
+        this.exchange = exchange;
+        this.currencyPair = currencyPair;
+        this.files = sorted.iterator();
+        this.from = from;
+    }
+
+    public String getExchange() {
+        return exchange;
+    }
+
+    public CurrencyPair getCurrencyPair() {
+        return currencyPair;
+    }
+
+    /**
+     * Get the next record.
+     *
+     * @return The next record, or null when there are no more.
+     * @throws IOException if a file can't be read.
+     */
+    public MarketDataRecord next() throws IOException {
+        while (true) {
+            while (records.hasNext()) {
+                final MarketDataRecord record = records.next();
+
+                if (record.getTime() >= from) {
+                    return record;
+                }
+            }
+
+            if (!readChunk()) {
+                return null;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (in != null) {
+            in.close();
+            in = null;
+        }
+    }
+
+    // load the next chunk that isn't entirely before "from", moving on to the next file when we need to
+    private boolean readChunk() throws IOException {
+        final byte[] headerBytes = new byte[MarketDataChunk.HEADER_SIZE];
+
+        while (true) {
+            if (in == null) {
+                if (!files.hasNext()) {
+                    return false;
+                }
+
+                final InputStream stream = Files.newInputStream(files.next().toPath());
+
+                in = new DataInputStream(new BufferedInputStream(stream, BUFFER_SIZE));
+            }
+
+            try {
+                in.readFully(headerBytes);
+
+                final MarketDataChunk.Header header = MarketDataChunk.readHeader(ByteBuffer.wrap(headerBytes));
+
+                if (header == null) {
+                    close(); // not a chunk, so the rest of this file is no good
+                    continue;
+                }
+
+                if (header.getLastTime() < from) {
+                    skipFully(header.getLength());
+                    continue;
+                }
+
+                final byte[] payload = new byte[header.getLength()];
+
+                in.readFully(payload);
+                records = MarketDataChunk.decode(header, payload, exchange, currencyPair).iterator();
+
+                return true;
+            } catch (EOFException e) {
+                close(); // a chunk that was cut off
+            }
+        }
+    }
+
+    private void skipFully(int length) throws IOException {
+        int remaining = length;
+
+        while (remaining > 0) {
+            final int skipped = in.skipBytes(remaining);
+
+            if (skipped <= 0) {
+                throw new EOFException();
+            }
+
+            remaining -= skipped;
+        }
+    }
+}
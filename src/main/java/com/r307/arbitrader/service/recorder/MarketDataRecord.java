@@ -0,0 +1,197 @@
+package com.r307.arbitrader.service.recorder;
+
+import com.r307.arbitrader.FixedPoint;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.Order;
+import org.knowm.xchange.dto.marketdata.OrderBook;
+import org.knowm.xchange.dto.marketdata.Ticker;
+import org.knowm.xchange.dto.trade.LimitOrder;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * One thing the market data recorder saw: either a ticker or the top of an order book, along with when we received
+ * it. Prices and quantities are scaled longs (see FixedPoint).
+ */
+public class MarketDataRecord {
+    /**
+     * What kind of market data this is.
+     */
+    public enum Type {
+        TICKER,
+        ORDER_BOOK
+    }
+
+    private static final long[] EMPTY = new long[0];
+
+    private final Type type;
+    private final long time;
+    private final String exchange;
+    private final CurrencyPair currencyPair;
+    private final long exchangeTime;
+    private final long bid;
+    private final long ask;
+    private final long last;
+    private final long[] bidPrices;
+    private final long[] bidQuantities;
+    private final long[] askPrices;
+    private final long[] askQuantities;
+
+    private MarketDataRecord(Type type, long time, String exchange, CurrencyPair currencyPair,
+                             long exchangeTime, long bid, long ask, long last,
+                             long[] bidPrices, long[] bidQuantities, long[] askPrices, long[] askQuantities) {
+        this.type = type;
+        this.time = time;
+        this.exchange = exchange;
+        this.currencyPair = currencyPair;
+        this.exchangeTime = exchangeTime;
+        this.bid = bid;
+        this.ask = ask;
+        this.last = last;
+        this.bidPrices = bidPrices;
+        this.bidQuantities = bidQuantities;
+        this.askPrices = askPrices;
+        this.askQuantities = askQuantities;
+    }
+
+    /**
+     * Make a ticker record.
+     *
+     * @param time When we received the ticker, in milliseconds since the epoch.
+     * @param exchange The exchange name.
+     * @param currencyPair The currency pair, as it is named on the exchange.
+     * @param exchangeTime The exchange's timestamp for the ticker in milliseconds, or NO_VALUE if it didn't send one.
+     * @param bid The bid price as a scaled long.
+     * @param ask The ask price as a scaled long.
+     * @param last The last trade price as a scaled long.
+     * @return The record.
+     */
+    public static MarketDataRecord ticker(long time, String exchange, CurrencyPair currencyPair,
+                                          long exchangeTime, long bid, long ask, long last) {
+        return new MarketDataRecord(Type.TICKER, time, exchange, currencyPair, exchangeTime, bid, ask, last,
+            EMPTY, EMPTY, EMPTY, EMPTY);
+    }
+
+    /**
+     * Make an order book record. The arrays are kept, not copied.
+     *
+     * @param time When we looked at the order book, in milliseconds since the epoch.
+     * @param exchange The exchange name.
+     * @param currencyPair The currency pair, as it is named on the exchange.
+     * @param bidPrices The bid prices, best first.
+     * @param bidQuantities The quantity at each bid price.
+     * @param askPrices The ask prices, best first.
+     * @param askQuantities The quantity at each ask price.
+     * @return The record.
+     */
+    public static MarketDataRecord orderBook(long time, String exchange, CurrencyPair currencyPair,
+                                             long[] bidPrices, long[] bidQuantities,
+                                             long[] askPrices, long[] askQuantities) {
+        return new MarketDataRecord(Type.ORDER_BOOK, time, exchange, currencyPair,
+            FixedPoint.NO_VALUE, FixedPoint.NO_VALUE, FixedPoint.NO_VALUE, FixedPoint.NO_VALUE,
+            bidPrices, bidQuantities, askPrices, askQuantities);
+    }
+
+    /**
+     * Turn a ticker record back into a Ticker.
+     *
+     * @return The Ticker.
+     */
+    public Ticker toTicker() {
+        return new Ticker.Builder()
+            .instrument(currencyPair)
+            .bid(FixedPoint.toBigDecimal(bid))
+            .ask(FixedPoint.toBigDecimal(ask))
+            .last(FixedPoint.toBigDecimal(last))
+            .timestamp(new Date(exchangeTime == FixedPoint.NO_VALUE ? time : exchangeTime))
+            .build();
+    }
+
+    /**
+     * Turn an order book record back into an OrderBook.
+     *
+     * @return The OrderBook.
+     */
+    public OrderBook toOrderBook() {
+        final Date timestamp = new Date(time);
+
+        return new OrderBook(timestamp,
+            toOrders(Order.OrderType.ASK, askPrices, askQuantities, timestamp),
+            toOrders(Order.OrderType.BID, bidPrices, bidQuantities, timestamp));
+    }
+
+    private List<LimitOrder> toOrders(Order.OrderType type, long[] prices, long[] quantities, Date timestamp) {
+        final List<LimitOrder> orders = new ArrayList<>(prices.length);
+
+        for (int i = 0; i < prices.length; i++) {
+            orders.add(new LimitOrder(type,
+                FixedPoint.toBigDecimal(quantities[i]),
+                currencyPair,
+                null,
+                timestamp,
+                FixedPoint.toBigDecimal(prices[i])));
+        }
+
+        return orders;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public String getExchange() {
+        return exchange;
+    }
+
+    public CurrencyPair getCurrencyPair() {
+        return currencyPair;
+    }
+
+    public long getExchangeTime() {
+        return exchangeTime;
+    }
+
+    public long getBid() {
+        return bid;
+    }
+
+    public long getAsk() {
+        return ask;
+    }
+
+    public long getLast() {
+        return last;
+    }
+
+    public long[] getBidPrices() {
+        return bidPrices;
+    }
+
+    public long[] getBidQuantities() {
+        return bidQuantities;
+    }
+
+    public long[] getAskPrices() {
+        return askPrices;
+    }
+
+    public long[] getAskQuantities() {
+        return askQuantities;
+    }
+
+    @Override
+    public String toString() {
+        return "MarketDataRecord{" +
+            "type=" + type +
+            ", time=" + time +
+            ", exchange='" + exchange + '\'' +
+            ", currencyPair=" + currencyPair +
+            '}';
+    }
+}
@@ -0,0 +1,267 @@
+package com.r307.arbitrader.service.recorder;
+
+import com.r307.arbitrader.FixedPoint;
+import com.r307.arbitrader.config.RecorderConfiguration;
+import com.r307.arbitrader.service.ticker.DepthBook;
+import org.knowm.xchange.Exchange;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.Order;
+import org.knowm.xchange.dto.marketdata.Ticker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records every ticker we receive, and optionally the order books we look at to price our orders, so we can see
+ * afterwards exactly what the bot saw and replay it.
+ *
+ * Recording never makes the feed wait. Records go on a queue with a fixed size, and if the queue is ever full new
+ * records are dropped and counted. A writer thread takes records off the queue, collects them into chunks for each
+ * exchange and currency pair, and writes each chunk compressed (see MarketDataChunk) once it has recorder.chunkSize
+ * records or its oldest record is recorder.chunkInterval milliseconds old.
+ *
+ * Files go in .arbitrader/market-data/[exchange]/[base]-[counter]/[date].mdr and can be read with a MarketDataReader.
+ */
+@Component
+public class MarketDataRecorder {
+    public static final String MARKET_DATA_DIRECTORY = ".arbitrader/market-data";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MarketDataRecorder.class);
+    private static final long IDLE_POLL = 100L; // milliseconds
+    private static final long DROP_WARNING_INTERVAL = 10000L; // records
+
+    private final RecorderConfiguration recorderConfiguration;
+    private final File directory;
+    private final boolean enabled;
+    private final boolean orderBooks;
+    private final BlockingQueue<MarketDataRecord> queue;
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final LongAdder recordedCount = new LongAdder();
+    private final Map<String, MarketDataStream> streams = new HashMap<>(); // only used by the writer thread
+    private Thread writer;
+    private volatile boolean running = false;
+
+    @Autowired
+    public MarketDataRecorder(RecorderConfiguration recorderConfiguration) {
+        this(recorderConfiguration, new File(MARKET_DATA_DIRECTORY));
+    }
+
+    public MarketDataRecorder(RecorderConfiguration recorderConfiguration, File directory) {
+        this.recorderConfiguration = recorderConfiguration;
+        this.directory = directory;
+        this.enabled = Boolean.TRUE.equals(recorderConfiguration.getEnabled());
+        this.orderBooks = enabled && Boolean.TRUE.equals(recorderConfiguration.getOrderBooks());
+        this.queue = new ArrayBlockingQueue<>(enabled ? recorderConfiguration.getQueueSize() : 1);
+    }
+
+    /**
+     * Start the writer thread, if recording is turned on.
+     */
+    @PostConstruct
+    public synchronized void start() {
+        if (!enabled || writer != null) {
+            return;
+        }
+
+        LOGGER.info("Recording market data to {}", directory.getAbsolutePath());
+
+        running = true;
+        writer = new Thread(this::run, "market-data-recorder");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Write out everything still waiting and stop the writer thread.
+     */
+    @PreDestroy
+    public synchronized void stop() {
+        if (writer == null) {
+            return;
+        }
+
+        running = false;
+
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        writer = null;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Record a ticker. This never waits.
+     *
+     * @param exchange The exchange the ticker came from.
+     * @param ticker The ticker.
+     */
+    public void recordTicker(Exchange exchange, Ticker ticker) {
+        if (!enabled) {
+            return;
+        }
+
+        offer(MarketDataRecord.ticker(
+            System.currentTimeMillis(),
+            exchange.getExchangeSpecification().getExchangeName(),
+            (CurrencyPair) ticker.getInstrument(),
+            ticker.getTimestamp() == null ? FixedPoint.NO_VALUE : ticker.getTimestamp().getTime(),
+            FixedPoint.toFixed(ticker.getBid()),
+            FixedPoint.toFixed(ticker.getAsk()),
+            FixedPoint.toFixed(ticker.getLast())));
+    }
+
+    /**
+     * Record the top of an order book, if recording order books is turned on. The levels are copied before this
+     * returns, so the book can keep changing.
+     *
+     * @param exchange The exchange the order book came from.
+     * @param currencyPair The currency pair, as it is named on the exchange.
+     * @param depthBook The order book.
+     */
+    public void recordOrderBook(Exchange exchange, CurrencyPair currencyPair, DepthBook depthBook) {
+        if (!orderBooks) {
+            return;
+        }
+
+        final int depth = recorderConfiguration.getOrderBookDepth();
+        final long[] bidPrices = new long[depth];
+        final long[] bidQuantities = new long[depth];
+        final long[] askPrices = new long[depth];
+        final long[] askQuantities = new long[depth];
+        final int bids = depthBook.getLevels(Order.OrderType.BID, bidPrices, bidQuantities);
+        final int asks = depthBook.getLevels(Order.OrderType.ASK, askPrices, askQuantities);
+
+        offer(MarketDataRecord.orderBook(
+            System.currentTimeMillis(),
+            exchange.getExchangeSpecification().getExchangeName(),
+            currencyPair,
+            Arrays.copyOf(bidPrices, bids),
+            Arrays.copyOf(bidQuantities, bids),
+            Arrays.copyOf(askPrices, asks),
+            Arrays.copyOf(askQuantities, asks)));
+    }
+
+    /**
+     * The number of records waiting to be written.
+     *
+     * @return The queue depth.
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * The number of records that were dropped because the queue was full or they couldn't be written.
+     *
+     * @return The number of dropped records.
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * The number of records that have been written to disk.
+     *
+     * @return The number of records.
+     */
+    public long getRecordedCount() {
+        return recordedCount.sum();
+    }
+
+    /**
+     * Where the recorder keeps the files for an exchange and currency pair.
+     *
+     * @param directory The market data directory.
+     * @param exchange The exchange name.
+     * @param currencyPair The currency pair.
+     * @return The directory for the exchange and currency pair.
+     */
+    public static File getStreamDirectory(File directory, String exchange, CurrencyPair currencyPair) {
+        return new File(new File(directory, exchange), currencyPair.base + "-" + currencyPair.counter);
+    }
+
+    private void offer(MarketDataRecord record) {
+        if (queue.offer(record)) {
+            return;
+        }
+
+        final long dropped = droppedCount.incrementAndGet();
+
+        // one warning per burst is enough, the feed can drop thousands of records a second
+        if (dropped % DROP_WARNING_INTERVAL == 1) {
+            LOGGER.warn("Market data recorder queue is full, {} records dropped so far", dropped);
+        }
+    }
+
+    // the writer thread
+    private void run() {
+        while (running || !queue.isEmpty()) {
+            try {
+                MarketDataRecord record = queue.poll(IDLE_POLL, TimeUnit.MILLISECONDS);
+                final long now = System.currentTimeMillis();
+
+                while (record != null) {
+                    add(record, now);
+                    record = queue.poll();
+                }
+
+                flushOlderThan(now - recorderConfiguration.getChunkInterval());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        flushOlderThan(Long.MAX_VALUE);
+        streams.values().forEach(MarketDataStream::close);
+        streams.clear();
+    }
+
+    private void add(MarketDataRecord record, long now) {
+        final MarketDataStream stream = streams.computeIfAbsent(
+            record.getExchange() + ":" + record.getCurrencyPair(),
+            key -> new MarketDataStream(getStreamDirectory(directory, record.getExchange(), record.getCurrencyPair())));
+
+        stream.add(record, now);
+
+        if (stream.getPendingCount() >= recorderConfiguration.getChunkSize()) {
+            flush(stream);
+        }
+    }
+
+    private void flushOlderThan(long time) {
+        for (MarketDataStream stream : streams.values()) {
+            if (stream.getPendingCount() > 0 && stream.getPendingSince() <= time) {
+                flush(stream);
+            }
+        }
+    }
+
+    // write out a stream's pending records, counting the ones that couldn't be written as dropped
+    private void flush(MarketDataStream stream) {
+        final int count = stream.getPendingCount();
+        final int lost = stream.flush();
+
+        recordedCount.add(count - lost);
+        droppedCount.addAndGet(lost);
+    }
+}
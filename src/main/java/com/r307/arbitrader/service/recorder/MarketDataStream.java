@@ -0,0 +1,132 @@
+package com.r307.arbitrader.service.recorder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The records for one exchange and currency pair that haven't been written yet, and the file they go in. There is
+ * one file per day (UTC), named after the date, so the files sort in time order. Only the recorder's writer thread
+ * uses this class.
+ */
+class MarketDataStream {
+    static final String FILE_SUFFIX = ".mdr";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MarketDataStream.class);
+
+    private final File directory;
+    private final List<MarketDataRecord> pending = new ArrayList<>();
+    private long pendingSince = 0L; // wall clock time of the oldest pending record
+    private FileChannel channel;
+    private LocalDate day;
+
+    MarketDataStream(File directory) {
+        this.directory = directory;
+    }
+
+    void add(MarketDataRecord record, long now) {
+        if (pending.isEmpty()) {
+            pendingSince = now;
+        }
+
+        pending.add(record);
+    }
+
+    int getPendingCount() {
+        return pending.size();
+    }
+
+    long getPendingSince() {
+        return pendingSince;
+    }
+
+    /**
+     * Compress the pending records into a chunk and add it to the file. If the chunk can't be written its records
+     * are thrown away, because the feed won't wait for us.
+     *
+     * @return The number of records that were thrown away, or zero if they were all written.
+     */
+    int flush() {
+        if (pending.isEmpty()) {
+            return 0;
+        }
+
+        final int count = pending.size();
+
+        try {
+            final LocalDate chunkDay = Instant.ofEpochMilli(pending.get(0).getTime()).atZone(ZoneOffset.UTC).toLocalDate();
+
+            if (channel == null || !chunkDay.equals(day)) {
+                open(chunkDay);
+            }
+
+            final ByteBuffer chunk = MarketDataChunk.encode(pending);
+
+            while (chunk.hasRemaining()) {
+                channel.write(chunk);
+            }
+
+            return 0;
+        } catch (IOException e) {
+            LOGGER.error("Unable to record {} market data records in {}: {}", count, directory, e.getMessage());
+            close();
+
+            return count;
+        } finally {
+            pending.clear();
+        }
+    }
+
+    void close() {
+        if (channel == null) {
+            return;
+        }
+
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOGGER.warn("Unable to close market data file in {}: {}", directory, e.getMessage());
+        }
+
+        channel = null;
+        day = null;
+    }
+
+    // open the file for a day, cutting off any chunk that was only half written
+    private void open(LocalDate chunkDay) throws IOException {
+        close();
+
+        Files.createDirectories(directory.toPath());
+
+        final FileChannel opened = FileChannel.open(new File(directory, chunkDay + FILE_SUFFIX).toPath(),
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        try {
+            final long length = MarketDataChunk.getValidLength(opened);
+
+            if (length < opened.size()) {
+                LOGGER.warn("Discarding {} bytes of incomplete market data in {}", opened.size() - length, directory);
+                opened.truncate(length);
+            }
+
+            opened.position(length);
+        } catch (IOException e) {
+            opened.close();
+            throw e;
+        }
+
+        channel = opened;
+        day = chunkDay;
+    }
+}
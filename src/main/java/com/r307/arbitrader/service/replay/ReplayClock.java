@@ -0,0 +1,55 @@
+package com.r307.arbitrader.service.replay;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A clock that only moves when the replay tells it to, so everything that asks what time it is sees the time of the
+ * market data being replayed instead of the time on the wall.
+ */
+public class ReplayClock extends Clock {
+    private final AtomicLong millis;
+    private final ZoneId zone;
+
+    public ReplayClock() {
+        this(new AtomicLong(), ZoneOffset.UTC);
+    }
+
+    // clocks from withZone() share the time with the one they came from
+    private ReplayClock(AtomicLong millis, ZoneId zone) {
+        this.millis = millis;
+        this.zone = zone;
+    }
+
+    /**
+     * Move the clock forward. The clock never goes backward, so if the new time is earlier it is ignored.
+     *
+     * @param millis The new time, in milliseconds since the epoch.
+     */
+    public void setMillis(long millis) {
+        this.millis.accumulateAndGet(millis, Math::max);
+    }
+
+    @Override
+    public long millis() {
+        return millis.get();
+    }
+
+    @Override
+    public Instant instant() {
+        return Instant.ofEpochMilli(millis());
+    }
+
+    @Override
+    public ZoneId getZone() {
+        return zone;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+        return new ReplayClock(millis, zone);
+    }
+}
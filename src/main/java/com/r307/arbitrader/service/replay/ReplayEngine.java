@@ -0,0 +1,526 @@
+package com.r307.arbitrader.service.replay;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.r307.arbitrader.Utils;
+import com.r307.arbitrader.config.ExchangeConfiguration;
+import com.r307.arbitrader.config.HistoryConfiguration;
+import com.r307.arbitrader.config.PaperConfiguration;
+import com.r307.arbitrader.config.RecorderConfiguration;
+import com.r307.arbitrader.config.ReplayConfiguration;
+import com.r307.arbitrader.config.TradingConfiguration;
+import com.r307.arbitrader.service.BalanceLedger;
+import com.r307.arbitrader.service.CapitalAllocator;
+import com.r307.arbitrader.service.ConditionService;
+import com.r307.arbitrader.service.ErrorCollectorService;
+import com.r307.arbitrader.service.ExchangeService;
+import com.r307.arbitrader.service.NotificationService;
+import com.r307.arbitrader.service.SpreadService;
+import com.r307.arbitrader.service.TickerService;
+import com.r307.arbitrader.service.TradingService;
+import com.r307.arbitrader.service.cache.ExchangeFeeCache;
+import com.r307.arbitrader.service.cache.OrderBookCache;
+import com.r307.arbitrader.service.event.TickerEventListener;
+import com.r307.arbitrader.service.history.TradeHistoryStore;
+import com.r307.arbitrader.service.history.TradeHistoryWriter;
+import com.r307.arbitrader.service.journal.TradeJournal;
+import com.r307.arbitrader.service.latency.LatencyRecorder;
+import com.r307.arbitrader.service.metrics.MetricsService;
+import com.r307.arbitrader.service.model.Spread;
+import com.r307.arbitrader.service.model.TickerEvent;
+import com.r307.arbitrader.service.paper.PaperExchange;
+import com.r307.arbitrader.service.recorder.MarketDataReader;
+import com.r307.arbitrader.service.recorder.MarketDataRecord;
+import com.r307.arbitrader.service.recorder.MarketDataRecorder;
+import com.r307.arbitrader.service.ticker.TickerStrategyProvider;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.commons.io.FileUtils;
+import org.knowm.xchange.Exchange;
+import org.knowm.xchange.ExchangeFactory;
+import org.knowm.xchange.ExchangeSpecification;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.marketdata.Ticker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * Runs recorded market data through the same services that trade live, as fast as the CPU allows. The services are
+ * built here rather than taken from Spring, so the replay has its own clock, its own paper balances, and its own
+ * journal and trade history in the output directory, and can't disturb a bot that is trading from the same directory.
+ *
+ * Records from every exchange and currency pair are merged into one stream in the order we received them, and the
+ * ReplayClock is moved to each one before it is delivered. Tickers are delivered the same way the TickerEventDispatcher
+ * would, and trading decisions happen on this thread before the next record is read. TickerEventListener starts at a
+ * random place in the list of trade combinations for a ticker, so the replay gives it a Random seeded with RANDOM_SEED.
+ * That way the same recording and configuration always trade the same way.
+ *
+ * When we're trading live the order book is fetched after the ticker that made us want to trade, so it gets recorded
+ * just after that ticker, and by default the replay prices that trade with the book before it. Recorded order books
+ * can be delivered replay.orderBookLead milliseconds earlier than they were received instead, so the trading code sees
+ * the book it really used. That also shows it books it couldn't have had yet, so the report counts the entries and
+ * exits that were placed while an order book was ahead of its time. Orders are filled by the paper exchange against
+ * whatever book is current, and filling them takes no time at all in virtual time. The paper trading autoFill setting
+ * is ignored, because an order that fills no matter what the market did tells us nothing.
+ */
+public class ReplayEngine {
+    static final long RANDOM_SEED = 307L;
+    static final String JOURNAL_FILE = "arbitrader-journal.jsonl";
+    static final String LEGACY_STATE_FILE = "arbitrader-state.json";
+    static final String HISTORY_DIRECTORY = "history";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReplayEngine.class);
+
+    private final TradingConfiguration tradingConfiguration;
+    private final ReplayConfiguration replayConfiguration;
+    private final ObjectMapper objectMapper;
+    private final TickerStrategyProvider tickerStrategyProvider;
+
+    public ReplayEngine(TradingConfiguration tradingConfiguration, ReplayConfiguration replayConfiguration,
+                        ObjectMapper objectMapper, TickerStrategyProvider tickerStrategyProvider) {
+        this.tradingConfiguration = tradingConfiguration;
+        this.replayConfiguration = replayConfiguration;
+        this.objectMapper = objectMapper;
+        this.tickerStrategyProvider = tickerStrategyProvider;
+    }
+
+    /**
+     * Replay the recorded market data for every active exchange in the configuration. The exchanges are created but
+     * never connected, so this works without network access or API keys.
+     *
+     * @return The results.
+     * @throws IOException if the market data can't be read or the output directory can't be written.
+     */
+    public ReplayReport run() throws IOException {
+        final List<Exchange> exchanges = new ArrayList<>();
+
+        tradingConfiguration.getExchanges().forEach(exchangeMetadata -> {
+            if (exchangeMetadata.getActive() != null && !exchangeMetadata.getActive()) {
+                LOGGER.info("Skipping exchange '{}' because it is not set as active", exchangeMetadata.getExchangeClass());
+                return;
+            }
+
+            try {
+                exchanges.add(createExchange(exchangeMetadata));
+            } catch (ClassNotFoundException | RuntimeException e) {
+                LOGGER.error("Failed to load exchange {}: {}",
+                    exchangeMetadata.getExchangeClass(),
+                    e.getMessage());
+            }
+        });
+
+        return run(exchanges);
+    }
+
+    // visible for testing so we can use mock exchanges
+    ReplayReport run(List<Exchange> exchanges) throws IOException {
+        final long start = System.currentTimeMillis();
+        final File output = new File(replayConfiguration.getOutput());
+        final ReplayReport report = new ReplayReport();
+        final ReplayClock clock = new ReplayClock();
+
+        clearOutput(output);
+
+        final ExchangeFeeCache exchangeFeeCache = new ExchangeFeeCache();
+        final ExchangeService exchangeService = new ExchangeService(exchangeFeeCache, tickerStrategyProvider);
+        final MetricsService metricsService = new MetricsService(new SimpleMeterRegistry());
+        final MarketDataRecorder marketDataRecorder = new MarketDataRecorder(new RecorderConfiguration()); // not recording
+        final TickerService tickerService = new TickerService(tradingConfiguration, exchangeService,
+            new ErrorCollectorService(metricsService), metricsService, marketDataRecorder);
+        final SpreadService spreadService = new SpreadService(tradingConfiguration, tickerService, clock::millis);
+        final OrderBookCache orderBookCache = new OrderBookCache(clock);
+        final BalanceLedger balanceLedger = new BalanceLedger();
+        final Map<String, ReplayStream> streamsByPair = new HashMap<>();
+        final ReplayOrderFillService orderFillService = new ReplayOrderFillService((exchange, currencyPair) -> {
+            final ReplayStream stream = streamsByPair.get(getPairKey(exchange, currencyPair));
+
+            return stream != null && stream.orderBookTime > clock.millis();
+        });
+        final TradeJournal tradeJournal = new TradeJournal(objectMapper,
+            new File(output, JOURNAL_FILE), new File(output, LEGACY_STATE_FILE));
+        final TradeHistoryStore tradeHistoryStore = new TradeHistoryStore(new File(output, HISTORY_DIRECTORY));
+        final TradeHistoryWriter tradeHistoryWriter = new ReplayHistoryWriter(new HistoryConfiguration(), tradeHistoryStore,
+            getHistoryFile(output), report);
+
+        tradeJournal.recover(); // nothing to recover, it's a new journal
+        tradeHistoryStore.open();
+        tradeHistoryWriter.start();
+
+        final TradingService tradingService = new TradingService(
+            tradingConfiguration,
+            new ReplayConditionService(),
+            exchangeService,
+            spreadService,
+            new ReplayNotificationService(),
+            orderBookCache,
+            Runnable::run, // place orders on this thread, so they're placed before the next record
+            orderFillService,
+            new CapitalAllocator(tradingConfiguration, exchangeService, balanceLedger),
+            balanceLedger,
+            metricsService,
+            tradeJournal,
+            tradeHistoryWriter,
+            marketDataRecorder,
+            clock);
+        final TickerEventListener tickerEventListener = new TickerEventListener(tradingService, tickerService,
+            spreadService, new LatencyRecorder(), new Random(RANDOM_SEED));
+
+        final PaperConfiguration paperConfiguration = getPaperConfiguration();
+        final List<ReplayExchange> replayExchanges = new ArrayList<>();
+        final List<Exchange> paperExchanges = new ArrayList<>();
+
+        for (Exchange exchange : exchanges) {
+            final ReplayExchange replayExchange = new ReplayExchange(exchange);
+
+            replayExchanges.add(replayExchange);
+            paperExchanges.add(new PaperExchange(replayExchange, exchangeService.getExchangeHomeCurrency(exchange),
+                tickerService, exchangeService, orderBookCache, paperConfiguration, clock));
+        }
+
+        tickerService.initializeTickers(paperExchanges);
+        report.setStartingBalance(getTotalBalance(exchangeService, paperExchanges));
+
+        final List<ReplayStream> streams = openStreams(paperExchanges, replayExchanges);
+
+        streams.forEach(stream -> streamsByPair.put(
+            getPairKey(stream.paperExchange, stream.reader.getCurrencyPair()),
+            stream));
+
+        final PriorityQueue<ReplayStream> queue = new PriorityQueue<>(Math.max(1, streams.size()), ReplayStream.ORDER);
+        final long to = replayConfiguration.getTo() == null ? Long.MAX_VALUE : replayConfiguration.getTo().toEpochMilli();
+
+        try {
+            for (ReplayStream stream : streams) {
+                if (stream.fill()) {
+                    queue.add(stream);
+                }
+            }
+
+            while (!queue.isEmpty()) {
+                final ReplayStream stream = queue.poll();
+                final ReplayStream.Entry entry = stream.poll();
+
+                // everything after this is due later still, so this stream is finished
+                if (entry.key > to) {
+                    continue;
+                }
+
+                // an order book delivered early can be past the end while the tickers behind it aren't
+                if (entry.record.getTime() <= to) {
+                    clock.setMillis(entry.key);
+                    report.addRecord(entry.record);
+
+                    try {
+                        deliver(stream, entry.record, tickerService, orderBookCache, tickerEventListener);
+                    } catch (RuntimeException e) {
+                        report.addError();
+
+                        LOGGER.warn("Replaying {} threw an Exception: {}", entry.record, e.getMessage());
+                    }
+                }
+
+                if (stream.fill()) {
+                    queue.add(stream);
+                }
+            }
+        } finally {
+            for (ReplayStream stream : streams) {
+                stream.close();
+            }
+
+            tradeHistoryWriter.stop();
+            tradeJournal.close();
+            orderFillService.stop();
+            exchangeFeeCache.shutdown();
+        }
+
+        report.setEndingBalance(getTotalBalance(exchangeService, paperExchanges));
+        report.setOpenPositionCount(tradingService.getActivePositions().size());
+        report.setUnfilledOrderCount(orderFillService.getUnfilledCount());
+        report.setEarlyOrderBookTradeCount(orderFillService.getEarlyOrderBookCount());
+        report.setSynthesizedOrderBookCount(replayExchanges
+            .stream()
+            .mapToLong(ReplayExchange::getSynthesizedOrderBookCount)
+            .sum());
+        report.setElapsedMillis(System.currentTimeMillis() - start);
+
+        return report;
+    }
+
+    // hand a record to the services the same way the live feeds would
+    private static void deliver(ReplayStream stream, MarketDataRecord record, TickerService tickerService,
+                                OrderBookCache orderBookCache, TickerEventListener tickerEventListener) {
+
+        if (record.getType() == MarketDataRecord.Type.ORDER_BOOK) {
+            stream.hasOrderBooks = true;
+            stream.orderBookTime = record.getTime();
+            orderBookCache.setSnapshotOrderBook(stream.paperExchange, record.getCurrencyPair(), record.toOrderBook());
+            return;
+        }
+
+        final Ticker ticker = record.toTicker();
+
+        stream.replayExchange.putTicker(ticker);
+
+        // without recorded order books the ticker is all we know, so a book built from an older one mustn't linger
+        if (!stream.hasOrderBooks) {
+            orderBookCache.setSnapshotOrderBook(stream.paperExchange, record.getCurrencyPair(),
+                stream.replayExchange.buildOrderBook(record.getCurrencyPair()));
+        }
+
+        tickerService.putTicker(stream.paperExchange, ticker);
+        tickerEventListener.onTradeEvent(new TickerEvent(ticker, stream.paperExchange));
+    }
+
+    // one reader for every currency pair that was recorded for each of the exchanges
+    private List<ReplayStream> openStreams(List<Exchange> paperExchanges, List<ReplayExchange> replayExchanges) {
+        final File directory = new File(replayConfiguration.getDirectory());
+        final long from = replayConfiguration.getFrom() == null ? Long.MIN_VALUE : replayConfiguration.getFrom().toEpochMilli();
+        final long orderBookLead = replayConfiguration.getOrderBookLead() == null ? 0L : replayConfiguration.getOrderBookLead();
+        final List<ReplayStream> streams = new ArrayList<>();
+
+        for (int i = 0; i < paperExchanges.size(); i++) {
+            final Exchange paperExchange = paperExchanges.get(i);
+            final String exchangeName = paperExchange.getExchangeSpecification().getExchangeName();
+            final File[] pairDirectories = new File(directory, exchangeName).listFiles(File::isDirectory);
+
+            if (pairDirectories == null || pairDirectories.length == 0) {
+                LOGGER.warn("No market data was recorded for {}", exchangeName);
+                continue;
+            }
+
+            Arrays.sort(pairDirectories, Comparator.comparing(File::getName));
+
+            for (File pairDirectory : pairDirectories) {
+                final CurrencyPair currencyPair = parseCurrencyPair(pairDirectory.getName());
+
+                if (currencyPair == null) {
+                    LOGGER.warn("Skipping {}, it isn't named like a currency pair", pairDirectory);
+                    continue;
+                }
+
+                streams.add(new ReplayStream(streams.size(), paperExchange, replayExchanges.get(i),
+                    new MarketDataReader(pairDirectory, exchangeName, currencyPair, from), orderBookLead));
+            }
+        }
+
+        LOGGER.info("Replaying {} market data streams from {}", streams.size(), directory.getAbsolutePath());
+
+        return streams;
+    }
+
+    // the recorder names the directories BASE-COUNTER
+    private static CurrencyPair parseCurrencyPair(String name) {
+        final int separator = name.indexOf('-');
+
+        if (separator <= 0 || separator == name.length() - 1) {
+            return null;
+        }
+
+        return new CurrencyPair(name.substring(0, separator), name.substring(separator + 1));
+    }
+
+    // The replay starts with the configured balances, but orders always wait for the recorded market to reach them.
+    // With autoFill every order would fill at its limit price and the recorded books would never be looked at.
+    private PaperConfiguration getPaperConfiguration() {
+        final PaperConfiguration paperConfiguration = new PaperConfiguration();
+
+        paperConfiguration.setAutoFill(false);
+
+        if (tradingConfiguration.getPaper() != null && tradingConfiguration.getPaper().getInitialBalance() != null) {
+            paperConfiguration.setInitialBalance(tradingConfiguration.getPaper().getInitialBalance());
+        }
+
+        return paperConfiguration;
+    }
+
+    private static String getPairKey(Exchange exchange, CurrencyPair currencyPair) {
+        return exchange.getExchangeSpecification().getExchangeName() + ":" + currencyPair;
+    }
+
+    // only remove what an earlier replay left behind, in case the output directory is shared with something else
+    private static void clearOutput(File output) throws IOException {
+        final File historyFile = getHistoryFile(output);
+        final String historyPrefix = historyFile.getName().substring(0, historyFile.getName().lastIndexOf('.'));
+        final File[] archives = output.listFiles((dir, name) -> name.startsWith(historyPrefix + "."));
+
+        FileUtils.deleteQuietly(new File(output, JOURNAL_FILE));
+        FileUtils.deleteQuietly(new File(output, LEGACY_STATE_FILE));
+        FileUtils.deleteDirectory(new File(output, HISTORY_DIRECTORY));
+
+        if (archives != null) {
+            Arrays.stream(archives).forEach(FileUtils::deleteQuietly);
+        }
+    }
+
+    private static File getHistoryFile(File output) {
+        return new File(output, new File(TradeHistoryWriter.TRADE_HISTORY_FILE).getName());
+    }
+
+    private static BigDecimal getTotalBalance(ExchangeService exchangeService, List<Exchange> exchanges) throws IOException {
+        BigDecimal total = BigDecimal.ZERO;
+
+        for (Exchange exchange : exchanges) {
+            total = total.add(exchangeService.getAccountBalance(exchange));
+        }
+
+        return total;
+    }
+
+    // set up the exchange the same way TradingScheduler does, except that it never asks the exchange for anything
+    private static Exchange createExchange(ExchangeConfiguration exchangeMetadata) throws ClassNotFoundException {
+        final Class<Exchange> exchangeClass = Utils.loadExchangeClass(exchangeMetadata.getExchangeClass());
+        final ExchangeSpecification specification = new ExchangeSpecification(exchangeClass);
+
+        specification.setShouldLoadRemoteMetaData(false);
+        specification.setExchangeSpecificParametersItem(ExchangeService.METADATA_KEY, exchangeMetadata);
+
+        return ExchangeFactory.INSTANCE.createExchange(specification);
+    }
+
+    /**
+     * The records for one exchange and currency pair, in the order they should be delivered. Order books are due
+     * orderBookLead milliseconds before they were received, so they can be due before tickers that were read ahead
+     * of them. We read far enough ahead to be sure nothing that is still to come can be due before the record at the
+     * head of the buffer.
+     */
+    private static class ReplayStream {
+        static final Comparator<ReplayStream> ORDER = Comparator
+            .comparingLong((ReplayStream stream) -> stream.buffer.peek().key)
+            .thenComparingInt(stream -> stream.index)
+            .thenComparingLong(stream -> stream.buffer.peek().sequence);
+
+        final int index;
+        final Exchange paperExchange;
+        final ReplayExchange replayExchange;
+        final MarketDataReader reader;
+        final long orderBookLead;
+        final PriorityQueue<Entry> buffer = new PriorityQueue<>(Comparator
+            .comparingLong((Entry entry) -> entry.key)
+            .thenComparingLong(entry -> entry.sequence));
+        long lastTime = Long.MIN_VALUE;
+        long sequence = 0L;
+        boolean exhausted = false;
+        boolean hasOrderBooks = false;
+        long orderBookTime = Long.MIN_VALUE; // when the current order book was received
+
+        ReplayStream(int index, Exchange paperExchange, ReplayExchange replayExchange, MarketDataReader reader,
+                     long orderBookLead) {
+            this.index = index;
+            this.paperExchange = paperExchange;
+            this.replayExchange = replayExchange;
+            this.reader = reader;
+            this.orderBookLead = orderBookLead;
+        }
+
+        // read until the head of the buffer is ready, returning false if there's nothing left
+        boolean fill() throws IOException {
+            while (!exhausted && (buffer.isEmpty() || buffer.peek().key + orderBookLead > lastTime)) {
+                final MarketDataRecord record = reader.next();
+
+                if (record == null) {
+                    exhausted = true;
+                    break;
+                }
+
+                // records are read in the order they were received, so nothing later can be due before lastTime - lead
+                lastTime = Math.max(lastTime, record.getTime());
+
+                final long key = record.getType() == MarketDataRecord.Type.ORDER_BOOK
+                    ? record.getTime() - orderBookLead
+                    : record.getTime();
+
+                buffer.add(new Entry(key, sequence++, record));
+            }
+
+            return !buffer.isEmpty();
+        }
+
+        Entry poll() {
+            return buffer.poll();
+        }
+
+        void close() {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                LOGGER.warn("Unable to close the market data for {} {}: {}",
+                    reader.getExchange(),
+                    reader.getCurrencyPair(),
+                    e.getMessage());
+            }
+        }
+
+        static class Entry {
+            final long key;
+            final long sequence;
+            final MarketDataRecord record;
+
+            Entry(long key, long sequence, MarketDataRecord record) {
+                this.key = key;
+                this.sequence = sequence;
+                this.record = record;
+            }
+        }
+    }
+
+    // the condition files are for a live bot, so the replay ignores them and leaves them where they are
+    private static class ReplayConditionService extends ConditionService {
+        @Override
+        public boolean isForceOpenCondition(CurrencyPair currencyPair, String longExchangeName, String shortExchangeName) {
+            return false;
+        }
+
+        @Override
+        public void clearForceOpenCondition() {
+            // nothing to clear
+        }
+
+        @Override
+        public boolean isForceCloseCondition() {
+            return false;
+        }
+
+        @Override
+        public void clearForceCloseCondition() {
+            // nothing to clear
+        }
+
+        @Override
+        public boolean isBlackoutCondition(Exchange exchange) {
+            return false;
+        }
+    }
+
+    // nobody wants an email for every trade in a month of history
+    private static class ReplayNotificationService implements NotificationService {
+        @Override
+        public void sendEmailNotification(String subject, String body) {
+            // no notifications during a replay
+        }
+
+        @Override
+        public void sendEmailNotificationBodyForEntryTrade(Spread spread, BigDecimal exitTarget, BigDecimal longVolume,
+                                                           BigDecimal longLimitPrice, BigDecimal shortVolume,
+                                                           BigDecimal shortLimitPrice) {
+            // no notifications during a replay
+        }
+
+        @Override
+        public void sendEmailNotificationBodyForExitTrade(Spread spread, BigDecimal longVolume, BigDecimal longLimitPrice,
+                                                          BigDecimal shortVolume, BigDecimal shortLimitPrice,
+                                                          BigDecimal entryBalance, BigDecimal updatedBalance) {
+            // no notifications during a replay
+        }
+    }
+}
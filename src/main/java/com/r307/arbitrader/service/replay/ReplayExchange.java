@@ -0,0 +1,155 @@
+package com.r307.arbitrader.service.replay;
+
+import org.knowm.xchange.Exchange;
+import org.knowm.xchange.ExchangeSpecification;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.Order;
+import org.knowm.xchange.dto.marketdata.OrderBook;
+import org.knowm.xchange.dto.marketdata.Ticker;
+import org.knowm.xchange.dto.meta.ExchangeMetaData;
+import org.knowm.xchange.dto.trade.LimitOrder;
+import org.knowm.xchange.exceptions.ExchangeException;
+import org.knowm.xchange.service.account.AccountService;
+import org.knowm.xchange.service.marketdata.MarketDataService;
+import org.knowm.xchange.service.trade.TradeService;
+import si.mazi.rescu.SynchronizedValueFactory;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stands in for a real exchange during a replay. Market data comes from the recording instead of the exchange, and
+ * nothing ever goes over the network: the account service doesn't implement anything, so fees come from the
+ * configuration or the exchange metadata.
+ *
+ * When the trading code asks for an order book that wasn't recorded (or is too old to use) we build one out of the
+ * last ticker, with a single level on each side that is deep enough for any order. That's optimistic, so the replay
+ * counts how often it happens.
+ *
+ * This is not thread safe. A replay runs on one thread.
+ */
+public class ReplayExchange implements Exchange {
+    static final BigDecimal UNKNOWN_DEPTH = new BigDecimal("1000000000");
+
+    private final Exchange realExchange;
+    private final Map<CurrencyPair, Ticker> tickers = new HashMap<>();
+    private final MarketDataService marketDataService = new ReplayMarketDataService();
+    private final AccountService accountService = new AccountService() { };
+    private long synthesizedOrderBookCount = 0L;
+
+    public ReplayExchange(Exchange exchange) {
+        this.realExchange = exchange;
+    }
+
+    /**
+     * Make a recorded ticker the current one for its currency pair.
+     *
+     * @param ticker The ticker.
+     */
+    public void putTicker(Ticker ticker) {
+        tickers.put((CurrencyPair) ticker.getInstrument(), ticker);
+    }
+
+    /**
+     * Build an order book for a currency pair out of its current ticker.
+     *
+     * @param currencyPair The currency pair.
+     * @return An OrderBook with one level on each side at the ticker prices.
+     * @throws ExchangeException if no ticker has been replayed for the currency pair.
+     */
+    public OrderBook buildOrderBook(CurrencyPair currencyPair) {
+        final Ticker ticker = getCurrentTicker(currencyPair);
+        final Date timestamp = ticker.getTimestamp();
+
+        synthesizedOrderBookCount++;
+
+        return new OrderBook(timestamp,
+            Collections.singletonList(new LimitOrder(Order.OrderType.ASK, UNKNOWN_DEPTH, currencyPair, null, timestamp, ticker.getAsk())),
+            Collections.singletonList(new LimitOrder(Order.OrderType.BID, UNKNOWN_DEPTH, currencyPair, null, timestamp, ticker.getBid())));
+    }
+
+    /**
+     * The number of order books we had to build out of a ticker because none was recorded.
+     *
+     * @return The number of order books.
+     */
+    public long getSynthesizedOrderBookCount() {
+        return synthesizedOrderBookCount;
+    }
+
+    @Override
+    public ExchangeSpecification getExchangeSpecification() {
+        return realExchange.getExchangeSpecification();
+    }
+
+    @Override
+    public ExchangeMetaData getExchangeMetaData() {
+        return realExchange.getExchangeMetaData();
+    }
+
+    @Override
+    public List<CurrencyPair> getExchangeSymbols() {
+        return realExchange.getExchangeSymbols();
+    }
+
+    @Override
+    public SynchronizedValueFactory<Long> getNonceFactory() {
+        return realExchange.getNonceFactory();
+    }
+
+    @Override
+    public ExchangeSpecification getDefaultExchangeSpecification() {
+        return realExchange.getDefaultExchangeSpecification();
+    }
+
+    @Override
+    public void applySpecification(ExchangeSpecification exchangeSpecification) {
+        realExchange.applySpecification(exchangeSpecification);
+    }
+
+    @Override
+    public MarketDataService getMarketDataService() {
+        return marketDataService;
+    }
+
+    @Override
+    public TradeService getTradeService() {
+        return realExchange.getTradeService();
+    }
+
+    @Override
+    public AccountService getAccountService() {
+        return accountService;
+    }
+
+    @Override
+    public void remoteInit() {
+        // there is nothing to connect to
+    }
+
+    private Ticker getCurrentTicker(CurrencyPair currencyPair) {
+        final Ticker ticker = tickers.get(currencyPair);
+
+        if (ticker == null) {
+            throw new ExchangeException("No ticker has been replayed for " + currencyPair + " yet");
+        }
+
+        return ticker;
+    }
+
+    private class ReplayMarketDataService implements MarketDataService {
+        @Override
+        public Ticker getTicker(CurrencyPair currencyPair, Object... args) {
+            return getCurrentTicker(currencyPair);
+        }
+
+        @Override
+        public OrderBook getOrderBook(CurrencyPair currencyPair, Object... args) {
+            return buildOrderBook(currencyPair);
+        }
+    }
+}
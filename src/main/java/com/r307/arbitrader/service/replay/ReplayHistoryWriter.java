@@ -0,0 +1,29 @@
+package com.r307.arbitrader.service.replay;
+
+import com.r307.arbitrader.config.HistoryConfiguration;
+import com.r307.arbitrader.service.history.TradeHistoryStore;
+import com.r307.arbitrader.service.history.TradeHistoryWriter;
+import com.r307.arbitrader.service.model.ArbitrageLog;
+
+import java.io.File;
+
+/**
+ * Writes the replay's trade history to its own files, and adds every trade to the ReplayReport as it goes by.
+ */
+public class ReplayHistoryWriter extends TradeHistoryWriter {
+    private final ReplayReport replayReport;
+
+    public ReplayHistoryWriter(HistoryConfiguration historyConfiguration, TradeHistoryStore tradeHistoryStore,
+                               File historyFile, ReplayReport replayReport) {
+        super(historyConfiguration, tradeHistoryStore, historyFile);
+
+        this.replayReport = replayReport;
+    }
+
+    @Override
+    public boolean write(ArbitrageLog arbitrageLog) {
+        replayReport.addTrade(arbitrageLog);
+
+        return super.write(arbitrageLog);
+    }
+}
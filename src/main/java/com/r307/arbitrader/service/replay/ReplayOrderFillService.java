@@ -0,0 +1,101 @@
+package com.r307.arbitrader.service.replay;
+
+import com.r307.arbitrader.service.OrderFillService;
+import org.knowm.xchange.Exchange;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.Order;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiPredicate;
+
+/**
+ * Finishes waiting for orders as soon as they're placed. Virtual time doesn't move while we wait, so there is nothing
+ * to be gained by polling: the paper exchange gets one look at the current market to fill the order, and if it can't
+ * we carry on anyway and count it, the same as a live trade that gave up waiting. Either way we hand back the order
+ * as the paper exchange has it, so only what really filled ends up in the balances.
+ *
+ * TradingService always waits for the long order and then the short one, so every second order finishes an entry or
+ * an exit. We count the ones where either order was placed while its exchange's order book was delivered early.
+ */
+public class ReplayOrderFillService extends OrderFillService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReplayOrderFillService.class);
+
+    private final BiPredicate<Exchange, CurrencyPair> isEarlyOrderBook;
+    private long unfilledCount = 0L;
+    private long earlyOrderBookCount = 0L;
+    private long orderCount = 0L;
+    private boolean isEarly = false; // for the entry or exit we're part way through
+
+    /**
+     * Build a fill service that can tell whether the order book for an exchange and currency pair was delivered
+     * before it was received.
+     *
+     * @param isEarlyOrderBook True if the current order book for the exchange and currency pair is early.
+     */
+    public ReplayOrderFillService(BiPredicate<Exchange, CurrencyPair> isEarlyOrderBook) {
+        this.isEarlyOrderBook = isEarlyOrderBook;
+    }
+
+    @Override
+    public CompletableFuture<Order> awaitFill(Exchange exchange, CurrencyPair currencyPair, String orderId) {
+        isEarly |= isEarlyOrderBook.test(exchange, currencyPair);
+
+        if (++orderCount % 2 == 0) {
+            if (isEarly) {
+                earlyOrderBookCount++;
+            }
+
+            isEarly = false;
+        }
+
+        try {
+            // asking for the open orders is what makes the paper exchange match them against the market
+            final boolean isOpen = exchange.getTradeService().getOpenOrders().getOpenOrders()
+                .stream()
+                .map(Order::getId)
+                .anyMatch(id -> orderId == null || id.equals(orderId));
+
+            if (isOpen) {
+                unfilledCount++;
+
+                LOGGER.warn("{} order {} could not be filled at the replayed prices",
+                    exchange.getExchangeSpecification().getExchangeName(),
+                    orderId);
+            }
+
+            if (orderId != null) {
+                return CompletableFuture.completedFuture(exchange.getTradeService().getOrder(orderId)
+                    .stream()
+                    .findFirst()
+                    .orElse(null));
+            }
+        } catch (IOException e) {
+            LOGGER.warn("{} threw an Exception while checking orders: {}",
+                exchange.getExchangeSpecification().getExchangeName(),
+                e.getMessage());
+        }
+
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * The number of orders that were still open when we stopped waiting for them.
+     *
+     * @return The number of orders.
+     */
+    public long getUnfilledCount() {
+        return unfilledCount;
+    }
+
+    /**
+     * The number of entries and exits that were placed while an order book they used was delivered early.
+     *
+     * @return The number of entries and exits.
+     */
+    public long getEarlyOrderBookCount() {
+        return earlyOrderBookCount;
+    }
+}
@@ -0,0 +1,240 @@
+package com.r307.arbitrader.service.replay;
+
+import com.r307.arbitrader.service.model.ArbitrageLog;
+import com.r307.arbitrader.service.recorder.MarketDataRecord;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static com.r307.arbitrader.DecimalConstants.USD_SCALE;
+
+/**
+ * What happened during a replay: how much market data went through, the trades it led to and how much they made.
+ * Profits are the ones TradingService computed from the paper balances, the same figures that go into the trade
+ * history file.
+ */
+public class ReplayReport {
+    private long firstTime = Long.MAX_VALUE;
+    private long lastTime = Long.MIN_VALUE;
+    private long tickerCount = 0L;
+    private long orderBookCount = 0L;
+    private long synthesizedOrderBookCount = 0L;
+    private long unfilledOrderCount = 0L;
+    private long earlyOrderBookTradeCount = 0L;
+    private long errorCount = 0L;
+    private int tradeCount = 0;
+    private int winCount = 0;
+    private int lossCount = 0;
+    private BigDecimal totalProfit = BigDecimal.ZERO;
+    private BigDecimal bestTrade = null;
+    private BigDecimal worstTrade = null;
+    private BigDecimal peakProfit = BigDecimal.ZERO;
+    private BigDecimal maxDrawdown = BigDecimal.ZERO;
+    private final Map<String, BigDecimal> profitByCombination = new TreeMap<>();
+    private final Map<String, Integer> tradesByCombination = new TreeMap<>();
+    private BigDecimal startingBalance = BigDecimal.ZERO;
+    private BigDecimal endingBalance = BigDecimal.ZERO;
+    private int openPositionCount = 0;
+    private long elapsedMillis = 0L;
+
+    /**
+     * Count a record that was replayed.
+     *
+     * @param record The record.
+     */
+    public void addRecord(MarketDataRecord record) {
+        firstTime = Math.min(firstTime, record.getTime());
+        lastTime = Math.max(lastTime, record.getTime());
+
+        if (record.getType() == MarketDataRecord.Type.TICKER) {
+            tickerCount++;
+        } else {
+            orderBookCount++;
+        }
+    }
+
+    /**
+     * Count a record that made the trading code throw an Exception.
+     */
+    public void addError() {
+        errorCount++;
+    }
+
+    /**
+     * Count a trade that was closed, and add its profit.
+     *
+     * @param arbitrageLog The trade.
+     */
+    public void addTrade(ArbitrageLog arbitrageLog) {
+        final BigDecimal profit = arbitrageLog.getProfit();
+        final String combination = arbitrageLog.getLongExchange() + "/" + arbitrageLog.getShortExchange()
+            + " " + arbitrageLog.getLongCurrency();
+
+        tradeCount++;
+
+        if (profit.compareTo(BigDecimal.ZERO) > 0) {
+            winCount++;
+        } else {
+            lossCount++;
+        }
+
+        bestTrade = bestTrade == null ? profit : bestTrade.max(profit);
+        worstTrade = worstTrade == null ? profit : worstTrade.min(profit);
+
+        // the drawdown is the furthest the running total fell below its highest point
+        totalProfit = totalProfit.add(profit);
+        peakProfit = peakProfit.max(totalProfit);
+        maxDrawdown = maxDrawdown.max(peakProfit.subtract(totalProfit));
+
+        profitByCombination.merge(combination, profit, BigDecimal::add);
+        tradesByCombination.merge(combination, 1, Integer::sum);
+    }
+
+    public long getTickerCount() {
+        return tickerCount;
+    }
+
+    public long getOrderBookCount() {
+        return orderBookCount;
+    }
+
+    public long getSynthesizedOrderBookCount() {
+        return synthesizedOrderBookCount;
+    }
+
+    public void setSynthesizedOrderBookCount(long synthesizedOrderBookCount) {
+        this.synthesizedOrderBookCount = synthesizedOrderBookCount;
+    }
+
+    public long getUnfilledOrderCount() {
+        return unfilledOrderCount;
+    }
+
+    public void setUnfilledOrderCount(long unfilledOrderCount) {
+        this.unfilledOrderCount = unfilledOrderCount;
+    }
+
+    public long getEarlyOrderBookTradeCount() {
+        return earlyOrderBookTradeCount;
+    }
+
+    public void setEarlyOrderBookTradeCount(long earlyOrderBookTradeCount) {
+        this.earlyOrderBookTradeCount = earlyOrderBookTradeCount;
+    }
+
+    public long getErrorCount() {
+        return errorCount;
+    }
+
+    public int getTradeCount() {
+        return tradeCount;
+    }
+
+    public int getWinCount() {
+        return winCount;
+    }
+
+    public int getLossCount() {
+        return lossCount;
+    }
+
+    public BigDecimal getTotalProfit() {
+        return totalProfit;
+    }
+
+    public BigDecimal getMaxDrawdown() {
+        return maxDrawdown;
+    }
+
+    public BigDecimal getStartingBalance() {
+        return startingBalance;
+    }
+
+    public void setStartingBalance(BigDecimal startingBalance) {
+        this.startingBalance = startingBalance;
+    }
+
+    public BigDecimal getEndingBalance() {
+        return endingBalance;
+    }
+
+    public void setEndingBalance(BigDecimal endingBalance) {
+        this.endingBalance = endingBalance;
+    }
+
+    public int getOpenPositionCount() {
+        return openPositionCount;
+    }
+
+    public void setOpenPositionCount(int openPositionCount) {
+        this.openPositionCount = openPositionCount;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public void setElapsedMillis(long elapsedMillis) {
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    /**
+     * Summarize the replay.
+     *
+     * @return Lines suitable for logging.
+     */
+    public List<String> report() {
+        final List<String> lines = new ArrayList<>();
+
+        if (tickerCount + orderBookCount == 0) {
+            lines.add("Replay found no market data to replay");
+            return lines;
+        }
+
+        final Duration replayed = Duration.ofMillis(lastTime - firstTime);
+
+        lines.add(String.format("Replayed %s to %s (%s) in %d ms",
+            Instant.ofEpochMilli(firstTime),
+            Instant.ofEpochMilli(lastTime),
+            replayed,
+            elapsedMillis));
+        lines.add(String.format("Replayed %d tickers and %d order books, built %d order books from tickers, %d errors",
+            tickerCount,
+            orderBookCount,
+            synthesizedOrderBookCount,
+            errorCount));
+        lines.add(String.format("Trades: %d (%d won, %d lost), %d orders not filled, %d positions still open",
+            tradeCount,
+            winCount,
+            lossCount,
+            unfilledOrderCount,
+            openPositionCount));
+        lines.add(String.format("Entries and exits priced with an order book before it was received: %d",
+            earlyOrderBookTradeCount));
+        lines.add(String.format("Profit: $%s total, $%s best, $%s worst, $%s maximum drawdown",
+            format(totalProfit),
+            format(bestTrade),
+            format(worstTrade),
+            format(maxDrawdown)));
+        lines.add(String.format("Balance: $%s at the start, $%s at the end",
+            format(startingBalance),
+            format(endingBalance)));
+
+        profitByCombination.forEach((combination, profit) -> lines.add(String.format("Profit %s: $%s from %d trades",
+            combination,
+            format(profit),
+            tradesByCombination.get(combination))));
+
+        return lines;
+    }
+
+    private static String format(BigDecimal value) {
+        return value == null ? "-" : value.setScale(USD_SCALE, RoundingMode.HALF_EVEN).toPlainString();
+    }
+}
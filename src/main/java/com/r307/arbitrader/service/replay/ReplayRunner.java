@@ -0,0 +1,58 @@
+package com.r307.arbitrader.service.replay;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.r307.arbitrader.config.ReplayConfiguration;
+import com.r307.arbitrader.config.TradingConfiguration;
+import com.r307.arbitrader.service.ticker.TickerStrategyProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationContext;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+/**
+ * Runs a replay of the recorded market data once Spring has started, logs the results and exits. This takes the place
+ * of the TradingScheduler when replay.active is set.
+ */
+@Component
+@ConditionalOnProperty(prefix = "replay", name = "active", havingValue = "true")
+public class ReplayRunner implements ApplicationRunner {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReplayRunner.class);
+
+    private final ApplicationContext applicationContext;
+    private final ReplayEngine replayEngine;
+
+    public ReplayRunner(
+        ApplicationContext applicationContext,
+        TradingConfiguration tradingConfiguration,
+        ReplayConfiguration replayConfiguration,
+        ObjectMapper objectMapper,
+        TickerStrategyProvider tickerStrategyProvider) {
+
+        this.applicationContext = applicationContext;
+        this.replayEngine = new ReplayEngine(tradingConfiguration, replayConfiguration, objectMapper, tickerStrategyProvider);
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        int exitCode = 0;
+
+        LOGGER.info("Replaying recorded market data, will NOT connect to any exchanges");
+
+        try {
+            replayEngine.run().report().forEach(LOGGER::info);
+        } catch (IOException e) {
+            LOGGER.error("Replay failed: ", e);
+            exitCode = 1;
+        }
+
+        final int finalExitCode = exitCode;
+
+        System.exit(SpringApplication.exit(applicationContext, () -> finalExitCode));
+    }
+}
@@ -0,0 +1,445 @@
+package com.r307.arbitrader.service.ticker;
+
+import com.r307.arbitrader.FixedPoint;
+import org.knowm.xchange.dto.Order;
+import org.knowm.xchange.dto.marketdata.OrderBook;
+import org.knowm.xchange.dto.trade.LimitOrder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.r307.arbitrader.FixedPoint.NO_VALUE;
+
+/**
+ * An order book kept as parallel arrays of prices and quantities (scaled longs, see FixedPoint) for each side, best
+ * price first, along with the cumulative volume and cost at every price level.
+ *
+ * With the cumulative volumes in hand, finding the price we'd have to pay to fill a certain volume is a binary search
+ * instead of a walk through the book adding up BigDecimals. The book can be replaced wholesale from an OrderBook or
+ * updated one price level at a time, and the cumulative sums are only recomputed from the first level that changed,
+ * the next time somebody asks.
+ *
+ * The scaled prices are rounded to FixedPoint.SCALE decimal places, which is fine for searching but not for placing an
+ * order on a pair that is quoted more finely than that. So a book built from an OrderBook also keeps each level's
+ * price as the exchange sent it, and getExactLimitPrice() hands that back. Volumes too large for a scaled long are
+ * capped at Long.MAX_VALUE rather than wrapping around.
+ *
+ * Every method is synchronized so one thread can keep the book updated while others read from it.
+ */
+public class DepthBook {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DepthBook.class);
+    private static final int INITIAL_CAPACITY = 64;
+    private static final Object TIE_LOCK = new Object();
+
+    private final Side asks = new Side(true);
+    private final Side bids = new Side(false);
+
+    /**
+     * Create an empty DepthBook.
+     */
+    public DepthBook() {
+        // this method intentionally left blank
+    }
+
+    /**
+     * Create a DepthBook with the contents of an OrderBook.
+     *
+     * @param orderBook The OrderBook.
+     */
+    public DepthBook(OrderBook orderBook) {
+        replace(orderBook);
+    }
+
+    /**
+     * Replace the whole book with the contents of an OrderBook. The orders on each side need to be in the order the
+     * exchange gives them, best price first. Orders at the same price are combined into one level.
+     *
+     * @param orderBook The OrderBook.
+     */
+    public synchronized void replace(OrderBook orderBook) {
+        asks.replace(orderBook.getAsks());
+        bids.replace(orderBook.getBids());
+    }
+
+    /**
+     * Set the quantity at one price level, such as when an exchange sends an incremental update.
+     *
+     * @param type ASK to update the asks, BID to update the bids.
+     * @param price The price as a scaled long.
+     * @param quantity The new total quantity at that price as a scaled long, or zero to remove the level.
+     */
+    public synchronized void update(Order.OrderType type, long price, long quantity) {
+        getSide(type).update(price, quantity);
+    }
+
+    /**
+     * The number of price levels on one side of the book.
+     *
+     * @param type ASK or BID.
+     * @return The number of price levels.
+     */
+    public synchronized int size(Order.OrderType type) {
+        return getSide(type).size;
+    }
+
+    /**
+     * Copy the best price levels on one side of the book, as many as will fit in the arrays.
+     *
+     * @param type ASK or BID.
+     * @param prices Where to put the prices, best first.
+     * @param quantities Where to put the quantity at each price.
+     * @return The number of levels copied.
+     */
+    public synchronized int getLevels(Order.OrderType type, long[] prices, long[] quantities) {
+        return getSide(type).getLevels(prices, quantities);
+    }
+
+    /**
+     * The total volume on one side of the book.
+     *
+     * @param type ASK or BID.
+     * @return The total volume as a scaled long.
+     */
+    public synchronized long getTotalVolume(Order.OrderType type) {
+        return getSide(type).getTotalVolume();
+    }
+
+    /**
+     * Find the price of the level where the cumulative volume first exceeds the volume we want. A limit order at
+     * that price should fill completely, because there is enough volume at that price or better.
+     *
+     * @param type ASK to buy from the asks, BID to sell to the bids.
+     * @param volume The volume as a scaled long.
+     * @return The limit price as a scaled long, or NO_VALUE if the book doesn't have enough volume.
+     */
+    public synchronized long getLimitPrice(Order.OrderType type, long volume) {
+        return getSide(type).getLimitPrice(volume);
+    }
+
+    /**
+     * Find the price of the level where the cumulative volume first exceeds the volume we want, the same as
+     * getLimitPrice(), but as the exchange quoted it instead of rounded to a scaled long. Levels that were added by
+     * update() only have the scaled price, so that is what we return for them.
+     *
+     * @param type ASK to buy from the asks, BID to sell to the bids.
+     * @param volume The volume as a scaled long.
+     * @return The limit price, or null if the book doesn't have enough volume.
+     */
+    public synchronized BigDecimal getExactLimitPrice(Order.OrderType type, long volume) {
+        return getSide(type).getExactLimitPrice(volume);
+    }
+
+    /**
+     * Find the volume-weighted average price we'd pay to fill a volume by taking every level in turn.
+     *
+     * @param type ASK to buy from the asks, BID to sell to the bids.
+     * @param volume The volume as a scaled long.
+     * @return The average price as a scaled long, or NO_VALUE if the volume isn't positive or the book doesn't have
+     * enough volume.
+     */
+    public synchronized long getAveragePrice(Order.OrderType type, long volume) {
+        return getSide(type).getAveragePrice(volume);
+    }
+
+    /**
+     * Work out how much we could buy from the asks of one book and sell to the bids of another while the spread in
+     * between the two levels we're taking from stays at or above a minimum, like the entry spread.
+     *
+     * @param longBook The DepthBook on the exchange we would buy from.
+     * @param shortBook The DepthBook on the exchange we would sell to.
+     * @param minimumSpread The minimum spread as a scaled long.
+     * @return The volume as a scaled long.
+     */
+    public static long getMaximumVolume(DepthBook longBook, DepthBook shortBook, long minimumSpread) {
+        // always lock the two books in the same order so two threads can't deadlock each other
+        int longHash = System.identityHashCode(longBook);
+        int shortHash = System.identityHashCode(shortBook);
+
+        if (longHash < shortHash) {
+            synchronized (longBook) {
+                synchronized (shortBook) {
+                    return longBook.asks.getMaximumVolume(shortBook.bids, minimumSpread);
+                }
+            }
+        } else if (longHash > shortHash) {
+            synchronized (shortBook) {
+                synchronized (longBook) {
+                    return longBook.asks.getMaximumVolume(shortBook.bids, minimumSpread);
+                }
+            }
+        }
+
+        synchronized (TIE_LOCK) {
+            synchronized (longBook) {
+                synchronized (shortBook) {
+                    return longBook.asks.getMaximumVolume(shortBook.bids, minimumSpread);
+                }
+            }
+        }
+    }
+
+    private Side getSide(Order.OrderType type) {
+        return Order.OrderType.ASK.equals(type) ? asks : bids;
+    }
+
+    // volumes are never negative, so the only way to overflow is up
+    private static long addVolume(long volume, long quantity) {
+        try {
+            return Math.addExact(volume, quantity);
+        } catch (ArithmeticException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    // one side of the book, sorted best price first
+    private static class Side {
+        private final boolean isAscending;
+        private long[] prices = new long[INITIAL_CAPACITY];
+        private BigDecimal[] exactPrices = new BigDecimal[INITIAL_CAPACITY]; // null if we only have the scaled price
+        private long[] quantities = new long[INITIAL_CAPACITY];
+        private long[] cumulativeVolumes = new long[INITIAL_CAPACITY];
+        private double[] cumulativeCosts = new double[INITIAL_CAPACITY];
+        private int size = 0;
+        private int valid = 0; // the cumulative sums are correct for levels below this index
+
+        Side(boolean isAscending) {
+            this.isAscending = isAscending;
+        }
+
+        void replace(List<LimitOrder> orders) {
+            int skipped = 0;
+
+            Arrays.fill(exactPrices, 0, size, null);
+            size = 0;
+            valid = 0;
+
+            for (LimitOrder order : orders) {
+                BigDecimal amount = order.getRemainingAmount();
+                long price = FixedPoint.toFixed(order.getLimitPrice());
+                long quantity = FixedPoint.toFixed(amount);
+
+                if (quantity == NO_VALUE && amount != null && amount.signum() > 0) {
+                    quantity = Long.MAX_VALUE; // more than we could ever want
+                }
+
+                if (price == NO_VALUE || quantity == NO_VALUE) {
+                    skipped++;
+                    continue;
+                }
+
+                if (quantity <= 0) {
+                    continue;
+                }
+
+                // Prices quoted more finely than a scaled long can end up in the same level. The later one is the
+                // worse price, so that's the one an order for the whole level has to be placed at.
+                if (size > 0 && prices[size - 1] == price) {
+                    quantities[size - 1] = addVolume(quantities[size - 1], quantity);
+                    exactPrices[size - 1] = order.getLimitPrice();
+                    continue;
+                }
+
+                ensureCapacity(size + 1);
+                prices[size] = price;
+                exactPrices[size] = order.getLimitPrice();
+                quantities[size] = quantity;
+                size++;
+            }
+
+            if (skipped > 0) {
+                LOGGER.warn("Skipped {} {} order book levels that don't fit in a scaled long", skipped, isAscending ? "ask" : "bid");
+            }
+        }
+
+        void update(long price, long quantity) {
+            int index = find(price);
+
+            if (index >= 0) {
+                if (quantity > 0) {
+                    quantities[index] = quantity;
+                } else {
+                    System.arraycopy(prices, index + 1, prices, index, size - index - 1);
+                    System.arraycopy(exactPrices, index + 1, exactPrices, index, size - index - 1);
+                    System.arraycopy(quantities, index + 1, quantities, index, size - index - 1);
+                    size--;
+                    exactPrices[size] = null;
+                }
+            } else if (quantity > 0) {
+                index = -(index + 1);
+
+                ensureCapacity(size + 1);
+                System.arraycopy(prices, index, prices, index + 1, size - index);
+                System.arraycopy(exactPrices, index, exactPrices, index + 1, size - index);
+                System.arraycopy(quantities, index, quantities, index + 1, size - index);
+                prices[index] = price;
+                exactPrices[index] = null;
+                quantities[index] = quantity;
+                size++;
+            } else {
+                return; // removing a level we don't have
+            }
+
+            valid = Math.min(valid, index);
+        }
+
+        int getLevels(long[] destinationPrices, long[] destinationQuantities) {
+            int count = Math.min(size, Math.min(destinationPrices.length, destinationQuantities.length));
+
+            System.arraycopy(prices, 0, destinationPrices, 0, count);
+            System.arraycopy(quantities, 0, destinationQuantities, 0, count);
+
+            return count;
+        }
+
+        long getTotalVolume() {
+            refresh();
+
+            return size == 0 ? 0L : cumulativeVolumes[size - 1];
+        }
+
+        long getLimitPrice(long volume) {
+            refresh();
+
+            int index = firstAbove(volume);
+
+            return index < size ? prices[index] : NO_VALUE;
+        }
+
+        BigDecimal getExactLimitPrice(long volume) {
+            refresh();
+
+            int index = firstAbove(volume);
+
+            if (index >= size) {
+                return null;
+            }
+
+            return exactPrices[index] != null ? exactPrices[index] : FixedPoint.toBigDecimal(prices[index]);
+        }
+
+        long getAveragePrice(long volume) {
+            if (volume <= 0) {
+                return NO_VALUE;
+            }
+
+            refresh();
+
+            // the first level that gets us to the full volume; we only take part of it
+            int index = firstAbove(volume - 1);
+
+            if (index >= size) {
+                return NO_VALUE;
+            }
+
+            long previousVolume = index == 0 ? 0L : cumulativeVolumes[index - 1];
+            double previousCost = index == 0 ? 0.0 : cumulativeCosts[index - 1];
+            double cost = previousCost + (double) prices[index] * (volume - previousVolume) / FixedPoint.ONE;
+
+            return Math.round(cost / volume * FixedPoint.ONE);
+        }
+
+        // this side is the asks on the long exchange and the other side is the bids on the short exchange
+        long getMaximumVolume(Side other, long minimumSpread) {
+            long volume = 0L;
+            int index = 0;
+            int otherIndex = 0;
+            long remaining = size > 0 ? quantities[0] : 0L;
+            long otherRemaining = other.size > 0 ? other.quantities[0] : 0L;
+
+            while (index < size && otherIndex < other.size) {
+                long spread = FixedPoint.spread(prices[index], other.prices[otherIndex]);
+
+                if (spread == NO_VALUE || spread < minimumSpread) {
+                    break;
+                }
+
+                long taken = Math.min(remaining, otherRemaining);
+
+                volume = addVolume(volume, taken);
+                remaining -= taken;
+                otherRemaining -= taken;
+
+                if (remaining == 0 && ++index < size) {
+                    remaining = quantities[index];
+                }
+
+                if (otherRemaining == 0 && ++otherIndex < other.size) {
+                    otherRemaining = other.quantities[otherIndex];
+                }
+            }
+
+            return volume;
+        }
+
+        // binary search for a price, returning -(insertion point + 1) if it isn't there like Arrays.binarySearch()
+        private int find(long price) {
+            int low = 0;
+            int high = size - 1;
+
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                long current = prices[middle];
+
+                if (current == price) {
+                    return middle;
+                } else if (isAscending ? current < price : current > price) {
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+
+            return -(low + 1);
+        }
+
+        // binary search for the first level where the cumulative volume is greater than a volume, or size if none is
+        private int firstAbove(long volume) {
+            int low = 0;
+            int high = size;
+
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+
+                if (cumulativeVolumes[middle] > volume) {
+                    high = middle;
+                } else {
+                    low = middle + 1;
+                }
+            }
+
+            return low;
+        }
+
+        // bring the cumulative sums up to date from the first level that changed
+        private void refresh() {
+            long volume = valid == 0 ? 0L : cumulativeVolumes[valid - 1];
+            double cost = valid == 0 ? 0.0 : cumulativeCosts[valid - 1];
+
+            for (int i = valid; i < size; i++) {
+                volume = addVolume(volume, quantities[i]);
+                cost += (double) prices[i] * quantities[i] / FixedPoint.ONE;
+                cumulativeVolumes[i] = volume;
+                cumulativeCosts[i] = cost;
+            }
+
+            valid = size;
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity <= prices.length) {
+                return;
+            }
+
+            int length = Math.max(capacity, prices.length * 2);
+
+            prices = Arrays.copyOf(prices, length);
+            exactPrices = Arrays.copyOf(exactPrices, length);
+            quantities = Arrays.copyOf(quantities, length);
+            cumulativeVolumes = Arrays.copyOf(cumulativeVolumes, length);
+            cumulativeCosts = Arrays.copyOf(cumulativeCosts, length);
+        }
+    }
+}
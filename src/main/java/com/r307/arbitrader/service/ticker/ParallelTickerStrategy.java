@@ -5,6 +5,7 @@ import com.r307.arbitrader.service.ErrorCollectorService;
 import com.r307.arbitrader.service.ExchangeService;
 import com.r307.arbitrader.service.TickerService;
 import com.r307.arbitrader.service.event.TickerEventPublisher;
+import com.r307.arbitrader.service.latency.LatencyStage;
 import com.r307.arbitrader.service.model.TickerEvent;
 import org.apache.commons.collections4.ListUtils;
 import org.knowm.xchange.Exchange;
@@ -31,17 +32,20 @@ public class ParallelTickerStrategy implements TickerStrategy {
     private final ExchangeService exchangeService;
     private final ErrorCollectorService errorCollectorService;
     private final TickerEventPublisher tickerEventPublisher;
+    private final TickerRateLimiter tickerRateLimiter;
 
     public ParallelTickerStrategy(
         NotificationConfiguration notificationConfiguration,
         ErrorCollectorService errorCollectorService,
         ExchangeService exchangeService,
-        TickerEventPublisher tickerEventPublisher) {
+        TickerEventPublisher tickerEventPublisher,
+        TickerRateLimiter tickerRateLimiter) {
 
         this.notificationConfiguration = notificationConfiguration;
         this.errorCollectorService = errorCollectorService;
         this.exchangeService = exchangeService;
         this.tickerEventPublisher = tickerEventPublisher;
+        this.tickerRateLimiter = tickerRateLimiter;
     }
 
     @Override
@@ -89,6 +93,7 @@ public class ParallelTickerStrategy implements TickerStrategy {
                                 throw ute.getCause();
                             }
                         } catch (Throwable t) {
+                            tickerRateLimiter.onError(exchange, t);
                             errorCollectorService.collect(exchange, t);
                             LOGGER.debug("Unexpected checked exception: " + t.getMessage(), t);
                         }
@@ -111,11 +116,26 @@ public class ParallelTickerStrategy implements TickerStrategy {
                 System.currentTimeMillis() - start);
         }
 
+        // start timing each ticker from when we received it
+        final List<TickerEvent> tickerEvents = tickers
+            .stream()
+            .map(ticker -> new TickerEvent(ticker, exchange))
+            .collect(Collectors.toList());
+
         // push ticker into TickerService
-        tickers.forEach(ticker -> tickerService.putTicker(exchange, ticker));
+        tickerEvents.forEach(tickerEvent -> {
+            tickerService.putTicker(exchange, tickerEvent.getTicker());
+            tickerEvent.getLatencyTrace().mark(LatencyStage.STORED);
+        });
 
         // publish events
-        tickers.forEach(ticker -> tickerEventPublisher.publishTicker(new TickerEvent(ticker, exchange)));
+        tickerEvents.forEach(tickerEventPublisher::publishTicker);
+    }
+
+    // every currency pair is its own request
+    @Override
+    public int getRequestCost(List<CurrencyPair> currencyPairs) {
+        return currencyPairs.size();
     }
 
     // return the batchDelay configuration parameter
@@ -5,6 +5,7 @@ import com.r307.arbitrader.service.ErrorCollectorService;
 import com.r307.arbitrader.service.ExchangeService;
 import com.r307.arbitrader.service.TickerService;
 import com.r307.arbitrader.service.event.TickerEventPublisher;
+import com.r307.arbitrader.service.latency.LatencyStage;
 import com.r307.arbitrader.service.model.TickerEvent;
 import org.knowm.xchange.Exchange;
 import org.knowm.xchange.currency.CurrencyPair;
@@ -28,17 +29,20 @@ public class SingleCallTickerStrategy implements TickerStrategy {
     private final ExchangeService exchangeService;
     private final ErrorCollectorService errorCollectorService;
     private final TickerEventPublisher tickerEventPublisher;
+    private final TickerRateLimiter tickerRateLimiter;
 
     public SingleCallTickerStrategy(
         NotificationConfiguration notificationConfiguration,
         ErrorCollectorService errorCollectorService,
         ExchangeService exchangeService,
-        TickerEventPublisher tickerEventPublisher) {
+        TickerEventPublisher tickerEventPublisher,
+        TickerRateLimiter tickerRateLimiter) {
 
         this.notificationConfiguration = notificationConfiguration;
         this.errorCollectorService = errorCollectorService;
         this.exchangeService = exchangeService;
         this.tickerEventPublisher = tickerEventPublisher;
+        this.tickerRateLimiter = tickerRateLimiter;
     }
 
     @Override
@@ -72,17 +76,27 @@ public class SingleCallTickerStrategy implements TickerStrategy {
                         System.currentTimeMillis() - start);
                 }
 
+                // start timing each ticker from when we received it
+                final List<TickerEvent> tickerEvents = tickers
+                    .stream()
+                    .map(ticker -> new TickerEvent(ticker, exchange))
+                    .collect(Collectors.toList());
+
                 // push ticker into TickerService
-                tickers.forEach(ticker -> tickerService.putTicker(exchange, ticker));
+                tickerEvents.forEach(tickerEvent -> {
+                    tickerService.putTicker(exchange, tickerEvent.getTicker());
+                    tickerEvent.getLatencyTrace().mark(LatencyStage.STORED);
+                });
 
                 // publish events
-                tickers.forEach(ticker -> tickerEventPublisher.publishTicker(new TickerEvent(ticker, exchange)));
+                tickerEvents.forEach(tickerEventPublisher::publishTicker);
             } catch (UndeclaredThrowableException ute) {
                 // Method proxying in rescu can enclose a real exception in this UTE, so we need to unwrap and re-throw it.
                 throw ute.getCause();
             }
         } catch (Throwable t) {
-            // collect any errors and show them in a summarized way
+            // slow down if the exchange says we're asking too often, and collect any errors to show them in a summarized way
+            tickerRateLimiter.onError(exchange, t);
             errorCollectorService.collect(exchange, t);
             LOGGER.debug("Unexpected checked exception: " + t.getMessage(), t);
         }
@@ -0,0 +1,303 @@
+package com.r307.arbitrader.service.ticker;
+
+import com.r307.arbitrader.FixedPoint;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Rolling statistics for the spread in and spread out of every TradeCombination over the last minute, hour and day.
+ * The all time high and low water marks are useful, but to tune entrySpread and exitTarget you really want to know
+ * where the spread usually sits and how much it moves around.
+ *
+ * Each window is divided into a fixed number of time buckets. Every bucket keeps a count, a sum and a sum of squares
+ * for the mean and standard deviation, plus a small log-linear histogram (in the style of an HDR histogram) for
+ * percentiles. When time moves on to a new bucket, the oldest one is cleared and reused. All the memory is
+ * allocated up front, so recording a spread is a handful of array updates. Percentiles are accurate to within
+ * about 6% of the value.
+ *
+ * Because buckets expire whole, a window covers between (buckets - 1) and (buckets) bucket lengths of history.
+ */
+public class SpreadStatistics {
+    /**
+     * The time windows we keep statistics for.
+     */
+    public enum Window {
+        MINUTE("1m", TimeUnit.MINUTES.toMillis(1), 6),
+        HOUR("1h", TimeUnit.HOURS.toMillis(1), 12),
+        DAY("24h", TimeUnit.DAYS.toMillis(1), 24);
+
+        private final String label;
+        private final long bucketLength;
+        private final int bucketCount;
+
+        Window(String label, long length, int bucketCount) {
+            this.label = label;
+            this.bucketLength = length / bucketCount;
+            this.bucketCount = bucketCount;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    // histogram layout: SUB_BINS bins per power of two, for magnitudes from 2^MIN_EXPONENT to 2^MAX_EXPONENT
+    private static final int SUB_BIN_BITS = 3;
+    private static final int SUB_BINS = 1 << SUB_BIN_BITS;
+    private static final int MIN_EXPONENT = 10; // about 0.00001, anything smaller counts as zero
+    private static final int MAX_EXPONENT = 27; // about 1.34, anything larger goes in the last bin
+    private static final int BINS_PER_SIGN = (MAX_EXPONENT - MIN_EXPONENT) * SUB_BINS;
+    static final int ZERO_BIN = BINS_PER_SIGN;
+    static final int BIN_COUNT = BINS_PER_SIGN * 2 + 1;
+
+    private final TradeCombinationIndex tradeCombinationIndex;
+    private final LongSupplier clock;
+    private final Series[] spreadIns;
+    private final Series[] spreadOuts;
+
+    /**
+     * Create empty statistics for every TradeCombination in an index.
+     *
+     * @param tradeCombinationIndex The TradeCombinationIndex that assigned the combination IDs.
+     */
+    public SpreadStatistics(TradeCombinationIndex tradeCombinationIndex) {
+        this(tradeCombinationIndex, System::currentTimeMillis);
+    }
+
+    /**
+     * Create empty statistics for every TradeCombination in an index, using a clock other than the system's.
+     *
+     * @param tradeCombinationIndex The TradeCombinationIndex that assigned the combination IDs.
+     * @param clock Supplies the current time in milliseconds.
+     */
+    public SpreadStatistics(TradeCombinationIndex tradeCombinationIndex, LongSupplier clock) {
+        int size = tradeCombinationIndex.getCombinationCount();
+
+        this.tradeCombinationIndex = tradeCombinationIndex;
+        this.clock = clock;
+        this.spreadIns = new Series[size];
+        this.spreadOuts = new Series[size];
+
+        for (int i = 0; i < size; i++) {
+            spreadIns[i] = new Series();
+            spreadOuts[i] = new Series();
+        }
+    }
+
+    public TradeCombinationIndex getTradeCombinationIndex() {
+        return tradeCombinationIndex;
+    }
+
+    /**
+     * Record a new spread in and spread out for a TradeCombination.
+     *
+     * @param combinationId The combination ID.
+     * @param in The spread in as a scaled long.
+     * @param out The spread out as a scaled long.
+     */
+    public void update(int combinationId, long in, long out) {
+        final long now = clock.getAsLong();
+
+        spreadIns[combinationId].add(now, in);
+        spreadOuts[combinationId].add(now, out);
+    }
+
+    /**
+     * Summarize the spread in for a TradeCombination over a window.
+     *
+     * @param combinationId The combination ID.
+     * @param window The Window.
+     * @return A Summary of the spread in.
+     */
+    public Summary getSpreadIn(int combinationId, Window window) {
+        return spreadIns[combinationId].summarize(clock.getAsLong(), window);
+    }
+
+    /**
+     * Summarize the spread out for a TradeCombination over a window.
+     *
+     * @param combinationId The combination ID.
+     * @param window The Window.
+     * @return A Summary of the spread out.
+     */
+    public Summary getSpreadOut(int combinationId, Window window) {
+        return spreadOuts[combinationId].summarize(clock.getAsLong(), window);
+    }
+
+    // which histogram bin a value goes in, with bins in ascending order of value
+    static int bin(long value) {
+        final long magnitude = value == Long.MIN_VALUE ? Long.MAX_VALUE : Math.abs(value);
+        final int exponent = 63 - Long.numberOfLeadingZeros(magnitude);
+
+        if (magnitude == 0 || exponent < MIN_EXPONENT) {
+            return ZERO_BIN;
+        }
+
+        final int index = exponent >= MAX_EXPONENT
+            ? BINS_PER_SIGN - 1
+            : (exponent - MIN_EXPONENT) * SUB_BINS + (int) ((magnitude >> (exponent - SUB_BIN_BITS)) & (SUB_BINS - 1));
+
+        return value > 0 ? ZERO_BIN + 1 + index : ZERO_BIN - 1 - index;
+    }
+
+    // the value in the middle of a histogram bin
+    static long binValue(int bin) {
+        if (bin == ZERO_BIN) {
+            return 0L;
+        }
+
+        final int index = Math.abs(bin - ZERO_BIN) - 1;
+        final int shift = index / SUB_BINS + MIN_EXPONENT - SUB_BIN_BITS;
+        final long lower = (long) (SUB_BINS + index % SUB_BINS) << shift;
+        final long middle = lower + ((1L << shift) >> 1);
+
+        return bin > ZERO_BIN ? middle : -middle;
+    }
+
+    // the rolling windows for one spread of one TradeCombination
+    private static class Series {
+        private final Bucketed[] windows = new Bucketed[Window.values().length];
+
+        Series() {
+            for (Window window : Window.values()) {
+                windows[window.ordinal()] = new Bucketed(window);
+            }
+        }
+
+        synchronized void add(long now, long value) {
+            final int bin = bin(value);
+
+            for (Bucketed window : windows) {
+                window.add(now, value, bin);
+            }
+        }
+
+        synchronized Summary summarize(long now, Window window) {
+            return windows[window.ordinal()].summarize(now);
+        }
+    }
+
+    // one window divided into time buckets, reusing the oldest bucket when time moves on
+    private static class Bucketed {
+        private final Window window;
+        private final long[] epochs;
+        private final long[] counts;
+        private final double[] sums;
+        private final double[] sumSquares;
+        private final int[] histograms; // BIN_COUNT bins for each bucket, one after the other
+
+        Bucketed(Window window) {
+            this.window = window;
+            this.epochs = new long[window.bucketCount];
+            this.counts = new long[window.bucketCount];
+            this.sums = new double[window.bucketCount];
+            this.sumSquares = new double[window.bucketCount];
+            this.histograms = new int[window.bucketCount * BIN_COUNT];
+
+            Arrays.fill(epochs, -1L);
+        }
+
+        void add(long now, long value, int bin) {
+            final long epoch = now / window.bucketLength;
+            final int bucket = (int) (epoch % window.bucketCount);
+
+            if (epochs[bucket] != epoch) {
+                // this bucket is left over from a previous lap around the window
+                epochs[bucket] = epoch;
+                counts[bucket] = 0;
+                sums[bucket] = 0.0;
+                sumSquares[bucket] = 0.0;
+                Arrays.fill(histograms, bucket * BIN_COUNT, (bucket + 1) * BIN_COUNT, 0);
+            }
+
+            counts[bucket]++;
+            sums[bucket] += value;
+            sumSquares[bucket] += (double) value * value;
+            histograms[bucket * BIN_COUNT + bin]++;
+        }
+
+        Summary summarize(long now) {
+            final long current = now / window.bucketLength;
+            final int[] histogram = new int[BIN_COUNT];
+            long count = 0;
+            double sum = 0.0;
+            double sumSquare = 0.0;
+
+            for (int bucket = 0; bucket < window.bucketCount; bucket++) {
+                if (epochs[bucket] > current - window.bucketCount && epochs[bucket] <= current) {
+                    count += counts[bucket];
+                    sum += sums[bucket];
+                    sumSquare += sumSquares[bucket];
+
+                    for (int bin = 0; bin < BIN_COUNT; bin++) {
+                        histogram[bin] += histograms[bucket * BIN_COUNT + bin];
+                    }
+                }
+            }
+
+            return new Summary(count, sum, sumSquare, histogram);
+        }
+    }
+
+    /**
+     * Statistics for one spread over one window. Values are spreads, just like Spread.getIn() and Spread.getOut().
+     */
+    public static class Summary {
+        private final long count;
+        private final double mean;
+        private final double standardDeviation;
+        private final int[] histogram;
+
+        private Summary(long count, double sum, double sumSquare, int[] histogram) {
+            this.count = count;
+            this.mean = count == 0 ? 0.0 : sum / count;
+            this.standardDeviation = count == 0 ? 0.0 : Math.sqrt(Math.max(0.0, sumSquare / count - mean * mean));
+            this.histogram = histogram;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public BigDecimal getMean() {
+            return toSpread(mean);
+        }
+
+        public BigDecimal getStandardDeviation() {
+            return toSpread(standardDeviation);
+        }
+
+        /**
+         * Get a percentile, such as 50 for the median.
+         *
+         * @param percentile The percentile, from 0 to 100.
+         * @return The approximate spread at that percentile, or null if there is no data.
+         */
+        public BigDecimal getPercentile(double percentile) {
+            if (count == 0) {
+                return null;
+            }
+
+            final long rank = Math.max(1L, (long) Math.ceil(percentile / 100.0 * count));
+            long seen = 0;
+
+            for (int bin = 0; bin < BIN_COUNT; bin++) {
+                seen += histogram[bin];
+
+                if (seen >= rank) {
+                    return FixedPoint.toBigDecimal(binValue(bin));
+                }
+            }
+
+            return FixedPoint.toBigDecimal(binValue(BIN_COUNT - 1));
+        }
+
+        private static BigDecimal toSpread(double fixed) {
+            return BigDecimal.valueOf(fixed).divide(BigDecimal.valueOf(FixedPoint.ONE), FixedPoint.SCALE, RoundingMode.HALF_EVEN);
+        }
+    }
+}
@@ -3,7 +3,10 @@ package com.r307.arbitrader.service.ticker;
 import com.r307.arbitrader.service.ErrorCollectorService;
 import com.r307.arbitrader.service.ExchangeService;
 import com.r307.arbitrader.service.TickerService;
+import com.r307.arbitrader.service.cache.OrderBookCache;
 import com.r307.arbitrader.service.event.TickerEventPublisher;
+import com.r307.arbitrader.service.latency.LatencyStage;
+import com.r307.arbitrader.service.latency.LatencyTrace;
 import com.r307.arbitrader.service.model.TickerEvent;
 import info.bitrich.xchangestream.core.ProductSubscription;
 import info.bitrich.xchangestream.core.StreamingExchange;
@@ -30,13 +33,16 @@ public class StreamingTickerStrategy implements TickerStrategy {
     private final ErrorCollectorService errorCollectorService;
     private final ExchangeService exchangeService;
     private final TickerEventPublisher tickerEventPublisher;
+    private final OrderBookCache orderBookCache;
 
     public StreamingTickerStrategy(ErrorCollectorService errorCollectorService,
                                    ExchangeService exchangeService,
-                                   TickerEventPublisher tickerEventPublisher) {
+                                   TickerEventPublisher tickerEventPublisher,
+                                   OrderBookCache orderBookCache) {
         this.errorCollectorService = errorCollectorService;
         this.exchangeService = exchangeService;
         this.tickerEventPublisher = tickerEventPublisher;
+        this.orderBookCache = orderBookCache;
     }
 
     @Override
@@ -52,15 +58,31 @@ public class StreamingTickerStrategy implements TickerStrategy {
         if (!tickers.containsKey(exchange)) { // we're not receiving prices so we need to (re)connect
             ProductSubscription.ProductSubscriptionBuilder builder = ProductSubscription.create();
 
+            final boolean isStreamingOrderBook = Boolean.TRUE.equals(exchangeService.getExchangeMetadata(exchange).getStreamingOrderBook());
+
             currencyPairs.forEach(builder::addTicker);
 
+            if (isStreamingOrderBook) {
+                currencyPairs.forEach(builder::addOrderbook);
+            }
+
             // try to subscribe to the websocket
             exchange.connect(builder.build()).blockingAwait();
             subscriptions.clear(); // avoid endlessly filling this list up with dead subscriptions
             subscriptions.addAll(subscribeAll(exchange, currencyPairs, tickerService));
+
+            if (isStreamingOrderBook) {
+                subscriptions.addAll(subscribeOrderBooks(exchange, currencyPairs));
+            }
         }
     }
 
+    // once we're connected, getTickers() only checks that we still are
+    @Override
+    public int getRequestCost(List<CurrencyPair> currencyPairs) {
+        return 0;
+    }
+
     // listen to websocket messages, populate the ticker map and publish ticker events
     private List<Disposable> subscribeAll(StreamingExchange exchange, List<CurrencyPair> currencyPairs, TickerService tickerService) {
         return currencyPairs
@@ -73,6 +95,8 @@ public class StreamingTickerStrategy implements TickerStrategy {
                     .doOnNext(ticker -> log(exchange, ticker))
                     .subscribe(
                         ticker -> {
+                            final LatencyTrace latencyTrace = LatencyTrace.received(ticker);
+
                             tickers.computeIfAbsent(exchange, e -> new HashMap<>());
 
                             // don't waste time analyzing duplicate tickers
@@ -90,9 +114,10 @@ public class StreamingTickerStrategy implements TickerStrategy {
 
                             // store the ticker in the TickerService
                             tickerService.putTicker(exchange, ticker);
+                            latencyTrace.mark(LatencyStage.STORED);
 
                             // publish an event to notify that the tickers have updated
-                            tickerEventPublisher.publishTicker(new TickerEvent(ticker, exchange));
+                            tickerEventPublisher.publishTicker(new TickerEvent(ticker, exchange, latencyTrace));
                         },
                         throwable -> {
                             // collect errors quietly, but expose them in the debug log
@@ -103,6 +128,34 @@ public class StreamingTickerStrategy implements TickerStrategy {
             .collect(Collectors.toList());
     }
 
+    // listen to order book updates and keep the OrderBookCache current so we don't need REST calls to size trades
+    private List<Disposable> subscribeOrderBooks(StreamingExchange exchange, List<CurrencyPair> currencyPairs) {
+        List<Disposable> orderBookSubscriptions = new ArrayList<>();
+
+        for (CurrencyPair pair : currencyPairs) {
+            final CurrencyPair currencyPair = exchangeService.convertExchangePair(exchange, pair);
+
+            try {
+                orderBookSubscriptions.add(exchange.getStreamingMarketDataService().getOrderBook(currencyPair)
+                    .subscribe(
+                        orderBook -> orderBookCache.setStreamingOrderBook(exchange, currencyPair, orderBook),
+                        throwable -> {
+                            // collect errors quietly, but expose them in the debug log
+                            errorCollectorService.collect(exchange, throwable);
+                            LOGGER.debug("Unexpected checked exception: {}", throwable.getMessage(), throwable);
+                        }));
+            } catch (RuntimeException e) {
+                // some exchanges don't implement order book streams, so we'll keep using REST for those
+                LOGGER.warn("{} does not support streaming order books for {}, falling back to REST: {}",
+                    exchange.getExchangeSpecification().getExchangeName(),
+                    currencyPair,
+                    e.getMessage());
+            }
+        }
+
+        return orderBookSubscriptions;
+    }
+
     // debug logging whenever we get a ticker event
     private void log(StreamingExchange exchange, Ticker ticker) {
         LOGGER.debug("Received ticker: {} {} {}/{}",
@@ -0,0 +1,176 @@
+package com.r307.arbitrader.service.ticker;
+
+import org.knowm.xchange.Exchange;
+import org.knowm.xchange.exceptions.RateLimitExceededException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import si.mazi.rescu.HttpStatusIOException;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps a TokenBucket for each exchange so we poll for tickers as often as the exchange allows and no more.
+ *
+ * Each exchange starts at the rate it was configured with. If it tells us we're going too fast, we halve the rate
+ * and remember a ceiling a little below the rate that got us in trouble. After that, every request that goes through
+ * without complaint raises the rate a little, until it is back up to the ceiling. The ceiling only ever goes down,
+ * so restart the bot to forget what it has learned.
+ */
+@Component
+public class TickerRateLimiter {
+    static final double MINIMUM_RATE = 0.05; // one request every 20 seconds
+    static final double BACK_OFF_FACTOR = 0.5;
+    static final double CEILING_FACTOR = 0.9;
+    static final double RECOVERY_FACTOR = 0.05; // of the ceiling, for each request that succeeds
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TickerRateLimiter.class);
+
+    private final Map<Exchange, Limit> limits = new ConcurrentHashMap<>();
+
+    /**
+     * Set the starting rate for an exchange. Does nothing if the exchange already has a rate.
+     *
+     * @param exchange The Exchange.
+     * @param requestsPerSecond The number of requests per second the exchange allows.
+     */
+    public void register(Exchange exchange, double requestsPerSecond) {
+        limits.computeIfAbsent(exchange, e -> new Limit(Math.max(MINIMUM_RATE, requestsPerSecond)));
+    }
+
+    /**
+     * The number of requests we could make to an exchange right now.
+     *
+     * @param exchange The Exchange.
+     * @return The number of requests, which may be fractional.
+     */
+    public double getAvailable(Exchange exchange) {
+        return getLimit(exchange).bucket.getAvailable();
+    }
+
+    /**
+     * Use up some of an exchange's requests, if there are enough left.
+     *
+     * @param exchange The Exchange.
+     * @param requests The number of requests we're about to make.
+     * @return true if we can go ahead.
+     */
+    public boolean tryAcquire(Exchange exchange, double requests) {
+        return getLimit(exchange).bucket.tryAcquire(requests);
+    }
+
+    /**
+     * The rate we're currently allowing for an exchange.
+     *
+     * @param exchange The Exchange.
+     * @return The number of requests per second.
+     */
+    public double getRate(Exchange exchange) {
+        return getLimit(exchange).bucket.getRate();
+    }
+
+    /**
+     * Tell the rate limiter about an error from an exchange. If the exchange said we were making too many requests,
+     * slow down. Errors from exchanges that haven't been registered yet are ignored.
+     *
+     * @param exchange The Exchange.
+     * @param t The error.
+     */
+    public void onError(Exchange exchange, Throwable t) {
+        final Limit limit = limits.get(exchange);
+
+        if (limit != null && isRateLimited(t)) {
+            limit.backOff(exchange);
+        }
+    }
+
+    /**
+     * Tell the rate limiter that a round of requests has finished, so it can speed back up if none of them were
+     * rate limited.
+     *
+     * @param exchange The Exchange.
+     * @param startTime The System.nanoTime() when the requests started.
+     */
+    public void onComplete(Exchange exchange, long startTime) {
+        getLimit(exchange).recover(startTime);
+    }
+
+    /**
+     * Check whether an error means the exchange thinks we're making too many requests.
+     *
+     * @param t The error.
+     * @return true if the error or any of its causes is a rate limit error.
+     */
+    public static boolean isRateLimited(Throwable t) {
+        for (Throwable cause = t; cause != null; cause = cause.getCause()) {
+            if (cause instanceof RateLimitExceededException) {
+                return true;
+            }
+
+            if (cause instanceof HttpStatusIOException && ((HttpStatusIOException) cause).getHttpStatusCode() == 429) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private Limit getLimit(Exchange exchange) {
+        final Limit limit = limits.get(exchange);
+
+        if (limit == null) {
+            throw new IllegalStateException("No rate limit for " + exchange.getExchangeSpecification().getExchangeName());
+        }
+
+        return limit;
+    }
+
+    // one second's worth of requests, but always enough for at least one
+    private static double getCapacity(double rate) {
+        return Math.max(1.0, rate);
+    }
+
+    // the rate limiting state for one exchange
+    private static class Limit {
+        private final TokenBucket bucket;
+        private double ceiling; // guarded by this
+        private boolean backedOff = false; // guarded by this
+        private long lastBackOff = 0L; // guarded by this
+
+        Limit(double rate) {
+            this.bucket = new TokenBucket(rate, getCapacity(rate));
+            this.ceiling = rate;
+        }
+
+        synchronized void backOff(Exchange exchange) {
+            final double rate = bucket.getRate();
+            final double slower = Math.max(MINIMUM_RATE, rate * BACK_OFF_FACTOR);
+
+            ceiling = Math.max(MINIMUM_RATE, Math.min(ceiling, rate * CEILING_FACTOR));
+            backedOff = true;
+            lastBackOff = System.nanoTime();
+
+            bucket.setRate(slower, getCapacity(slower));
+            bucket.drain();
+
+            LOGGER.warn("{} is rate limiting us, slowing down to {} requests/second (at most {})",
+                exchange.getExchangeSpecification().getExchangeName(),
+                String.format("%.2f", slower),
+                String.format("%.2f", ceiling));
+        }
+
+        synchronized void recover(long startTime) {
+            final double rate = bucket.getRate();
+
+            // don't speed up if we were told to slow down while these requests were running
+            if ((backedOff && startTime - lastBackOff <= 0) || rate >= ceiling) {
+                return;
+            }
+
+            final double faster = Math.min(ceiling, rate + ceiling * RECOVERY_FACTOR);
+
+            bucket.setRate(faster, getCapacity(faster));
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package com.r307.arbitrader.service.ticker;
+
+import com.r307.arbitrader.FixedPoint;
+import org.knowm.xchange.Exchange;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.marketdata.Ticker;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static com.r307.arbitrader.FixedPoint.NO_VALUE;
+
+/**
+ * Stores the latest Ticker for every exchange and currency pair we trade. Each exchange/pair is assigned a dense
+ * integer ID when the store is built, and the bid, ask and timestamp for each ID are kept in primitive arrays
+ * guarded by a per-slot sequence number (a "seqlock").
+ *
+ * Writers bump the sequence to an odd number while they update a slot and back to an even number when they're
+ * done. Readers copy the values out and check that the sequence didn't change while they were reading, retrying
+ * if it did. Neither side takes a lock or allocates anything once the store has been built, which matters because
+ * this is called for every ticker we receive from every exchange.
+ *
+ * The original Ticker objects are also kept so that callers who need a full Ticker can still get one.
+ */
+public class TickerStore {
+    public static final int UNKNOWN_ID = -1;
+
+    /**
+     * A store with no IDs in it, used before the exchanges have been initialized.
+     */
+    public static final TickerStore EMPTY = new Builder().build();
+
+    private final Map<Exchange, Map<CurrencyPair, Integer>> ids;
+    private final List<Exchange> exchanges;
+    private final List<CurrencyPair> currencyPairs;
+    private final AtomicLongArray sequences;
+    private final AtomicLongArray bids;
+    private final AtomicLongArray asks;
+    private final AtomicLongArray timestamps;
+    private final AtomicReferenceArray<Ticker> tickers;
+
+    private TickerStore(Map<Exchange, Map<CurrencyPair, Integer>> ids, List<Exchange> exchanges, List<CurrencyPair> currencyPairs) {
+        int size = exchanges.size();
+
+        this.ids = ids;
+        this.exchanges = Collections.unmodifiableList(exchanges);
+        this.currencyPairs = Collections.unmodifiableList(currencyPairs);
+        this.sequences = new AtomicLongArray(size);
+        this.bids = new AtomicLongArray(size);
+        this.asks = new AtomicLongArray(size);
+        this.timestamps = new AtomicLongArray(size);
+        this.tickers = new AtomicReferenceArray<>(size);
+
+        for (int i = 0; i < size; i++) {
+            bids.set(i, NO_VALUE);
+            asks.set(i, NO_VALUE);
+            timestamps.set(i, NO_VALUE);
+        }
+    }
+
+    /**
+     * The number of IDs in this store. IDs run from zero to size() - 1.
+     *
+     * @return The number of IDs in this store.
+     */
+    public int size() {
+        return sequences.length();
+    }
+
+    /**
+     * Look up the ID for an exchange and currency pair. Both the currency pair we trade and the pair as it is
+     * named on the exchange (see ExchangeService.convertExchangePair()) map to the same ID.
+     *
+     * @param exchange The Exchange.
+     * @param currencyPair The CurrencyPair.
+     * @return The ID, or UNKNOWN_ID if this exchange and currency pair are not in the store.
+     */
+    public int getId(Exchange exchange, CurrencyPair currencyPair) {
+        Map<CurrencyPair, Integer> exchangeIds = ids.get(exchange);
+
+        if (exchangeIds == null) {
+            return UNKNOWN_ID;
+        }
+
+        Integer id = exchangeIds.get(currencyPair);
+
+        return id == null ? UNKNOWN_ID : id;
+    }
+
+    /**
+     * Get the Exchange an ID was assigned to.
+     *
+     * @param id An ID from this store.
+     * @return The Exchange for the ID.
+     */
+    public Exchange getExchange(int id) {
+        return exchanges.get(id);
+    }
+
+    /**
+     * Get the CurrencyPair an ID was assigned to. This is the pair we trade, not the pair as it is named on the
+     * exchange.
+     *
+     * @param id An ID from this store.
+     * @return The CurrencyPair for the ID.
+     */
+    public CurrencyPair getCurrencyPair(int id) {
+        return currencyPairs.get(id);
+    }
+
+    /**
+     * Store a Ticker. The Ticker is rejected if both it and the Ticker already stored have a timestamp and the
+     * stored one is not older than the new one.
+     *
+     * @param id The ID to store the Ticker under.
+     * @param ticker The Ticker.
+     * @return true if the Ticker was stored, false if it was rejected.
+     */
+    public boolean put(int id, Ticker ticker) {
+        long sequence = acquire(id);
+        boolean isAccepted = false;
+
+        try {
+            Ticker oldTicker = tickers.get(id);
+
+            if (oldTicker == null
+                || oldTicker.getTimestamp() == null
+                || ticker.getTimestamp() == null
+                || oldTicker.getTimestamp().before(ticker.getTimestamp())) {
+
+                bids.set(id, FixedPoint.toFixed(ticker.getBid()));
+                asks.set(id, FixedPoint.toFixed(ticker.getAsk()));
+                timestamps.set(id, ticker.getTimestamp() == null ? NO_VALUE : ticker.getTimestamp().getTime());
+                tickers.set(id, ticker);
+
+                isAccepted = true;
+            }
+        } finally {
+            // if nothing changed, put the sequence back the way it was so readers don't see a spurious update
+            sequences.set(id, isAccepted ? sequence + 2 : sequence);
+        }
+
+        return isAccepted;
+    }
+
+    /**
+     * Get the latest Ticker stored under an ID.
+     *
+     * @param id The ID.
+     * @return The latest Ticker, or null if we haven't received one yet.
+     */
+    public Ticker getTicker(int id) {
+        return tickers.get(id);
+    }
+
+    /**
+     * Get the sequence number for an ID. The sequence increases every time a new Ticker is stored, so it can be
+     * used to cheaply tell whether anything has changed.
+     *
+     * @param id The ID.
+     * @return The current sequence number.
+     */
+    public long getSequence(int id) {
+        return sequences.get(id);
+    }
+
+    /**
+     * Copy a consistent view of the bid, ask and timestamp for an ID into a Snapshot. The Snapshot can be reused
+     * between calls so that reading doesn't allocate anything.
+     *
+     * @param id The ID to read.
+     * @param snapshot The Snapshot to copy the values into.
+     * @return true if both the bid and ask are available.
+     */
+    public boolean read(int id, Snapshot snapshot) {
+        long before;
+        long bid;
+        long ask;
+        long timestamp;
+
+        do {
+            before = sequences.get(id);
+
+            bid = bids.get(id);
+            ask = asks.get(id);
+            timestamp = timestamps.get(id);
+        } while ((before & 1) != 0 || sequences.get(id) != before); // a writer was busy, so try again
+
+        snapshot.sequence = before;
+        snapshot.bid = bid;
+        snapshot.ask = ask;
+        snapshot.timestamp = timestamp;
+
+        return snapshot.isValid();
+    }
+
+    // wait for any other writer to finish, then mark the slot as being written
+    private long acquire(int id) {
+        while (true) {
+            long sequence = sequences.get(id);
+
+            if ((sequence & 1) == 0 && sequences.compareAndSet(id, sequence, sequence + 1)) {
+                return sequence;
+            }
+
+            Thread.yield();
+        }
+    }
+
+    /**
+     * A reusable holder for the primitive values of one slot in the store. Prices are scaled longs as
+     * described in FixedPoint.
+     */
+    public static class Snapshot {
+        private long sequence;
+        private long bid = NO_VALUE;
+        private long ask = NO_VALUE;
+        private long timestamp = NO_VALUE;
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        public long getBid() {
+            return bid;
+        }
+
+        public long getAsk() {
+            return ask;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public boolean isValid() {
+            return bid != NO_VALUE && ask != NO_VALUE;
+        }
+    }
+
+    /**
+     * Assigns IDs to exchanges and currency pairs, then builds a TickerStore with room for all of them.
+     */
+    public static class Builder {
+        private final Map<Exchange, Map<CurrencyPair, Integer>> ids = new HashMap<>();
+        private final List<Exchange> exchanges = new ArrayList<>();
+        private final List<CurrencyPair> currencyPairs = new ArrayList<>();
+
+        /**
+         * Add an exchange and currency pair to the store. Adding the same combination twice is harmless.
+         *
+         * @param exchange The Exchange.
+         * @param currencyPair The CurrencyPair we trade.
+         * @param exchangeCurrencyPair The CurrencyPair as it is named on the exchange.
+         * @return The ID assigned to this exchange and currency pair.
+         */
+        public int add(Exchange exchange, CurrencyPair currencyPair, CurrencyPair exchangeCurrencyPair) {
+            Map<CurrencyPair, Integer> exchangeIds = ids.computeIfAbsent(exchange, key -> new HashMap<>());
+            Integer id = exchangeIds.get(currencyPair);
+
+            if (id == null) {
+                id = exchanges.size();
+
+                exchanges.add(exchange);
+                currencyPairs.add(currencyPair);
+                exchangeIds.put(currencyPair, id);
+            }
+
+            exchangeIds.putIfAbsent(exchangeCurrencyPair, id);
+
+            return id;
+        }
+
+        public TickerStore build() {
+            Map<Exchange, Map<CurrencyPair, Integer>> copy = new HashMap<>();
+
+            ids.forEach((exchange, exchangeIds) -> copy.put(exchange, new HashMap<>(exchangeIds)));
+
+            return new TickerStore(copy, new ArrayList<>(exchanges), new ArrayList<>(currencyPairs));
+        }
+    }
+}
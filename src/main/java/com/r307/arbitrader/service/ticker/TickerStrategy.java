@@ -22,4 +22,15 @@ public interface TickerStrategy {
      * @param currencyPairs The CurrencyPairs to get Tickers for.
      */
     void getTickers(Exchange exchange, List<CurrencyPair> currencyPairs, TickerService tickerService);
+
+    /**
+     * The number of API requests getTickers() makes for a list of currency pairs, so we know how much of the
+     * exchange's rate limit it will use.
+     *
+     * @param currencyPairs The CurrencyPairs we would get Tickers for.
+     * @return The number of requests.
+     */
+    default int getRequestCost(List<CurrencyPair> currencyPairs) {
+        return 1;
+    }
 }
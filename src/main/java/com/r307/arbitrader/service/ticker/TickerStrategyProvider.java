@@ -3,6 +3,7 @@ package com.r307.arbitrader.service.ticker;
 import com.r307.arbitrader.config.NotificationConfiguration;
 import com.r307.arbitrader.service.ErrorCollectorService;
 import com.r307.arbitrader.service.ExchangeService;
+import com.r307.arbitrader.service.cache.OrderBookCache;
 import com.r307.arbitrader.service.event.TickerEventPublisher;
 import org.springframework.stereotype.Component;
 
@@ -18,15 +19,21 @@ public class TickerStrategyProvider {
     private final ErrorCollectorService errorCollectorService;
     private final TickerEventPublisher tickerEventPublisher;
     private final NotificationConfiguration notificationConfiguration;
+    private final OrderBookCache orderBookCache;
+    private final TickerRateLimiter tickerRateLimiter;
 
     @Inject
     public TickerStrategyProvider(ErrorCollectorService errorCollectorService,
                                   TickerEventPublisher tickerEventPublisher,
-                                  NotificationConfiguration notificationConfiguration) {
+                                  NotificationConfiguration notificationConfiguration,
+                                  OrderBookCache orderBookCache,
+                                  TickerRateLimiter tickerRateLimiter) {
 
         this.errorCollectorService = errorCollectorService;
         this.tickerEventPublisher = tickerEventPublisher;
         this.notificationConfiguration = notificationConfiguration;
+        this.orderBookCache = orderBookCache;
+        this.tickerRateLimiter = tickerRateLimiter;
     }
 
     /**
@@ -36,7 +43,7 @@ public class TickerStrategyProvider {
      * @return A StreamingTickerStrategy.
      */
     public TickerStrategy getStreamingTickerStrategy(ExchangeService exchangeService) {
-        return new StreamingTickerStrategy(errorCollectorService, exchangeService, tickerEventPublisher);
+        return new StreamingTickerStrategy(errorCollectorService, exchangeService, tickerEventPublisher, orderBookCache);
     }
 
     /**
@@ -46,7 +53,7 @@ public class TickerStrategyProvider {
      * @return A ParallelTickerStrategy.
      */
     public TickerStrategy getParallelTickerStrategy(ExchangeService exchangeService) {
-        return new ParallelTickerStrategy(notificationConfiguration, errorCollectorService, exchangeService, tickerEventPublisher);
+        return new ParallelTickerStrategy(notificationConfiguration, errorCollectorService, exchangeService, tickerEventPublisher, tickerRateLimiter);
     }
 
     /**
@@ -56,6 +63,6 @@ public class TickerStrategyProvider {
      * @return A SingleCallTickerStrategy.
      */
     public TickerStrategy getSingleCallTickerStrategy(ExchangeService exchangeService) {
-        return new SingleCallTickerStrategy(notificationConfiguration, errorCollectorService, exchangeService, tickerEventPublisher);
+        return new SingleCallTickerStrategy(notificationConfiguration, errorCollectorService, exchangeService, tickerEventPublisher, tickerRateLimiter);
     }
 }
@@ -0,0 +1,100 @@
+package com.r307.arbitrader.service.ticker;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * A token bucket for rate limiting. Tokens drip into the bucket at a steady rate until it is full, and every request
+ * takes some out. A full bucket allows a short burst, but over time the requests can never go faster than the rate.
+ */
+public class TokenBucket {
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final LongSupplier nanoTime;
+    private double rate; // tokens per second
+    private double capacity;
+    private double tokens;
+    private long lastRefill;
+
+    /**
+     * Create a full bucket.
+     *
+     * @param rate How many tokens are added per second.
+     * @param capacity The most tokens the bucket can hold.
+     */
+    public TokenBucket(double rate, double capacity) {
+        this(rate, capacity, System::nanoTime);
+    }
+
+    TokenBucket(double rate, double capacity, LongSupplier nanoTime) {
+        this.nanoTime = nanoTime;
+        this.rate = rate;
+        this.capacity = capacity;
+        this.tokens = capacity;
+        this.lastRefill = nanoTime.getAsLong();
+    }
+
+    /**
+     * The number of tokens in the bucket right now.
+     *
+     * @return The number of tokens, which may be fractional.
+     */
+    public synchronized double getAvailable() {
+        refill();
+
+        return tokens;
+    }
+
+    /**
+     * Take tokens out of the bucket if there are enough of them.
+     *
+     * @param count The number of tokens to take.
+     * @return true if the tokens were taken.
+     */
+    public synchronized boolean tryAcquire(double count) {
+        refill();
+
+        if (tokens < count) {
+            return false;
+        }
+
+        tokens -= count;
+
+        return true;
+    }
+
+    /**
+     * Throw away all the tokens, so nothing can be acquired until the bucket refills.
+     */
+    public synchronized void drain() {
+        refill();
+
+        tokens = 0;
+    }
+
+    public synchronized double getRate() {
+        return rate;
+    }
+
+    /**
+     * Change the rate. Tokens that were already added at the old rate are kept.
+     *
+     * @param rate The new number of tokens per second.
+     * @param capacity The new capacity.
+     */
+    public synchronized void setRate(double rate, double capacity) {
+        refill();
+
+        this.rate = rate;
+        this.capacity = capacity;
+        this.tokens = Math.min(tokens, capacity);
+    }
+
+    // add the tokens that have dripped in since the last time we looked
+    private void refill() {
+        final long now = nanoTime.getAsLong();
+
+        tokens = Math.min(capacity, tokens + (now - lastRefill) / NANOS_PER_SECOND * rate);
+        lastRefill = now;
+    }
+}
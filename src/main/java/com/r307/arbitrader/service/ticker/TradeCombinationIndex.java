@@ -0,0 +1,163 @@
+package com.r307.arbitrader.service.ticker;
+
+import com.r307.arbitrader.service.model.TradeCombination;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * An immutable index from a ticker ID in a TickerStore to the TradeCombinations that use that ticker. When a new
+ * ticker arrives we only need to analyze the combinations it affects, and looking them up here doesn't copy,
+ * filter or allocate anything.
+ *
+ * Each TradeCombination is also given a dense integer combination ID, so per-combination data can be kept in
+ * primitive arrays instead of maps.
+ */
+public class TradeCombinationIndex {
+    /**
+     * An index with nothing in it, used before the exchanges have been initialized.
+     */
+    public static final TradeCombinationIndex EMPTY = new TradeCombinationIndex(TickerStore.EMPTY, new ArrayList<>());
+
+    private final TradeCombination[][] combinations;
+    private final TradeCombination[] combinationsById;
+    private final Map<TradeCombination, Integer> identityIds = new IdentityHashMap<>();
+    private final Map<TradeCombination, Integer> ids = new HashMap<>();
+
+    /**
+     * Build an index for a list of TradeCombinations.
+     *
+     * @param tickerStore The TickerStore that assigned the ticker IDs.
+     * @param tradeCombinations All the TradeCombinations.
+     */
+    public TradeCombinationIndex(TickerStore tickerStore, List<TradeCombination> tradeCombinations) {
+        List<List<TradeCombination>> byTickerId = new ArrayList<>(tickerStore.size());
+
+        for (int i = 0; i < tickerStore.size(); i++) {
+            byTickerId.add(new ArrayList<>());
+        }
+
+        tradeCombinations.forEach(tradeCombination -> {
+            int longId = tickerStore.getId(tradeCombination.getLongExchange(), tradeCombination.getCurrencyPair());
+            int shortId = tickerStore.getId(tradeCombination.getShortExchange(), tradeCombination.getCurrencyPair());
+
+            if (longId != TickerStore.UNKNOWN_ID) {
+                byTickerId.get(longId).add(tradeCombination);
+            }
+
+            if (shortId != TickerStore.UNKNOWN_ID && shortId != longId) {
+                byTickerId.get(shortId).add(tradeCombination);
+            }
+        });
+
+        tradeCombinations.forEach(tradeCombination -> {
+            if (!ids.containsKey(tradeCombination)) {
+                ids.put(tradeCombination, ids.size());
+            }
+
+            identityIds.put(tradeCombination, ids.get(tradeCombination));
+        });
+
+        combinationsById = new TradeCombination[ids.size()];
+        ids.forEach((tradeCombination, id) -> combinationsById[id] = tradeCombination);
+
+        combinations = new TradeCombination[byTickerId.size()][];
+
+        for (int i = 0; i < combinations.length; i++) {
+            combinations[i] = byTickerId.get(i).toArray(new TradeCombination[0]);
+        }
+    }
+
+    /**
+     * How many TradeCombinations use a ticker?
+     *
+     * @param tickerId A ticker ID.
+     * @return The number of TradeCombinations that use the ticker, or zero if the ID is unknown.
+     */
+    public int size(int tickerId) {
+        if (tickerId < 0 || tickerId >= combinations.length) {
+            return 0;
+        }
+
+        return combinations[tickerId].length;
+    }
+
+    /**
+     * Get one of the TradeCombinations that use a ticker.
+     *
+     * @param tickerId A ticker ID.
+     * @param n Which combination to get, from zero to size(tickerId) - 1.
+     * @return The TradeCombination.
+     */
+    public TradeCombination get(int tickerId, int n) {
+        return combinations[tickerId][n];
+    }
+
+    /**
+     * Pick a random place to start walking the TradeCombinations for a ticker. If everything is always evaluated
+     * in the same order, earlier exchange/pair combos have a higher chance of executing trades than ones at the
+     * end of the list. Starting at a random offset and wrapping around gives every combination the same chance
+     * without having to shuffle anything.
+     *
+     * @param tickerId A ticker ID.
+     * @return An offset from zero to size(tickerId) - 1, or zero if there are no combinations.
+     */
+    public int randomOffset(int tickerId) {
+        return randomOffset(tickerId, ThreadLocalRandom.current());
+    }
+
+    /**
+     * Pick a place to start walking the TradeCombinations for a ticker using a Random we supply, so that a replay
+     * can use a seeded one and pick the same offsets every time.
+     *
+     * @param tickerId A ticker ID.
+     * @param random The Random to pick the offset with.
+     * @return An offset from zero to size(tickerId) - 1, or zero if there are no combinations.
+     */
+    public int randomOffset(int tickerId, Random random) {
+        int size = size(tickerId);
+
+        return size <= 1 ? 0 : random.nextInt(size);
+    }
+
+    /**
+     * The number of distinct TradeCombinations in the index. Combination IDs run from zero to this number - 1.
+     *
+     * @return The number of TradeCombinations.
+     */
+    public int getCombinationCount() {
+        return combinationsById.length;
+    }
+
+    /**
+     * Look up the combination ID for a TradeCombination. Looking up the same instance that was indexed doesn't
+     * compute any hash codes, so it's cheap enough to do for every ticker.
+     *
+     * @param tradeCombination A TradeCombination.
+     * @return The combination ID, or UNKNOWN_ID if the TradeCombination isn't in the index.
+     */
+    public int getCombinationId(TradeCombination tradeCombination) {
+        Integer id = identityIds.get(tradeCombination);
+
+        if (id == null) {
+            id = ids.get(tradeCombination);
+        }
+
+        return id == null ? TickerStore.UNKNOWN_ID : id;
+    }
+
+    /**
+     * Get the TradeCombination for a combination ID.
+     *
+     * @param combinationId A combination ID.
+     * @return The TradeCombination.
+     */
+    public TradeCombination getCombination(int combinationId) {
+        return combinationsById[combinationId];
+    }
+}
@@ -0,0 +1,185 @@
+package com.r307.arbitrader.service.ticker;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The highest and lowest spread in and spread out we've seen for each TradeCombination, kept as scaled longs (see
+ * FixedPoint) in primitive arrays indexed by combination ID.
+ *
+ * Spreads are published from several threads at once, so each mark is updated with a compare-and-set loop instead
+ * of a lock. Once the marks have settled down almost every update is just a read and a comparison, because the new
+ * spread isn't a record.
+ */
+public class WaterMarks {
+    /**
+     * update() sets this bit if the spread in was a new record high.
+     */
+    public static final int RECORD_HIGH_IN = 1;
+
+    /**
+     * update() sets this bit if the spread out was a new record low.
+     */
+    public static final int RECORD_LOW_OUT = 2;
+
+    private static final int SNAPSHOT_ATTEMPTS = 10;
+
+    private final TradeCombinationIndex tradeCombinationIndex;
+    private final AtomicLongArray minIn;
+    private final AtomicLongArray maxIn;
+    private final AtomicLongArray minOut;
+    private final AtomicLongArray maxOut;
+    private final AtomicLong version = new AtomicLong();
+
+    /**
+     * Create empty water marks for every TradeCombination in an index.
+     *
+     * @param tradeCombinationIndex The TradeCombinationIndex that assigned the combination IDs.
+     */
+    public WaterMarks(TradeCombinationIndex tradeCombinationIndex) {
+        int size = tradeCombinationIndex.getCombinationCount();
+
+        this.tradeCombinationIndex = tradeCombinationIndex;
+        this.minIn = new AtomicLongArray(size);
+        this.maxIn = new AtomicLongArray(size);
+        this.minOut = new AtomicLongArray(size);
+        this.maxOut = new AtomicLongArray(size);
+
+        for (int i = 0; i < size; i++) {
+            minIn.set(i, Long.MAX_VALUE);
+            maxIn.set(i, Long.MIN_VALUE);
+            minOut.set(i, Long.MAX_VALUE);
+            maxOut.set(i, Long.MIN_VALUE);
+        }
+    }
+
+    public TradeCombinationIndex getTradeCombinationIndex() {
+        return tradeCombinationIndex;
+    }
+
+    /**
+     * Record a new spread in and spread out for a TradeCombination.
+     *
+     * @param combinationId The combination ID.
+     * @param in The spread in as a scaled long.
+     * @param out The spread out as a scaled long.
+     * @return RECORD_HIGH_IN and/or RECORD_LOW_OUT if either spread was a new record, or zero.
+     */
+    public int update(int combinationId, long in, long out) {
+        boolean isMinIn = updateMin(minIn, combinationId, in);
+        boolean isMaxIn = updateMax(maxIn, combinationId, in);
+        boolean isMinOut = updateMin(minOut, combinationId, out);
+        boolean isMaxOut = updateMax(maxOut, combinationId, out);
+
+        if (isMinIn || isMaxIn || isMinOut || isMaxOut) {
+            version.incrementAndGet(); // only when something changed, so the common case doesn't contend on this
+        }
+
+        return (isMaxIn ? RECORD_HIGH_IN : 0) | (isMinOut ? RECORD_LOW_OUT : 0);
+    }
+
+    /**
+     * Copy all the water marks at once. If a mark changes while we're copying we start over, so the copy reflects a
+     * single point in time unless the marks are changing so fast that we give up after a few attempts.
+     *
+     * @return A Snapshot of the water marks.
+     */
+    public Snapshot snapshot() {
+        int size = tradeCombinationIndex.getCombinationCount();
+        Snapshot snapshot = new Snapshot(size);
+
+        for (int attempt = 0; attempt < SNAPSHOT_ATTEMPTS; attempt++) {
+            long before = version.get();
+
+            for (int i = 0; i < size; i++) {
+                snapshot.minIn[i] = minIn.get(i);
+                snapshot.maxIn[i] = maxIn.get(i);
+                snapshot.minOut[i] = minOut.get(i);
+                snapshot.maxOut[i] = maxOut.get(i);
+            }
+
+            if (version.get() == before) {
+                break;
+            }
+        }
+
+        return snapshot;
+    }
+
+    // lower a mark if the value is below it
+    private static boolean updateMin(AtomicLongArray marks, int id, long value) {
+        long current;
+
+        do {
+            current = marks.get(id);
+
+            if (value >= current) {
+                return false;
+            }
+        } while (!marks.compareAndSet(id, current, value));
+
+        return true;
+    }
+
+    // raise a mark if the value is above it
+    private static boolean updateMax(AtomicLongArray marks, int id, long value) {
+        long current;
+
+        do {
+            current = marks.get(id);
+
+            if (value <= current) {
+                return false;
+            }
+        } while (!marks.compareAndSet(id, current, value));
+
+        return true;
+    }
+
+    /**
+     * A copy of the water marks taken at one point in time.
+     */
+    public static class Snapshot {
+        private final long[] minIn;
+        private final long[] maxIn;
+        private final long[] minOut;
+        private final long[] maxOut;
+
+        private Snapshot(int size) {
+            minIn = new long[size];
+            maxIn = new long[size];
+            minOut = new long[size];
+            maxOut = new long[size];
+        }
+
+        public int size() {
+            return minIn.length;
+        }
+
+        /**
+         * Has a spread been recorded for a TradeCombination?
+         *
+         * @param combinationId The combination ID.
+         * @return true if any spreads have been recorded.
+         */
+        public boolean isPresent(int combinationId) {
+            return minIn[combinationId] != Long.MAX_VALUE;
+        }
+
+        public long getMinIn(int combinationId) {
+            return minIn[combinationId];
+        }
+
+        public long getMaxIn(int combinationId) {
+            return maxIn[combinationId];
+        }
+
+        public long getMinOut(int combinationId) {
+            return minOut[combinationId];
+        }
+
+        public long getMaxOut(int combinationId) {
+            return maxOut[combinationId];
+        }
+    }
+}
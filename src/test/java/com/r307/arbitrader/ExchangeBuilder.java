@@ -42,6 +42,7 @@ import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
 
 public class ExchangeBuilder {
     private String name;
@@ -58,6 +59,7 @@ public class ExchangeBuilder {
     private List<Ticker> tickers = new ArrayList<>();
     private List<CurrencyPair> tradingPairs = new ArrayList<>();
     private Boolean isMarginSupported = false;
+    private boolean isStubOnly = false;
 
     public ExchangeBuilder(String name, CurrencyPair currencyPair) {
         this.name = name;
@@ -70,6 +72,13 @@ public class ExchangeBuilder {
         return this;
     }
 
+    // benchmarks call the mocks millions of times, so don't let Mockito remember every call
+    public ExchangeBuilder withStubOnly() {
+        this.isStubOnly = true;
+
+        return this;
+    }
+
     public ExchangeBuilder withOrderBook(int bids, int asks) {
         this.bids = bids;
         this.asks = asks;
@@ -181,10 +190,10 @@ public class ExchangeBuilder {
     }
 
     public Exchange build() throws IOException {
-        Exchange exchange = mock(Exchange.class);
-        ExchangeSpecification specification = mock(ExchangeSpecification.class);
+        Exchange exchange = buildMock(Exchange.class);
+        ExchangeSpecification specification = buildMock(ExchangeSpecification.class);
         ExchangeConfiguration metadata = new ExchangeConfiguration();
-        MarketDataService marketDataService = mock(MarketDataService.class);
+        MarketDataService marketDataService = buildMock(MarketDataService.class);
 
         metadata.setHomeCurrency(homeCurrency);
         metadata.setTradingPairs(tradingPairs);
@@ -219,8 +228,8 @@ public class ExchangeBuilder {
         if (bids != null || asks != null) {
             OrderBook orderBook = new OrderBook(
                 new Date(),
-                generateOrders(currencyPair, Order.OrderType.ASK),
-                generateOrders(currencyPair, Order.OrderType.BID)
+                generateOrders(currencyPair, Order.OrderType.ASK, asks == null ? 0 : asks),
+                generateOrders(currencyPair, Order.OrderType.BID, bids == null ? 0 : bids)
             );
 
             when(marketDataService.getOrderBook(eq(currencyPair))).thenReturn(orderBook);
@@ -250,10 +259,18 @@ public class ExchangeBuilder {
         return exchange;
     }
 
+    private <T> T buildMock(Class<T> type) {
+        return isStubOnly ? mock(type, withSettings().stubOnly()) : mock(type);
+    }
+
     public static List<LimitOrder> generateOrders(CurrencyPair currencyPair, Order.OrderType type) {
+        return generateOrders(currencyPair, type, 100);
+    }
+
+    public static List<LimitOrder> generateOrders(CurrencyPair currencyPair, Order.OrderType type, int count) {
         List<LimitOrder> orders = new ArrayList<>();
 
-        for (int i = 0; i < 100; i++) {
+        for (int i = 0; i < count; i++) {
             orders.add(new LimitOrder(
                 type,
                 BigDecimal.TEN,
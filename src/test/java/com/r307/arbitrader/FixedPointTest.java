@@ -0,0 +1,97 @@
+package com.r307.arbitrader;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Random;
+
+import static com.r307.arbitrader.FixedPoint.NO_VALUE;
+import static org.junit.Assert.assertEquals;
+
+public class FixedPointTest {
+    @Test
+    public void testToFixed() {
+        assertEquals(12345678900L, FixedPoint.toFixed(new BigDecimal("123.456789")));
+        assertEquals(2L, FixedPoint.toFixed(new BigDecimal("0.000000015")));
+        assertEquals(1L, FixedPoint.toFixed(new BigDecimal("0.000000015"), RoundingMode.FLOOR));
+        assertEquals(NO_VALUE, FixedPoint.toFixed(null));
+        assertEquals(NO_VALUE, FixedPoint.toFixed(new BigDecimal("1E+20")));
+    }
+
+    @Test
+    public void testToFixedExact() {
+        assertEquals(12345678912L, FixedPoint.toFixed(new BigDecimal("123.45678912")));
+        assertEquals(-12345678912L, FixedPoint.toFixed(new BigDecimal("-123.45678912"), RoundingMode.CEILING));
+        assertEquals(6000000000000L, FixedPoint.toFixed(new BigDecimal("60000")));
+        assertEquals(100000000000L, FixedPoint.toFixed(new BigDecimal("1E+3")));
+        assertEquals(0L, FixedPoint.toFixed(BigDecimal.ZERO));
+        assertEquals(92233720368L * FixedPoint.ONE, FixedPoint.toFixed(new BigDecimal("92233720368")));
+        assertEquals(NO_VALUE, FixedPoint.toFixed(new BigDecimal("92233720369")));
+        assertEquals(NO_VALUE, FixedPoint.toFixed(new BigDecimal("-92233720369.00")));
+        assertEquals(NO_VALUE, FixedPoint.toFixed(new BigDecimal("100000000000000000000.00")));
+    }
+
+    @Test
+    public void testToBigDecimal() {
+        assertEquals(new BigDecimal("123.45678900"), FixedPoint.toBigDecimal(12345678900L));
+        assertEquals(null, FixedPoint.toBigDecimal(NO_VALUE));
+    }
+
+    @Test
+    public void testSpread() {
+        assertSpread("100.00", "101.00");
+        assertSpread("101.00", "100.00");
+        assertSpread("100.00", "100.00");
+        assertSpread("3.00", "1.00");
+        assertSpread("0.00000003", "0.00000001");
+        assertSpread("2.00000000", "2.00000001"); // 0.5e-8, rounds down to even
+        assertSpread("2.00000000", "2.00000003"); // 1.5e-8, rounds up to even
+        assertSpread("2.00000000", "1.99999999"); // -0.5e-8, rounds to even
+        assertSpread("3.00000000", "3.00000002"); // 0.666e-8, rounds away from zero
+    }
+
+    @Test
+    public void testSpreadRandom() {
+        Random random = new Random(1337);
+
+        for (int i = 0; i < 10000; i++) {
+            BigDecimal longPrice = BigDecimal.valueOf(random.nextInt(100_000_000) + 1, random.nextInt(7) + 2);
+            BigDecimal shortPrice = longPrice.multiply(BigDecimal.valueOf(random.nextInt(2000) + 1, 3));
+
+            assertSpread(longPrice, shortPrice);
+        }
+    }
+
+    @Test
+    public void testSpreadInvalid() {
+        assertEquals(NO_VALUE, FixedPoint.spread(NO_VALUE, FixedPoint.ONE));
+        assertEquals(NO_VALUE, FixedPoint.spread(FixedPoint.ONE, NO_VALUE));
+        assertEquals(NO_VALUE, FixedPoint.spread(0L, FixedPoint.ONE));
+        assertEquals(NO_VALUE, FixedPoint.spread(1L, FixedPoint.ONE * 1_000_000L));
+        assertEquals(NO_VALUE, FixedPoint.spread(Long.MAX_VALUE, FixedPoint.ONE));
+    }
+
+    @Test
+    public void testSpreadLargeDifference() {
+        // the difference times ONE doesn't fit in a long, but the spread does
+        assertSpread("60000.00", "61000.00");
+        assertSpread("9000000.00", "1.00");
+    }
+
+    private static void assertSpread(String longPrice, String shortPrice) {
+        assertSpread(new BigDecimal(longPrice), new BigDecimal(shortPrice));
+    }
+
+    // the fixed point result must be exactly what the BigDecimal math produces
+    private static void assertSpread(BigDecimal longPrice, BigDecimal shortPrice) {
+        BigDecimal scaledLongPrice = longPrice.setScale(FixedPoint.SCALE, RoundingMode.HALF_EVEN);
+        BigDecimal scaledShortPrice = shortPrice.setScale(FixedPoint.SCALE, RoundingMode.HALF_EVEN);
+        BigDecimal expected = scaledShortPrice.subtract(scaledLongPrice).divide(scaledLongPrice, RoundingMode.HALF_EVEN);
+
+        assertEquals(
+            longPrice + " / " + shortPrice,
+            expected,
+            FixedPoint.toBigDecimal(FixedPoint.spread(FixedPoint.toFixed(longPrice), FixedPoint.toFixed(shortPrice))));
+    }
+}
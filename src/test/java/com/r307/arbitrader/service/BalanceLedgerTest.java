@@ -0,0 +1,119 @@
+package com.r307.arbitrader.service;
+
+import com.r307.arbitrader.BaseTestCase;
+import com.r307.arbitrader.ExchangeBuilder;
+import org.junit.Before;
+import org.junit.Test;
+import org.knowm.xchange.Exchange;
+import org.knowm.xchange.currency.Currency;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.Order;
+import org.knowm.xchange.service.account.AccountService;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class BalanceLedgerTest extends BaseTestCase {
+    private static final BigDecimal FEE = new BigDecimal("0.01");
+
+    private Exchange exchange;
+    private BalanceLedger balanceLedger;
+
+    @Before
+    public void setUp() throws IOException {
+        exchange = new ExchangeBuilder("CrazyCoinz", CurrencyPair.BTC_USD)
+            .withBalance(Currency.USD, new BigDecimal("100.00"))
+            .withBalance(Currency.BTC, new BigDecimal("1.00000000"))
+            .build();
+
+        balanceLedger = new BalanceLedger();
+    }
+
+    @Test
+    public void testGetBalance() throws IOException {
+        assertBalance("100.00", balanceLedger.getBalance(exchange, Currency.USD));
+        assertBalance("1", balanceLedger.getBalance(exchange, Currency.BTC));
+        assertBalance("0", balanceLedger.getBalance(exchange, Currency.ETH));
+
+        // only the first lookup goes to the exchange
+        verify(exchange.getAccountService(), times(1)).getAccountInfo();
+    }
+
+    @Test
+    public void testApplyFill() {
+        // buy 0.5 BTC at 100 for 50 USD plus 0.50 in fees
+        balanceLedger.applyFill(exchange, CurrencyPair.BTC_USD, Order.OrderType.BID, new BigDecimal("0.5"), new BigDecimal("100"), FEE);
+
+        assertBalance("49.50", balanceLedger.getBalance(exchange, Currency.USD));
+        assertBalance("1.5", balanceLedger.getBalance(exchange, Currency.BTC));
+
+        // sell it again at 110 for 55 USD minus 0.55 in fees
+        balanceLedger.applyFill(exchange, CurrencyPair.BTC_USD, Order.OrderType.ASK, new BigDecimal("0.5"), new BigDecimal("110"), FEE);
+
+        assertBalance("103.95", balanceLedger.getBalance(exchange, Currency.USD));
+        assertBalance("1", balanceLedger.getBalance(exchange, Currency.BTC));
+    }
+
+    @Test
+    public void testReconcile() {
+        balanceLedger.applyFill(exchange, CurrencyPair.BTC_USD, Order.OrderType.BID, new BigDecimal("0.5"), new BigDecimal("100"), FEE);
+        balanceLedger.reconcile();
+
+        // the exchange still says 100, and the exchange wins
+        assertBalance("100.00", balanceLedger.getBalance(exchange, Currency.USD));
+        assertBalance("1", balanceLedger.getBalance(exchange, Currency.BTC));
+    }
+
+    @Test
+    public void testReconcileHeld() {
+        balanceLedger.hold(exchange);
+        balanceLedger.applyFill(exchange, CurrencyPair.BTC_USD, Order.OrderType.BID, new BigDecimal("0.5"), new BigDecimal("100"), FEE);
+        balanceLedger.reconcile(exchange);
+
+        // orders are in flight, so we trust ourselves for now
+        assertBalance("49.50", balanceLedger.getBalance(exchange, Currency.USD));
+
+        balanceLedger.release(exchange);
+        balanceLedger.reconcile(exchange);
+
+        assertBalance("100.00", balanceLedger.getBalance(exchange, Currency.USD));
+    }
+
+    @Test
+    public void testMarkDirty() throws IOException {
+        balanceLedger.hold(exchange);
+        balanceLedger.applyFill(exchange, CurrencyPair.BTC_USD, Order.OrderType.BID, new BigDecimal("0.5"), new BigDecimal("100"), FEE);
+        balanceLedger.markDirty(exchange);
+
+        // we don't know what happened to the order and can't ask yet, so there's nothing to trade with
+        assertBalance("0", balanceLedger.getBalance(exchange, Currency.USD));
+
+        balanceLedger.release(exchange);
+
+        // the next lookup asks the exchange
+        assertBalance("100.00", balanceLedger.getBalance(exchange, Currency.USD));
+        assertBalance("100.00", balanceLedger.getBalance(exchange, Currency.USD));
+        verify(exchange.getAccountService(), times(2)).getAccountInfo();
+    }
+
+    @Test
+    public void testGetBalanceException() throws IOException {
+        AccountService accountService = mock(AccountService.class);
+
+        when(accountService.getAccountInfo()).thenThrow(new IOException("Boom!"));
+        when(exchange.getAccountService()).thenReturn(accountService);
+
+        // the IOE should not propagate and blow everything up
+        assertBalance("0", balanceLedger.getBalance(exchange, Currency.USD));
+    }
+
+    private static void assertBalance(String expected, BigDecimal actual) {
+        assertEquals(0, new BigDecimal(expected).compareTo(actual));
+    }
+}
@@ -0,0 +1,144 @@
+package com.r307.arbitrader.service;
+
+import com.r307.arbitrader.BaseTestCase;
+import com.r307.arbitrader.ExchangeBuilder;
+import com.r307.arbitrader.config.TradingConfiguration;
+import com.r307.arbitrader.service.model.ActivePosition;
+import org.junit.Before;
+import org.junit.Test;
+import org.knowm.xchange.Exchange;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.mockito.Mock;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Collections;
+
+import static com.r307.arbitrader.DecimalConstants.USD_SCALE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CapitalAllocatorTest extends BaseTestCase {
+    @Mock
+    private ExchangeService exchangeService;
+
+    @Mock
+    private BalanceLedger balanceLedger;
+
+    private TradingConfiguration tradingConfiguration;
+    private CapitalAllocator capitalAllocator;
+    private Exchange longExchange;
+    private Exchange shortExchange;
+
+    @Before
+    public void setUp() throws IOException {
+        tradingConfiguration = new TradingConfiguration();
+        capitalAllocator = new CapitalAllocator(tradingConfiguration, exchangeService, balanceLedger);
+
+        longExchange = new ExchangeBuilder("Long", CurrencyPair.BTC_USD).build();
+        shortExchange = new ExchangeBuilder("Short", CurrencyPair.BTC_USD).build();
+    }
+
+    @Test
+    public void testGetMaximumExposureFixedExposure() {
+        tradingConfiguration.setFixedExposure(new BigDecimal("100.00"));
+
+        BigDecimal exposure = capitalAllocator.getMaximumExposure(longExchange, shortExchange);
+
+        assertEquals(new BigDecimal("100.00").setScale(USD_SCALE, RoundingMode.HALF_EVEN), exposure);
+    }
+
+    // should return 90% of the smallest account balance
+    @Test
+    public void testGetMaximumExposure() {
+        final BigDecimal minAccountBalance = new BigDecimal("100.00");
+        final BigDecimal tradePortion = new BigDecimal("0.9");
+        final BigDecimal expectedExposure = minAccountBalance.multiply(tradePortion)
+            .setScale(USD_SCALE, RoundingMode.HALF_EVEN);
+
+        when(balanceLedger.getBalance(any(Exchange.class), any()))
+            .thenReturn(minAccountBalance);
+
+        BigDecimal actual = capitalAllocator.getMaximumExposure(longExchange, shortExchange);
+
+        assertEquals(expectedExposure, actual);
+    }
+
+    @Test
+    public void testGetMaximumExposureEmpty() {
+        BigDecimal exposure = capitalAllocator.getMaximumExposure();
+
+        assertEquals(new BigDecimal("0.00").setScale(USD_SCALE, RoundingMode.HALF_EVEN), exposure);
+    }
+
+    // with room for two positions each one gets half of the balance
+    @Test
+    public void testGetMaximumExposureSplit() {
+        tradingConfiguration.setMaxPositions(2);
+
+        when(balanceLedger.getBalance(any(Exchange.class), any()))
+            .thenReturn(new BigDecimal("100.00"));
+
+        assertEquals(new BigDecimal("45.00"), capitalAllocator.getMaximumExposure(longExchange, shortExchange));
+    }
+
+    @Test
+    public void testReserveAndRelease() {
+        tradingConfiguration.setMaxPositions(2);
+
+        when(balanceLedger.getBalance(any(Exchange.class), any()))
+            .thenReturn(new BigDecimal("100.00"));
+
+        capitalAllocator.getMaximumExposure(longExchange, shortExchange);
+
+        ActivePosition position = buildPosition(CurrencyPair.BTC_USD, new BigDecimal("60.00"));
+
+        assertTrue(capitalAllocator.reserve(position));
+
+        // 40.00 is left for the last position, and we keep using the same capital while money is reserved
+        assertEquals(new BigDecimal("36.00"), capitalAllocator.getMaximumExposure(longExchange, shortExchange));
+        verify(balanceLedger, times(2)).getBalance(any(Exchange.class), any());
+
+        // there isn't room for another 60.00
+        assertFalse(capitalAllocator.reserve(buildPosition(CurrencyPair.ETH_USD, new BigDecimal("60.00"))));
+
+        capitalAllocator.release(position);
+
+        assertEquals(new BigDecimal("45.00"), capitalAllocator.getMaximumExposure(longExchange, shortExchange));
+    }
+
+    @Test
+    public void testFixedExposureWithReservations() {
+        tradingConfiguration.setMaxPositions(2);
+        tradingConfiguration.setFixedExposure(new BigDecimal("50.00"));
+
+        when(balanceLedger.getBalance(any(Exchange.class), any()))
+            .thenReturn(new BigDecimal("80.00"));
+
+        capitalAllocator.setReservations(Collections.singletonList(buildPosition(CurrencyPair.BTC_USD, new BigDecimal("50.00"))));
+
+        // only 30.00 is left
+        assertEquals(new BigDecimal("30.00"), capitalAllocator.getMaximumExposure(longExchange, shortExchange));
+    }
+
+    // a position with one unit of currency at the given price on each exchange
+    private static ActivePosition buildPosition(CurrencyPair currencyPair, BigDecimal cost) {
+        ActivePosition position = new ActivePosition();
+
+        position.setCurrencyPair(currencyPair);
+        position.getLongTrade().setExchange("Long");
+        position.getLongTrade().setVolume(BigDecimal.ONE);
+        position.getLongTrade().setEntry(cost);
+        position.getShortTrade().setExchange("Short");
+        position.getShortTrade().setVolume(BigDecimal.ONE);
+        position.getShortTrade().setEntry(cost);
+
+        return position;
+    }
+}
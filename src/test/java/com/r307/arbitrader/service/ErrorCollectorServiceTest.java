@@ -1,6 +1,8 @@
 package com.r307.arbitrader.service;
 
 import com.r307.arbitrader.ExchangeBuilder;
+import com.r307.arbitrader.service.metrics.MetricsService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.Before;
 import org.junit.Test;
 import org.knowm.xchange.Exchange;
@@ -18,6 +20,8 @@ public class ErrorCollectorServiceTest {
 
     private Exchange exchange;
 
+    private SimpleMeterRegistry meterRegistry;
+
     private ErrorCollectorService errorCollectorService;
 
     @Before
@@ -27,7 +31,8 @@ public class ErrorCollectorServiceTest {
         exchange = new ExchangeBuilder(EXCHANGE_NAME, CurrencyPair.BTC_USD)
             .build();
 
-        errorCollectorService = new ErrorCollectorService();
+        meterRegistry = new SimpleMeterRegistry();
+        errorCollectorService = new ErrorCollectorService(new MetricsService(meterRegistry));
     }
 
     @Test
@@ -53,6 +58,20 @@ public class ErrorCollectorServiceTest {
         assertEquals(EXCHANGE_NAME + ": NullPointerException Boom! x 2", report.get(1));
     }
 
+    @Test
+    public void testCollectCountsMetric() {
+        errorCollectorService.collect(exchange, new NullPointerException("Boom!"));
+        errorCollectorService.collect(exchange, new NullPointerException("Bang!"));
+        errorCollectorService.clear();
+
+        // the metric counts by type and isn't cleared with the summary
+        assertEquals(2.0, meterRegistry.get("arbitrader.errors")
+            .tag("exchange", EXCHANGE_NAME)
+            .tag("type", "NullPointerException")
+            .counter()
+            .count(), 0.0);
+    }
+
     @Test
     public void testEmptyReport() {
         List<String> report = errorCollectorService.report();
@@ -9,13 +9,27 @@ import org.junit.Test;
 import org.knowm.xchange.Exchange;
 import org.knowm.xchange.currency.Currency;
 import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.account.Fee;
+import org.knowm.xchange.service.account.AccountService;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.function.Supplier;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 public class ExchangeServiceTest {
     private Exchange exchange;
@@ -76,4 +90,30 @@ public class ExchangeServiceTest {
         assertEquals(CurrencyPair.DOGE_BTC, converted);
         assertEquals(currencyPair, converted);
     }
+
+    // a refresh that can't reach the exchange has to fail, or the cache would swap a good fee for a fallback
+    @Test(expected = UncheckedIOException.class)
+    public void testFeeRefreshFailure() throws IOException {
+        AccountService accountService = mock(AccountService.class);
+
+        when(accountService.getDynamicTradingFees())
+            .thenReturn(Collections.singletonMap(CurrencyPair.BTC_USD, new Fee(new BigDecimal("0.0010"), new BigDecimal("0.0020"))))
+            .thenThrow(new IOException("Boom!"));
+        when(exchange.getAccountService()).thenReturn(accountService);
+        when(exchangeFeeCache.getCachedFee(any(), any())).thenReturn(Optional.empty());
+
+        assertEquals(new BigDecimal("0.0010"), exchangeService.getExchangeFee(exchange, CurrencyPair.BTC_USD, true));
+
+        getFeeLoader().get();
+    }
+
+    // grab the loader the fee was cached with
+    @SuppressWarnings("unchecked")
+    private Supplier<BigDecimal> getFeeLoader() {
+        ArgumentCaptor<Supplier<BigDecimal>> captor = ArgumentCaptor.forClass(Supplier.class);
+
+        verify(exchangeFeeCache).setCachedFee(eq(exchange), eq(CurrencyPair.BTC_USD), any(BigDecimal.class), any(Duration.class), captor.capture());
+
+        return captor.getValue();
+    }
 }
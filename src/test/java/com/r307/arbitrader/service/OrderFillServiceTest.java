@@ -0,0 +1,137 @@
+package com.r307.arbitrader.service;
+
+import com.r307.arbitrader.BaseTestCase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.knowm.xchange.Exchange;
+import org.knowm.xchange.ExchangeSpecification;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.Order;
+import org.knowm.xchange.dto.trade.LimitOrder;
+import org.knowm.xchange.dto.trade.OpenOrders;
+import org.knowm.xchange.exceptions.NotAvailableFromExchangeException;
+import org.knowm.xchange.service.trade.TradeService;
+import org.mockito.Mock;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class OrderFillServiceTest extends BaseTestCase {
+    @Mock
+    private Exchange exchange;
+
+    @Mock
+    private TradeService tradeService;
+
+    private OrderFillService orderFillService;
+
+    @Before
+    public void setUp() {
+        ExchangeSpecification exchangeSpecification = new ExchangeSpecification(Exchange.class);
+
+        exchangeSpecification.setExchangeName("CrazyCoinz");
+
+        when(exchange.getExchangeSpecification()).thenReturn(exchangeSpecification);
+        when(exchange.getTradeService()).thenReturn(tradeService);
+
+        orderFillService = new OrderFillService();
+    }
+
+    @After
+    public void tearDown() {
+        orderFillService.stop();
+    }
+
+    @Test
+    public void testAwaitFill() throws Exception {
+        when(tradeService.getOpenOrders())
+            .thenReturn(new OpenOrders(Arrays.asList(buildOrder("ours"), buildOrder("theirs"))))
+            .thenReturn(new OpenOrders(Collections.singletonList(buildOrder("theirs"))));
+
+        CompletableFuture<Order> future = orderFillService.awaitFill(exchange, CurrencyPair.BTC_USD, "ours");
+
+        future.get(5, TimeUnit.SECONDS);
+
+        verify(tradeService, atLeast(2)).getOpenOrders();
+    }
+
+    @Test
+    public void testAwaitFillReturnsOrder() throws Exception {
+        LimitOrder filled = buildOrder("ours");
+
+        filled.setOrderStatus(Order.OrderStatus.FILLED);
+        filled.setCumulativeAmount(BigDecimal.ONE);
+        filled.setAveragePrice(BigDecimal.TEN);
+
+        when(tradeService.getOpenOrders()).thenReturn(new OpenOrders(Collections.emptyList()));
+        when(tradeService.getOrder("ours")).thenReturn(Collections.singletonList(filled));
+
+        Order order = orderFillService.awaitFill(exchange, CurrencyPair.BTC_USD, "ours").get(5, TimeUnit.SECONDS);
+
+        assertEquals(BigDecimal.ONE, order.getCumulativeAmount());
+        assertEquals(BigDecimal.TEN, order.getAveragePrice());
+    }
+
+    @Test
+    public void testAwaitFillUnknownOrder() throws Exception {
+        when(tradeService.getOpenOrders()).thenReturn(new OpenOrders(Collections.emptyList()));
+        when(tradeService.getOrder("ours")).thenThrow(new NotAvailableFromExchangeException());
+
+        // the order is finished but we can't tell how much of it filled
+        assertNull(orderFillService.awaitFill(exchange, CurrencyPair.BTC_USD, "ours").get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testAwaitFillKeepsPollingAfterException() throws Exception {
+        when(tradeService.getOpenOrders())
+            .thenThrow(new IllegalStateException("Boom!"))
+            .thenReturn(new OpenOrders(Collections.emptyList()));
+
+        CompletableFuture<Order> future = orderFillService.awaitFill(exchange, CurrencyPair.BTC_USD, "ours");
+
+        future.get(5, TimeUnit.SECONDS);
+
+        verify(tradeService, atLeast(2)).getOpenOrders();
+    }
+
+    @Test
+    public void testAwaitFillNoOrderId() throws Exception {
+        when(tradeService.getOpenOrders())
+            .thenReturn(new OpenOrders(Collections.singletonList(buildOrder("theirs"))))
+            .thenReturn(new OpenOrders(Collections.emptyList()));
+
+        CompletableFuture<Order> future = orderFillService.awaitFill(exchange, CurrencyPair.BTC_USD, null);
+
+        future.get(5, TimeUnit.SECONDS);
+
+        assertTrue(future.isDone());
+    }
+
+    @Test
+    public void testAwaitFillStillOpen() throws Exception {
+        when(tradeService.getOpenOrders()).thenReturn(new OpenOrders(Collections.singletonList(buildOrder("ours"))));
+
+        CompletableFuture<Order> future = orderFillService.awaitFill(exchange, CurrencyPair.BTC_USD, "ours");
+
+        Thread.sleep(OrderFillService.MINIMUM_POLL_INTERVAL * 4);
+
+        assertFalse(future.isDone());
+    }
+
+    private static LimitOrder buildOrder(String id) {
+        return new LimitOrder(Order.OrderType.BID, BigDecimal.ONE, CurrencyPair.BTC_USD, id, new Date(), BigDecimal.TEN);
+    }
+}
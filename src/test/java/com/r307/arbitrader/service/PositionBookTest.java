@@ -0,0 +1,164 @@
+package com.r307.arbitrader.service;
+
+import com.r307.arbitrader.config.TradingConfiguration;
+import com.r307.arbitrader.service.model.ActivePosition;
+import org.junit.Before;
+import org.junit.Test;
+import org.knowm.xchange.currency.CurrencyPair;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PositionBookTest {
+    private TradingConfiguration tradingConfiguration;
+    private PositionBook positionBook;
+
+    @Before
+    public void setUp() {
+        tradingConfiguration = new TradingConfiguration();
+        positionBook = new PositionBook(tradingConfiguration);
+    }
+
+    @Test
+    public void testPutAndRemove() {
+        ActivePosition position = buildPosition("Long", "Short", CurrencyPair.BTC_USD);
+
+        positionBook.put(position);
+
+        assertSame(position, positionBook.get("Long", "Short", CurrencyPair.BTC_USD));
+        assertNull(positionBook.get("Short", "Long", CurrencyPair.BTC_USD));
+        assertNull(positionBook.get("Long", "Short", CurrencyPair.ETH_USD));
+        assertEquals(1, positionBook.getAll().size());
+
+        positionBook.remove(position);
+
+        assertNull(positionBook.get("Long", "Short", CurrencyPair.BTC_USD));
+        assertTrue(positionBook.isEmpty());
+    }
+
+    @Test
+    public void testMaxPositions() {
+        positionBook.put(buildPosition("Long", "Short", CurrencyPair.BTC_USD));
+
+        assertTrue(positionBook.isFull());
+        assertFalse(positionBook.reserve("Other", "Another", CurrencyPair.BTC_USD));
+
+        tradingConfiguration.setMaxPositions(2);
+
+        assertFalse(positionBook.isFull());
+        assertTrue(positionBook.reserve("Other", "Another", CurrencyPair.BTC_USD));
+    }
+
+    @Test
+    public void testReserve() {
+        tradingConfiguration.setMaxPositions(2);
+
+        // a reserved slot counts against the limit until it is released or becomes a position
+        assertTrue(positionBook.reserve("Long", "Short", CurrencyPair.BTC_USD));
+        assertFalse(positionBook.reserve("Long", "Short", CurrencyPair.BTC_USD));
+        assertTrue(positionBook.reserve("Other", "Another", CurrencyPair.BTC_USD));
+        assertTrue(positionBook.isFull());
+        assertFalse(positionBook.reserve("Third", "Fourth", CurrencyPair.BTC_USD));
+
+        positionBook.release("Other", "Another", CurrencyPair.BTC_USD);
+
+        assertFalse(positionBook.isFull());
+
+        ActivePosition position = buildPosition("Long", "Short", CurrencyPair.BTC_USD);
+
+        positionBook.put(position);
+        positionBook.release("Long", "Short", CurrencyPair.BTC_USD); // does nothing once the position is in the book
+
+        assertEquals(1, positionBook.size());
+        assertTrue(positionBook.reserve("Third", "Fourth", CurrencyPair.BTC_USD));
+        assertTrue(positionBook.isFull());
+    }
+
+    @Test
+    public void testMaxPositionsPerExchange() {
+        tradingConfiguration.setMaxPositions(3);
+        tradingConfiguration.setMaxPositionsPerExchange(1);
+
+        positionBook.put(buildPosition("Long", "Short", CurrencyPair.BTC_USD));
+
+        assertFalse(positionBook.reserve("Long", "Another", CurrencyPair.BTC_USD));
+        assertFalse(positionBook.reserve("Other", "Short", CurrencyPair.BTC_USD));
+        assertTrue(positionBook.reserve("Other", "Another", CurrencyPair.BTC_USD));
+        assertFalse(positionBook.reserve("Other", "Third", CurrencyPair.BTC_USD));
+    }
+
+    @Test
+    public void testTryLock() throws Exception {
+        assertTrue(positionBook.tryLock("Long", "Short"));
+
+        try {
+            // a trade sharing an exchange can't get in, but one on different exchanges can
+            assertFalse(CompletableFuture.supplyAsync(() -> positionBook.tryLock("Short", "Other")).get());
+            assertTrue(CompletableFuture.supplyAsync(() -> {
+                boolean isLocked = positionBook.tryLock("Other", "Another");
+
+                positionBook.unlock("Other", "Another");
+
+                return isLocked;
+            }).get());
+        } finally {
+            positionBook.unlock("Long", "Short");
+        }
+
+        assertTrue(CompletableFuture.supplyAsync(() -> {
+            boolean isLocked = positionBook.tryLock("Short", "Other");
+
+            positionBook.unlock("Short", "Other");
+
+            return isLocked;
+        }).get());
+    }
+
+    @Test
+    public void testFillWait() throws Exception {
+        ActivePosition position = buildPosition("Long", "Short", CurrencyPair.BTC_USD);
+
+        positionBook.put(position);
+
+        assertTrue(positionBook.tryLock("Long", "Short"));
+
+        positionBook.beginFillWait(position);
+
+        try {
+            // other trades can use the exchanges, but the position is off limits until its orders are done
+            assertTrue(positionBook.isAwaitingFills("Long", "Short", CurrencyPair.BTC_USD));
+            assertFalse(positionBook.isAwaitingFills("Long", "Short", CurrencyPair.ETH_USD));
+            assertTrue(CompletableFuture.supplyAsync(() -> {
+                boolean isLocked = positionBook.tryLock("Short", "Other");
+
+                positionBook.unlock("Short", "Other");
+
+                return isLocked;
+            }).get());
+        } finally {
+            positionBook.endFillWait(position);
+        }
+
+        try {
+            assertFalse(positionBook.isAwaitingFills("Long", "Short", CurrencyPair.BTC_USD));
+            assertFalse(CompletableFuture.supplyAsync(() -> positionBook.tryLock("Short", "Other")).get());
+        } finally {
+            positionBook.unlock("Long", "Short");
+        }
+    }
+
+    private static ActivePosition buildPosition(String longExchangeName, String shortExchangeName, CurrencyPair currencyPair) {
+        ActivePosition position = new ActivePosition();
+
+        position.setCurrencyPair(currencyPair);
+        position.getLongTrade().setExchange(longExchangeName);
+        position.getShortTrade().setExchange(shortExchangeName);
+
+        return position;
+    }
+}
@@ -2,16 +2,32 @@ package com.r307.arbitrader.service;
 
 import com.r307.arbitrader.BaseTestCase;
 import com.r307.arbitrader.ExchangeBuilder;
+import com.r307.arbitrader.FixedPoint;
 import com.r307.arbitrader.config.TradingConfiguration;
+import com.r307.arbitrader.service.model.FixedSpread;
 import com.r307.arbitrader.service.model.Spread;
+import com.r307.arbitrader.service.model.TradeCombination;
+import com.r307.arbitrader.service.ticker.SpreadStatistics;
+import com.r307.arbitrader.service.ticker.TickerStore;
+import com.r307.arbitrader.service.ticker.TradeCombinationIndex;
 import org.junit.Before;
 import org.junit.Test;
 import org.knowm.xchange.Exchange;
 import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.marketdata.Ticker;
 import org.mockito.Mock;
 
 import java.io.IOException;
 import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.r307.arbitrader.service.ticker.SpreadStatistics.Window.MINUTE;
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
 
 public class SpreadServiceTest extends BaseTestCase {
     private Exchange longExchange;
@@ -39,6 +55,12 @@ public class SpreadServiceTest extends BaseTestCase {
 
     @Test
     public void testSummary() {
+        TradeCombination tradeCombination = new TradeCombination(longExchange, shortExchange, CurrencyPair.BTC_USD);
+        TickerStore tickerStore = buildTickerStore(tradeCombination);
+
+        when(tickerService.getTradeCombinationIndex())
+            .thenReturn(new TradeCombinationIndex(tickerStore, Collections.singletonList(tradeCombination)));
+
         Spread spread = new Spread(
             CurrencyPair.BTC_USD,
             longExchange,
@@ -51,4 +73,114 @@ public class SpreadServiceTest extends BaseTestCase {
         spreadService.publish(spread);
         spreadService.summary();
     }
+
+    @Test
+    public void testStatisticsClock() {
+        TradeCombination tradeCombination = new TradeCombination(longExchange, shortExchange, CurrencyPair.BTC_USD);
+        TickerStore tickerStore = buildTickerStore(tradeCombination);
+        AtomicLong clock = new AtomicLong(TimeUnit.DAYS.toMillis(365));
+
+        when(tickerService.getTradeCombinationIndex())
+            .thenReturn(new TradeCombinationIndex(tickerStore, Collections.singletonList(tradeCombination)));
+
+        spreadService = new SpreadService(tradingConfiguration, tickerService, clock::get);
+
+        spreadService.publish(new Spread(
+            CurrencyPair.BTC_USD,
+            longExchange,
+            shortExchange,
+            null,
+            null,
+            BigDecimal.valueOf(-0.005),
+            BigDecimal.valueOf(0.005)));
+
+        assertEquals(1, spreadService.getSpreadStatistics().getSpreadIn(0, MINUTE).getCount());
+
+        clock.addAndGet(TimeUnit.MINUTES.toMillis(2));
+
+        assertEquals(0, spreadService.getSpreadStatistics().getSpreadIn(0, MINUTE).getCount());
+    }
+
+    @Test
+    public void testComputeFixedSpread() {
+        TradeCombination tradeCombination = new TradeCombination(longExchange, shortExchange, CurrencyPair.BTC_USD);
+        TickerStore tickerStore = buildTickerStore(tradeCombination);
+        Ticker longTicker = buildTicker("60000.12", "60010.34");
+        Ticker shortTicker = buildTicker("61000.56", "61020.78");
+        FixedSpread fixedSpread = new FixedSpread();
+
+        tickerStore.put(0, longTicker);
+        tickerStore.put(1, shortTicker);
+
+        when(tickerService.getTickerStore()).thenReturn(tickerStore);
+        when(tickerService.getTicker(eq(longExchange), any(CurrencyPair.class))).thenReturn(longTicker);
+        when(tickerService.getTicker(eq(shortExchange), any(CurrencyPair.class))).thenReturn(shortTicker);
+
+        assertTrue(spreadService.computeSpread(tradeCombination, fixedSpread));
+
+        Spread spread = spreadService.computeSpread(tradeCombination);
+
+        assertEquals(spread.getIn(), FixedPoint.toBigDecimal(fixedSpread.getIn()));
+        assertEquals(spread.getOut(), FixedPoint.toBigDecimal(fixedSpread.getOut()));
+    }
+
+    @Test
+    public void testComputeSpreadCountsOnce() {
+        TradeCombination tradeCombination = new TradeCombination(longExchange, shortExchange, CurrencyPair.BTC_USD);
+        TickerStore tickerStore = buildTickerStore(tradeCombination);
+        Ticker longTicker = buildTicker("60000.12", "60010.34");
+        Ticker shortTicker = buildTicker("61000.56", "61020.78");
+        FixedSpread fixedSpread = new FixedSpread();
+
+        tickerStore.put(0, longTicker);
+        tickerStore.put(1, shortTicker);
+
+        when(tickerService.getTickerStore()).thenReturn(tickerStore);
+        when(tickerService.getTradeCombinationIndex())
+            .thenReturn(new TradeCombinationIndex(tickerStore, Collections.singletonList(tradeCombination)));
+        when(tickerService.getTicker(eq(longExchange), any(CurrencyPair.class))).thenReturn(longTicker);
+        when(tickerService.getTicker(eq(shortExchange), any(CurrencyPair.class))).thenReturn(shortTicker);
+
+        // screen the spread, then build the full Spread the way the ticker listeners do
+        assertTrue(spreadService.computeSpread(tradeCombination, fixedSpread));
+        assertNotNull(spreadService.computeSpread(tradeCombination));
+        assertTrue(spreadService.readSpread(tradeCombination, fixedSpread));
+
+        SpreadStatistics spreadStatistics = spreadService.getSpreadStatistics();
+        int combinationId = spreadStatistics.getTradeCombinationIndex().getCombinationId(tradeCombination);
+
+        assertEquals(1, spreadStatistics.getSpreadIn(combinationId, SpreadStatistics.Window.MINUTE).getCount());
+        assertEquals(1, spreadService.getSpreadCount());
+    }
+
+    @Test
+    public void testComputeFixedSpreadMissingTicker() {
+        TradeCombination tradeCombination = new TradeCombination(longExchange, shortExchange, CurrencyPair.BTC_USD);
+        TickerStore tickerStore = buildTickerStore(tradeCombination);
+        FixedSpread fixedSpread = new FixedSpread();
+
+        tickerStore.put(0, buildTicker("60000.12", "60010.34"));
+
+        when(tickerService.getTickerStore()).thenReturn(tickerStore);
+
+        assertFalse(spreadService.computeSpread(tradeCombination, fixedSpread));
+        assertFalse(fixedSpread.isValid());
+    }
+
+    private static TickerStore buildTickerStore(TradeCombination tradeCombination) {
+        TickerStore.Builder builder = new TickerStore.Builder();
+
+        builder.add(tradeCombination.getLongExchange(), tradeCombination.getCurrencyPair(), tradeCombination.getCurrencyPair());
+        builder.add(tradeCombination.getShortExchange(), tradeCombination.getCurrencyPair(), tradeCombination.getCurrencyPair());
+
+        return builder.build();
+    }
+
+    private static Ticker buildTicker(String bid, String ask) {
+        return new Ticker.Builder()
+            .instrument(CurrencyPair.BTC_USD)
+            .bid(new BigDecimal(bid))
+            .ask(new BigDecimal(ask))
+            .build();
+    }
 }
@@ -0,0 +1,290 @@
+package com.r307.arbitrader.service;
+
+import com.r307.arbitrader.BaseTestCase;
+import com.r307.arbitrader.ExchangeBuilder;
+import com.r307.arbitrader.FixedPoint;
+import com.r307.arbitrader.config.ExchangeConfiguration;
+import com.r307.arbitrader.config.TradingConfiguration;
+import com.r307.arbitrader.service.model.ActivePosition;
+import com.r307.arbitrader.service.model.FixedSpread;
+import com.r307.arbitrader.service.model.TradeCombination;
+import com.r307.arbitrader.service.ticker.TickerRateLimiter;
+import com.r307.arbitrader.service.ticker.TickerStrategy;
+import com.r307.arbitrader.service.ticker.TradeCombinationIndex;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.knowm.xchange.Exchange;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.mockito.Mock;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static com.r307.arbitrader.service.TickerPoller.IDLE_INTERVAL;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class TickerPollerTest extends BaseTestCase {
+    private static final long ENTRY_SPREAD = FixedPoint.toFixed(new BigDecimal("0.01"), RoundingMode.CEILING);
+
+    @Mock
+    private ExchangeService exchangeService;
+
+    @Mock
+    private TickerService tickerService;
+
+    @Mock
+    private SpreadService spreadService;
+
+    @Mock
+    private TradingService tradingService;
+
+    @Mock
+    private TickerRateLimiter tickerRateLimiter;
+
+    @Mock
+    private TickerStrategy pollingStrategy;
+
+    @Mock
+    private TickerStrategy streamingStrategy;
+
+    @Mock
+    private TradeCombinationIndex tradeCombinationIndex;
+
+    private Exchange pollingExchange;
+    private Exchange streamingExchange;
+    private TradeCombination btcCombination;
+    private TradeCombination ethCombination;
+    private TradeCombination ltcCombination;
+    private Map<TradeCombination, Long> spreads;
+    private TickerPoller tickerPoller;
+
+    @Before
+    public void setUp() throws IOException {
+        TradingConfiguration tradingConfiguration = new TradingConfiguration();
+        ExchangeConfiguration exchangeConfiguration = new ExchangeConfiguration();
+
+        tradingConfiguration.setEntrySpread(new BigDecimal("0.01"));
+        exchangeConfiguration.setRequestsPerSecond(1.0);
+
+        pollingExchange = new ExchangeBuilder("Polling", CurrencyPair.BTC_USD)
+            .withTickerStrategy(pollingStrategy)
+            .build();
+        streamingExchange = new ExchangeBuilder("Streaming", CurrencyPair.BTC_USD)
+            .withTickerStrategy(streamingStrategy)
+            .build();
+
+        // LTC is furthest from the entry spread, then BTC, then ETH
+        btcCombination = new TradeCombination(pollingExchange, streamingExchange, CurrencyPair.BTC_USD);
+        ethCombination = new TradeCombination(pollingExchange, streamingExchange, CurrencyPair.ETH_USD);
+        ltcCombination = new TradeCombination(pollingExchange, streamingExchange, CurrencyPair.LTC_USD);
+
+        spreads = new HashMap<>();
+        spreads.put(btcCombination, FixedPoint.toFixed(new BigDecimal("0.005"), RoundingMode.HALF_EVEN));
+        spreads.put(ethCombination, FixedPoint.toFixed(new BigDecimal("0.009"), RoundingMode.HALF_EVEN));
+        spreads.put(ltcCombination, 0L);
+
+        when(pollingStrategy.getRequestCost(anyList())).thenAnswer(invocation -> invocation.<List<?>>getArgument(0).size());
+        when(streamingStrategy.getRequestCost(anyList())).thenReturn(0);
+        when(tickerService.getTradeCombinationIndex()).thenReturn(tradeCombinationIndex);
+        when(tickerService.getExchangeTradeCombinations()).thenReturn(Arrays.asList(btcCombination, ethCombination, ltcCombination));
+        when(exchangeService.getExchangeMetadata(any(Exchange.class))).thenReturn(exchangeConfiguration);
+        when(spreadService.readSpread(any(TradeCombination.class), any(FixedSpread.class))).thenAnswer(invocation -> {
+            FixedSpread fixedSpread = invocation.getArgument(1);
+
+            fixedSpread.set(spreads.get(invocation.<TradeCombination>getArgument(0)), 0L);
+
+            return true;
+        });
+        when(tickerRateLimiter.getRate(any(Exchange.class))).thenReturn(1.0);
+        when(tickerRateLimiter.tryAcquire(any(Exchange.class), anyDouble())).thenReturn(true);
+
+        tickerPoller = new TickerPoller(
+            tradingConfiguration,
+            exchangeService,
+            tickerService,
+            spreadService,
+            tradingService,
+            tickerRateLimiter);
+    }
+
+    @After
+    public void tearDown() {
+        tickerPoller.shutdown();
+    }
+
+    @Test
+    public void testTargets() {
+        List<TickerPoller.Target> targets = tickerPoller.getTargets();
+
+        assertEquals(2, targets.size());
+        assertEquals(pollingExchange, targets.get(0).getExchange());
+        assertEquals(streamingExchange, targets.get(1).getExchange());
+        assertEquals(Arrays.asList(CurrencyPair.BTC_USD, CurrencyPair.ETH_USD, CurrencyPair.LTC_USD), targets.get(0).getCurrencyPairs());
+        assertSame(targets, tickerPoller.getTargets());
+
+        verify(tickerRateLimiter).register(pollingExchange, 1.0);
+        verify(tickerRateLimiter).register(streamingExchange, 1.0);
+    }
+
+    @Test
+    public void testPrioritizeByDistance() {
+        TickerPoller.Target target = tickerPoller.getTargets().get(0);
+
+        assertEquals(
+            Arrays.asList(CurrencyPair.ETH_USD, CurrencyPair.BTC_USD, CurrencyPair.LTC_USD),
+            tickerPoller.prioritize(target, 1000L, ENTRY_SPREAD));
+    }
+
+    @Test
+    public void testPrioritizeActivePosition() {
+        TickerPoller.Target target = tickerPoller.getTargets().get(0);
+
+        when(tradingService.getActivePosition(eq(ltcCombination))).thenReturn(mock(ActivePosition.class));
+
+        assertEquals(
+            Arrays.asList(CurrencyPair.LTC_USD, CurrencyPair.ETH_USD, CurrencyPair.BTC_USD),
+            tickerPoller.prioritize(target, 1000L, ENTRY_SPREAD));
+    }
+
+    @Test
+    public void testPrioritizeMissingPrice() {
+        TickerPoller.Target target = tickerPoller.getTargets().get(0);
+
+        doReturn(false).when(spreadService).readSpread(eq(ltcCombination), any(FixedSpread.class));
+
+        assertEquals(
+            Arrays.asList(CurrencyPair.LTC_USD, CurrencyPair.ETH_USD, CurrencyPair.BTC_USD),
+            tickerPoller.prioritize(target, 1000L, ENTRY_SPREAD));
+    }
+
+    @Test
+    public void testPrioritizeOverdue() {
+        TickerPoller.Target target = tickerPoller.getTargets().get(0);
+
+        when(tickerRateLimiter.getAvailable(pollingExchange)).thenReturn(2.0);
+
+        // everything is overdue at first so the budget goes to BTC and ETH, in the order we know about them
+        tickerPoller.poll();
+
+        verify(tickerService, timeout(1000)).fetchTickers(pollingExchange, Arrays.asList(CurrencyPair.BTC_USD, CurrencyPair.ETH_USD));
+
+        // now LTC hasn't been polled for longest, so it goes ahead of pairs that are closer to the entry spread
+        assertEquals(
+            Arrays.asList(CurrencyPair.LTC_USD, CurrencyPair.ETH_USD, CurrencyPair.BTC_USD),
+            tickerPoller.prioritize(target, System.currentTimeMillis(), ENTRY_SPREAD));
+    }
+
+    @Test
+    public void testChooseFullBudget() {
+        TickerPoller.Target target = tickerPoller.getTargets().get(0);
+
+        when(tickerRateLimiter.getAvailable(pollingExchange)).thenReturn(3.0);
+
+        assertEquals(
+            Arrays.asList(CurrencyPair.BTC_USD, CurrencyPair.ETH_USD, CurrencyPair.LTC_USD),
+            tickerPoller.choose(target, 1000L, ENTRY_SPREAD));
+
+        verify(tickerRateLimiter).tryAcquire(pollingExchange, 3.0);
+    }
+
+    @Test
+    public void testChoosePartialBudget() {
+        TickerPoller.Target target = tickerPoller.getTargets().get(0);
+
+        when(tickerRateLimiter.getAvailable(pollingExchange)).thenReturn(2.5);
+
+        assertEquals(
+            Arrays.asList(CurrencyPair.ETH_USD, CurrencyPair.BTC_USD),
+            tickerPoller.choose(target, 1000L, ENTRY_SPREAD));
+
+        verify(tickerRateLimiter).tryAcquire(pollingExchange, 2.0);
+    }
+
+    @Test
+    public void testChooseNoBudget() {
+        TickerPoller.Target target = tickerPoller.getTargets().get(0);
+
+        when(tickerRateLimiter.getAvailable(pollingExchange)).thenReturn(0.5);
+
+        assertTrue(tickerPoller.choose(target, 1000L, ENTRY_SPREAD).isEmpty());
+
+        verify(tickerRateLimiter, never()).tryAcquire(any(Exchange.class), anyDouble());
+    }
+
+    @Test
+    public void testChooseRejected() {
+        TickerPoller.Target target = tickerPoller.getTargets().get(0);
+
+        when(tickerRateLimiter.getAvailable(pollingExchange)).thenReturn(3.0);
+        when(tickerRateLimiter.tryAcquire(any(Exchange.class), anyDouble())).thenReturn(false);
+
+        assertTrue(tickerPoller.choose(target, 1000L, ENTRY_SPREAD).isEmpty());
+    }
+
+    @Test
+    public void testChooseStreaming() {
+        TickerPoller.Target target = tickerPoller.getTargets().get(1);
+
+        assertTrue(tickerPoller.choose(target, IDLE_INTERVAL - 1, ENTRY_SPREAD).isEmpty());
+        assertEquals(
+            Arrays.asList(CurrencyPair.BTC_USD, CurrencyPair.ETH_USD, CurrencyPair.LTC_USD),
+            tickerPoller.choose(target, IDLE_INTERVAL, ENTRY_SPREAD));
+
+        verify(tickerRateLimiter, never()).getAvailable(streamingExchange);
+        verify(tickerRateLimiter, never()).tryAcquire(eq(streamingExchange), anyDouble());
+    }
+
+    @Test
+    public void testPollStreamingIdleInterval() {
+        TickerPoller.Target target = tickerPoller.getTargets().get(1);
+
+        tickerPoller.poll();
+
+        final long polled = System.currentTimeMillis();
+
+        verify(tickerService, timeout(1000)).fetchTickers(eq(streamingExchange), anyList());
+
+        assertTrue(tickerPoller.choose(target, polled, ENTRY_SPREAD).isEmpty());
+        assertEquals(3, tickerPoller.choose(target, polled + IDLE_INTERVAL, ENTRY_SPREAD).size());
+    }
+
+    @Test(timeout = 10000)
+    public void testPollInFlight() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        when(tickerRateLimiter.getAvailable(pollingExchange)).thenReturn(3.0);
+        doAnswer(invocation -> {
+            started.countDown();
+            release.await(5, TimeUnit.SECONDS);
+
+            return null;
+        }).when(tickerService).fetchTickers(eq(pollingExchange), anyList());
+
+        tickerPoller.poll();
+        started.await();
+
+        // still waiting on the first fetch, so this one shouldn't start another
+        tickerPoller.poll();
+
+        release.countDown();
+
+        verify(tickerService, times(1)).fetchTickers(eq(pollingExchange), anyList());
+        verify(tickerRateLimiter, times(1)).tryAcquire(eq(pollingExchange), anyDouble());
+    }
+}
@@ -2,15 +2,20 @@ package com.r307.arbitrader.service;
 
 import com.r307.arbitrader.ExchangeBuilder;
 import com.r307.arbitrader.config.NotificationConfiguration;
+import com.r307.arbitrader.config.RecorderConfiguration;
 import com.r307.arbitrader.config.TradingConfiguration;
 import com.r307.arbitrader.service.cache.ExchangeFeeCache;
 import com.r307.arbitrader.service.event.TickerEventPublisher;
+import com.r307.arbitrader.service.metrics.MetricsService;
 import com.r307.arbitrader.service.model.TickerEvent;
 import com.r307.arbitrader.service.model.TradeCombination;
+import com.r307.arbitrader.service.recorder.MarketDataRecorder;
 import com.r307.arbitrader.service.ticker.ParallelTickerStrategy;
 import com.r307.arbitrader.service.ticker.SingleCallTickerStrategy;
+import com.r307.arbitrader.service.ticker.TickerRateLimiter;
 import com.r307.arbitrader.service.ticker.TickerStrategy;
 import com.r307.arbitrader.service.ticker.TickerStrategyProvider;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.Before;
 import org.junit.Test;
 import org.knowm.xchange.Exchange;
@@ -56,15 +61,19 @@ public class TickerServiceTest {
         TradingConfiguration tradingConfiguration = new TradingConfiguration();
 
         exchangeService = new ExchangeService(new ExchangeFeeCache(), tickerStrategyProvider);
+        MetricsService metricsService = new MetricsService(new SimpleMeterRegistry());
+
         tickerService = new TickerService(
             tradingConfiguration,
             exchangeService,
-            errorCollectorService);
+            errorCollectorService,
+            metricsService,
+            new MarketDataRecorder(new RecorderConfiguration()));
 
-        errorCollectorService = new ErrorCollectorService();
+        errorCollectorService = new ErrorCollectorService(metricsService);
 
-        singleCallTickerStrategy = new SingleCallTickerStrategy(notificationConfiguration, errorCollectorService, exchangeService, tickerEventPublisher);
-        parallelTickerStrategy = new ParallelTickerStrategy(notificationConfiguration, errorCollectorService, exchangeService, tickerEventPublisher);
+        singleCallTickerStrategy = new SingleCallTickerStrategy(notificationConfiguration, errorCollectorService, exchangeService, tickerEventPublisher, new TickerRateLimiter());
+        parallelTickerStrategy = new ParallelTickerStrategy(notificationConfiguration, errorCollectorService, exchangeService, tickerEventPublisher, new TickerRateLimiter());
 
 
     }
@@ -89,6 +98,34 @@ public class TickerServiceTest {
 
         assertEquals(1, tickerService.tradeCombinations.size());
         assertTrue(tickerService.tradeCombinations.contains(new TradeCombination(exchangeB, exchangeA, CURRENCY_PAIR)));
+        assertEquals(2, tickerService.getTickerStore().size());
+    }
+
+    @Test
+    public void testPutTickerInitialized() throws IOException {
+        Exchange exchangeA = new ExchangeBuilder("ExchangeA", CURRENCY_PAIR)
+            .withTickers(true, Collections.singletonList(CURRENCY_PAIR))
+            .withExchangeMetaData()
+            .withMarginSupported(true)
+            .build();
+        Exchange exchangeB = new ExchangeBuilder("ExchangeB", CURRENCY_PAIR)
+            .withTickers(true, Collections.singletonList(CURRENCY_PAIR))
+            .withExchangeMetaData()
+            .withMarginSupported(false)
+            .build();
+        Ticker ticker = new Ticker.Builder()
+            .bid(new BigDecimal("120.00"))
+            .ask(new BigDecimal("123.00"))
+            .instrument(CURRENCY_PAIR)
+            .timestamp(new Date(1609633979L))
+            .build();
+
+        tickerService.initializeTickers(Arrays.asList(exchangeA, exchangeB));
+        tickerService.putTicker(exchangeA, ticker);
+
+        assertTrue(tickerService.allTickers.isEmpty());
+        assertEquals(ticker, tickerService.getTicker(exchangeA, CURRENCY_PAIR));
+        assertNull(tickerService.getTicker(exchangeB, CURRENCY_PAIR));
     }
 
     @Test
@@ -1,14 +1,20 @@
 package com.r307.arbitrader.service;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.r307.arbitrader.BaseTestCase;
 import com.r307.arbitrader.ExchangeBuilder;
-import com.r307.arbitrader.config.JsonConfiguration;
 import com.r307.arbitrader.config.NotificationConfiguration;
+import com.r307.arbitrader.config.RecorderConfiguration;
 import com.r307.arbitrader.exception.OrderNotFoundException;
 import com.r307.arbitrader.config.TradingConfiguration;
-import com.r307.arbitrader.service.model.ArbitrageLog;
-import org.apache.commons.io.FileUtils;
+import com.r307.arbitrader.service.cache.OrderBookCache;
+import com.r307.arbitrader.service.history.TradeHistoryWriter;
+import com.r307.arbitrader.service.journal.TradeJournal;
+import com.r307.arbitrader.service.metrics.MetricsService;
+import com.r307.arbitrader.service.model.ActivePosition;
+import com.r307.arbitrader.service.model.FixedSpread;
+import com.r307.arbitrader.service.model.TradeCombination;
+import com.r307.arbitrader.service.recorder.MarketDataRecorder;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.Before;
 import org.junit.Test;
 import org.knowm.xchange.Exchange;
@@ -18,23 +24,21 @@ import org.knowm.xchange.dto.Order;
 import org.mockito.Mock;
 import org.springframework.mail.javamail.JavaMailSender;
 
-import java.io.File;
 import java.io.IOException;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
-import java.nio.charset.StandardCharsets;
-import java.time.OffsetDateTime;
-import java.util.List;
+import java.time.Clock;
+import java.util.Collections;
 
 import static com.r307.arbitrader.DecimalConstants.BTC_SCALE;
 import static com.r307.arbitrader.DecimalConstants.USD_SCALE;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.*;
 
 public class TradingServiceTest extends BaseTestCase {
     private static final CurrencyPair currencyPair = new CurrencyPair("BTC/USD");
-    private static final int CSV_NUMBER_OF_COLUMNS = 12;
 
     private Exchange longExchange;
     private Exchange shortExchange;
@@ -47,22 +51,34 @@ public class TradingServiceTest extends BaseTestCase {
     @Mock
     private SpreadService spreadService;
 
+    @Mock
+    private OrderFillService orderFillService;
+
+    @Mock
+    private TradeJournal tradeJournal;
+
+    @Mock
+    private TradeHistoryWriter tradeHistoryWriter;
+
     private TradingService tradingService;
 
     @Before
     public void setUp() throws IOException {
         final JavaMailSender javaMailSenderMock = mock(JavaMailSender.class);
 
-        ObjectMapper objectMapper = new JsonConfiguration().objectMapper();
+        when(tradeJournal.append(any(), any())).thenReturn(true);
 
         ConditionService conditionService = new ConditionService();
         NotificationConfiguration notificationConfiguration = new NotificationConfiguration();
-        ErrorCollectorService errorCollectorService = new ErrorCollectorService();
+        MetricsService metricsService = new MetricsService(new SimpleMeterRegistry());
+        ErrorCollectorService errorCollectorService = new ErrorCollectorService(metricsService);
 
         TickerService tickerService = new TickerService(
             new TradingConfiguration(),
             exchangeService,
-            errorCollectorService);
+            errorCollectorService,
+            metricsService,
+            new MarketDataRecorder(new RecorderConfiguration()));
         spreadService = new SpreadService(tradingConfiguration, tickerService);
         NotificationServiceImpl notificationService = new NotificationServiceImpl(javaMailSenderMock, notificationConfiguration);
         tradingConfiguration = new TradingConfiguration();
@@ -78,15 +94,26 @@ public class TradingServiceTest extends BaseTestCase {
                 .withBalance(Currency.USD, new BigDecimal("500.00").setScale(USD_SCALE, RoundingMode.HALF_EVEN))
                 .build();
 
+        BalanceLedger balanceLedger = new BalanceLedger();
+
         // This spy right here is a bad code smell, kids! Don't try this at work!
         // Upcoming refactoring will allow me to remove it.
         tradingService = spy(new TradingService(
-            objectMapper,
             tradingConfiguration,
             conditionService,
             exchangeService,
             spreadService,
-            notificationService));
+            notificationService,
+            new OrderBookCache(),
+            Runnable::run,
+            orderFillService,
+            new CapitalAllocator(tradingConfiguration, exchangeService, balanceLedger),
+            balanceLedger,
+            metricsService,
+            tradeJournal,
+            tradeHistoryWriter,
+            new MarketDataRecorder(new RecorderConfiguration()),
+            Clock.systemDefaultZone()));
     }
 
     @Test
@@ -259,48 +286,6 @@ public class TradingServiceTest extends BaseTestCase {
         tradingService.getLimitPrice(longExchange, currencyPair, allowedVolume, Order.OrderType.BID);
     }
 
-    @Test
-    public void testGetMaximumExposureFixedExposure() {
-        tradingConfiguration.setFixedExposure(new BigDecimal("100.00"));
-
-        BigDecimal exposure = tradingService.getMaximumExposure(longExchange, shortExchange);
-
-        assertEquals(new BigDecimal("100.00").setScale(USD_SCALE, RoundingMode.HALF_EVEN), exposure);
-    }
-
-    // should return 90% of the smallest account balance
-    @Test
-    public void testGetMaximumExposure() throws IOException {
-        final BigDecimal minAccountBalance = new BigDecimal("100.00");
-        final BigDecimal tradePortion = new BigDecimal("0.9");
-        final BigDecimal expectedExposure = minAccountBalance.multiply(tradePortion)
-            .setScale(USD_SCALE, RoundingMode.HALF_EVEN);
-
-        when(exchangeService.getAccountBalance(any(Exchange.class)))
-            .thenReturn(minAccountBalance);
-
-        BigDecimal actual = tradingService.getMaximumExposure(longExchange, shortExchange);
-
-        assertEquals(expectedExposure, actual);
-    }
-
-    @Test
-    public void testGetMaximumExposureEmpty() {
-        BigDecimal exposure = tradingService.getMaximumExposure();
-
-        assertEquals(new BigDecimal("0.00").setScale(USD_SCALE, RoundingMode.HALF_EVEN), exposure);
-    }
-
-    @Test
-    public void testGetMaximumExposureException() throws IOException {
-        when(exchangeService.getAccountBalance(shortExchange, Currency.USD, USD_SCALE)).thenThrow(new IOException("Boom!"));
-
-        BigDecimal exposure = tradingService.getMaximumExposure();
-
-        // the IOE should not propagate and blow everything up
-        assertEquals(new BigDecimal("0.00").setScale(USD_SCALE, RoundingMode.HALF_EVEN), exposure);
-    }
-
     @Test
     public void testRoundByFives64() {
         BigDecimal input = new BigDecimal("64.00");
@@ -412,47 +397,40 @@ public class TradingServiceTest extends BaseTestCase {
     }
 
     @Test
-    public void testLogArbitrageToCsv() throws IOException {
-        final File file = new File(TradingScheduler.TRADE_HISTORY_FILE);
-        FileUtils.deleteQuietly(file);
-
-        final ArbitrageLog arbitrageLog = ArbitrageLog.ArbitrageLogBuilder.builder()
-            .withShortExchange("CoinbasePro")
-            .withShortCurrency("BTC/USD")
-            .withShortSpread(new BigDecimal("0.008"))
-            .withShortSlip(new BigDecimal("-0.001"))
-            .withShortAmount(BigDecimal.valueOf(10))
-            .withLongExchange("Bitstamp")
-            .withLongCurrency("BTC/USD")
-            .withLongSpread(new BigDecimal("-0.003"))
-            .withLongSlip(new BigDecimal("-0.001"))
-            .withLongAmount(BigDecimal.valueOf(10))
-            .withProfit(new BigDecimal("0.01"))
-            .withTimestamp(OffsetDateTime.now())
-            .build();
-
-        tradingService.persistArbitrageToCsvFile(arbitrageLog);
-
-        List<String> lines = FileUtils.readLines(file, StandardCharsets.UTF_8);
-        assertEquals(2, lines.size());
-
-        // Get headers
-        String[] split = lines.get(0).split("\",\"");
-        assertEquals("Header size does not match number of columns", CSV_NUMBER_OF_COLUMNS, split.length);
-
-        // Assert headers does not end with a comma
-        final String lastColumn = split[split.length - 1];
-        assertFalse(lastColumn.endsWith(","));
-
-        // Append one line
-        tradingService.persistArbitrageToCsvFile(arbitrageLog);
-
-        lines = FileUtils.readLines(file, StandardCharsets.UTF_8);
-        assertEquals(3, lines.size());
-
-        split = lines.get(2).split("\",\"");
-        assertEquals("Number of elements (columns) per line does not match the number of columns", CSV_NUMBER_OF_COLUMNS, split.length);
-
-        FileUtils.deleteQuietly(file);
+    public void testIsTradeCandidate() {
+        TradeCombination tradeCombination = new TradeCombination(longExchange, shortExchange, currencyPair);
+        FixedSpread fixedSpread = new FixedSpread();
+
+        tradingConfiguration.setEntrySpread(new BigDecimal("0.0080000001"));
+
+        fixedSpread.set(800000L, 0L); // 0.008 is not > 0.0080000001
+        assertFalse(tradingService.isTradeCandidate(tradeCombination, fixedSpread));
+
+        fixedSpread.set(800001L, 0L);
+        assertTrue(tradingService.isTradeCandidate(tradeCombination, fixedSpread));
+    }
+
+    @Test
+    public void testIsTradeCandidateActivePosition() {
+        TradeCombination tradeCombination = new TradeCombination(longExchange, shortExchange, currencyPair);
+        TradeCombination otherCombination = new TradeCombination(longExchange, shortExchange, CurrencyPair.ETH_USD);
+        FixedSpread fixedSpread = new FixedSpread();
+        ActivePosition activePosition = new ActivePosition();
+
+        activePosition.setCurrencyPair(currencyPair);
+        activePosition.getLongTrade().setExchange(longExchange);
+        activePosition.getShortTrade().setExchange(shortExchange);
+        tradingConfiguration.setEntrySpread(new BigDecimal("0.008"));
+        tradingService.setActivePositions(Collections.singletonList(activePosition));
+        fixedSpread.set(0L, 0L);
+
+        assertTrue(tradingService.isTradeCandidate(tradeCombination, fixedSpread));
+        assertFalse(tradingService.isTradeCandidate(otherCombination, fixedSpread));
+
+        // with room for another position the other combination can enter again
+        tradingConfiguration.setMaxPositions(2);
+        fixedSpread.set(800001L, 0L);
+
+        assertTrue(tradingService.isTradeCandidate(otherCombination, fixedSpread));
     }
 }
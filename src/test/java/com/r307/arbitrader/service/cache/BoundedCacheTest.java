@@ -0,0 +1,89 @@
+package com.r307.arbitrader.service.cache;
+
+import com.r307.arbitrader.BaseTestCase;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+
+public class BoundedCacheTest extends BaseTestCase {
+    @Mock
+    private Clock clock;
+
+    private BoundedCache<String, Integer> cache;
+
+    @Before
+    public void setUp() {
+        cache = new BoundedCache<>("Test", 2, Duration.ofSeconds(10), clock);
+    }
+
+    @Test
+    public void testGetAndPut() {
+        cache.put("one", 1);
+
+        assertEquals(Optional.of(1), cache.get("one"));
+        assertEquals(Optional.empty(), cache.get("two"));
+
+        CacheStatistics statistics = cache.getStatistics();
+
+        assertEquals(1, statistics.getSize());
+        assertEquals(1, statistics.getHits());
+        assertEquals(1, statistics.getMisses());
+        assertEquals(0.5, statistics.getHitRatio(), 0.0001);
+    }
+
+    @Test
+    public void testEvictLeastRecentlyUsed() {
+        cache.put("one", 1);
+        cache.put("two", 2);
+
+        // using "one" makes "two" the least recently used
+        cache.get("one");
+        cache.put("three", 3);
+
+        assertEquals(Optional.of(1), cache.get("one"));
+        assertEquals(Optional.empty(), cache.get("two"));
+        assertEquals(Optional.of(3), cache.get("three"));
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getStatistics().getEvictions());
+    }
+
+    @Test
+    public void testExpire() {
+        when(clock.millis()).thenReturn(0L);
+        cache.put("one", 1);
+
+        when(clock.millis()).thenReturn(10000L);
+        assertTrue(cache.containsKey("one"));
+
+        when(clock.millis()).thenReturn(10001L);
+        assertFalse(cache.containsKey("one"));
+        assertEquals(Optional.empty(), cache.get("one"));
+        assertEquals(0, cache.size());
+        assertEquals(1, cache.getStatistics().getEvictions());
+    }
+
+    @Test
+    public void testCompute() {
+        assertEquals(Integer.valueOf(1), cache.compute("one", (key, value) -> value == null ? 1 : value + 1));
+        assertEquals(Integer.valueOf(2), cache.compute("one", (key, value) -> value == null ? 1 : value + 1));
+
+        // returning null removes the value
+        cache.compute("one", (key, value) -> null);
+
+        assertFalse(cache.containsKey("one"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidSize() {
+        new BoundedCache<String, Integer>("Test", 0);
+    }
+}
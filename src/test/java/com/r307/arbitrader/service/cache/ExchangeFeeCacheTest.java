@@ -6,13 +6,25 @@ import org.junit.Test;
 import org.knowm.xchange.Exchange;
 import org.knowm.xchange.ExchangeSpecification;
 import org.knowm.xchange.currency.CurrencyPair;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 
 import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.Duration;
 import java.util.Optional;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class ExchangeFeeCacheTest extends BaseTestCase {
@@ -22,6 +34,12 @@ public class ExchangeFeeCacheTest extends BaseTestCase {
     @Mock
     private ExchangeSpecification exchangeSpecification;
 
+    @Mock
+    private ScheduledExecutorService scheduler;
+
+    @Mock
+    private Clock clock;
+
     private CurrencyPair currencyPair;
     private ExchangeFeeCache exchangeFeeCache;
 
@@ -61,4 +79,99 @@ public class ExchangeFeeCacheTest extends BaseTestCase {
 
         assertEquals(Optional.empty(), exchangeFeeCache.getCachedFee(altExchange, currencyPair));
     }
+
+    @Test
+    public void testSetWithLoaderSchedulesRefresh() {
+        ExchangeFeeCache refreshingCache = new ExchangeFeeCache(scheduler, clock);
+
+        refreshingCache.setCachedFee(exchange, currencyPair, new BigDecimal("0.0025"), Duration.ofMinutes(5), () -> new BigDecimal("0.0020"));
+        refreshingCache.setCachedFee(exchange, currencyPair, new BigDecimal("0.0024"), Duration.ofMinutes(5), () -> new BigDecimal("0.0020"));
+
+        // the second call replaces the fee but doesn't start a second schedule
+        assertEquals(Optional.of(new BigDecimal("0.0024")), refreshingCache.getCachedFee(exchange, currencyPair));
+        verify(scheduler, times(1)).scheduleWithFixedDelay(any(Runnable.class), eq(300000L), eq(300000L), eq(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testRefresh() {
+        ExchangeFeeCache refreshingCache = new ExchangeFeeCache(scheduler, clock);
+
+        refreshingCache.setCachedFee(exchange, currencyPair, new BigDecimal("0.0025"), Duration.ofMinutes(5), () -> new BigDecimal("0.0020"));
+        getRefreshTask().run();
+
+        assertEquals(Optional.of(new BigDecimal("0.0020")), refreshingCache.getCachedFee(exchange, currencyPair));
+    }
+
+    @Test
+    public void testRefreshFailureKeepsOldFee() {
+        ExchangeFeeCache refreshingCache = new ExchangeFeeCache(scheduler, clock);
+
+        refreshingCache.setCachedFee(exchange, currencyPair, new BigDecimal("0.0025"), Duration.ofMinutes(5), () -> {
+            throw new IllegalStateException("Boom!");
+        });
+        getRefreshTask().run();
+
+        assertEquals(Optional.of(new BigDecimal("0.0025")), refreshingCache.getCachedFee(exchange, currencyPair));
+    }
+
+    @Test
+    public void testScheduledRefreshSkipsWhileRefreshing() {
+        ExchangeFeeCache refreshingCache = new ExchangeFeeCache(scheduler, clock);
+        AtomicInteger loads = new AtomicInteger();
+
+        when(clock.millis()).thenReturn(0L);
+        refreshingCache.setCachedFee(exchange, currencyPair, new BigDecimal("0.0025"), Duration.ofMinutes(5), () -> {
+            loads.incrementAndGet();
+            return new BigDecimal("0.0020");
+        });
+
+        // a stale lookup starts a refresh that hasn't run yet, so the scheduled one leaves it alone
+        when(clock.millis()).thenReturn(Duration.ofMinutes(6).toMillis());
+        refreshingCache.getCachedFee(exchange, currencyPair);
+        getRefreshTask().run();
+
+        assertEquals(0, loads.get());
+        assertEquals(Optional.of(new BigDecimal("0.0025")), refreshingCache.getCachedFee(exchange, currencyPair));
+    }
+
+    @Test
+    public void testStaleFeeIsReturnedAndRefreshed() {
+        ExchangeFeeCache refreshingCache = new ExchangeFeeCache(scheduler, clock);
+
+        when(clock.millis()).thenReturn(0L);
+        refreshingCache.setCachedFee(exchange, currencyPair, new BigDecimal("0.0025"), Duration.ofMinutes(5), () -> new BigDecimal("0.0020"));
+
+        // still fresh
+        assertEquals(Optional.of(new BigDecimal("0.0025")), refreshingCache.getCachedFee(exchange, currencyPair));
+        verify(scheduler, never()).execute(any(Runnable.class));
+
+        // stale, so we get the old fee without waiting and one refresh is started no matter how often we ask
+        when(clock.millis()).thenReturn(Duration.ofMinutes(6).toMillis());
+
+        assertEquals(Optional.of(new BigDecimal("0.0025")), refreshingCache.getCachedFee(exchange, currencyPair));
+        assertEquals(Optional.of(new BigDecimal("0.0025")), refreshingCache.getCachedFee(exchange, currencyPair));
+        verify(scheduler, times(1)).execute(any(Runnable.class));
+    }
+
+    @Test
+    public void testFeeWithoutLoaderNeverStale() {
+        ExchangeFeeCache refreshingCache = new ExchangeFeeCache(scheduler, clock);
+
+        when(clock.millis()).thenReturn(0L);
+        refreshingCache.setCachedFee(exchange, currencyPair, new BigDecimal("0.0025"));
+        when(clock.millis()).thenReturn(Long.MAX_VALUE);
+
+        assertEquals(Optional.of(new BigDecimal("0.0025")), refreshingCache.getCachedFee(exchange, currencyPair));
+        verify(scheduler, never()).execute(any(Runnable.class));
+        verify(scheduler, never()).scheduleWithFixedDelay(any(Runnable.class), anyLong(), anyLong(), any(TimeUnit.class));
+    }
+
+    // grab the task that was scheduled to refresh the fee
+    private Runnable getRefreshTask() {
+        ArgumentCaptor<Runnable> captor = ArgumentCaptor.forClass(Runnable.class);
+
+        verify(scheduler).scheduleWithFixedDelay(captor.capture(), anyLong(), anyLong(), any(TimeUnit.class));
+
+        return captor.getValue();
+    }
 }
@@ -0,0 +1,109 @@
+package com.r307.arbitrader.service.cache;
+
+import com.r307.arbitrader.BaseTestCase;
+import com.r307.arbitrader.ExchangeBuilder;
+import com.r307.arbitrader.FixedPoint;
+import com.r307.arbitrader.service.ticker.DepthBook;
+import org.junit.Before;
+import org.junit.Test;
+import org.knowm.xchange.Exchange;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.Order;
+import org.knowm.xchange.dto.marketdata.OrderBook;
+import org.knowm.xchange.dto.trade.LimitOrder;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class OrderBookCacheTest extends BaseTestCase {
+    private Exchange exchangeA;
+    private Exchange exchangeB;
+
+    private OrderBookCache cache;
+
+    @Before
+    public void setUp() throws IOException {
+        exchangeA = new ExchangeBuilder("CoinDynasty", CurrencyPair.BTC_USD)
+            .build();
+
+        exchangeB = new ExchangeBuilder("CoinSnake", CurrencyPair.BTC_USD)
+            .build();
+
+        cache = new OrderBookCache();
+    }
+
+    @Test
+    public void testGetCachedDepthBook() {
+        cache.setStreamingOrderBook(exchangeA, CurrencyPair.BTC_USD, buildOrderBook("100.0"));
+        cache.setSnapshotOrderBook(exchangeB, CurrencyPair.BTC_USD, buildOrderBook("200.0"));
+
+        assertEquals(new BigDecimal("100.0"), getAsk(exchangeA));
+        assertEquals(new BigDecimal("200.0"), getAsk(exchangeB));
+        assertEquals(Optional.empty(), cache.getCachedDepthBook(exchangeA, CurrencyPair.ETH_USD));
+    }
+
+    @Test
+    public void testStreamingReusesDepthBook() {
+        cache.setStreamingOrderBook(exchangeA, CurrencyPair.BTC_USD, buildOrderBook("100.0"));
+
+        DepthBook depthBook = cache.getCachedDepthBook(exchangeA, CurrencyPair.BTC_USD).orElse(null);
+
+        cache.setStreamingOrderBook(exchangeA, CurrencyPair.BTC_USD, buildOrderBook("101.0"));
+
+        assertSame(depthBook, cache.getCachedDepthBook(exchangeA, CurrencyPair.BTC_USD).orElse(null));
+        assertEquals(new BigDecimal("101.0"), getAsk(exchangeA));
+    }
+
+    @Test
+    public void testCacheExpiration() {
+        long now = System.currentTimeMillis();
+
+        cache.setSnapshotOrderBook(exchangeA, CurrencyPair.BTC_USD, buildOrderBook("100.0"), now - (OrderBookCache.SNAPSHOT_TIMEOUT + 1));
+        cache.setStreamingOrderBook(exchangeB, CurrencyPair.BTC_USD, buildOrderBook("100.0"), now - (OrderBookCache.STREAMING_TIMEOUT + 1));
+
+        assertEquals(Optional.empty(), cache.getCachedDepthBook(exchangeA, CurrencyPair.BTC_USD));
+        assertEquals(Optional.empty(), cache.getCachedDepthBook(exchangeB, CurrencyPair.BTC_USD));
+    }
+
+    @Test
+    public void testSnapshotDoesNotReplaceStreaming() {
+        cache.setStreamingOrderBook(exchangeA, CurrencyPair.BTC_USD, buildOrderBook("100.0"));
+        cache.setSnapshotOrderBook(exchangeA, CurrencyPair.BTC_USD, buildOrderBook("200.0"));
+
+        assertEquals(new BigDecimal("100.0"), getAsk(exchangeA));
+    }
+
+    @Test
+    public void testSnapshotReplacesExpiredStreaming() {
+        cache.setStreamingOrderBook(exchangeA, CurrencyPair.BTC_USD, buildOrderBook("100.0"), System.currentTimeMillis() - (OrderBookCache.STREAMING_TIMEOUT + 1));
+        cache.setSnapshotOrderBook(exchangeA, CurrencyPair.BTC_USD, buildOrderBook("200.0"));
+
+        assertEquals(new BigDecimal("200.0"), getAsk(exchangeA));
+    }
+
+    // the best ask in the cached book, at the same scale as the price we built it with
+    private BigDecimal getAsk(Exchange exchange) {
+        DepthBook depthBook = cache.getCachedDepthBook(exchange, CurrencyPair.BTC_USD).orElseThrow(IllegalStateException::new);
+
+        return FixedPoint.toBigDecimal(depthBook.getLimitPrice(Order.OrderType.ASK, 0L)).setScale(1, RoundingMode.UNNECESSARY);
+    }
+
+    private static OrderBook buildOrderBook(String ask) {
+        LimitOrder order = new LimitOrder(
+            Order.OrderType.ASK,
+            BigDecimal.ONE,
+            CurrencyPair.BTC_USD,
+            null,
+            new Date(),
+            new BigDecimal(ask));
+
+        return new OrderBook(new Date(), Collections.singletonList(order), Collections.emptyList());
+    }
+}
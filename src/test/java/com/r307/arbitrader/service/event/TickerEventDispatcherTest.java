@@ -0,0 +1,119 @@
+package com.r307.arbitrader.service.event;
+
+import com.r307.arbitrader.BaseTestCase;
+import com.r307.arbitrader.config.TradingConfiguration;
+import com.r307.arbitrader.service.TickerService;
+import com.r307.arbitrader.service.model.TickerEvent;
+import com.r307.arbitrader.service.ticker.TickerStore;
+import org.junit.Before;
+import org.junit.Test;
+import org.knowm.xchange.Exchange;
+import org.knowm.xchange.ExchangeSpecification;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.marketdata.Ticker;
+import org.mockito.Mock;
+
+import java.math.BigDecimal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class TickerEventDispatcherTest extends BaseTestCase {
+    @Mock
+    private Exchange exchange;
+
+    @Mock
+    private ExchangeSpecification exchangeSpecification;
+
+    @Mock
+    private TickerService tickerService;
+
+    @Mock
+    private TickerEventListener tickerEventListener;
+
+    private TradingConfiguration tradingConfiguration;
+    private TickerEventDispatcher tickerEventDispatcher;
+
+    @Before
+    public void setUp() {
+        TickerStore.Builder builder = new TickerStore.Builder();
+
+        builder.add(exchange, CurrencyPair.BTC_USD, CurrencyPair.BTC_USD);
+        builder.add(exchange, CurrencyPair.ETH_USD, CurrencyPair.ETH_USD);
+
+        when(tickerService.getTickerStore()).thenReturn(builder.build());
+        when(exchange.getExchangeSpecification()).thenReturn(exchangeSpecification);
+        when(exchangeSpecification.getExchangeName()).thenReturn("CrazyCoinz");
+
+        // note that we don't start() the dispatcher, so no worker threads are running
+        tradingConfiguration = new TradingConfiguration();
+        tickerEventDispatcher = new TickerEventDispatcher(tradingConfiguration, tickerService, tickerEventListener);
+    }
+
+    @Test
+    public void testWorkerCount() {
+        tradingConfiguration.setMaxPositions(64);
+
+        // every position can be waiting for fills with a worker to spare for the rest of the prices
+        assertTrue(tickerEventDispatcher.getWorkerCount() > 64);
+    }
+
+    @Test
+    public void testCoalesce() throws InterruptedException {
+        TickerEvent oldEvent = new TickerEvent(buildTicker(CurrencyPair.BTC_USD, "100.00"), exchange);
+        TickerEvent newEvent = new TickerEvent(buildTicker(CurrencyPair.BTC_USD, "101.00"), exchange);
+
+        tickerEventDispatcher.onTickerEvent(oldEvent);
+        tickerEventDispatcher.onTickerEvent(newEvent);
+
+        assertEquals(2, tickerEventDispatcher.getPublishedCount());
+        assertEquals(1, tickerEventDispatcher.getCoalescedCount());
+        assertEquals(1, tickerEventDispatcher.getQueueDepth());
+
+        tickerEventDispatcher.dispatchNext();
+
+        verify(tickerEventListener).onTradeEvent(newEvent);
+        verify(tickerEventListener, never()).onTradeEvent(oldEvent);
+        assertEquals(1, tickerEventDispatcher.getDispatchedCount());
+        assertEquals(0, tickerEventDispatcher.getQueueDepth());
+    }
+
+    @Test
+    public void testSeparateTickers() throws InterruptedException {
+        TickerEvent btcEvent = new TickerEvent(buildTicker(CurrencyPair.BTC_USD, "100.00"), exchange);
+        TickerEvent ethEvent = new TickerEvent(buildTicker(CurrencyPair.ETH_USD, "10.00"), exchange);
+
+        tickerEventDispatcher.onTickerEvent(btcEvent);
+        tickerEventDispatcher.onTickerEvent(ethEvent);
+
+        assertEquals(0, tickerEventDispatcher.getCoalescedCount());
+        assertEquals(2, tickerEventDispatcher.getQueueDepth());
+
+        tickerEventDispatcher.dispatchNext();
+        tickerEventDispatcher.dispatchNext();
+
+        verify(tickerEventListener).onTradeEvent(btcEvent);
+        verify(tickerEventListener).onTradeEvent(ethEvent);
+    }
+
+    @Test
+    public void testUnknownTicker() {
+        TickerEvent event = new TickerEvent(buildTicker(CurrencyPair.LTC_USD, "50.00"), exchange);
+
+        tickerEventDispatcher.onTickerEvent(event);
+
+        assertEquals(1, tickerEventDispatcher.getPublishedCount());
+        assertEquals(0, tickerEventDispatcher.getQueueDepth());
+        verify(tickerEventListener, never()).onTradeEvent(any(TickerEvent.class));
+    }
+
+    private static Ticker buildTicker(CurrencyPair currencyPair, String price) {
+        return new Ticker.Builder()
+            .instrument(currencyPair)
+            .bid(new BigDecimal(price))
+            .ask(new BigDecimal(price))
+            .build();
+    }
+}
@@ -0,0 +1,184 @@
+package com.r307.arbitrader.service.event;
+
+import com.r307.arbitrader.BaseTestCase;
+import com.r307.arbitrader.config.TickerPipeline;
+import com.r307.arbitrader.config.TradingConfiguration;
+import com.r307.arbitrader.service.SpreadService;
+import com.r307.arbitrader.service.TickerService;
+import com.r307.arbitrader.service.TradingService;
+import com.r307.arbitrader.service.latency.LatencyRecorder;
+import com.r307.arbitrader.service.latency.LatencyTrace;
+import com.r307.arbitrader.service.model.Spread;
+import com.r307.arbitrader.service.model.TradeCombination;
+import com.r307.arbitrader.service.ticker.TickerStore;
+import com.r307.arbitrader.service.ticker.TradeCombinationIndex;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.knowm.xchange.Exchange;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.marketdata.Ticker;
+import org.mockito.Mock;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class TickerRingBufferTest extends BaseTestCase {
+    @Mock
+    private Exchange longExchange;
+
+    @Mock
+    private Exchange shortExchange;
+
+    @Mock
+    private TickerService tickerService;
+
+    @Mock
+    private SpreadService spreadService;
+
+    @Mock
+    private TradingService tradingService;
+
+    @Mock
+    private TickerEventPublisher tickerEventPublisher;
+
+    @Mock
+    private LatencyRecorder latencyRecorder;
+
+    private TickerStore tickerStore;
+    private TradeCombination tradeCombination;
+    private TradingConfiguration tradingConfiguration;
+    private TickerRingBuffer tickerRingBuffer;
+
+    @Before
+    public void setUp() {
+        TickerStore.Builder builder = new TickerStore.Builder();
+
+        builder.add(longExchange, CurrencyPair.BTC_USD, CurrencyPair.BTC_USD);
+        builder.add(shortExchange, CurrencyPair.BTC_USD, CurrencyPair.BTC_USD);
+
+        tickerStore = builder.build();
+        tradeCombination = new TradeCombination(longExchange, shortExchange, CurrencyPair.BTC_USD);
+        tradingConfiguration = new TradingConfiguration();
+        tradingConfiguration.setTickerPipeline(TickerPipeline.RING_BUFFER);
+
+        when(tickerService.getTickerStore()).thenReturn(tickerStore);
+        when(tickerService.getTradeCombinationIndex())
+            .thenReturn(new TradeCombinationIndex(tickerStore, Collections.singletonList(tradeCombination)));
+
+        tickerRingBuffer = new TickerRingBuffer(
+            tradingConfiguration,
+            tickerService,
+            spreadService,
+            tradingService,
+            tickerEventPublisher,
+            latencyRecorder);
+    }
+
+    @After
+    public void tearDown() {
+        tickerRingBuffer.stop();
+    }
+
+    @Test
+    public void testStartDisabled() {
+        tradingConfiguration.setTickerPipeline(TickerPipeline.EVENT);
+        tickerRingBuffer.start();
+
+        verify(tickerEventPublisher, never()).setTickerRingBuffer(any(TickerRingBuffer.class));
+    }
+
+    @Test
+    public void testPublish() {
+        Ticker ticker = buildTicker("100.00");
+        Spread spread = buildSpread(ticker);
+
+        tickerStore.put(0, ticker);
+        when(spreadService.computeSpread(tradeCombination)).thenReturn(spread);
+
+        tickerRingBuffer.start();
+        tickerRingBuffer.publish(longExchange, ticker);
+
+        verify(tickerEventPublisher).setTickerRingBuffer(tickerRingBuffer);
+        verify(tradingService, timeout(1000)).trade(spread);
+        verify(latencyRecorder, timeout(1000)).recordTicker(eq(longExchange), any(LatencyTrace.class));
+        verify(latencyRecorder, timeout(1000)).recordCombination(eq(tradeCombination), any(LatencyTrace.class));
+    }
+
+    @Test(timeout = 10000)
+    public void testPublishWhileTrading() throws InterruptedException {
+        Ticker ticker = buildTicker("100.00");
+        CountDownLatch trading = new CountDownLatch(1);
+        CountDownLatch filled = new CountDownLatch(1);
+
+        tickerStore.put(0, ticker);
+        when(spreadService.computeSpread(tradeCombination)).thenAnswer(invocation -> buildSpread(ticker));
+
+        // every trade waits for its orders to fill until we say so
+        doAnswer(invocation -> {
+            trading.countDown();
+            filled.await();
+            return null;
+        }).when(tradingService).trade(any(Spread.class));
+
+        tickerRingBuffer.start();
+        tickerRingBuffer.publish(longExchange, ticker);
+        trading.await();
+
+        // more tickers than the ring can hold, which would block if the ring waited for the trade
+        for (int i = 0; i < TickerRingBuffer.SIZE * 2; i++) {
+            tickerRingBuffer.publish(longExchange, ticker);
+        }
+
+        filled.countDown();
+
+        verify(tradingService, timeout(1000).atLeast(2)).trade(any(Spread.class));
+        assertTrue(tickerRingBuffer.getCoalescedCount() > 0);
+    }
+
+    @Test
+    public void testPublishStale() {
+        Ticker staleTicker = buildTicker("100.00");
+
+        tickerStore.put(0, buildTicker("101.00"));
+
+        tickerRingBuffer.start();
+        tickerRingBuffer.publish(longExchange, staleTicker);
+
+        verify(tradingService, after(100).never()).trade(any(Spread.class));
+        verify(spreadService, never()).computeSpread(any(TradeCombination.class));
+        assertEquals(1, tickerRingBuffer.getStaleCount());
+    }
+
+    @Test
+    public void testPublishAfterStop() {
+        Ticker ticker = buildTicker("100.00");
+
+        tickerStore.put(0, ticker);
+
+        tickerRingBuffer.start();
+        tickerRingBuffer.stop();
+        tickerRingBuffer.publish(longExchange, ticker);
+
+        verify(tradingService, after(100).never()).trade(any(Spread.class));
+        assertEquals(0, tickerRingBuffer.getBacklog());
+    }
+
+    private Spread buildSpread(Ticker ticker) {
+        return new Spread(CurrencyPair.BTC_USD, longExchange, shortExchange, ticker, ticker, BigDecimal.ZERO, BigDecimal.ZERO);
+    }
+
+    private static Ticker buildTicker(String price) {
+        return new Ticker.Builder()
+            .instrument(CurrencyPair.BTC_USD)
+            .bid(new BigDecimal(price))
+            .ask(new BigDecimal(price))
+            .build();
+    }
+}
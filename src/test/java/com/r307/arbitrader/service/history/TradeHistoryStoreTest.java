@@ -0,0 +1,211 @@
+package com.r307.arbitrader.service.history;
+
+import com.r307.arbitrader.service.model.ArbitrageLog;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TradeHistoryStoreTest {
+    private static final OffsetDateTime START = OffsetDateTime.parse("2021-03-01T00:00:00Z");
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File directory;
+    private TradeHistoryStore tradeHistoryStore;
+
+    @Before
+    public void setUp() {
+        directory = new File(temporaryFolder.getRoot(), "history");
+        tradeHistoryStore = open();
+    }
+
+    @Test
+    public void testQueryByExchangePair() throws IOException {
+        tradeHistoryStore.append(buildArbitrageLog("Kraken", "Bitstamp", "0.10", START));
+        tradeHistoryStore.append(buildArbitrageLog("Kraken", "Bitstamp", "0.30", START.plusHours(1)));
+        tradeHistoryStore.append(buildArbitrageLog("Kraken", "Quoine", "-0.05", START.plusHours(2)));
+
+        List<HistoryAggregate> aggregates = tradeHistoryStore.query(HistoryQuery.HistoryQueryBuilder.builder()
+            .withGrouping(HistoryQuery.Grouping.EXCHANGE_PAIR)
+            .build());
+
+        assertEquals(2, aggregates.size());
+
+        HistoryAggregate bitstamp = aggregates.get(0);
+
+        assertEquals("Kraken/Bitstamp", bitstamp.getGroup());
+        assertEquals(2, bitstamp.getCount());
+        assertEquals(0, new BigDecimal("0.40").compareTo(bitstamp.getSum()));
+        assertEquals(0, new BigDecimal("0.10").compareTo(bitstamp.getMin()));
+        assertEquals(0, new BigDecimal("0.30").compareTo(bitstamp.getMax()));
+        assertEquals(0, new BigDecimal("0.20").compareTo(bitstamp.getMean()));
+        assertEquals("Kraken/Quoine", aggregates.get(1).getGroup());
+    }
+
+    @Test
+    public void testQueryBuckets() throws IOException {
+        for (int day = 0; day < 14; day++) {
+            tradeHistoryStore.append(buildArbitrageLog("Kraken", "Bitstamp", "1.00", START.plusDays(day)));
+        }
+
+        List<HistoryAggregate> aggregates = tradeHistoryStore.query(HistoryQuery.HistoryQueryBuilder.builder()
+            .withFrom(START.plusDays(1).toInstant())
+            .withTo(START.plusDays(13).toInstant())
+            .withBucket(Duration.ofDays(7))
+            .build());
+
+        assertEquals(2, aggregates.size());
+        assertEquals(START.plusDays(1).toInstant(), aggregates.get(0).getBucket());
+        assertEquals(7, aggregates.get(0).getCount());
+        assertEquals(START.plusDays(8).toInstant(), aggregates.get(1).getBucket());
+        assertEquals(5, aggregates.get(1).getCount());
+    }
+
+    @Test
+    public void testQueryFilters() throws IOException {
+        tradeHistoryStore.append(buildArbitrageLog("Kraken", "Bitstamp", "0.10", START));
+        tradeHistoryStore.append(buildArbitrageLog("Quoine", "Kraken", "0.20", START));
+        tradeHistoryStore.append(buildArbitrageLog("Quoine", "Bitstamp", "0.40", START));
+
+        List<HistoryAggregate> kraken = tradeHistoryStore.query(HistoryQuery.HistoryQueryBuilder.builder()
+            .withExchange("Kraken")
+            .build());
+
+        assertEquals(1, kraken.size());
+        assertEquals("all", kraken.get(0).getGroup());
+        assertEquals(2, kraken.get(0).getCount());
+
+        assertTrue(tradeHistoryStore.query(HistoryQuery.HistoryQueryBuilder.builder()
+            .withExchange("Gemini")
+            .build()).isEmpty());
+
+        assertTrue(tradeHistoryStore.query(HistoryQuery.HistoryQueryBuilder.builder()
+            .withCurrencyPair("ETH/USD")
+            .build()).isEmpty());
+    }
+
+    @Test
+    public void testReopen() throws IOException {
+        // segments hold 4 trades, so this needs three of them
+        for (int i = 0; i < 10; i++) {
+            tradeHistoryStore.append(buildArbitrageLog("Kraken", "Bitstamp", "0.01", START.plusMinutes(i)));
+        }
+
+        assertEquals(3, directory.list((dir, name) -> name.endsWith(".seg")).length);
+
+        TradeHistoryStore reopened = open();
+
+        assertEquals(10, reopened.size());
+
+        reopened.append(buildArbitrageLog("Kraken", "Quoine", "0.01", START.plusMinutes(10)));
+
+        List<HistoryAggregate> aggregates = reopened.query(HistoryQuery.HistoryQueryBuilder.builder()
+            .withGrouping(HistoryQuery.Grouping.SHORT_EXCHANGE)
+            .build());
+
+        assertEquals(2, aggregates.size());
+        assertEquals("Bitstamp", aggregates.get(0).getGroup());
+        assertEquals(10, aggregates.get(0).getCount());
+        assertEquals("Quoine", aggregates.get(1).getGroup());
+        assertEquals(1, aggregates.get(1).getCount());
+    }
+
+    @Test
+    public void testReopenSkipsUnreadableSegment() throws IOException {
+        for (int i = 0; i < 10; i++) {
+            tradeHistoryStore.append(buildArbitrageLog("Kraken", "Bitstamp", "0.01", START.plusMinutes(i)));
+        }
+
+        // the newest segment is damaged, so the next one has to get a new name
+        Files.write(new File(directory, "history-00000002.seg").toPath(), new byte[] { 1, 2, 3 });
+
+        TradeHistoryStore reopened = open();
+
+        assertEquals(8, reopened.size());
+
+        reopened.append(buildArbitrageLog("Kraken", "Bitstamp", "0.01", START.plusMinutes(10)));
+
+        assertEquals(9, reopened.size());
+        assertTrue(new File(directory, "history-00000003.seg").exists());
+    }
+
+    @Test
+    public void testMissingSymbol() throws IOException {
+        tradeHistoryStore.append(buildArbitrageLog("Kraken", "Bitstamp", "0.10", START));
+
+        // the segment was saved but the symbols were lost
+        Files.write(new File(directory, "symbols.txt").toPath(), new byte[0]);
+
+        List<HistoryAggregate> aggregates = open().query(HistoryQuery.HistoryQueryBuilder.builder()
+            .withGrouping(HistoryQuery.Grouping.EXCHANGE_PAIR)
+            .build());
+
+        assertEquals(1, aggregates.size());
+        assertEquals(SymbolTable.MISSING_SYMBOL + "/" + SymbolTable.MISSING_SYMBOL, aggregates.get(0).getGroup());
+    }
+
+    @Test
+    public void testExportCsv() throws IOException {
+        ArbitrageLog arbitrageLog = buildArbitrageLog("Kraken", "Bitstamp", "0.10", START);
+        StringWriter writer = new StringWriter();
+
+        tradeHistoryStore.append(arbitrageLog);
+        tradeHistoryStore.append(buildArbitrageLog("Kraken", "Bitstamp", "0.10", START.plusDays(1)));
+
+        assertEquals(1, tradeHistoryStore.exportCsv(writer, null, START.plusHours(1).toInstant()));
+
+        String[] lines = writer.toString().split("\n");
+
+        assertEquals(2, lines.length);
+        assertEquals(arbitrageLog.csvHeaders().trim(), lines[0]);
+        assertTrue(lines[1].startsWith("\"Bitstamp\",\"0.00800000\""));
+        assertTrue(lines[1].endsWith("\"2021-03-01T00:00Z\""));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmptyBucket() {
+        HistoryQuery.HistoryQueryBuilder.builder()
+            .withBucket(Duration.ZERO)
+            .build();
+    }
+
+    private TradeHistoryStore open() {
+        TradeHistoryStore store = new TradeHistoryStore(directory, 4);
+
+        store.open();
+
+        return store;
+    }
+
+    private static ArbitrageLog buildArbitrageLog(String longExchange, String shortExchange, String profit, OffsetDateTime timestamp) {
+        return ArbitrageLog.ArbitrageLogBuilder.builder()
+            .withShortExchange(shortExchange)
+            .withShortCurrency("BTC/USD")
+            .withShortSpread(new BigDecimal("0.008"))
+            .withShortSlip(new BigDecimal("-0.001"))
+            .withShortAmount(BigDecimal.valueOf(10))
+            .withLongExchange(longExchange)
+            .withLongCurrency("BTC/USD")
+            .withLongSpread(new BigDecimal("-0.003"))
+            .withLongSlip(new BigDecimal("-0.001"))
+            .withLongAmount(BigDecimal.valueOf(10))
+            .withProfit(new BigDecimal(profit))
+            .withTimestamp(timestamp)
+            .build();
+    }
+}
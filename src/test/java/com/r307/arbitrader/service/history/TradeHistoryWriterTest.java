@@ -0,0 +1,198 @@
+package com.r307.arbitrader.service.history;
+
+import com.r307.arbitrader.config.HistoryConfiguration;
+import com.r307.arbitrader.config.HistoryFlush;
+import com.r307.arbitrader.service.model.ArbitrageLog;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.OffsetDateTime;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class TradeHistoryWriterTest {
+    private static final int CSV_NUMBER_OF_COLUMNS = 12;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private HistoryConfiguration historyConfiguration;
+    private TradeHistoryStore tradeHistoryStore;
+    private File file;
+    private TradeHistoryWriter tradeHistoryWriter;
+
+    @Before
+    public void setUp() {
+        historyConfiguration = new HistoryConfiguration();
+        tradeHistoryStore = mock(TradeHistoryStore.class);
+        file = new File(temporaryFolder.getRoot(), "arbitrader-arbitrage-history.csv");
+    }
+
+    @After
+    public void tearDown() {
+        if (tradeHistoryWriter != null) {
+            tradeHistoryWriter.stop();
+        }
+    }
+
+    @Test
+    public void testWriteCsv() throws IOException {
+        start();
+
+        tradeHistoryWriter.write(buildArbitrageLog());
+        tradeHistoryWriter.stop();
+
+        List<String> lines = readLines(file);
+        assertEquals(2, lines.size());
+
+        // Get headers
+        String[] split = lines.get(0).split("\",\"");
+        assertEquals("Header size does not match number of columns", CSV_NUMBER_OF_COLUMNS, split.length);
+
+        // Assert headers does not end with a comma
+        final String lastColumn = split[split.length - 1];
+        assertFalse(lastColumn.endsWith(","));
+
+        // Append one line, with the file already there
+        start();
+
+        tradeHistoryWriter.write(buildArbitrageLog());
+        tradeHistoryWriter.stop();
+
+        lines = readLines(file);
+        assertEquals(3, lines.size());
+
+        split = lines.get(2).split("\",\"");
+        assertEquals("Number of elements (columns) per line does not match the number of columns", CSV_NUMBER_OF_COLUMNS, split.length);
+        assertEquals(1, tradeHistoryWriter.getWrittenCount());
+        verify(tradeHistoryStore, times(2)).append(any(ArbitrageLog.class));
+    }
+
+    @Test
+    public void testStoreFailureStillWritesCsv() throws IOException {
+        doThrow(new IOException("Boom!")).when(tradeHistoryStore).append(any(ArbitrageLog.class));
+        start();
+
+        tradeHistoryWriter.write(buildArbitrageLog());
+        tradeHistoryWriter.stop();
+
+        assertEquals(2, readLines(file).size());
+    }
+
+    @Test
+    public void testFlushInterval() throws IOException, InterruptedException {
+        historyConfiguration.setFlush(HistoryFlush.INTERVAL);
+        historyConfiguration.setFlushInterval(60000L);
+        start();
+
+        tradeHistoryWriter.write(buildArbitrageLog());
+
+        // nothing is written until the interval passes, or we stop
+        Thread.sleep(500);
+        assertEquals(0, tradeHistoryWriter.getQueueDepth());
+        assertEquals(0, file.length());
+        assertEquals(0, tradeHistoryWriter.getWrittenCount());
+
+        tradeHistoryWriter.stop();
+
+        assertEquals(2, readLines(file).size());
+        assertEquals(1, tradeHistoryWriter.getWrittenCount());
+    }
+
+    @Test
+    public void testWriteFailureCountsDropped() throws IOException {
+        // a directory where the file should be, so it can't be opened
+        Files.createDirectories(file.toPath());
+        start();
+
+        tradeHistoryWriter.write(buildArbitrageLog());
+        tradeHistoryWriter.stop();
+
+        assertEquals(0, tradeHistoryWriter.getWrittenCount());
+        assertEquals(1, tradeHistoryWriter.getDroppedCount());
+    }
+
+    @Test
+    public void testRotate() throws IOException {
+        final int rowSize = buildArbitrageLog().toCsv().getBytes(StandardCharsets.UTF_8).length;
+        final int headerSize = buildArbitrageLog().csvHeaders().getBytes(StandardCharsets.UTF_8).length;
+
+        // room for the headers and two rows in each file
+        historyConfiguration.setMaxFileSize((long) headerSize + rowSize * 2);
+        historyConfiguration.setMaxFiles(2);
+        start();
+
+        for (int i = 0; i < 7; i++) {
+            tradeHistoryWriter.write(buildArbitrageLog());
+        }
+
+        tradeHistoryWriter.stop();
+
+        File first = tradeHistoryWriter.getArchive(1);
+        File second = tradeHistoryWriter.getArchive(2);
+
+        assertEquals("arbitrader-arbitrage-history.1.csv", first.getName());
+        assertTrue(first.exists());
+        assertFalse(second.exists());
+
+        // every file starts with the headers
+        assertEquals(2, readLines(file).size());
+        assertEquals(3, readLines(first).size());
+        assertTrue(readLines(file).get(0).startsWith("\"shortExchange\""));
+        assertTrue(readLines(first).get(0).startsWith("\"shortExchange\""));
+    }
+
+    @Test
+    public void testQueueFull() {
+        historyConfiguration.setQueueSize(1);
+        tradeHistoryWriter = new TradeHistoryWriter(historyConfiguration, tradeHistoryStore, file);
+
+        // not started, so nothing takes trades off the queue
+        assertTrue(tradeHistoryWriter.write(buildArbitrageLog()));
+        assertFalse(tradeHistoryWriter.write(buildArbitrageLog()));
+        assertEquals(1, tradeHistoryWriter.getQueueDepth());
+        assertEquals(1, tradeHistoryWriter.getDroppedCount());
+    }
+
+    private void start() {
+        tradeHistoryWriter = new TradeHistoryWriter(historyConfiguration, tradeHistoryStore, file);
+        tradeHistoryWriter.start();
+    }
+
+    private static List<String> readLines(File file) throws IOException {
+        return Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+    }
+
+    private static ArbitrageLog buildArbitrageLog() {
+        return ArbitrageLog.ArbitrageLogBuilder.builder()
+            .withShortExchange("CoinbasePro")
+            .withShortCurrency("BTC/USD")
+            .withShortSpread(new BigDecimal("0.008"))
+            .withShortSlip(new BigDecimal("-0.001"))
+            .withShortAmount(BigDecimal.valueOf(10))
+            .withLongExchange("Bitstamp")
+            .withLongCurrency("BTC/USD")
+            .withLongSpread(new BigDecimal("-0.003"))
+            .withLongSlip(new BigDecimal("-0.001"))
+            .withLongAmount(BigDecimal.valueOf(10))
+            .withProfit(new BigDecimal("0.01"))
+            .withTimestamp(OffsetDateTime.parse("2021-03-01T12:00:00Z"))
+            .build();
+    }
+}
@@ -0,0 +1,186 @@
+package com.r307.arbitrader.service.journal;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.r307.arbitrader.config.JsonConfiguration;
+import com.r307.arbitrader.service.model.ActivePosition;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.knowm.xchange.currency.CurrencyPair;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TradeJournalTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final ObjectMapper objectMapper = new JsonConfiguration().objectMapper();
+    private final List<TradeJournal> journals = new ArrayList<>();
+
+    private File journalFile;
+    private File stateFile;
+
+    @Before
+    public void setUp() {
+        journalFile = new File(temporaryFolder.getRoot(), "arbitrader-journal.jsonl");
+        stateFile = new File(temporaryFolder.getRoot(), "arbitrader-state.json");
+    }
+
+    @After
+    public void tearDown() {
+        journals.forEach(TradeJournal::close);
+    }
+
+    @Test
+    public void testRecoverEmpty() throws IOException {
+        assertTrue(open().recover().isEmpty());
+        assertTrue(journalFile.exists());
+    }
+
+    @Test
+    public void testAppendAndRecover() throws IOException {
+        ActivePosition btc = buildPosition(CurrencyPair.BTC_USD);
+        ActivePosition eth = buildPosition(CurrencyPair.ETH_USD);
+        TradeJournal journal = open();
+
+        journal.recover();
+
+        assertTrue(journal.append(JournalEvent.Type.ENTRY_INTENT, btc));
+        btc.getLongTrade().setOrderId("long");
+        btc.getShortTrade().setOrderId("short");
+        assertTrue(journal.append(JournalEvent.Type.ENTRY_PLACED, btc));
+        assertTrue(journal.append(JournalEvent.Type.ENTRY_FILLED, btc));
+        assertTrue(journal.append(JournalEvent.Type.ENTRY_INTENT, eth));
+        assertTrue(journal.append(JournalEvent.Type.CANCELLED, eth));
+
+        journal.close();
+
+        Collection<ActivePosition> recovered = open().recover();
+
+        assertEquals(Collections.singletonList(btc), new ArrayList<>(recovered));
+    }
+
+    @Test
+    public void testRecoverCompacts() throws IOException {
+        ActivePosition position = buildPosition(CurrencyPair.BTC_USD);
+        TradeJournal journal = open();
+
+        journal.recover();
+        journal.append(JournalEvent.Type.ENTRY_PLACED, position);
+        journal.append(JournalEvent.Type.ENTRY_FILLED, position);
+        journal.append(JournalEvent.Type.EXIT_INTENT, position);
+        journal.close();
+
+        assertEquals(3, readLines().size());
+
+        open().recover();
+
+        assertEquals(1, readLines().size());
+    }
+
+    @Test
+    public void testClosedPositionIsGone() throws IOException {
+        ActivePosition position = buildPosition(CurrencyPair.BTC_USD);
+        TradeJournal journal = open();
+
+        journal.recover();
+        journal.append(JournalEvent.Type.ENTRY_FILLED, position);
+        journal.append(JournalEvent.Type.CLOSED, position);
+        journal.close();
+
+        assertTrue(open().recover().isEmpty());
+    }
+
+    @Test
+    public void testDropEntryIntent() throws IOException {
+        TradeJournal journal = open();
+
+        journal.recover();
+        journal.append(JournalEvent.Type.ENTRY_INTENT, buildPosition(CurrencyPair.BTC_USD));
+        journal.close();
+
+        // we can't know whether the orders were placed, so it isn't treated as open
+        assertTrue(open().recover().isEmpty());
+    }
+
+    @Test
+    public void testIgnoreTornWrite() throws IOException {
+        ActivePosition position = buildPosition(CurrencyPair.BTC_USD);
+        TradeJournal journal = open();
+
+        journal.recover();
+        journal.append(JournalEvent.Type.ENTRY_FILLED, position);
+        journal.close();
+
+        Files.write(journalFile.toPath(), "{\"sequence\":2,\"ty".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        assertEquals(Collections.singletonList(position), new ArrayList<>(open().recover()));
+    }
+
+    @Test
+    public void testMigrateStateFile() throws IOException {
+        ActivePosition position = buildPosition(CurrencyPair.BTC_USD);
+
+        Files.write(stateFile.toPath(), objectMapper.writeValueAsBytes(Collections.singletonList(position)));
+
+        assertEquals(Collections.singletonList(position), new ArrayList<>(open().recover()));
+        assertFalse(stateFile.exists());
+        assertEquals(1, readLines().size());
+    }
+
+    @Test
+    public void testAppendBeforeRecover() {
+        assertFalse(open().append(JournalEvent.Type.ENTRY_INTENT, buildPosition(CurrencyPair.BTC_USD)));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testRecoverTwice() throws IOException {
+        TradeJournal journal = open();
+
+        journal.recover();
+        journal.recover();
+    }
+
+    private TradeJournal open() {
+        TradeJournal journal = new TradeJournal(objectMapper, journalFile, stateFile);
+
+        journals.add(journal);
+
+        return journal;
+    }
+
+    private List<String> readLines() throws IOException {
+        return Files.readAllLines(journalFile.toPath(), StandardCharsets.UTF_8);
+    }
+
+    private static ActivePosition buildPosition(CurrencyPair currencyPair) {
+        ActivePosition position = new ActivePosition();
+
+        position.setCurrencyPair(currencyPair);
+        position.setExitTarget(new BigDecimal("0.003"));
+        position.setEntryBalance(new BigDecimal("100.00"));
+        position.getLongTrade().setExchange("Long");
+        position.getLongTrade().setVolume(new BigDecimal("0.1"));
+        position.getLongTrade().setEntry(new BigDecimal("9000.00"));
+        position.getShortTrade().setExchange("Short");
+        position.getShortTrade().setVolume(new BigDecimal("0.1"));
+        position.getShortTrade().setEntry(new BigDecimal("9100.00"));
+
+        return position;
+    }
+}
@@ -0,0 +1,62 @@
+package com.r307.arbitrader.service.latency;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class LatencyHistogramTest {
+    private LatencyHistogram histogram;
+
+    @Before
+    public void setUp() {
+        histogram = new LatencyHistogram();
+    }
+
+    @Test
+    public void testBucket() {
+        assertEquals(0, LatencyHistogram.bucket(0));
+        assertEquals(1, LatencyHistogram.bucket(1));
+        assertEquals(2, LatencyHistogram.bucket(2));
+        assertEquals(2, LatencyHistogram.bucket(3));
+        assertEquals(3, LatencyHistogram.bucket(4));
+        assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.bucket(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testUpperBound() {
+        assertEquals(0, LatencyHistogram.upperBound(0));
+        assertEquals(1, LatencyHistogram.upperBound(1));
+        assertEquals(3, LatencyHistogram.upperBound(2));
+        assertEquals(7, LatencyHistogram.upperBound(3));
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.upperBound(LatencyHistogram.BUCKETS - 1));
+    }
+
+    @Test
+    public void testPercentile() {
+        for (int i = 0; i < 99; i++) {
+            histogram.record(100); // 64-127 bucket
+        }
+
+        histogram.record(5000); // 4096-8191 bucket
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(5000, histogram.getMax());
+        assertEquals(127, histogram.getPercentile(50));
+        assertEquals(127, histogram.getPercentile(99));
+        assertEquals(5000, histogram.getPercentile(100)); // capped at the maximum
+    }
+
+    @Test
+    public void testEmpty() {
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(50));
+    }
+
+    @Test
+    public void testIgnoreNegative() {
+        histogram.record(-1);
+
+        assertEquals(0, histogram.getCount());
+    }
+}
@@ -0,0 +1,88 @@
+package com.r307.arbitrader.service.latency;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyTraceTest {
+    private LatencyTrace trace;
+
+    @Before
+    public void setUp() {
+        trace = new LatencyTrace(1000L, 1250L, System.nanoTime());
+    }
+
+    @Test
+    public void testReceived() {
+        assertTrue(trace.isMarked(LatencyStage.RECEIVED));
+        assertEquals(250000L, trace.getLatency(LatencyStage.RECEIVED));
+    }
+
+    @Test
+    public void testReceivedClockSkew() {
+        LatencyTrace skewed = new LatencyTrace(2000L, 1250L, System.nanoTime());
+
+        assertEquals(0L, skewed.getLatency(LatencyStage.RECEIVED));
+    }
+
+    @Test
+    public void testReceivedNoTimestamp() {
+        LatencyTrace noTimestamp = new LatencyTrace(LatencyTrace.NO_TIME, 1250L, System.nanoTime());
+
+        assertEquals(-1L, noTimestamp.getLatency(LatencyStage.RECEIVED));
+    }
+
+    @Test
+    public void testUnmarked() {
+        assertFalse(trace.isMarked(LatencyStage.SPREAD));
+        assertEquals(-1L, trace.getLatency(LatencyStage.SPREAD));
+    }
+
+    @Test
+    public void testSkippedStage() {
+        // nothing was stored, so the time before DEQUEUED is measured from RECEIVED
+        trace.mark(LatencyStage.DEQUEUED);
+
+        assertTrue(trace.getLatency(LatencyStage.DEQUEUED) >= 0);
+        assertEquals(trace.getLatency(LatencyStage.DEQUEUED), trace.getTotalLatency());
+    }
+
+    @Test
+    public void testMarkIfAbsent() {
+        trace.mark(LatencyStage.DECISION);
+
+        LatencyTrace copy = trace.copy();
+
+        trace.markIfAbsent(LatencyStage.DECISION);
+
+        assertEquals(copy.getLatency(LatencyStage.DECISION), trace.getLatency(LatencyStage.DECISION));
+    }
+
+    @Test
+    public void testReset() {
+        trace.mark(LatencyStage.DEQUEUED);
+        trace.mark(LatencyStage.SPREAD);
+        trace.mark(LatencyStage.DECISION);
+        trace.reset(LatencyStage.DEQUEUED);
+
+        assertTrue(trace.isMarked(LatencyStage.DEQUEUED));
+        assertFalse(trace.isMarked(LatencyStage.SPREAD));
+        assertFalse(trace.isMarked(LatencyStage.DECISION));
+    }
+
+    @Test
+    public void testCopy() {
+        trace.mark(LatencyStage.DEQUEUED);
+
+        LatencyTrace copy = trace.copy();
+
+        copy.mark(LatencyStage.SPREAD);
+
+        assertTrue(copy.isMarked(LatencyStage.DEQUEUED));
+        assertEquals(250000L, copy.getLatency(LatencyStage.RECEIVED));
+        assertFalse(trace.isMarked(LatencyStage.SPREAD));
+    }
+}
@@ -0,0 +1,64 @@
+package com.r307.arbitrader.service.metrics;
+
+import com.r307.arbitrader.config.MetricsConfiguration;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MetricsServerTest {
+    private MetricsConfiguration metricsConfiguration;
+    private PrometheusMeterRegistry meterRegistry;
+    private MetricsServer metricsServer;
+
+    @Before
+    public void setUp() {
+        metricsConfiguration = new MetricsConfiguration();
+        metricsConfiguration.setPort(0); // any free port
+
+        meterRegistry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+        metricsServer = new MetricsServer(metricsConfiguration, meterRegistry);
+    }
+
+    @After
+    public void tearDown() {
+        metricsServer.stop();
+    }
+
+    @Test
+    public void testScrape() throws IOException {
+        Counter.builder("arbitrader.test").register(meterRegistry).increment();
+
+        metricsServer.start();
+
+        HttpURLConnection connection = (HttpURLConnection) new URL(
+            "http://127.0.0.1:" + metricsServer.getPort() + MetricsServer.PATH).openConnection();
+
+        assertEquals(200, connection.getResponseCode());
+        assertTrue(connection.getContentType().startsWith("text/plain"));
+
+        try (InputStream in = connection.getInputStream()) {
+            assertTrue(IOUtils.toString(in, StandardCharsets.UTF_8).contains("arbitrader_test_total 1.0"));
+        }
+    }
+
+    @Test
+    public void testInactive() {
+        metricsConfiguration.setActive(false);
+        metricsServer.start();
+
+        assertEquals(-1, metricsServer.getPort());
+    }
+}
@@ -0,0 +1,61 @@
+package com.r307.arbitrader.service.metrics;
+
+import com.r307.arbitrader.ExchangeBuilder;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.knowm.xchange.Exchange;
+import org.knowm.xchange.currency.CurrencyPair;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+public class MetricsServiceTest {
+    private Exchange exchange;
+    private SimpleMeterRegistry meterRegistry;
+    private MetricsService metricsService;
+
+    @Before
+    public void setUp() throws IOException {
+        exchange = new ExchangeBuilder("CrazyCoinz", CurrencyPair.BTC_USD).build();
+        meterRegistry = new SimpleMeterRegistry();
+        metricsService = new MetricsService(meterRegistry);
+    }
+
+    @Test
+    public void testCountTicker() {
+        metricsService.countTicker(exchange);
+        metricsService.countTicker(exchange);
+
+        assertEquals(2.0, meterRegistry.get(MetricsService.TICKERS)
+            .tag("exchange", "CrazyCoinz")
+            .counter()
+            .count(), 0.0);
+    }
+
+    @Test
+    public void testRecordTickerFetch() {
+        metricsService.recordTickerFetch(exchange, "SingleCallTickerStrategy", TimeUnit.MILLISECONDS.toNanos(250));
+
+        Timer timer = meterRegistry.get(MetricsService.TICKER_FETCH)
+            .tag("exchange", "CrazyCoinz")
+            .tag("strategy", "SingleCallTickerStrategy")
+            .timer();
+
+        assertEquals(1, timer.count());
+        assertEquals(250.0, timer.totalTime(TimeUnit.MILLISECONDS), 0.0);
+    }
+
+    @Test
+    public void testRecordOrder() {
+        metricsService.recordOrder(exchange, TimeUnit.MILLISECONDS.toNanos(100), false);
+        metricsService.recordOrder(exchange, TimeUnit.MILLISECONDS.toNanos(100), false);
+        metricsService.recordOrder(exchange, TimeUnit.MILLISECONDS.toNanos(500), true);
+
+        assertEquals(2, meterRegistry.get(MetricsService.ORDERS).tag("outcome", "placed").timer().count());
+        assertEquals(1, meterRegistry.get(MetricsService.ORDERS).tag("outcome", "failed").timer().count());
+    }
+}
@@ -0,0 +1,244 @@
+package com.r307.arbitrader.service.recorder;
+
+import com.r307.arbitrader.ExchangeBuilder;
+import com.r307.arbitrader.FixedPoint;
+import com.r307.arbitrader.config.RecorderConfiguration;
+import com.r307.arbitrader.service.ticker.DepthBook;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.knowm.xchange.Exchange;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.Order;
+import org.knowm.xchange.dto.marketdata.OrderBook;
+import org.knowm.xchange.dto.marketdata.Ticker;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MarketDataRecorderTest {
+    private static final String EXCHANGE_NAME = "CrazyCoinz";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private RecorderConfiguration recorderConfiguration;
+    private Exchange exchange;
+    private File streamDirectory;
+    private MarketDataRecorder marketDataRecorder;
+
+    @Before
+    public void setUp() throws IOException {
+        recorderConfiguration = new RecorderConfiguration();
+        recorderConfiguration.setEnabled(true);
+        recorderConfiguration.setChunkSize(3);
+
+        exchange = new ExchangeBuilder(EXCHANGE_NAME, CurrencyPair.BTC_USD).build();
+        streamDirectory = MarketDataRecorder.getStreamDirectory(temporaryFolder.getRoot(), EXCHANGE_NAME, CurrencyPair.BTC_USD);
+    }
+
+    @After
+    public void tearDown() {
+        if (marketDataRecorder != null) {
+            marketDataRecorder.stop();
+        }
+    }
+
+    @Test
+    public void testRecordTickers() throws IOException {
+        start();
+
+        for (int i = 0; i < 10; i++) {
+            marketDataRecorder.recordTicker(exchange, buildTicker(i));
+        }
+
+        marketDataRecorder.stop();
+
+        assertEquals(10, marketDataRecorder.getRecordedCount());
+
+        List<MarketDataRecord> records = readAll(new MarketDataReader(streamDirectory, EXCHANGE_NAME, CurrencyPair.BTC_USD));
+
+        assertEquals(10, records.size());
+
+        for (int i = 0; i < 10; i++) {
+            MarketDataRecord record = records.get(i);
+
+            assertEquals(MarketDataRecord.Type.TICKER, record.getType());
+            assertEquals(EXCHANGE_NAME, record.getExchange());
+            assertEquals(CurrencyPair.BTC_USD, record.getCurrencyPair());
+            assertEquals(1000L + i, record.getExchangeTime());
+            assertEquals(FixedPoint.toFixed(new BigDecimal("100.00").add(BigDecimal.valueOf(i))), record.getBid());
+            assertEquals(0, new BigDecimal("101").add(BigDecimal.valueOf(i)).compareTo(record.toTicker().getAsk()));
+        }
+    }
+
+    @Test
+    public void testRecordOrderBooks() throws IOException {
+        recorderConfiguration.setOrderBooks(true);
+        recorderConfiguration.setOrderBookDepth(5);
+        start();
+
+        DepthBook depthBook = new DepthBook(new OrderBook(
+            new Date(),
+            ExchangeBuilder.generateOrders(CurrencyPair.BTC_USD, Order.OrderType.ASK),
+            ExchangeBuilder.generateOrders(CurrencyPair.BTC_USD, Order.OrderType.BID)));
+
+        marketDataRecorder.recordOrderBook(exchange, CurrencyPair.BTC_USD, depthBook);
+        marketDataRecorder.stop();
+
+        List<MarketDataRecord> records = readAll(new MarketDataReader(streamDirectory, EXCHANGE_NAME, CurrencyPair.BTC_USD));
+
+        assertEquals(1, records.size());
+        assertEquals(MarketDataRecord.Type.ORDER_BOOK, records.get(0).getType());
+
+        OrderBook orderBook = records.get(0).toOrderBook();
+
+        assertEquals(5, orderBook.getAsks().size());
+        assertEquals(5, orderBook.getBids().size());
+        assertEquals(0, new BigDecimal("100.000").compareTo(orderBook.getAsks().get(0).getLimitPrice()));
+        assertEquals(0, new BigDecimal("100.099").compareTo(orderBook.getBids().get(0).getLimitPrice()));
+    }
+
+    @Test
+    public void testOrderBooksOff() {
+        start();
+
+        marketDataRecorder.recordOrderBook(exchange, CurrencyPair.BTC_USD, new DepthBook());
+        marketDataRecorder.stop();
+
+        assertEquals(0, marketDataRecorder.getRecordedCount());
+    }
+
+    @Test
+    public void testDisabled() {
+        recorderConfiguration.setEnabled(false);
+        start();
+
+        marketDataRecorder.recordTicker(exchange, buildTicker(0));
+        marketDataRecorder.stop();
+
+        assertEquals(0, marketDataRecorder.getQueueDepth());
+        assertFalse(streamDirectory.exists());
+    }
+
+    @Test
+    public void testQueueFull() {
+        recorderConfiguration.setQueueSize(1);
+        marketDataRecorder = new MarketDataRecorder(recorderConfiguration, temporaryFolder.getRoot());
+
+        // not started, so nothing takes records off the queue
+        marketDataRecorder.recordTicker(exchange, buildTicker(0));
+        marketDataRecorder.recordTicker(exchange, buildTicker(1));
+
+        assertEquals(1, marketDataRecorder.getQueueDepth());
+        assertEquals(1, marketDataRecorder.getDroppedCount());
+    }
+
+    @Test
+    public void testWriteFailureCountsDropped() throws IOException {
+        // a file where the exchange's directory should be, so nothing can be written
+        Files.write(streamDirectory.getParentFile().toPath(), new byte[0]);
+        start();
+
+        for (int i = 0; i < 10; i++) {
+            marketDataRecorder.recordTicker(exchange, buildTicker(i));
+        }
+
+        marketDataRecorder.stop();
+
+        assertEquals(0, marketDataRecorder.getRecordedCount());
+        assertEquals(10, marketDataRecorder.getDroppedCount());
+    }
+
+    @Test
+    public void testSkipToTime() throws IOException {
+        start();
+
+        for (int i = 0; i < 10; i++) {
+            marketDataRecorder.recordTicker(exchange, buildTicker(i));
+        }
+
+        marketDataRecorder.stop();
+
+        List<MarketDataRecord> all = readAll(new MarketDataReader(streamDirectory, EXCHANGE_NAME, CurrencyPair.BTC_USD));
+        long from = all.get(4).getTime();
+        List<MarketDataRecord> later = readAll(new MarketDataReader(streamDirectory, EXCHANGE_NAME, CurrencyPair.BTC_USD, from));
+
+        assertTrue(later.stream().allMatch(record -> record.getTime() >= from));
+        assertEquals(all.stream().filter(record -> record.getTime() >= from).count(), later.size());
+    }
+
+    @Test
+    public void testTornChunk() throws IOException {
+        start();
+
+        for (int i = 0; i < 3; i++) {
+            marketDataRecorder.recordTicker(exchange, buildTicker(i));
+        }
+
+        marketDataRecorder.stop();
+
+        File[] files = streamDirectory.listFiles();
+
+        assertEquals(1, files.length);
+
+        // the start of a chunk that never got finished
+        Files.write(files[0].toPath(), "ARBM".getBytes(StandardCharsets.US_ASCII), StandardOpenOption.APPEND);
+
+        assertEquals(3, readAll(new MarketDataReader(streamDirectory, EXCHANGE_NAME, CurrencyPair.BTC_USD)).size());
+
+        // recording again cuts off the broken chunk before adding to the file
+        start();
+        marketDataRecorder.recordTicker(exchange, buildTicker(3));
+        marketDataRecorder.stop();
+
+        assertEquals(4, readAll(new MarketDataReader(streamDirectory, EXCHANGE_NAME, CurrencyPair.BTC_USD)).size());
+    }
+
+    private void start() {
+        marketDataRecorder = new MarketDataRecorder(recorderConfiguration, temporaryFolder.getRoot());
+        marketDataRecorder.start();
+    }
+
+    private static List<MarketDataRecord> readAll(MarketDataReader reader) throws IOException {
+        List<MarketDataRecord> records = new ArrayList<>();
+
+        try {
+            MarketDataRecord record;
+
+            while ((record = reader.next()) != null) {
+                records.add(record);
+            }
+        } finally {
+            reader.close();
+        }
+
+        assertNull(reader.next());
+
+        return records;
+    }
+
+    private static Ticker buildTicker(int i) {
+        return new Ticker.Builder()
+            .instrument(CurrencyPair.BTC_USD)
+            .bid(new BigDecimal("100.00").add(BigDecimal.valueOf(i)))
+            .ask(new BigDecimal("101.00").add(BigDecimal.valueOf(i)))
+            .last(new BigDecimal("100.50").add(BigDecimal.valueOf(i)))
+            .timestamp(new Date(1000L + i))
+            .build();
+    }
+}
@@ -0,0 +1,253 @@
+package com.r307.arbitrader.service.replay;
+
+import com.r307.arbitrader.ExchangeBuilder;
+import com.r307.arbitrader.config.ExchangeConfiguration;
+import com.r307.arbitrader.config.FeeComputation;
+import com.r307.arbitrader.config.JsonConfiguration;
+import com.r307.arbitrader.config.PaperConfiguration;
+import com.r307.arbitrader.config.RecorderConfiguration;
+import com.r307.arbitrader.config.ReplayConfiguration;
+import com.r307.arbitrader.config.TradingConfiguration;
+import com.r307.arbitrader.service.ExchangeService;
+import com.r307.arbitrader.service.recorder.MarketDataRecorder;
+import com.r307.arbitrader.service.ticker.DepthBook;
+import com.r307.arbitrader.service.ticker.TickerStrategyProvider;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.knowm.xchange.Exchange;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.Order;
+import org.knowm.xchange.dto.marketdata.OrderBook;
+import org.knowm.xchange.dto.marketdata.Ticker;
+import org.knowm.xchange.dto.trade.LimitOrder;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+public class ReplayEngineTest {
+    private static final long START = 1614600000000L; // 2021-03-01T12:00:00Z
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private TradingConfiguration tradingConfiguration;
+    private ReplayConfiguration replayConfiguration;
+    private Exchange longExchange;
+    private Exchange shortExchange;
+    private ReplayEngine replayEngine;
+
+    @Before
+    public void setUp() throws IOException {
+        tradingConfiguration = new TradingConfiguration();
+        tradingConfiguration.setEntrySpread(new BigDecimal("0.005"));
+        tradingConfiguration.setExitTarget(new BigDecimal("0.003"));
+
+        replayConfiguration = new ReplayConfiguration();
+        replayConfiguration.setDirectory(new File(temporaryFolder.getRoot(), "market-data").getPath());
+        replayConfiguration.setOutput(new File(temporaryFolder.getRoot(), "replay").getPath());
+
+        longExchange = buildExchange("Long");
+        shortExchange = buildExchange("Short");
+
+        replayEngine = new ReplayEngine(tradingConfiguration, replayConfiguration,
+            new JsonConfiguration().objectMapper(), mock(TickerStrategyProvider.class));
+    }
+
+    @Test
+    public void testEntryAndExit() throws IOException {
+        MarketDataRecorder marketDataRecorder = startRecording();
+
+        marketDataRecorder.recordTicker(longExchange, buildTicker(0, "100.00", "100.10"));
+        marketDataRecorder.recordTicker(shortExchange, buildTicker(0, "100.00", "100.10"));
+        marketDataRecorder.recordTicker(shortExchange, buildTicker(1, "103.00", "103.10")); // the spread opens up
+        marketDataRecorder.recordTicker(shortExchange, buildTicker(2, "100.00", "100.10")); // and closes again
+        marketDataRecorder.stop();
+
+        ReplayReport report = replayEngine.run(Arrays.asList(longExchange, shortExchange));
+
+        assertEquals(4, report.getTickerCount());
+        assertEquals(0, report.getErrorCount());
+        assertEquals(1, report.getTradeCount());
+        assertEquals(1, report.getWinCount());
+        assertEquals(0, report.getOpenPositionCount());
+        assertEquals(0, report.getUnfilledOrderCount());
+        assertTrue(report.getTotalProfit().compareTo(BigDecimal.ZERO) > 0);
+        assertTrue(report.getEndingBalance().compareTo(report.getStartingBalance()) > 0);
+
+        List<String> history = Files.readAllLines(
+            new File(replayConfiguration.getOutput(), "arbitrader-arbitrage-history.csv").toPath(),
+            StandardCharsets.UTF_8);
+
+        assertEquals(2, history.size());
+    }
+
+    @Test
+    public void testIgnoresAutoFill() throws IOException {
+        PaperConfiguration paperConfiguration = new PaperConfiguration();
+
+        paperConfiguration.setAutoFill(true);
+        tradingConfiguration.setPaper(paperConfiguration);
+
+        // fees computed in the client make the long order a little bigger than the volume it was priced for
+        ExchangeConfiguration longMetadata = (ExchangeConfiguration) longExchange.getExchangeSpecification()
+            .getExchangeSpecificParametersItem(ExchangeService.METADATA_KEY);
+
+        longMetadata.setFeeComputation(FeeComputation.CLIENT);
+        longMetadata.setFeeOverride(new BigDecimal("0.01"));
+
+        MarketDataRecorder marketDataRecorder = startRecording(true);
+
+        // just enough to price the long order at the ask, but not enough to fill it once the fees are added
+        marketDataRecorder.recordOrderBook(longExchange, CurrencyPair.BTC_USD,
+            buildDepthBook("100.00", "100.10", new BigDecimal("0.9")));
+        marketDataRecorder.recordOrderBook(shortExchange, CurrencyPair.BTC_USD,
+            buildDepthBook("103.00", "103.10", BigDecimal.TEN));
+        marketDataRecorder.recordTicker(longExchange, buildTicker(0, "100.00", "100.10"));
+        marketDataRecorder.recordTicker(shortExchange, buildTicker(0, "100.00", "100.10"));
+        marketDataRecorder.recordTicker(shortExchange, buildTicker(1, "103.00", "103.10"));
+        marketDataRecorder.stop();
+
+        ReplayReport report = replayEngine.run(Arrays.asList(longExchange, shortExchange));
+
+        assertEquals(0, report.getErrorCount());
+        assertEquals(1, report.getUnfilledOrderCount());
+    }
+
+    @Test
+    public void testDeterministic() throws IOException {
+        Exchange thirdExchange = buildExchange("Third");
+        MarketDataRecorder marketDataRecorder = startRecording();
+
+        marketDataRecorder.recordTicker(longExchange, buildTicker(0, "100.00", "100.10"));
+        marketDataRecorder.recordTicker(shortExchange, buildTicker(0, "100.00", "100.10"));
+        marketDataRecorder.recordTicker(thirdExchange, buildTicker(0, "100.00", "100.10"));
+        marketDataRecorder.recordTicker(longExchange, buildTicker(1, "96.90", "97.00")); // two combinations want this
+        marketDataRecorder.recordTicker(longExchange, buildTicker(2, "100.00", "100.10"));
+        marketDataRecorder.stop();
+
+        List<Exchange> exchanges = Arrays.asList(longExchange, shortExchange, thirdExchange);
+        List<String> expected = replayEngine.run(exchanges).report();
+
+        assertTrue(expected.stream().anyMatch(line -> line.startsWith("Profit Long")));
+
+        // a random starting place would pick the same combination every time only once in a while
+        for (int i = 0; i < 4; i++) {
+            List<String> actual = replayEngine.run(exchanges).report();
+
+            // the first line has how long the replay took
+            assertEquals(expected.subList(1, expected.size()), actual.subList(1, actual.size()));
+        }
+    }
+
+    @Test
+    public void testOrderBookLead() throws IOException, InterruptedException {
+        MarketDataRecorder marketDataRecorder = startRecording(true);
+
+        marketDataRecorder.recordTicker(longExchange, buildTicker(0, "100.00", "100.10"));
+        marketDataRecorder.recordTicker(shortExchange, buildTicker(0, "100.00", "100.10"));
+        marketDataRecorder.recordTicker(shortExchange, buildTicker(1, "103.00", "103.10"));
+
+        // the order books we looked at to price the trade arrive a little after the ticker, like they do live
+        Thread.sleep(10);
+        marketDataRecorder.recordOrderBook(longExchange, CurrencyPair.BTC_USD,
+            buildDepthBook("100.00", "100.10", BigDecimal.TEN));
+        marketDataRecorder.recordOrderBook(shortExchange, CurrencyPair.BTC_USD,
+            buildDepthBook("103.00", "103.10", BigDecimal.TEN));
+        marketDataRecorder.stop();
+
+        ReplayReport report = replayEngine.run(Arrays.asList(longExchange, shortExchange));
+
+        assertEquals(2, report.getOrderBookCount());
+        assertEquals(0, report.getEarlyOrderBookTradeCount());
+
+        replayConfiguration.setOrderBookLead(1000L);
+        report = replayEngine.run(Arrays.asList(longExchange, shortExchange));
+
+        assertEquals(2, report.getOrderBookCount());
+        assertEquals(1, report.getEarlyOrderBookTradeCount());
+    }
+
+    @Test
+    public void testNoTrade() throws IOException {
+        MarketDataRecorder marketDataRecorder = startRecording();
+
+        marketDataRecorder.recordTicker(longExchange, buildTicker(0, "100.00", "100.10"));
+        marketDataRecorder.recordTicker(shortExchange, buildTicker(0, "100.00", "100.10"));
+        marketDataRecorder.recordTicker(shortExchange, buildTicker(1, "100.20", "100.30"));
+        marketDataRecorder.stop();
+
+        ReplayReport report = replayEngine.run(Arrays.asList(longExchange, shortExchange));
+
+        assertEquals(3, report.getTickerCount());
+        assertEquals(0, report.getTradeCount());
+        assertEquals(0, report.getStartingBalance().compareTo(report.getEndingBalance()));
+    }
+
+    @Test
+    public void testNoMarketData() throws IOException {
+        ReplayReport report = replayEngine.run(Arrays.asList(longExchange, shortExchange));
+
+        assertEquals(0, report.getTickerCount());
+        assertEquals(Collections.singletonList("Replay found no market data to replay"), report.report());
+    }
+
+    private MarketDataRecorder startRecording() {
+        return startRecording(false);
+    }
+
+    private MarketDataRecorder startRecording(boolean isOrderBooks) {
+        RecorderConfiguration recorderConfiguration = new RecorderConfiguration();
+
+        recorderConfiguration.setEnabled(true);
+        recorderConfiguration.setOrderBooks(isOrderBooks);
+
+        MarketDataRecorder marketDataRecorder = new MarketDataRecorder(recorderConfiguration,
+            new File(replayConfiguration.getDirectory()));
+
+        marketDataRecorder.start();
+
+        return marketDataRecorder;
+    }
+
+    private static Exchange buildExchange(String name) throws IOException {
+        return new ExchangeBuilder(name, CurrencyPair.BTC_USD)
+            .withTickers(true, Collections.singletonList(CurrencyPair.BTC_USD))
+            .withExchangeMetaData()
+            .withMarginSupported(true)
+            .build();
+    }
+
+    // one level on each side
+    private static DepthBook buildDepthBook(String bid, String ask, BigDecimal volume) {
+        return new DepthBook(new OrderBook(
+            new Date(),
+            Collections.singletonList(new LimitOrder(Order.OrderType.ASK, volume, CurrencyPair.BTC_USD, null, null,
+                new BigDecimal(ask))),
+            Collections.singletonList(new LimitOrder(Order.OrderType.BID, volume, CurrencyPair.BTC_USD, null, null,
+                new BigDecimal(bid)))));
+    }
+
+    // tickers a second apart, so a newer one is never mistaken for an older one
+    private static Ticker buildTicker(int second, String bid, String ask) {
+        return new Ticker.Builder()
+            .currencyPair(CurrencyPair.BTC_USD)
+            .bid(new BigDecimal(bid))
+            .ask(new BigDecimal(ask))
+            .last(new BigDecimal(bid))
+            .timestamp(new Date(START + second * 1000L))
+            .build();
+    }
+}
@@ -0,0 +1,158 @@
+package com.r307.arbitrader.service.ticker;
+
+import com.r307.arbitrader.ExchangeBuilder;
+import com.r307.arbitrader.FixedPoint;
+import org.junit.Before;
+import org.junit.Test;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.Order;
+import org.knowm.xchange.dto.marketdata.OrderBook;
+import org.knowm.xchange.dto.trade.LimitOrder;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+
+import static com.r307.arbitrader.FixedPoint.NO_VALUE;
+import static com.r307.arbitrader.FixedPoint.toFixed;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class DepthBookTest {
+    private DepthBook depthBook;
+
+    @Before
+    public void setUp() {
+        // 100 levels of 10 each, asks from 100.000 going up and bids from 100.099 going down
+        depthBook = new DepthBook(new OrderBook(
+            new Date(),
+            ExchangeBuilder.generateOrders(CurrencyPair.BTC_USD, Order.OrderType.ASK),
+            ExchangeBuilder.generateOrders(CurrencyPair.BTC_USD, Order.OrderType.BID)));
+    }
+
+    @Test
+    public void testGetLevels() {
+        long[] prices = new long[3];
+        long[] quantities = new long[3];
+
+        assertEquals(3, depthBook.getLevels(Order.OrderType.BID, prices, quantities));
+        assertEquals(toFixed(new BigDecimal("100.099")), prices[0]);
+        assertEquals(toFixed(new BigDecimal("100.097")), prices[2]);
+        assertEquals(toFixed(BigDecimal.TEN), quantities[0]);
+
+        assertEquals(0, new DepthBook().getLevels(Order.OrderType.ASK, prices, quantities));
+    }
+
+    @Test
+    public void testLimitPrice() {
+        assertEquals(toFixed(new BigDecimal("100.000")), depthBook.getLimitPrice(Order.OrderType.ASK, toFixed(BigDecimal.ONE)));
+        assertEquals(toFixed(new BigDecimal("100.001")), depthBook.getLimitPrice(Order.OrderType.ASK, toFixed(BigDecimal.TEN)));
+        assertEquals(toFixed(new BigDecimal("100.098")), depthBook.getLimitPrice(Order.OrderType.BID, toFixed(new BigDecimal("11"))));
+        assertEquals(NO_VALUE, depthBook.getLimitPrice(Order.OrderType.ASK, toFixed(new BigDecimal("1000"))));
+    }
+
+    @Test
+    public void testAveragePrice() {
+        // 10 at 100.000 and 5 at 100.001
+        assertEquals(toFixed(new BigDecimal("100.00033333")), depthBook.getAveragePrice(Order.OrderType.ASK, toFixed(new BigDecimal("15"))));
+        assertEquals(toFixed(new BigDecimal("100.099")), depthBook.getAveragePrice(Order.OrderType.BID, toFixed(BigDecimal.TEN)));
+        assertEquals(NO_VALUE, depthBook.getAveragePrice(Order.OrderType.BID, toFixed(new BigDecimal("1000.00000001"))));
+        assertEquals(NO_VALUE, depthBook.getAveragePrice(Order.OrderType.BID, 0L));
+    }
+
+    @Test
+    public void testUpdate() {
+        // a better ask, a bigger second level and the old best ask removed
+        depthBook.update(Order.OrderType.ASK, toFixed(new BigDecimal("99.999")), toFixed(BigDecimal.ONE));
+        depthBook.update(Order.OrderType.ASK, toFixed(new BigDecimal("100.001")), toFixed(new BigDecimal("20")));
+        depthBook.update(Order.OrderType.ASK, toFixed(new BigDecimal("100.000")), 0L);
+
+        assertEquals(100, depthBook.size(Order.OrderType.ASK));
+        assertEquals(toFixed(new BigDecimal("1001")), depthBook.getTotalVolume(Order.OrderType.ASK));
+        assertEquals(toFixed(new BigDecimal("99.999")), depthBook.getLimitPrice(Order.OrderType.ASK, toFixed(new BigDecimal("0.5"))));
+        assertEquals(toFixed(new BigDecimal("100.001")), depthBook.getLimitPrice(Order.OrderType.ASK, toFixed(new BigDecimal("20"))));
+        assertEquals(toFixed(new BigDecimal("100.002")), depthBook.getLimitPrice(Order.OrderType.ASK, toFixed(new BigDecimal("21"))));
+
+        // a new bid in the middle of the book
+        depthBook.update(Order.OrderType.BID, toFixed(new BigDecimal("100.0985")), toFixed(BigDecimal.ONE));
+
+        assertEquals(101, depthBook.size(Order.OrderType.BID));
+        assertEquals(toFixed(new BigDecimal("100.0985")), depthBook.getLimitPrice(Order.OrderType.BID, toFixed(BigDecimal.TEN)));
+    }
+
+    @Test
+    public void testCombinesLevels() {
+        DepthBook combined = new DepthBook(new OrderBook(
+            new Date(),
+            Arrays.asList(buildOrder(Order.OrderType.ASK, "1", "100"), buildOrder(Order.OrderType.ASK, "2", "100")),
+            Collections.emptyList()));
+
+        assertEquals(1, combined.size(Order.OrderType.ASK));
+        assertEquals(toFixed(new BigDecimal("3")), combined.getTotalVolume(Order.OrderType.ASK));
+    }
+
+    @Test
+    public void testMaximumVolume() {
+        DepthBook longBook = new DepthBook(new OrderBook(
+            new Date(),
+            Arrays.asList(buildOrder(Order.OrderType.ASK, "1", "100"), buildOrder(Order.OrderType.ASK, "2", "101")),
+            Collections.emptyList()));
+        DepthBook shortBook = new DepthBook(new OrderBook(
+            new Date(),
+            Collections.emptyList(),
+            Arrays.asList(buildOrder(Order.OrderType.BID, "1.5", "103"), buildOrder(Order.OrderType.BID, "5", "102"))));
+
+        // 100 -> 103 and 101 -> 103 are 3% and 1.98%, 101 -> 102 is 0.99%
+        assertEquals(toFixed(new BigDecimal("1.5")), DepthBook.getMaximumVolume(longBook, shortBook, toFixed(new BigDecimal("0.0198"))));
+        assertEquals(toFixed(new BigDecimal("3")), DepthBook.getMaximumVolume(longBook, shortBook, toFixed(new BigDecimal("0.0099"))));
+        assertEquals(0L, DepthBook.getMaximumVolume(longBook, shortBook, toFixed(new BigDecimal("0.04"))));
+        assertEquals(0L, DepthBook.getMaximumVolume(new DepthBook(), shortBook, FixedPoint.toFixed(BigDecimal.ZERO)));
+    }
+
+    @Test
+    public void testExactLimitPrice() {
+        // both of these asks round to 0.00001235, so they share a level
+        DepthBook shib = new DepthBook(new OrderBook(
+            new Date(),
+            Arrays.asList(
+                buildOrder(Order.OrderType.ASK, "1000", "0.0000123456"),
+                buildOrder(Order.OrderType.ASK, "1000", "0.0000123461"),
+                buildOrder(Order.OrderType.ASK, "1000", "0.0000124")),
+            Collections.singletonList(buildOrder(Order.OrderType.BID, "1000", "0.000000004"))));
+
+        assertEquals(2, shib.size(Order.OrderType.ASK));
+        assertEquals(new BigDecimal("0.0000123461"), shib.getExactLimitPrice(Order.OrderType.ASK, toFixed(new BigDecimal("1500"))));
+        assertEquals(new BigDecimal("0.0000124"), shib.getExactLimitPrice(Order.OrderType.ASK, toFixed(new BigDecimal("2500"))));
+        assertEquals(new BigDecimal("0.000000004"), shib.getExactLimitPrice(Order.OrderType.BID, toFixed(BigDecimal.ONE)));
+        assertNull(shib.getExactLimitPrice(Order.OrderType.ASK, toFixed(new BigDecimal("3000"))));
+    }
+
+    @Test
+    public void testExactLimitPriceAfterUpdate() {
+        depthBook.update(Order.OrderType.ASK, toFixed(new BigDecimal("99.999")), toFixed(BigDecimal.ONE));
+
+        assertEquals(new BigDecimal("99.99900000"), depthBook.getExactLimitPrice(Order.OrderType.ASK, 0L));
+        assertEquals(new BigDecimal("100.00000000"), depthBook.getExactLimitPrice(Order.OrderType.ASK, toFixed(BigDecimal.ONE)));
+    }
+
+    @Test
+    public void testHugeVolume() {
+        DepthBook huge = new DepthBook(new OrderBook(
+            new Date(),
+            Arrays.asList(
+                buildOrder(Order.OrderType.ASK, "50000000000", "0.00001"),
+                buildOrder(Order.OrderType.ASK, "50000000000", "0.00001"),
+                buildOrder(Order.OrderType.ASK, "1000000000000", "0.00002"),
+                buildOrder(Order.OrderType.ASK, "1", "0.00003")),
+            Collections.emptyList()));
+
+        assertEquals(3, huge.size(Order.OrderType.ASK));
+        assertEquals(Long.MAX_VALUE, huge.getTotalVolume(Order.OrderType.ASK));
+        assertEquals(toFixed(new BigDecimal("0.00001")), huge.getLimitPrice(Order.OrderType.ASK, toFixed(new BigDecimal("1000"))));
+    }
+
+    private static LimitOrder buildOrder(Order.OrderType type, String amount, String price) {
+        return new LimitOrder(type, new BigDecimal(amount), CurrencyPair.BTC_USD, null, new Date(), new BigDecimal(price));
+    }
+}
@@ -7,7 +7,9 @@ import com.r307.arbitrader.service.cache.ExchangeFeeCache;
 import com.r307.arbitrader.service.ExchangeService;
 import com.r307.arbitrader.service.TickerService;
 import com.r307.arbitrader.service.event.TickerEventPublisher;
+import com.r307.arbitrader.service.metrics.MetricsService;
 import com.r307.arbitrader.service.model.TickerEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.Before;
 import org.junit.Test;
 import org.knowm.xchange.Exchange;
@@ -50,9 +52,9 @@ public class ParallelTickerStrategyTest {
         NotificationConfiguration notificationConfiguration = new NotificationConfiguration();
         ExchangeService exchangeService = new ExchangeService(new ExchangeFeeCache(), tickerStrategyProvider);
 
-        errorCollectorService = new ErrorCollectorService();
+        errorCollectorService = new ErrorCollectorService(new MetricsService(new SimpleMeterRegistry()));
 
-        tickerStrategy = new ParallelTickerStrategy(notificationConfiguration, errorCollectorService, exchangeService, tickerEventPublisher);
+        tickerStrategy = new ParallelTickerStrategy(notificationConfiguration, errorCollectorService, exchangeService, tickerEventPublisher, new TickerRateLimiter());
     }
 
     @Test
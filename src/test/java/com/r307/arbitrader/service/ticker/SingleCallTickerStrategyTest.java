@@ -6,7 +6,9 @@ import com.r307.arbitrader.service.ErrorCollectorService;
 import com.r307.arbitrader.service.ExchangeService;
 import com.r307.arbitrader.service.TickerService;
 import com.r307.arbitrader.service.event.TickerEventPublisher;
+import com.r307.arbitrader.service.metrics.MetricsService;
 import com.r307.arbitrader.service.model.TickerEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.Before;
 import org.junit.Test;
 import org.knowm.xchange.Exchange;
@@ -48,9 +50,9 @@ public class SingleCallTickerStrategyTest {
 
         NotificationConfiguration notificationConfiguration = new NotificationConfiguration();
 
-        errorCollectorService = new ErrorCollectorService();
+        errorCollectorService = new ErrorCollectorService(new MetricsService(new SimpleMeterRegistry()));
 
-        tickerStrategy = new SingleCallTickerStrategy(notificationConfiguration, errorCollectorService, exchangeService, tickerEventPublisher);
+        tickerStrategy = new SingleCallTickerStrategy(notificationConfiguration, errorCollectorService, exchangeService, tickerEventPublisher, new TickerRateLimiter());
     }
 
     @Test
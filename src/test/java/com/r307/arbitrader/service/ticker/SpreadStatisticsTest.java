@@ -0,0 +1,120 @@
+package com.r307.arbitrader.service.ticker;
+
+import com.r307.arbitrader.BaseTestCase;
+import com.r307.arbitrader.service.model.TradeCombination;
+import org.junit.Before;
+import org.junit.Test;
+import org.knowm.xchange.Exchange;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.mockito.Mock;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.r307.arbitrader.service.ticker.SpreadStatistics.Window.DAY;
+import static com.r307.arbitrader.service.ticker.SpreadStatistics.Window.HOUR;
+import static com.r307.arbitrader.service.ticker.SpreadStatistics.Window.MINUTE;
+import static org.junit.Assert.*;
+
+public class SpreadStatisticsTest extends BaseTestCase {
+    @Mock
+    private Exchange exchangeA;
+
+    @Mock
+    private Exchange exchangeB;
+
+    private final AtomicLong clock = new AtomicLong(TimeUnit.DAYS.toMillis(365));
+    private SpreadStatistics spreadStatistics;
+
+    @Before
+    public void setUp() {
+        TradeCombination tradeCombination = new TradeCombination(exchangeA, exchangeB, CurrencyPair.BTC_USD);
+        TickerStore.Builder builder = new TickerStore.Builder();
+
+        builder.add(exchangeA, CurrencyPair.BTC_USD, CurrencyPair.BTC_USD);
+        builder.add(exchangeB, CurrencyPair.BTC_USD, CurrencyPair.BTC_USD);
+
+        spreadStatistics = new SpreadStatistics(
+            new TradeCombinationIndex(builder.build(), Collections.singletonList(tradeCombination)),
+            clock::get);
+    }
+
+    @Test
+    public void testEmpty() {
+        SpreadStatistics.Summary summary = spreadStatistics.getSpreadIn(0, MINUTE);
+
+        assertEquals(0, summary.getCount());
+        assertNull(summary.getPercentile(50));
+    }
+
+    @Test
+    public void testMeanAndStandardDeviation() {
+        spreadStatistics.update(0, 400_000L, -200_000L); // 0.004, -0.002
+        spreadStatistics.update(0, 600_000L, -400_000L); // 0.006, -0.004
+
+        SpreadStatistics.Summary in = spreadStatistics.getSpreadIn(0, MINUTE);
+        SpreadStatistics.Summary out = spreadStatistics.getSpreadOut(0, MINUTE);
+
+        assertEquals(2, in.getCount());
+        assertEquals(new BigDecimal("0.00500000"), in.getMean());
+        assertEquals(new BigDecimal("0.00100000"), in.getStandardDeviation());
+        assertEquals(new BigDecimal("-0.00300000"), out.getMean());
+    }
+
+    @Test
+    public void testPercentile() {
+        for (int i = 1; i <= 100; i++) {
+            spreadStatistics.update(0, i * 10_000L, 0L); // 0.0001 to 0.01
+        }
+
+        assertWithin(new BigDecimal("0.005"), spreadStatistics.getSpreadIn(0, MINUTE).getPercentile(50));
+        assertWithin(new BigDecimal("0.009"), spreadStatistics.getSpreadIn(0, MINUTE).getPercentile(90));
+        assertWithin(new BigDecimal("0.0001"), spreadStatistics.getSpreadIn(0, MINUTE).getPercentile(0));
+    }
+
+    @Test
+    public void testNegativePercentile() {
+        for (int i = 1; i <= 100; i++) {
+            spreadStatistics.update(0, 0L, -i * 10_000L); // -0.0001 to -0.01
+        }
+
+        assertWithin(new BigDecimal("-0.009"), spreadStatistics.getSpreadOut(0, MINUTE).getPercentile(10));
+    }
+
+    @Test
+    public void testWindowsExpire() {
+        spreadStatistics.update(0, 100_000L, 0L);
+
+        clock.addAndGet(TimeUnit.MINUTES.toMillis(2));
+        spreadStatistics.update(0, 300_000L, 0L);
+
+        assertEquals(1, spreadStatistics.getSpreadIn(0, MINUTE).getCount());
+        assertEquals(2, spreadStatistics.getSpreadIn(0, HOUR).getCount());
+
+        clock.addAndGet(TimeUnit.HOURS.toMillis(2));
+
+        assertEquals(0, spreadStatistics.getSpreadIn(0, MINUTE).getCount());
+        assertEquals(0, spreadStatistics.getSpreadIn(0, HOUR).getCount());
+        assertEquals(2, spreadStatistics.getSpreadIn(0, DAY).getCount());
+    }
+
+    @Test
+    public void testBins() {
+        assertEquals(SpreadStatistics.ZERO_BIN, SpreadStatistics.bin(0L));
+        assertEquals(SpreadStatistics.ZERO_BIN, SpreadStatistics.bin(-100L));
+        assertEquals(0, SpreadStatistics.bin(Long.MIN_VALUE));
+        assertEquals(SpreadStatistics.BIN_COUNT - 1, SpreadStatistics.bin(Long.MAX_VALUE));
+        assertTrue(SpreadStatistics.bin(-2000L) < SpreadStatistics.bin(-1500L));
+        assertTrue(SpreadStatistics.bin(1500L) < SpreadStatistics.bin(2000L));
+    }
+
+    // histogram percentiles are accurate to within about 6%
+    private static void assertWithin(BigDecimal expected, BigDecimal actual) {
+        BigDecimal error = actual.subtract(expected).abs();
+
+        assertTrue(String.format("expected %s but was %s", expected, actual),
+            error.compareTo(expected.abs().multiply(new BigDecimal("0.07"))) <= 0);
+    }
+}
@@ -4,6 +4,7 @@ import com.r307.arbitrader.ExchangeBuilder;
 import com.r307.arbitrader.service.ErrorCollectorService;
 import com.r307.arbitrader.service.ExchangeService;
 import com.r307.arbitrader.service.TickerService;
+import com.r307.arbitrader.service.cache.OrderBookCache;
 import com.r307.arbitrader.service.event.TickerEventPublisher;
 import com.r307.arbitrader.service.model.TickerEvent;
 import org.junit.Before;
@@ -41,7 +42,7 @@ public class StreamingTickerStrategyTest {
     public void setUp() {
         MockitoAnnotations.initMocks(this);
 
-        streamingTickerStrategy = new StreamingTickerStrategy(errorCollectorService, exchangeService, tickerEventPublisher);
+        streamingTickerStrategy = new StreamingTickerStrategy(errorCollectorService, exchangeService, tickerEventPublisher, new OrderBookCache());
     }
 
     @Test
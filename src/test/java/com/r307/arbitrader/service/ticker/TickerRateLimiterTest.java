@@ -0,0 +1,94 @@
+package com.r307.arbitrader.service.ticker;
+
+import com.r307.arbitrader.ExchangeBuilder;
+import org.junit.Before;
+import org.junit.Test;
+import org.knowm.xchange.Exchange;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.exceptions.ExchangeException;
+import org.knowm.xchange.exceptions.RateLimitExceededException;
+import si.mazi.rescu.HttpStatusIOException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TickerRateLimiterTest {
+    private Exchange exchange;
+    private TickerRateLimiter tickerRateLimiter;
+
+    @Before
+    public void setUp() throws IOException {
+        exchange = new ExchangeBuilder("CrazyCoinz", CurrencyPair.BTC_USD).build();
+        tickerRateLimiter = new TickerRateLimiter();
+
+        tickerRateLimiter.register(exchange, 10.0);
+    }
+
+    @Test
+    public void testIsRateLimited() {
+        HttpStatusIOException tooMany = mock(HttpStatusIOException.class);
+        HttpStatusIOException notFound = mock(HttpStatusIOException.class);
+
+        when(tooMany.getHttpStatusCode()).thenReturn(429);
+        when(notFound.getHttpStatusCode()).thenReturn(404);
+
+        assertTrue(TickerRateLimiter.isRateLimited(new RateLimitExceededException("Slow down")));
+        assertTrue(TickerRateLimiter.isRateLimited(new UncheckedIOException(tooMany)));
+        assertFalse(TickerRateLimiter.isRateLimited(new UncheckedIOException(notFound)));
+        assertFalse(TickerRateLimiter.isRateLimited(new ExchangeException("Boom!")));
+    }
+
+    @Test
+    public void testRegisterOnlyOnce() {
+        tickerRateLimiter.register(exchange, 1.0);
+
+        assertEquals(10.0, tickerRateLimiter.getRate(exchange), 0.0001);
+    }
+
+    @Test
+    public void testBackOffAndRecover() {
+        tickerRateLimiter.onError(exchange, new RateLimitExceededException("Slow down"));
+
+        assertEquals(5.0, tickerRateLimiter.getRate(exchange), 0.0001);
+        assertFalse(tickerRateLimiter.tryAcquire(exchange, 1.0));
+
+        // requests that started before we backed off don't count
+        tickerRateLimiter.onComplete(exchange, System.nanoTime() - 1_000_000_000L);
+
+        assertEquals(5.0, tickerRateLimiter.getRate(exchange), 0.0001);
+
+        // speed up a little at a time, but never past the rate that got us in trouble
+        for (int i = 0; i < 100; i++) {
+            tickerRateLimiter.onComplete(exchange, System.nanoTime());
+        }
+
+        assertEquals(9.0, tickerRateLimiter.getRate(exchange), 0.0001);
+    }
+
+    @Test
+    public void testOtherErrorsIgnored() {
+        tickerRateLimiter.onError(exchange, new ExchangeException("Boom!"));
+
+        assertEquals(10.0, tickerRateLimiter.getRate(exchange), 0.0001);
+    }
+
+    @Test
+    public void testUnregisteredExchangeIgnored() throws IOException {
+        Exchange unregistered = new ExchangeBuilder("CoinBuns", CurrencyPair.BTC_USD).build();
+
+        tickerRateLimiter.onError(unregistered, new RateLimitExceededException("Slow down"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testUnregisteredExchange() throws IOException {
+        Exchange unregistered = new ExchangeBuilder("CoinBuns", CurrencyPair.BTC_USD).build();
+
+        tickerRateLimiter.getRate(unregistered);
+    }
+}
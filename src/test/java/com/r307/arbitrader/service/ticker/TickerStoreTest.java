@@ -0,0 +1,132 @@
+package com.r307.arbitrader.service.ticker;
+
+import com.r307.arbitrader.BaseTestCase;
+import org.junit.Before;
+import org.junit.Test;
+import org.knowm.xchange.Exchange;
+import org.knowm.xchange.currency.Currency;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.marketdata.Ticker;
+import org.mockito.Mock;
+
+import java.math.BigDecimal;
+import java.util.Date;
+
+import static com.r307.arbitrader.FixedPoint.NO_VALUE;
+import static com.r307.arbitrader.service.ticker.TickerStore.UNKNOWN_ID;
+import static org.junit.Assert.*;
+
+public class TickerStoreTest extends BaseTestCase {
+    private static final CurrencyPair USDC_PAIR = new CurrencyPair(Currency.BTC, Currency.USDC);
+
+    @Mock
+    private Exchange exchangeA;
+
+    @Mock
+    private Exchange exchangeB;
+
+    private TickerStore tickerStore;
+
+    @Before
+    public void setUp() {
+        TickerStore.Builder builder = new TickerStore.Builder();
+
+        builder.add(exchangeA, CurrencyPair.BTC_USD, CurrencyPair.BTC_USD);
+        builder.add(exchangeB, CurrencyPair.BTC_USD, USDC_PAIR);
+        builder.add(exchangeB, CurrencyPair.ETH_USD, CurrencyPair.ETH_USD);
+
+        tickerStore = builder.build();
+    }
+
+    @Test
+    public void testIds() {
+        assertEquals(3, tickerStore.size());
+        assertEquals(0, tickerStore.getId(exchangeA, CurrencyPair.BTC_USD));
+        assertEquals(1, tickerStore.getId(exchangeB, CurrencyPair.BTC_USD));
+        assertEquals(1, tickerStore.getId(exchangeB, USDC_PAIR));
+        assertEquals(2, tickerStore.getId(exchangeB, CurrencyPair.ETH_USD));
+        assertEquals(UNKNOWN_ID, tickerStore.getId(exchangeA, CurrencyPair.ETH_USD));
+        assertEquals(exchangeB, tickerStore.getExchange(1));
+        assertEquals(CurrencyPair.BTC_USD, tickerStore.getCurrencyPair(1));
+    }
+
+    @Test
+    public void testDuplicateAdd() {
+        TickerStore.Builder builder = new TickerStore.Builder();
+
+        assertEquals(0, builder.add(exchangeA, CurrencyPair.BTC_USD, CurrencyPair.BTC_USD));
+        assertEquals(0, builder.add(exchangeA, CurrencyPair.BTC_USD, CurrencyPair.BTC_USD));
+        assertEquals(1, builder.build().size());
+    }
+
+    @Test
+    public void testReadEmpty() {
+        TickerStore.Snapshot snapshot = new TickerStore.Snapshot();
+
+        assertFalse(tickerStore.read(0, snapshot));
+        assertNull(tickerStore.getTicker(0));
+        assertEquals(NO_VALUE, snapshot.getBid());
+        assertEquals(NO_VALUE, snapshot.getAsk());
+    }
+
+    @Test
+    public void testPutAndRead() {
+        Ticker ticker = buildTicker("120.00", "123.50", 1609633979L);
+        TickerStore.Snapshot snapshot = new TickerStore.Snapshot();
+
+        assertTrue(tickerStore.put(0, ticker));
+        assertTrue(tickerStore.read(0, snapshot));
+
+        assertSame(ticker, tickerStore.getTicker(0));
+        assertEquals(12000000000L, snapshot.getBid());
+        assertEquals(12350000000L, snapshot.getAsk());
+        assertEquals(1609633979L, snapshot.getTimestamp());
+        assertEquals(2, snapshot.getSequence());
+    }
+
+    @Test
+    public void testPutOlderTicker() {
+        Ticker newTicker = buildTicker("120.00", "123.00", 1609634008L);
+        Ticker oldTicker = buildTicker("110.00", "113.00", 1609633979L);
+
+        assertTrue(tickerStore.put(0, newTicker));
+        assertFalse(tickerStore.put(0, oldTicker));
+
+        assertSame(newTicker, tickerStore.getTicker(0));
+        assertEquals(2, tickerStore.getSequence(0));
+    }
+
+    @Test
+    public void testPutNoTimestamp() {
+        Ticker oldTicker = buildTicker("120.00", "123.00", 1609634008L);
+        Ticker newTicker = buildTicker("110.00", "113.00", null);
+
+        assertTrue(tickerStore.put(0, oldTicker));
+        assertTrue(tickerStore.put(0, newTicker));
+
+        assertSame(newTicker, tickerStore.getTicker(0));
+        assertEquals(4, tickerStore.getSequence(0));
+    }
+
+    @Test
+    public void testPutMissingAsk() {
+        Ticker ticker = new Ticker.Builder()
+            .instrument(CurrencyPair.BTC_USD)
+            .bid(new BigDecimal("120.00"))
+            .build();
+        TickerStore.Snapshot snapshot = new TickerStore.Snapshot();
+
+        assertTrue(tickerStore.put(0, ticker));
+        assertFalse(tickerStore.read(0, snapshot));
+        assertEquals(NO_VALUE, snapshot.getAsk());
+    }
+
+    private static Ticker buildTicker(String bid, String ask, Long timestamp) {
+        return new Ticker.Builder()
+            .instrument(CurrencyPair.BTC_USD)
+            .bid(new BigDecimal(bid))
+            .ask(new BigDecimal(ask))
+            .timestamp(timestamp == null ? null : new Date(timestamp))
+            .build();
+    }
+}
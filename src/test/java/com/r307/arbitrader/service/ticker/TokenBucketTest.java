@@ -0,0 +1,63 @@
+package com.r307.arbitrader.service.ticker;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TokenBucketTest {
+    private long now = 0L;
+    private TokenBucket bucket;
+
+    @Before
+    public void setUp() {
+        bucket = new TokenBucket(2.0, 4.0, () -> now);
+    }
+
+    @Test
+    public void testStartsFull() {
+        assertEquals(4.0, bucket.getAvailable(), 0.0001);
+        assertTrue(bucket.tryAcquire(4.0));
+        assertFalse(bucket.tryAcquire(1.0));
+    }
+
+    @Test
+    public void testRefill() {
+        assertTrue(bucket.tryAcquire(4.0));
+
+        now += TimeUnit.MILLISECONDS.toNanos(500);
+
+        assertEquals(1.0, bucket.getAvailable(), 0.0001);
+        assertFalse(bucket.tryAcquire(2.0));
+
+        now += TimeUnit.SECONDS.toNanos(10);
+
+        // never more than the capacity
+        assertEquals(4.0, bucket.getAvailable(), 0.0001);
+    }
+
+    @Test
+    public void testDrain() {
+        bucket.drain();
+
+        assertEquals(0.0, bucket.getAvailable(), 0.0001);
+    }
+
+    @Test
+    public void testSetRate() {
+        bucket.setRate(1.0, 1.0);
+
+        // the extra tokens don't fit any more
+        assertEquals(1.0, bucket.getAvailable(), 0.0001);
+        assertTrue(bucket.tryAcquire(1.0));
+
+        now += TimeUnit.MILLISECONDS.toNanos(500);
+
+        assertEquals(0.5, bucket.getAvailable(), 0.0001);
+        assertEquals(1.0, bucket.getRate(), 0.0001);
+    }
+}
@@ -0,0 +1,105 @@
+package com.r307.arbitrader.service.ticker;
+
+import com.r307.arbitrader.BaseTestCase;
+import com.r307.arbitrader.service.model.TradeCombination;
+import org.junit.Before;
+import org.junit.Test;
+import org.knowm.xchange.Exchange;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.mockito.Mock;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static com.r307.arbitrader.service.ticker.TickerStore.UNKNOWN_ID;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TradeCombinationIndexTest extends BaseTestCase {
+    @Mock
+    private Exchange exchangeA;
+
+    @Mock
+    private Exchange exchangeB;
+
+    @Mock
+    private Exchange exchangeC;
+
+    private TickerStore tickerStore;
+    private TradeCombination abBtc;
+    private TradeCombination acBtc;
+    private TradeCombination abEth;
+    private TradeCombinationIndex index;
+
+    @Before
+    public void setUp() {
+        abBtc = new TradeCombination(exchangeA, exchangeB, CurrencyPair.BTC_USD);
+        acBtc = new TradeCombination(exchangeA, exchangeC, CurrencyPair.BTC_USD);
+        abEth = new TradeCombination(exchangeA, exchangeB, CurrencyPair.ETH_USD);
+
+        List<TradeCombination> tradeCombinations = Arrays.asList(abBtc, acBtc, abEth);
+        TickerStore.Builder builder = new TickerStore.Builder();
+
+        tradeCombinations.forEach(tradeCombination -> {
+            builder.add(tradeCombination.getLongExchange(), tradeCombination.getCurrencyPair(), tradeCombination.getCurrencyPair());
+            builder.add(tradeCombination.getShortExchange(), tradeCombination.getCurrencyPair(), tradeCombination.getCurrencyPair());
+        });
+
+        tickerStore = builder.build();
+        index = new TradeCombinationIndex(tickerStore, tradeCombinations);
+    }
+
+    @Test
+    public void testIndex() {
+        int aBtc = tickerStore.getId(exchangeA, CurrencyPair.BTC_USD);
+        int bBtc = tickerStore.getId(exchangeB, CurrencyPair.BTC_USD);
+        int cEth = tickerStore.getId(exchangeC, CurrencyPair.ETH_USD);
+
+        assertEquals(2, index.size(aBtc));
+        assertEquals(1, index.size(bBtc));
+        assertEquals(abBtc, index.get(bBtc, 0));
+        assertEquals(UNKNOWN_ID, cEth);
+        assertEquals(0, index.size(cEth));
+        assertEquals(0, index.randomOffset(cEth));
+    }
+
+    @Test
+    public void testRandomOffsetVisitsAll() {
+        int aBtc = tickerStore.getId(exchangeA, CurrencyPair.BTC_USD);
+        int count = index.size(aBtc);
+        int offset = index.randomOffset(aBtc);
+        Set<TradeCombination> visited = new HashSet<>();
+
+        assertTrue(offset >= 0 && offset < count);
+
+        for (int i = 0; i < count; i++) {
+            visited.add(index.get(aBtc, (offset + i) % count));
+        }
+
+        assertEquals(new HashSet<>(Arrays.asList(abBtc, acBtc)), visited);
+    }
+
+    @Test
+    public void testSeededOffset() {
+        int aBtc = tickerStore.getId(exchangeA, CurrencyPair.BTC_USD);
+        Random first = new Random(42L);
+        Random second = new Random(42L);
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(index.randomOffset(aBtc, first), index.randomOffset(aBtc, second));
+        }
+    }
+
+    @Test
+    public void testCombinationIds() {
+        assertEquals(3, index.getCombinationCount());
+        assertEquals(0, index.getCombinationId(abBtc));
+        assertEquals(2, index.getCombinationId(abEth));
+        assertEquals(1, index.getCombinationId(new TradeCombination(exchangeA, exchangeC, CurrencyPair.BTC_USD)));
+        assertEquals(UNKNOWN_ID, index.getCombinationId(new TradeCombination(exchangeB, exchangeC, CurrencyPair.BTC_USD)));
+        assertEquals(acBtc, index.getCombination(1));
+    }
+}
@@ -0,0 +1,87 @@
+package com.r307.arbitrader.service.ticker;
+
+import com.r307.arbitrader.BaseTestCase;
+import com.r307.arbitrader.service.model.TradeCombination;
+import org.junit.Before;
+import org.junit.Test;
+import org.knowm.xchange.Exchange;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.mockito.Mock;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.r307.arbitrader.service.ticker.WaterMarks.RECORD_HIGH_IN;
+import static com.r307.arbitrader.service.ticker.WaterMarks.RECORD_LOW_OUT;
+import static org.junit.Assert.*;
+
+public class WaterMarksTest extends BaseTestCase {
+    @Mock
+    private Exchange exchangeA;
+
+    @Mock
+    private Exchange exchangeB;
+
+    private WaterMarks waterMarks;
+
+    @Before
+    public void setUp() {
+        List<TradeCombination> tradeCombinations = Arrays.asList(
+            new TradeCombination(exchangeA, exchangeB, CurrencyPair.BTC_USD),
+            new TradeCombination(exchangeB, exchangeA, CurrencyPair.BTC_USD));
+        TickerStore.Builder builder = new TickerStore.Builder();
+
+        builder.add(exchangeA, CurrencyPair.BTC_USD, CurrencyPair.BTC_USD);
+        builder.add(exchangeB, CurrencyPair.BTC_USD, CurrencyPair.BTC_USD);
+
+        waterMarks = new WaterMarks(new TradeCombinationIndex(builder.build(), tradeCombinations));
+    }
+
+    @Test
+    public void testUpdate() {
+        assertEquals(RECORD_HIGH_IN | RECORD_LOW_OUT, waterMarks.update(0, 100L, -100L));
+        assertEquals(0, waterMarks.update(0, 50L, -50L));
+        assertEquals(RECORD_HIGH_IN, waterMarks.update(0, 150L, 0L));
+        assertEquals(RECORD_LOW_OUT, waterMarks.update(0, 0L, -150L));
+
+        WaterMarks.Snapshot snapshot = waterMarks.snapshot();
+
+        assertTrue(snapshot.isPresent(0));
+        assertFalse(snapshot.isPresent(1));
+        assertEquals(0L, snapshot.getMinIn(0));
+        assertEquals(150L, snapshot.getMaxIn(0));
+        assertEquals(-150L, snapshot.getMinOut(0));
+        assertEquals(0L, snapshot.getMaxOut(0));
+    }
+
+    @Test
+    public void testConcurrentUpdate() throws InterruptedException {
+        List<Thread> threads = new ArrayList<>();
+
+        for (int t = 0; t < 4; t++) {
+            final int thread = t;
+
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 10000; i++) {
+                    long value = (long) i * 4 + thread;
+
+                    waterMarks.update(1, value, -value);
+                }
+            }));
+        }
+
+        threads.forEach(Thread::start);
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        WaterMarks.Snapshot snapshot = waterMarks.snapshot();
+
+        assertEquals(0L, snapshot.getMinIn(1));
+        assertEquals(39999L, snapshot.getMaxIn(1));
+        assertEquals(-39999L, snapshot.getMinOut(1));
+        assertEquals(0L, snapshot.getMaxOut(1));
+    }
+}